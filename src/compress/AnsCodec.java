@@ -0,0 +1,422 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.ByteArrayList;
+
+/**
+ * Encodes and decodes blocks of bytes with tabled asymmetric numeral systems (tANS,
+ * the coder of FSE). A huffman code spends a whole number of bits on every symbol,
+ * so a byte that makes up 95% of a block still costs a bit where it's worth less
+ * than 0.1. tANS keeps a state in [L, 2L) that carries the fractional bits from one
+ * symbol to the next, so it gets within a fraction of a percent of the entropy,
+ * while decoding is still a table lookup and a bit read per symbol.
+ *
+ * The frequencies of the block are normalized to add up to the table size L = 2^tableLog
+ * and the L states are spread over the symbols in proportion to them. The encoder
+ * goes through the block backwards, so the decoder can read the bits forwards; the
+ * bits are written from the end of a buffer to its start. Symbol i uses the state
+ * i % STATES, the decoder advances the STATES states in the same loop so their
+ * table lookups can overlap, as BlockCodec does with its streams.
+ *
+ * Block payload:
+ * <pre>
+ *   tableLog   1 byte, log2 of the table size
+ *   counts     256 bits telling which bytes are present, then the normalized count
+ *              minus one of every present byte but the last, which takes the rest
+ *              of the table, in as many bits as the rest of the table needs
+ *   bits       a 1 bit preceded by zero padding, the final STATES states (tableLog
+ *              bits each, state 0 first) and the bits of every symbol, in order
+ * </pre>
+ * Every state starts at L, so the decoder ends with all of them at 0, which is
+ * checked to detect corrupt blocks.
+ *
+ * An AnsCodec keeps reusable tables and buffers, so it isn't thread safe, every
+ * thread needs its own instance.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class AnsCodec implements EntropyCoder {
+
+	public static final int MIN_TABLE_LOG = 5;
+	public static final int MAX_TABLE_LOG = 12;
+	public static final int DEFAULT_TABLE_LOG = 11;
+	public static final int STATES = 4;
+
+	private static final int SYMBOLS = Histogram.BYTE_ALPHABET;
+
+	private final int[] normalized = new int[SYMBOLS];
+	private final byte[] spread = new byte[1 << MAX_TABLE_LOG]; // symbol of every state
+	private final int[] next = new int[SYMBOLS];
+	private final BitWriter countWriter = new BitWriter(null);
+
+	// normalization done by the last estimateBits, reused by encode for the same counts
+	private final long[] estimatedCounts = new long[BlockCodec.ALPHABET];
+	private int estimatedLength = -1;
+	private int estimatedLog;
+
+	// encoding tables, see buildEncodeTables
+	private final int[] stateTable = new int[1 << MAX_TABLE_LOG];
+	private final int[] deltaBits = new int[SYMBOLS];
+	private final int[] deltaState = new int[SYMBOLS];
+	private byte[] bits = new byte[0];
+
+	// decoding
+	private final int[] decodeTable = new int[1 << MAX_TABLE_LOG]; // newState << 12 | bits << 8 | symbol
+	private final BitReader reader = new BitReader();
+
+	@Override
+	public int getBlockType() {
+		return HuffmanCompressor.BLOCK_ANS;
+	}
+
+	@Override
+	public String getName() {
+		return "ans";
+	}
+
+	/**
+	 * A step per symbol, the states are interleaved like the huffman streams, plus
+	 * spreading the symbols over the table and filling its states one by one.
+	 */
+	@Override
+	public long estimateDecodeCost(int length) {
+		return length + (1L << this.estimatedLog) / 2;
+	}
+
+	/**
+	 * There is nothing kept between blocks, every block carries its counts.
+	 */
+	@Override
+	public void reset() {
+	}
+
+	/**
+	 * Counts the entropy of the block under the normalized frequencies, plus the
+	 * counts and the final states.
+	 */
+	@Override
+	public long estimateBits(byte[] src, int offset, int length, long[] counts) {
+		if (length == 0) {
+			return 8;
+		}
+		int tableLog = prepare(counts, length);
+		double symbolBits = 0;
+		for (int s = 0; s < SYMBOLS; s++) {
+			if (counts[s] > 0) {
+				symbolBits += counts[s] * (tableLog - Math.log(this.normalized[s]) / Math.log(2));
+			}
+		}
+		return 8 + writeCounts(null, tableLog) + 8 + STATES * tableLog + (long) Math.ceil(symbolBits);
+	}
+
+	@Override
+	public void encode(byte[] src, int offset, int length, long[] counts, ByteArrayList out) {
+		if (counts[BlockCodec.ESCAPE] != 0) {
+			throw new IllegalArgumentException("Counts can't have escapes.");
+		}
+		if (length == 0) {
+			out.add((byte) 0);
+			return;
+		}
+		int tableLog = prepare(counts, length);
+		out.add((byte) tableLog);
+		this.countWriter.reset(out);
+		writeCounts(this.countWriter, tableLog);
+		this.countWriter.flush();
+
+		buildEncodeTables(tableLog);
+		int size = encodeSymbols(src, offset, length, tableLog);
+		out.addAll(this.bits, this.bits.length - size, size);
+	}
+
+	/* Normalizes the counts, unless estimateBits already did it for the same block, and returns the table log */
+	private int prepare(long[] counts, int length) {
+		if (length == this.estimatedLength && Arrays.equals(counts, this.estimatedCounts)) {
+			return this.estimatedLog;
+		}
+		int tableLog = tableLog(counts, length);
+		normalize(counts, length, tableLog);
+		System.arraycopy(counts, 0, this.estimatedCounts, 0, BlockCodec.ALPHABET);
+		this.estimatedLength = length;
+		this.estimatedLog = tableLog;
+		return tableLog;
+	}
+
+	/* DEFAULT_TABLE_LOG, smaller for small blocks, but large enough to give every byte present a few states */
+	private static int tableLog(long[] counts, int length) {
+		int present = 0;
+		for (int s = 0; s < SYMBOLS; s++) {
+			if (counts[s] > 0) {
+				present++;
+			}
+		}
+		int tableLog = Math.min(DEFAULT_TABLE_LOG, ceilLog2(length));
+		tableLog = Math.max(tableLog, ceilLog2(present) + 1);
+		return Math.min(MAX_TABLE_LOG, Math.max(MIN_TABLE_LOG, tableLog));
+	}
+
+	/*
+	 * Scales the counts to add up to 2^tableLog, every byte present keeps at least 1.
+	 * The rounding error goes to the most frequent byte, or is taken from the largest
+	 * counts one at a time, where losing a state costs the least.
+	 */
+	private void normalize(long[] counts, int length, int tableLog) {
+		int size = 1 << tableLog;
+		int sum = 0, largest = 0;
+		for (int s = 0; s < SYMBOLS; s++) {
+			int n = 0;
+			if (counts[s] > 0) {
+				n = (int) Math.max(1, (counts[s] * size + length / 2) / length);
+				if (counts[s] > counts[largest]) {
+					largest = s;
+				}
+			}
+			this.normalized[s] = n;
+			sum += n;
+		}
+		if (sum <= size) {
+			this.normalized[largest] += size - sum;
+			return;
+		}
+		for (; sum > size; sum--) {
+			int max = 0;
+			for (int s = 1; s < SYMBOLS; s++) {
+				if (this.normalized[s] > this.normalized[max]) {
+					max = s;
+				}
+			}
+			this.normalized[max]--;
+		}
+	}
+
+	/* Writes the normalized counts with writer, or only counts their bits if writer is null */
+	private int writeCounts(BitWriter writer, int tableLog) {
+		int present = 0;
+		for (int s = 0; s < SYMBOLS; s++) {
+			if (this.normalized[s] > 0) {
+				present++;
+			}
+			if (writer != null) {
+				writer.writeBits(this.normalized[s] > 0 ? 1 : 0, 1);
+			}
+		}
+		int bits = SYMBOLS;
+		int remaining = 1 << tableLog;
+		for (int s = 0; s < SYMBOLS && present > 1; s++) {
+			if (this.normalized[s] > 0) {
+				present--;
+				int width = bitsFor(remaining - present - 1); // the bytes after this one need a state each
+				if (writer != null) {
+					writer.writeBits(this.normalized[s] - 1, width);
+				}
+				bits += width;
+				remaining -= this.normalized[s];
+			}
+		}
+		return bits;
+	}
+
+	/* Reads the counts written by writeCounts into normalized, returns the position after them */
+	private int readCounts(byte[] src, int position, int end, int tableLog) {
+		BitReader counts = new BitReader(src, position, end - position);
+		int present = 0;
+		for (int s = 0; s < SYMBOLS; s++) {
+			this.normalized[s] = counts.readBits(1);
+			present += this.normalized[s];
+		}
+		if (present == 0 || present > 1 << tableLog) {
+			throw new IllegalArgumentException("Invalid amount of symbols in the counts.");
+		}
+		int remaining = 1 << tableLog;
+		for (int s = 0; s < SYMBOLS; s++) {
+			if (this.normalized[s] == 0) {
+				continue;
+			}
+			present--;
+			int n = present == 0 ? remaining : counts.readBits(bitsFor(remaining - present - 1)) + 1;
+			if (n > remaining - present) {
+				throw new IllegalArgumentException("Counts don't add up to the table size.");
+			}
+			this.normalized[s] = n;
+			remaining -= n;
+		}
+		if (counts.overrun()) {
+			throw new IllegalArgumentException("Truncated counts.");
+		}
+		return position + (int) ((counts.getBitsRead() + 7) / 8);
+	}
+
+	/* Deals the states to the symbols, each symbol's states spread over the whole table */
+	private void spreadSymbols(int tableLog) {
+		int size = 1 << tableLog;
+		int mask = size - 1;
+		int step = (size >>> 1) + (size >>> 3) + 3; // odd, so it visits every position once
+		int position = 0;
+		for (int s = 0; s < SYMBOLS; s++) {
+			for (int i = 0; i < this.normalized[s]; i++) {
+				this.spread[position] = (byte) s;
+				position = (position + step) & mask;
+			}
+		}
+	}
+
+	/*
+	 * stateTable holds the states of every symbol, in order of symbol and then of
+	 * position. Encoding symbol s from state x writes the lowest
+	 * (x + deltaBits[s]) >>> 16 bits of x, which leaves x in [n, 2n) for a count n,
+	 * and moves to stateTable[x + deltaState[s]].
+	 */
+	private void buildEncodeTables(int tableLog) {
+		int size = 1 << tableLog;
+		spreadSymbols(tableLog);
+		int total = 0;
+		for (int s = 0; s < SYMBOLS; s++) {
+			int n = this.normalized[s];
+			this.next[s] = total;
+			if (n == 1) {
+				this.deltaBits[s] = (tableLog << 16) - size;
+				this.deltaState[s] = total - 1;
+			} else if (n > 1) {
+				int maxBits = tableLog - (31 - Integer.numberOfLeadingZeros(n - 1));
+				this.deltaBits[s] = (maxBits << 16) - (n << maxBits);
+				this.deltaState[s] = total - n;
+			}
+			total += n;
+		}
+		for (int u = 0; u < size; u++) {
+			this.stateTable[this.next[this.spread[u] & 0xFF]++] = size + u;
+		}
+	}
+
+	/*
+	 * Encodes the symbols backwards into the end of the bits buffer, returns the amount
+	 * of bytes written. The pending bits are the lowest count bits of buffer, new bits
+	 * go in front of them, and full bytes are moved to the buffer from its end.
+	 */
+	private int encodeSymbols(byte[] src, int offset, int length, int tableLog) {
+		long bound = (long) length * tableLog / 8 + STATES * 2 + 8;
+		if (this.bits.length < bound) {
+			this.bits = new byte[(int) Math.min(Integer.MAX_VALUE - 8, bound + bound / 8)];
+		}
+		byte[] out = this.bits;
+		int[] table = this.stateTable, dBits = this.deltaBits, dState = this.deltaState;
+		int size = 1 << tableLog;
+		int[] states = {size, size, size, size};
+		int position = out.length;
+		long buffer = 0;
+		int count = 0;
+
+		for (int i = length - 1; i >= 0; i--) {
+			int symbol = src[offset + i] & 0xFF;
+			int k = i & (STATES - 1);
+			int state = states[k];
+			int nbBits = (state + dBits[symbol]) >>> 16;
+			buffer |= (long) (state & ((1 << nbBits) - 1)) << count;
+			count += nbBits;
+			states[k] = table[(state >>> nbBits) + dState[symbol]];
+			if (count >= 32) {
+				out[position - 1] = (byte) buffer;
+				out[position - 2] = (byte) (buffer >>> 8);
+				out[position - 3] = (byte) (buffer >>> 16);
+				out[position - 4] = (byte) (buffer >>> 24);
+				position -= 4;
+				buffer >>>= 32;
+				count -= 32;
+			}
+		}
+
+		for (int k = STATES - 1; k >= 0; k--) { // state 0 is read first, so it goes last
+			buffer |= (long) (states[k] - size) << count;
+			count += tableLog;
+			while (count >= 8) {
+				out[--position] = (byte) buffer;
+				buffer >>>= 8;
+				count -= 8;
+			}
+		}
+		buffer |= 1L << count; // marks where the bits start
+		count++;
+		while (count > 0) {
+			out[--position] = (byte) buffer;
+			buffer >>>= 8;
+			count -= 8;
+		}
+		return out.length - position;
+	}
+
+	@Override
+	public void decode(byte[] src, int offset, int length, byte[] dst, int dstOffset, int symbols) {
+		int end = offset + length;
+		if (length < 1) {
+			throw new IllegalArgumentException("Truncated block.");
+		}
+		int tableLog = src[offset];
+		if (symbols == 0 && tableLog == 0) {
+			return;
+		}
+		if (tableLog < MIN_TABLE_LOG || tableLog > MAX_TABLE_LOG) {
+			throw new IllegalArgumentException("Invalid table log " + tableLog + ".");
+		}
+		int position = readCounts(src, offset + 1, end, tableLog);
+		buildDecodeTable(tableLog);
+
+		if (position >= end || src[position] == 0) {
+			throw new IllegalArgumentException("Missing start of the bits.");
+		}
+		BitReader in = this.reader;
+		in.reset(src, position, end - position);
+		in.readBits(Integer.numberOfLeadingZeros(src[position] & 0xFF) - 23);
+		int s0 = in.readBits(tableLog), s1 = in.readBits(tableLog), s2 = in.readBits(tableLog), s3 = in.readBits(tableLog);
+
+		int[] table = this.decodeTable;
+		int i = dstOffset, last = dstOffset + symbols;
+		for (; i + 4 <= last; i += 4) {
+			int e0 = table[s0], e1 = table[s1], e2 = table[s2], e3 = table[s3];
+			dst[i] = (byte) e0;
+			dst[i + 1] = (byte) e1;
+			dst[i + 2] = (byte) e2;
+			dst[i + 3] = (byte) e3;
+			s0 = (e0 >>> 12) + in.readBits((e0 >>> 8) & 0xF);
+			s1 = (e1 >>> 12) + in.readBits((e1 >>> 8) & 0xF);
+			s2 = (e2 >>> 12) + in.readBits((e2 >>> 8) & 0xF);
+			s3 = (e3 >>> 12) + in.readBits((e3 >>> 8) & 0xF);
+		}
+		int[] states = {s0, s1, s2};
+		for (int k = 0; i < last; i++, k++) {
+			int entry = table[states[k]];
+			dst[i] = (byte) entry;
+			states[k] = (entry >>> 12) + in.readBits((entry >>> 8) & 0xF);
+		}
+
+		if (in.overrun() || in.getBitsRead() != (long) (end - position) * 8) {
+			throw new IllegalArgumentException("Bits don't match the amount of symbols.");
+		}
+		if ((states[0] | states[1] | states[2] | s3) != 0) {
+			throw new IllegalArgumentException("Corrupt bits, the final states are wrong.");
+		}
+	}
+
+	/* Fills decodeTable: the symbol of every state and how to get the previous state */
+	private void buildDecodeTable(int tableLog) {
+		int size = 1 << tableLog;
+		spreadSymbols(tableLog);
+		System.arraycopy(this.normalized, 0, this.next, 0, SYMBOLS);
+		for (int u = 0; u < size; u++) {
+			int symbol = this.spread[u] & 0xFF;
+			int n = this.next[symbol]++;
+			int nbBits = tableLog - (31 - Integer.numberOfLeadingZeros(n));
+			this.decodeTable[u] = ((n << nbBits) - size) << 12 | nbBits << 8 | symbol;
+		}
+	}
+
+	/* Bits needed to write values up to max */
+	private static int bitsFor(int max) {
+		return 32 - Integer.numberOfLeadingZeros(max);
+	}
+
+	private static int ceilLog2(int value) {
+		return value <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(value - 1);
+	}
+}
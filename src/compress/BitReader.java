@@ -0,0 +1,122 @@
+package compress;
+
+/**
+ * Reads values bit by bit from a byte array, most significant bit first, the same
+ * order BitWriter uses. The next bits are kept left aligned in a 64 bit buffer,
+ * so peeking at up to 32 bits is a single shift. Reading past the end of the range
+ * returns zeros; callers that know how many symbols to read never need them, and
+ * overrun() tells whether a corrupt input made us go past the end.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class BitReader {
+
+	private byte[] data;
+	private int start;    // first position of the range
+	private int position; // next byte to be moved into the buffer
+	private int end;      // position after the last byte of the range
+	private long buffer;  // the highest count bits are the next bits to be read
+	private int count;
+
+	/**
+	 * Constructor for a reader that has to be reset before use, so it can be
+	 * created once and reused for many blocks.
+	 */
+	public BitReader() {
+		reset(new byte[0], 0, 0);
+	}
+
+	public BitReader(byte[] data, int offset, int length) {
+		reset(data, offset, length);
+	}
+
+	/**
+	 * Starts reading data[offset, offset + length).
+	 */
+	public void reset(byte[] data, int offset, int length) {
+		this.data = data;
+		this.start = offset;
+		this.position = offset;
+		this.end = offset + length;
+		this.buffer = 0;
+		this.count = 0;
+	}
+
+	/* Moves bytes into the buffer until it holds at least 57 bits */
+	private void refill() {
+		if (this.position + 8 <= this.end) { // far from the end, no need to check every byte
+			while (this.count <= 56) {
+				this.buffer |= (long) (this.data[this.position++] & 0xFF) << (56 - this.count);
+				this.count += 8;
+			}
+			return;
+		}
+		while (this.count <= 56) {
+			long next = this.position < this.end ? this.data[this.position] & 0xFF : 0;
+			this.buffer |= next << (56 - this.count);
+			this.position++;
+			this.count += 8;
+		}
+	}
+
+	/**
+	 * Returns the next length bits without consuming them.
+	 *
+	 * @param length amount of bits, between 1 and 32
+	 * @return next length bits as an unsigned value
+	 */
+	public int peekBits(int length) {
+		if (this.count < length) {
+			refill();
+		}
+		return (int) (this.buffer >>> (64 - length));
+	}
+
+	/**
+	 * Consumes length bits, must have been peeked first.
+	 *
+	 * @param length amount of bits, at most the amount returned by the last peek
+	 */
+	public void skipBits(int length) {
+		this.buffer <<= length;
+		this.count -= length;
+	}
+
+	/**
+	 * Reads the next length bits.
+	 *
+	 * @param length amount of bits, between 0 and 32
+	 * @return bits read as an unsigned value
+	 */
+	public int readBits(int length) {
+		if (this.count < length) {
+			refill();
+		}
+		// shifting by 1 and then by 63 - length instead of 64 - length gives 0 for a length of 0 without a branch
+		int value = (int) (this.buffer >>> 1 >>> (63 - length));
+		skipBits(length);
+		return value;
+	}
+
+	/**
+	 * Skips the bits left in the current byte, so the next read starts at a byte boundary.
+	 */
+	public void alignToByte() {
+		skipBits(this.count & 7);
+	}
+
+	/**
+	 * @return amount of bits read since the last reset
+	 */
+	public long getBitsRead() {
+		return (long) (this.position - this.start) * 8 - this.count;
+	}
+
+	/**
+	 * @return true if more bits were read than the range contains
+	 */
+	public boolean overrun() {
+		return getBitsRead() > (long) (this.end - this.start) * 8;
+	}
+}
@@ -0,0 +1,89 @@
+package compress;
+
+import list.ByteArrayList;
+
+/**
+ * Writes values bit by bit into a ByteArrayList, most significant bit first.
+ * Bits are gathered in a 64 bit buffer and moved to the list 32 bits at a time,
+ * writing directly into the list's backing array.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class BitWriter {
+
+	private ByteArrayList out; // list receiving the bytes
+	private long buffer;       // pending bits, the lowest count bits are valid
+	private int count;         // amount of pending bits, always less than 32 between calls
+	private long bitsWritten;
+
+	/**
+	 * Constructor that sets the list where the bytes will be appended.
+	 *
+	 * @param out list receiving the bytes
+	 */
+	public BitWriter(ByteArrayList out) {
+		reset(out);
+	}
+
+	/**
+	 * Discards any pending bits and starts appending to out, so a writer can be
+	 * reused for many blocks without allocating.
+	 *
+	 * @param out list receiving the bytes
+	 */
+	public void reset(ByteArrayList out) {
+		this.out = out;
+		this.buffer = 0;
+		this.count = 0;
+		this.bitsWritten = 0;
+	}
+
+	/**
+	 * Writes the lowest length bits of value.
+	 *
+	 * @param value bits to be written, the highest bits are ignored
+	 * @param length amount of bits to write, between 0 and 32
+	 */
+	public void writeBits(int value, int length) {
+		this.buffer = (this.buffer << length) | (value & ((1L << length) - 1));
+		this.count += length;
+		this.bitsWritten += length;
+
+		if (this.count >= 32) { // move the oldest 32 bits to the list
+			int size = this.out.size();
+			this.out.ensureCapacity(size + 4);
+			byte[] bytes = this.out.elements();
+			this.count -= 32;
+			int word = (int) (this.buffer >>> this.count);
+			bytes[size] = (byte) (word >>> 24);
+			bytes[size + 1] = (byte) (word >>> 16);
+			bytes[size + 2] = (byte) (word >>> 8);
+			bytes[size + 3] = (byte) word;
+			this.out.setSize(size + 4);
+		}
+	}
+
+	/**
+	 * Writes the pending bits, padding the last byte with zeros.
+	 */
+	public void flush() {
+		while (this.count >= 8) {
+			this.count -= 8;
+			this.out.add((byte) (this.buffer >>> this.count));
+		}
+		if (this.count > 0) {
+			this.out.add((byte) (this.buffer << (8 - this.count)));
+			this.bitsWritten += 8 - this.count;
+			this.count = 0;
+		}
+		this.buffer = 0;
+	}
+
+	/**
+	 * @return amount of bits written since the last reset, including padding
+	 */
+	public long getBitsWritten() {
+		return this.bitsWritten;
+	}
+}
@@ -0,0 +1,33 @@
+package compress;
+
+import list.ByteArrayList;
+
+/**
+ * A block travelling through the compression pipeline: the uncompressed bytes
+ * and the framed payload they compress to. Blocks are allocated once per pipeline
+ * and reused, so their buffers only grow.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class Block {
+
+	int type;               // block type, one of the HuffmanCompressor.BLOCK_ constants
+	long sequence;          // position of the block in the stream, starting at 0
+	byte[] raw;             // uncompressed bytes, only the first rawLength are valid
+	int rawLength;
+	ByteArrayList payload;  // compressed bytes of the block, without the framing
+	boolean framed;         // true when payload already holds the framing of one or more blocks, every encoder sets it
+
+	Block(int capacity) {
+		this.raw = new byte[capacity];
+		this.payload = new ByteArrayList(Math.max(1, capacity / 2));
+	}
+
+	/* Makes raw large enough for length bytes, the contents are not kept */
+	void ensureRawCapacity(int length) {
+		if (this.raw.length < length) {
+			this.raw = new byte[length];
+		}
+	}
+}
@@ -0,0 +1,433 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.ByteArrayList;
+
+/**
+ * Encodes and decodes blocks of bytes with a canonical huffman code. The symbols
+ * of a block are dealt round robin into several interleaved bit streams: symbol i
+ * goes to stream i % streams, and every stream has its own bit writer/reader.
+ *
+ * A single huffman bit stream has to be decoded serially, since the position of
+ * every code depends on the length of the previous one. With several streams the
+ * decoder advances all of them in the same loop, so the processor has several
+ * independent chains of work in flight instead of one. All the streams of a block
+ * use the same code table, so they read from the same decoding table.
+ *
+ * Block payload:
+ * <pre>
+ *   flags      1 byte, FLAG_TABLE if the block carries its code table,
+ *              otherwise it reuses the table of the previous block
+ *   table      only with FLAG_TABLE, code lengths written by TableSerializer,
+ *              possibly as a diff against the previous table
+ *   streams    1 byte
+ *   lengths    byte length of every stream except the last one, as VarInts
+ *   streams    the bit streams, each padded to a whole byte
+ * </pre>
+ * The amount of symbols is not stored, it comes from the container.
+ *
+ * Bytes without a code are written as the ESCAPE code followed by the 8 bits of
+ * the byte, this lets a block use a table built from an estimate of the frequencies.
+ *
+ * BlockCodec is the huffman EntropyCoder, and the one used whenever blocks share
+ * a table.
+ *
+ * A BlockCodec keeps the previous block's table and reusable buffers, so it isn't
+ * thread safe, every thread needs its own instance.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class BlockCodec implements EntropyCoder {
+
+	public static final int ESCAPE = 256;       // symbol written before a byte that has no code
+	public static final int ALPHABET = 257;     // the 256 byte values plus ESCAPE
+	public static final int DEFAULT_STREAMS = 4;
+	public static final int MAX_STREAMS = 255;
+
+	public static final int FLAG_TABLE = 1;
+
+	static final int MAX_TABLE_BYTES = (TableSerializer.maxBits(ALPHABET) + 7) / 8; // longest table a payload can carry
+
+	private final int streams;
+
+	private CanonicalCode previousCode; // table of the last block encoded or decoded
+
+	// encoding buffers, reused between blocks
+	private final long[] counts = new long[ALPHABET];
+	private final int[] c0 = new int[Histogram.BYTE_ALPHABET];
+	private final int[] c1 = new int[Histogram.BYTE_ALPHABET];
+	private final int[] c2 = new int[Histogram.BYTE_ALPHABET];
+	private final int[] c3 = new int[Histogram.BYTE_ALPHABET];
+	private final ByteArrayList[] streamBuffers;
+	private final BitWriter[] writers;
+	private final int[] byteCodes = new int[Histogram.BYTE_ALPHABET];   // code of every byte, escape included
+	private final int[] byteLengths = new int[Histogram.BYTE_ALPHABET]; // total bits of every byte
+	private CanonicalCode encodeCode; // code byteCodes was built for
+	private final long[] estimatedCounts = new long[ALPHABET];
+	private CanonicalCode estimatedCode; // code built by the last estimateBits, for estimatedCounts
+	private final BitWriter tableWriter = new BitWriter(null);
+
+	// decoding buffers, reused between blocks
+	private final int[] decodeTable = new int[1 << CanonicalCode.MAX_CODE_LENGTH];
+	private BitReader[] readers;
+	private CanonicalCode decodeCode; // code decodeTable was built for
+
+	/**
+	 * Constructor that sets the amount of interleaved streams used when encoding.
+	 * Decoding reads the amount of streams from every block.
+	 *
+	 * @param streams amount of interleaved streams, between 1 and 255
+	 */
+	public BlockCodec(int streams) {
+		if (streams < 1 || streams > MAX_STREAMS) {
+			throw new IllegalArgumentException("Streams must be between 1 and " + MAX_STREAMS + ".");
+		}
+		this.streams = streams;
+		this.streamBuffers = new ByteArrayList[streams];
+		this.writers = new BitWriter[streams];
+		for (int s = 0; s < streams; s++) {
+			this.streamBuffers[s] = new ByteArrayList(1024);
+			this.writers[s] = new BitWriter(this.streamBuffers[s]);
+		}
+		this.readers = new BitReader[0];
+	}
+
+	/**
+	 * Constructor that uses DEFAULT_STREAMS interleaved streams.
+	 */
+	public BlockCodec() {
+		this(DEFAULT_STREAMS);
+	}
+
+	@Override
+	public int getBlockType() {
+		return HuffmanCompressor.BLOCK_HUFFMAN;
+	}
+
+	@Override
+	public String getName() {
+		return "huffman";
+	}
+
+	/**
+	 * A step per symbol, plus filling the decoding table when the block carries a new one.
+	 */
+	@Override
+	public long estimateDecodeCost(int length) {
+		if (this.estimatedCode.equals(this.previousCode)) {
+			return length;
+		}
+		return length + (1L << this.estimatedCode.getMaxLength()) / 16; // the table is filled in runs
+	}
+
+	/**
+	 * Forgets the previous table, used when starting a new compressed stream.
+	 */
+	@Override
+	public void reset() {
+		this.previousCode = null;
+	}
+
+	/**
+	 * @return table of the last block encoded or decoded, null if there is none
+	 */
+	public CanonicalCode getPreviousCode() {
+		return this.previousCode;
+	}
+
+	/**
+	 * Makes the next block encoded or decoded able to reuse code without carrying it,
+	 * used when the table was stored somewhere else.
+	 */
+	public void setPreviousCode(CanonicalCode code) {
+		this.previousCode = code;
+	}
+
+	/**
+	 * Counts the frequency of every byte in src[offset, offset + length).
+	 *
+	 * @return array of ALPHABET frequencies (ESCAPE is always 0), owned by the codec
+	 *         and overwritten by the next call
+	 */
+	public long[] histogram(byte[] src, int offset, int length) {
+		Arrays.fill(this.counts, 0);
+		Histogram.countBytes(src, offset, length, this.counts, this.c0, this.c1, this.c2, this.c3);
+		return this.counts;
+	}
+
+	/**
+	 * Encodes src[offset, offset + length) with a table built from its own frequencies
+	 * and appends the payload to out.
+	 */
+	public void encode(byte[] src, int offset, int length, ByteArrayList out) {
+		encode(src, offset, length, histogram(src, offset, length), out);
+	}
+
+	/**
+	 * Encodes src[offset, offset + length) with a table built from counts. The table
+	 * built by the last estimateBits is reused when it was built for the same counts.
+	 */
+	@Override
+	public void encode(byte[] src, int offset, int length, long[] counts, ByteArrayList out) {
+		CanonicalCode code = this.estimatedCode;
+		if (code == null || !Arrays.equals(counts, this.estimatedCounts)) {
+			code = CanonicalCode.fromFrequencies(counts);
+		}
+		encode(src, offset, length, code, out);
+	}
+
+	/**
+	 * Counts the table (unless it's the previous one), the flags, the stream lengths
+	 * and the padding of every stream.
+	 */
+	@Override
+	public long estimateBits(byte[] src, int offset, int length, long[] counts) {
+		CanonicalCode code = CanonicalCode.fromFrequencies(counts);
+		System.arraycopy(counts, 0, this.estimatedCounts, 0, ALPHABET);
+		this.estimatedCode = code;
+
+		long bits = code.cost(counts) + 16 + (this.streams - 1) * 8L * VarInt.size(length / this.streams) + this.streams * 4L;
+		return code.equals(this.previousCode) ? bits : bits + tableBits(code, this.previousCode);
+	}
+
+	/**
+	 * Encodes src[offset, offset + length) with the given table and appends the payload
+	 * to out. The table is only written if it differs from the previous block's table.
+	 *
+	 * @throws IllegalArgumentException if a byte has no code and the table has no ESCAPE code
+	 */
+	public void encode(byte[] src, int offset, int length, CanonicalCode code, ByteArrayList out) {
+		if (code.getAlphabetSize() != ALPHABET) {
+			throw new IllegalArgumentException("Table must have " + ALPHABET + " symbols.");
+		}
+
+		boolean writeTable = !code.equals(this.previousCode);
+		out.add((byte) (writeTable ? FLAG_TABLE : 0));
+		if (writeTable) {
+			writeTable(code, out);
+			this.previousCode = code;
+		}
+
+		prepareEncoding(code);
+		for (int s = 0; s < this.streams; s++) {
+			this.streamBuffers[s].clear();
+			this.writers[s].reset(this.streamBuffers[s]);
+		}
+
+		int end = offset + length;
+		int i = offset;
+		if (this.streams == 4) { // the common case, with the writers in local variables
+			BitWriter w0 = this.writers[0], w1 = this.writers[1], w2 = this.writers[2], w3 = this.writers[3];
+			for (; i + 4 <= end; i += 4) {
+				writeSymbol(w0, src[i]);
+				writeSymbol(w1, src[i + 1]);
+				writeSymbol(w2, src[i + 2]);
+				writeSymbol(w3, src[i + 3]);
+			}
+		}
+		for (int s = (i - offset) % this.streams; i < end; i++) {
+			writeSymbol(this.writers[s], src[i]);
+			if (++s == this.streams) {
+				s = 0;
+			}
+		}
+
+		out.add((byte) this.streams);
+		for (int s = 0; s < this.streams; s++) {
+			this.writers[s].flush();
+			if (s < this.streams - 1) {
+				VarInt.write(out, this.streamBuffers[s].size());
+			}
+		}
+		for (int s = 0; s < this.streams; s++) {
+			out.addAll(this.streamBuffers[s].elements(), 0, this.streamBuffers[s].size());
+		}
+	}
+
+	private void writeSymbol(BitWriter writer, byte symbol) {
+		int length = this.byteLengths[symbol & 0xFF];
+		if (length == 0) {
+			throw new IllegalArgumentException("Byte " + (symbol & 0xFF) + " has no code.");
+		}
+		writer.writeBits(this.byteCodes[symbol & 0xFF], length);
+	}
+
+	/* Fills the code and length of every byte, bytes without a code get ESCAPE + the byte */
+	private void prepareEncoding(CanonicalCode code) {
+		if (code == this.encodeCode) {
+			return;
+		}
+		int escapeLength = code.getLength(ESCAPE);
+		for (int b = 0; b < Histogram.BYTE_ALPHABET; b++) {
+			if (code.getLength(b) > 0) {
+				this.byteCodes[b] = code.getCode(b);
+				this.byteLengths[b] = code.getLength(b);
+			} else if (escapeLength > 0) {
+				this.byteCodes[b] = (code.getCode(ESCAPE) << 8) | b;
+				this.byteLengths[b] = escapeLength + 8;
+			} else {
+				this.byteLengths[b] = 0;
+			}
+		}
+		this.encodeCode = code;
+	}
+
+	/**
+	 * @param code table to be written
+	 * @param previous table of the previous block, null if none
+	 * @return amount of bits the table takes in a block payload, rounded up to a whole byte
+	 */
+	public static long tableBits(CanonicalCode code, CanonicalCode previous) {
+		return (TableSerializer.bits(code, previous) + 7) / 8 * 8;
+	}
+
+	/**
+	 * Reads only the table of a block payload, without decoding its symbols.
+	 *
+	 * @param previous table of the previous block, tables can be stored as a diff against it
+	 * @return table carried by the block, null if it reuses the previous table
+	 * @throws IllegalArgumentException if the table is corrupt
+	 */
+	public static CanonicalCode peekTable(byte[] src, int offset, int length, CanonicalCode previous) {
+		if (length < 1 || (src[offset] & FLAG_TABLE) == 0) {
+			return null;
+		}
+		BlockCodec codec = new BlockCodec(1);
+		codec.previousCode = previous;
+		codec.readTable(src, offset + 1, offset + length);
+		return codec.previousCode;
+	}
+
+	/* Writes the table with TableSerializer, as a diff against the previous table when that's smaller */
+	private void writeTable(CanonicalCode code, ByteArrayList out) {
+		this.tableWriter.reset(out);
+		TableSerializer.write(this.tableWriter, code, this.previousCode);
+		this.tableWriter.flush();
+	}
+
+	/* Reads a table written by writeTable, returns the position after it */
+	private int readTable(byte[] src, int position, int end) {
+		BitReader reader = new BitReader(src, position, end - position);
+		CanonicalCode code = TableSerializer.read(reader, ALPHABET, this.previousCode);
+		if (reader.overrun()) {
+			throw new IllegalArgumentException("Truncated code table.");
+		}
+		this.previousCode = code;
+		return position + (int) ((reader.getBitsRead() + 7) / 8);
+	}
+
+	/**
+	 * Decodes a block payload written by encode.
+	 *
+	 * @param src array containing the payload
+	 * @param offset position of the payload's first byte
+	 * @param length length of the payload
+	 * @param dst array receiving the decoded bytes
+	 * @param dstOffset position of the first decoded byte
+	 * @param symbols amount of bytes the block decodes to
+	 * @throws IllegalArgumentException if the payload is corrupt
+	 */
+	@Override
+	public void decode(byte[] src, int offset, int length, byte[] dst, int dstOffset, int symbols) {
+		int end = offset + length;
+		if (length < 2) {
+			throw new IllegalArgumentException("Truncated block.");
+		}
+
+		int position = offset;
+		int flags = src[position++];
+		if ((flags & FLAG_TABLE) != 0) {
+			position = readTable(src, position, end);
+		} else if (this.previousCode == null) {
+			throw new IllegalArgumentException("Block reuses a table but there is no previous table.");
+		}
+		CanonicalCode code = this.previousCode;
+
+		if (position >= end) {
+			throw new IllegalArgumentException("Truncated block.");
+		}
+		int streamCount = src[position++] & 0xFF;
+		if (streamCount == 0) {
+			throw new IllegalArgumentException("Block has no streams.");
+		}
+		if (this.readers.length < streamCount) {
+			BitReader[] larger = new BitReader[streamCount];
+			for (int s = 0; s < streamCount; s++) {
+				larger[s] = s < this.readers.length ? this.readers[s] : new BitReader();
+			}
+			this.readers = larger;
+		}
+
+		// the stream lengths come first, then the streams one after the other
+		int streamStart = position;
+		for (int s = 0; s < streamCount - 1; s++) {
+			streamStart += VarInt.size(VarInt.read(src, streamStart, end));
+		}
+		for (int s = 0; s < streamCount; s++) {
+			int streamLength;
+			if (s < streamCount - 1) {
+				streamLength = (int) VarInt.read(src, position, end);
+				position += VarInt.size(streamLength);
+			} else {
+				streamLength = end - streamStart;
+			}
+			if (streamLength < 0 || streamStart + streamLength > end) {
+				throw new IllegalArgumentException("Stream goes past the end of the block.");
+			}
+			this.readers[s].reset(src, streamStart, streamLength);
+			streamStart += streamLength;
+		}
+
+		if (code != this.decodeCode) {
+			code.fillDecodeTable(this.decodeTable);
+			this.decodeCode = code;
+		}
+		decodeSymbols(dst, dstOffset, symbols, streamCount, code.getMaxLength());
+
+		for (int s = 0; s < streamCount; s++) {
+			if (this.readers[s].overrun()) {
+				throw new IllegalArgumentException("Stream " + s + " ended before its last symbol.");
+			}
+		}
+	}
+
+	private void decodeSymbols(byte[] dst, int dstOffset, int symbols, int streamCount, int maxLength) {
+		if (symbols > 0 && maxLength == 0) {
+			throw new IllegalArgumentException("Block has symbols but an empty table.");
+		}
+
+		int end = dstOffset + symbols;
+		int i = dstOffset;
+		if (streamCount == 4) {
+			// the four readers are independent, so their decodes can overlap
+			BitReader r0 = this.readers[0], r1 = this.readers[1], r2 = this.readers[2], r3 = this.readers[3];
+			for (; i + 4 <= end; i += 4) {
+				dst[i] = readSymbol(r0, maxLength);
+				dst[i + 1] = readSymbol(r1, maxLength);
+				dst[i + 2] = readSymbol(r2, maxLength);
+				dst[i + 3] = readSymbol(r3, maxLength);
+			}
+		}
+		for (int s = (i - dstOffset) % streamCount; i < end; i++) {
+			dst[i] = readSymbol(this.readers[s], maxLength);
+			if (++s == streamCount) {
+				s = 0;
+			}
+		}
+	}
+
+	private byte readSymbol(BitReader reader, int maxLength) {
+		int entry = this.decodeTable[reader.peekBits(maxLength)];
+		if (entry < 0) {
+			throw new IllegalArgumentException("Invalid code in block.");
+		}
+		reader.skipBits(entry & 0xF);
+		int symbol = entry >>> 4;
+		if (symbol == ESCAPE) {
+			return (byte) reader.readBits(8);
+		}
+		return (byte) symbol;
+	}
+}
@@ -0,0 +1,199 @@
+package compress;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Remembers the last blocks of a stream so a block with the same bytes as one of
+ * them is written as a reference instead of being coded again, which saves both
+ * the coding time and the space of repeated blocks (boilerplate, copied files).
+ *
+ * The blocks are kept in a ring of at most maxEntries copies holding at most
+ * window bytes, the oldest are forgotten first. Every block is numbered in the
+ * order it was remembered and a reference is the distance back to the block it
+ * repeats, 1 for the last one. The encoder finds candidates by the xxHash64 of the
+ * block's bytes, with hash chains like LzMatcher's: head holds the last block with
+ * every hash bucket and prev links every block to the previous one in its bucket.
+ * A candidate is only taken when its bytes are the same, so hash collisions can't
+ * corrupt the output.
+ *
+ * Blocks are the ones the decoder sees, so the parts of a split block are looked up
+ * and remembered one by one; the splits only depend on the bytes, so a repeated
+ * block is split the same way and its parts are references.
+ *
+ * The decoder remembers the same blocks in the same order with the same limits,
+ * which are written in a BLOCK_DEDUP block before the first reference, so it
+ * forgets the same blocks and the distances point to the same bytes.
+ *
+ * A BlockDeduplicator isn't thread safe, it belongs to the coding stage of a stream.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class BlockDeduplicator {
+
+	static final int MIN_LENGTH = 64; // smaller blocks aren't worth a reference
+	static final int DEFAULT_MAX_ENTRIES = 1 << 12;
+
+	private static final int HASH_BITS = 12;
+
+	private final long window;
+	private final int maxEntries;
+	private final byte[][] blocks; // copies of the remembered blocks, indexed by number % maxEntries
+	private final int[] lengths;
+	private final long[] hashes;
+	private final int[] head = new int[1 << HASH_BITS];
+	private final int[] prev;
+	private int next;   // number of the next block remembered
+	private int oldest; // number of the oldest block still remembered
+	private long bytes; // bytes of the remembered blocks
+	private long hash;  // hash of the last block looked up
+
+	/**
+	 * @param window most bytes remembered
+	 * @param maxEntries most blocks remembered
+	 */
+	BlockDeduplicator(long window, int maxEntries) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must be at least 1 byte.");
+		}
+		if (maxEntries < 1 || maxEntries > 1 << 20) {
+			throw new IllegalArgumentException("Entries must be between 1 and " + (1 << 20) + ".");
+		}
+		this.window = window;
+		this.maxEntries = maxEntries;
+		this.blocks = new byte[maxEntries][];
+		this.lengths = new int[maxEntries];
+		this.hashes = new long[maxEntries];
+		this.prev = new int[maxEntries];
+		Arrays.fill(this.head, -1);
+	}
+
+	/**
+	 * Turns the block into a BLOCK_REFERENCE if an earlier block has the same bytes.
+	 *
+	 * @return false if the block has to be coded, it should be remembered afterwards
+	 */
+	boolean reference(Block block) {
+		if (block.rawLength < MIN_LENGTH) {
+			return false;
+		}
+		this.hash = XxHash64.hash(block.raw, 0, block.rawLength);
+		for (int number = this.head[bucket(this.hash)]; number >= this.oldest; number = this.prev[number % this.maxEntries]) {
+			int slot = number % this.maxEntries;
+			if (this.hashes[slot] == this.hash && sameBytes(this.blocks[slot], this.lengths[slot], block.raw, block.rawLength)) {
+				block.payload.clear();
+				VarInt.write(block.payload, this.next - number);
+				block.type = HuffmanCompressor.BLOCK_REFERENCE;
+				block.framed = false;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the raw bytes of a block that was coded, forgetting the oldest blocks to
+	 * make room. The encoder indexes it by the hash reference computed, the decoder
+	 * never looks blocks up.
+	 */
+	void remember(Block block) {
+		int length = block.rawLength;
+		if (length < MIN_LENGTH || length > this.window) {
+			return;
+		}
+		while (this.next - this.oldest == this.maxEntries || this.bytes + length > this.window) {
+			int slot = this.oldest++ % this.maxEntries;
+			this.bytes -= this.lengths[slot];
+			this.blocks[slot] = null; // only window bytes are kept
+		}
+		int slot = this.next % this.maxEntries;
+		this.blocks[slot] = Arrays.copyOf(block.raw, length);
+		this.lengths[slot] = length;
+		this.hashes[slot] = this.hash;
+		int bucket = bucket(this.hash);
+		this.prev[slot] = this.head[bucket];
+		this.head[bucket] = this.next++;
+		this.bytes += length;
+	}
+
+	/**
+	 * Fills the raw bytes of a BLOCK_REFERENCE block with the block it refers to.
+	 *
+	 * @throws IOException if the reference points to a block that isn't remembered
+	 */
+	void resolve(Block block) throws IOException {
+		long distance;
+		try {
+			distance = VarInt.read(block.payload.elements(), 0, block.payload.size());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Block " + block.sequence + " is corrupt: " + e.getMessage(), e);
+		}
+		if (distance < 1 || distance > this.next - this.oldest) {
+			throw new IOException("Block " + block.sequence + " refers to a block that isn't remembered.");
+		}
+		int slot = (int) ((this.next - distance) % this.maxEntries);
+		if (this.lengths[slot] != block.rawLength) {
+			throw new IOException("Block " + block.sequence + " has the wrong length for the block it refers to.");
+		}
+		block.ensureRawCapacity(block.rawLength);
+		System.arraycopy(this.blocks[slot], 0, block.raw, 0, block.rawLength);
+	}
+
+	/**
+	 * Writes the BLOCK_DEDUP block that gives the decoder the limits: the window and
+	 * the entries as VarInts, with no raw bytes.
+	 */
+	void writeLimits(Block block) {
+		block.payload.clear();
+		VarInt.write(block.payload, this.window);
+		VarInt.write(block.payload, this.maxEntries);
+		block.type = HuffmanCompressor.BLOCK_DEDUP;
+		block.rawLength = 0;
+		block.framed = false;
+	}
+
+	/**
+	 * @return deduplicator with the limits of a BLOCK_DEDUP block
+	 * @throws IOException if the limits are corrupt
+	 */
+	static BlockDeduplicator readLimits(Block block) throws IOException {
+		try {
+			byte[] payload = block.payload.elements();
+			long window = VarInt.read(payload, 0, block.payload.size());
+			int start = VarInt.size(window);
+			long maxEntries = VarInt.read(payload, start, block.payload.size());
+			if (block.rawLength != 0 || maxEntries > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Invalid limits.");
+			}
+			return new BlockDeduplicator(window, (int) maxEntries);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Block " + block.sequence + " is corrupt: " + e.getMessage(), e);
+		}
+	}
+
+	private static int bucket(long hash) {
+		return (int) (hash >>> (64 - HASH_BITS));
+	}
+
+	private static boolean sameBytes(byte[] a, int aLength, byte[] b, int bLength) {
+		if (aLength != bLength) {
+			return false;
+		}
+		for (int i = 0; i < aLength; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	long getWindow() {return window;}
+
+	int getMaxEntries() {return maxEntries;}
+
+	/**
+	 * @return amount of blocks remembered
+	 */
+	int getEntries() {return next - oldest;}
+}
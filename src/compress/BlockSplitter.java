@@ -0,0 +1,124 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.IntArrayList;
+
+/**
+ * Splits a block into parts where its statistics shift, so data that changes
+ * character (a log with base64 in the middle) gets a table for every part instead
+ * of one table that fits none of them.
+ *
+ * The block is looked at in granules. Every granule is a candidate split point, and
+ * the cost of starting a new part there is estimated from histograms alone: the
+ * ideal code length of every byte in the current part, log2(total / count), tells
+ * how many bits the granule needs if it joins the part, and its own entropy plus an
+ * estimate of its table tells how many it needs in a new part. The granule starts a
+ * new part when that is smaller. No huffman tree is built, so splitting costs a few
+ * logarithms per granule.
+ *
+ * Whether a part then writes a new table or reuses the previous one is decided with
+ * the real tables, see UpdatableModel.
+ *
+ * A splitter isn't thread safe, every thread needs its own instance.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class BlockSplitter {
+
+	static final int DEFAULT_GRANULE = 1 << 14;
+
+	private static final double TABLE_BITS_PER_SYMBOL = 5; // a table takes about 4 bits per code plus the runs
+	private static final double ESCAPE_BITS = 8;           // extra bits of a byte the part hasn't seen
+
+	private final int granule;
+	private final long[] partCounts = new long[Histogram.BYTE_ALPHABET];
+	private final long[] granuleCounts = new long[Histogram.BYTE_ALPHABET];
+	private final int[] c0 = new int[Histogram.BYTE_ALPHABET];
+	private final int[] c1 = new int[Histogram.BYTE_ALPHABET];
+	private final int[] c2 = new int[Histogram.BYTE_ALPHABET];
+	private final int[] c3 = new int[Histogram.BYTE_ALPHABET];
+	private final double[] partLengths = new double[Histogram.BYTE_ALPHABET]; // ideal code lengths of the current part
+
+	/**
+	 * @param granule amount of bytes between candidate split points
+	 */
+	BlockSplitter(int granule) {
+		if (granule < 1) {
+			throw new IllegalArgumentException("Granule must be at least 1 byte.");
+		}
+		this.granule = granule;
+	}
+
+	BlockSplitter() {
+		this(DEFAULT_GRANULE);
+	}
+
+	/**
+	 * Replaces the contents of ends with the end of every part of src[offset, offset + length),
+	 * relative to offset. The last end is length, there is at least one part unless length is 0.
+	 */
+	void split(byte[] src, int offset, int length, IntArrayList ends) {
+		ends.clear();
+		Arrays.fill(this.partCounts, 0);
+		long partTotal = 0;
+		for (int start = 0; start < length; start += this.granule) {
+			int size = Math.min(this.granule, length - start);
+			Arrays.fill(this.granuleCounts, 0);
+			Histogram.countBytes(src, offset + start, size, this.granuleCounts, this.c0, this.c1, this.c2, this.c3);
+			if (partTotal > 0 && joinBits() > splitBits(size)) {
+				ends.add(start);
+				Arrays.fill(this.partCounts, 0);
+				partTotal = 0;
+			}
+			for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+				this.partCounts[s] += this.granuleCounts[s];
+			}
+			partTotal += size;
+			updateLengths(partTotal);
+		}
+		if (length > 0) {
+			ends.add(length);
+		}
+	}
+
+	/* Estimated bits of the granule coded with the current part's lengths */
+	private double joinBits() {
+		double bits = 0;
+		for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+			if (this.granuleCounts[s] > 0) {
+				bits += this.granuleCounts[s] * this.partLengths[s];
+			}
+		}
+		return bits;
+	}
+
+	/* Estimated bits of the granule coded with its own table, the table included */
+	private double splitBits(int size) {
+		double bits = 0;
+		int used = 0;
+		for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+			long count = this.granuleCounts[s];
+			if (count > 0) {
+				bits += count * log2((double) size / count);
+				used++;
+			}
+		}
+		return bits + TABLE_BITS_PER_SYMBOL * used;
+	}
+
+	/* Ideal code length of every byte in the current part, bytes it hasn't seen get a longer escaped code */
+	private void updateLengths(long partTotal) {
+		for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+			long count = this.partCounts[s];
+			this.partLengths[s] = count > 0 ? log2((double) partTotal / count) : log2(partTotal) + ESCAPE_BITS;
+		}
+	}
+
+	private static double log2(double value) {
+		return Math.log(value) / Math.log(2);
+	}
+
+	int getGranule() {return granule;}
+}
@@ -0,0 +1,45 @@
+package compress;
+
+import list.ByteArrayList;
+
+/**
+ * Reversible transform applied to a block before it's entropy coded. A transform
+ * doesn't make the block smaller by itself (some make it a little larger), it
+ * rearranges the bytes so an order-0 coder finds skewed frequencies where the
+ * original block had its redundancy in the order of the bytes. See TransformPipeline
+ * for the stages and the order they are applied in.
+ *
+ * Implementations keep reusable buffers, so they aren't thread safe.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public interface BlockTransform {
+
+	/**
+	 * @return bit of the stage in the transforms byte of a block, one of the
+	 *         TransformPipeline stage constants
+	 */
+	int getStage();
+
+	/**
+	 * @return short name of the stage, as accepted by TransformPipeline.parse
+	 */
+	String getName();
+
+	/**
+	 * Transforms src[offset, offset + length) and appends the result to out.
+	 */
+	void forward(byte[] src, int offset, int length, ByteArrayList out);
+
+	/**
+	 * Undoes forward: transforms src[offset, offset + length) back and appends the
+	 * result to out. Corrupt bytes could ask for far more output than the block has,
+	 * so the inverse stops as soon as it would append more than limit bytes.
+	 *
+	 * @param limit most bytes the result can have, the length of the bytes forward was given
+	 * @throws IllegalArgumentException if src can't have been written by forward, or
+	 *         its result would be longer than limit
+	 */
+	void inverse(byte[] src, int offset, int length, int limit, ByteArrayList out);
+}
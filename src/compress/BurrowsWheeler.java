@@ -0,0 +1,244 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.ByteArrayList;
+
+/**
+ * Burrows-Wheeler transform: sorts all the rotations of the block and keeps the
+ * last byte of every rotation. Bytes that are followed by the same context end up
+ * next to each other, so a block of text becomes long runs of a few bytes, which
+ * move-to-front turns into zeros.
+ *
+ * The rotations are sorted with a suffix array of the block, built with SA-IS in
+ * linear time, as if the block ended with a sentinel smaller than every byte. The
+ * sentinel isn't written, its row (the primary index) is written instead:
+ * <pre>
+ *   primary   VarInt, row of the sentinel in the last column, between 1 and length
+ *   bytes     the last column without the sentinel, length bytes
+ * </pre>
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class BurrowsWheeler implements BlockTransform {
+
+	@Override
+	public int getStage() {
+		return TransformPipeline.BWT;
+	}
+
+	@Override
+	public String getName() {
+		return "bwt";
+	}
+
+	@Override
+	public void forward(byte[] src, int offset, int length, ByteArrayList out) {
+		if (length == 0) {
+			return;
+		}
+		int[] text = new int[length];
+		for (int i = 0; i < length; i++) {
+			text[i] = src[offset + i] & 0xFF;
+		}
+		int[] suffixes = suffixArray(text, Histogram.BYTE_ALPHABET - 1);
+
+		// row 0 is the rotation that starts with the sentinel, row i + 1 the suffix suffixes[i]
+		int primary = 0;
+		for (int i = 0; i < length; i++) {
+			if (suffixes[i] == 0) {
+				primary = i + 1;
+				break;
+			}
+		}
+		VarInt.write(out, primary);
+		int size = out.size();
+		out.setSize(size + length);
+		byte[] dst = out.elements();
+		dst[size++] = src[offset + length - 1];
+		for (int i = 0; i < length; i++) {
+			if (suffixes[i] != 0) {
+				dst[size++] = src[offset + suffixes[i] - 1];
+			}
+		}
+	}
+
+	@Override
+	public void inverse(byte[] src, int offset, int length, int limit, ByteArrayList out) {
+		if (length == 0) {
+			return;
+		}
+		int end = offset + length;
+		long primary = VarInt.read(src, offset, end);
+		int position = offset + VarInt.size(primary);
+		int n = end - position;
+		if (primary < 1 || primary > n) {
+			throw new IllegalArgumentException("Invalid primary index " + primary + ".");
+		}
+		if (n > limit) {
+			throw new IllegalArgumentException("Transform decodes to more than " + limit + " bytes.");
+		}
+
+		// first row of every byte in the first column, the sentinel takes row 0
+		int[] first = new int[Histogram.BYTE_ALPHABET];
+		for (int i = position; i < end; i++) {
+			first[src[i] & 0xFF]++;
+		}
+		for (int b = 0, row = 1; b < first.length; b++) {
+			int count = first[b];
+			first[b] = row;
+			row += count;
+		}
+		// lastToFirst[row] is the row of the rotation that starts with the last byte of row
+		int[] lastToFirst = new int[n + 1];
+		for (int row = 0; row <= n; row++) {
+			if (row != primary) {
+				lastToFirst[row] = first[src[position + (row < primary ? row : row - 1)] & 0xFF]++;
+			}
+		}
+
+		int size = out.size();
+		out.setSize(size + n);
+		byte[] dst = out.elements();
+		int row = 0;
+		for (int i = n - 1; i >= 0; i--) {
+			dst[size + i] = src[position + (row < primary ? row : row - 1)];
+			row = lastToFirst[row];
+			if (row == primary && i > 0) {
+				throw new IllegalArgumentException("Corrupt transform, the sentinel was reached early.");
+			}
+		}
+		if (row != primary) {
+			throw new IllegalArgumentException("Corrupt transform, the sentinel wasn't reached.");
+		}
+	}
+
+	/**
+	 * Builds the suffix array of text with SA-IS (Nong, Zhang and Chan): suffixes are
+	 * classified as S or L, the leftmost S suffixes (LMS) are sorted by recursing on a
+	 * shorter text made of the names of their substrings, and their order is induced
+	 * to the rest of the suffixes.
+	 *
+	 * @param text values between 0 and upper
+	 * @return start of every suffix, in sorted order, a suffix that is a prefix of
+	 *         another one comes first
+	 */
+	static int[] suffixArray(int[] text, int upper) {
+		int n = text.length;
+		if (n == 0) {
+			return new int[0];
+		}
+		if (n == 1) {
+			return new int[] {0};
+		}
+		if (n == 2) {
+			return text[0] < text[1] ? new int[] {0, 1} : new int[] {1, 0};
+		}
+
+		int[] sa = new int[n];
+		boolean[] sType = new boolean[n];
+		for (int i = n - 2; i >= 0; i--) {
+			sType[i] = text[i] == text[i + 1] ? sType[i + 1] : text[i] < text[i + 1];
+		}
+		// start of the L and S parts of every value's bucket
+		int[] sumL = new int[upper + 2];
+		int[] sumS = new int[upper + 2];
+		for (int i = 0; i < n; i++) {
+			if (!sType[i]) {
+				sumS[text[i]]++;
+			} else {
+				sumL[text[i] + 1]++;
+			}
+		}
+		for (int i = 0; i <= upper; i++) {
+			sumS[i] += sumL[i];
+			sumL[i + 1] += sumS[i];
+		}
+
+		int[] lmsMap = new int[n + 1];
+		Arrays.fill(lmsMap, -1);
+		int m = 0;
+		for (int i = 1; i < n; i++) {
+			if (!sType[i - 1] && sType[i]) {
+				lmsMap[i] = m++;
+			}
+		}
+		int[] lms = new int[m];
+		for (int i = 1, j = 0; i < n; i++) {
+			if (!sType[i - 1] && sType[i]) {
+				lms[j++] = i;
+			}
+		}
+		induce(text, sa, sType, lms, sumS, sumL);
+
+		if (m > 0) {
+			int[] sortedLms = new int[m];
+			int j = 0;
+			for (int v: sa) {
+				if (lmsMap[v] != -1) {
+					sortedLms[j++] = v;
+				}
+			}
+			// names the LMS substrings, equal substrings get the same name
+			int[] reduced = new int[m];
+			int names = 0;
+			reduced[lmsMap[sortedLms[0]]] = 0;
+			for (int i = 1; i < m; i++) {
+				int left = sortedLms[i - 1], right = sortedLms[i];
+				int endLeft = lmsMap[left] + 1 < m ? lms[lmsMap[left] + 1] : n;
+				int endRight = lmsMap[right] + 1 < m ? lms[lmsMap[right] + 1] : n;
+				boolean same = true;
+				if (endLeft - left != endRight - right) {
+					same = false;
+				} else {
+					while (left < endLeft && text[left] == text[right]) {
+						left++;
+						right++;
+					}
+					if (left == n || text[left] != text[right]) {
+						same = false;
+					}
+				}
+				if (!same) {
+					names++;
+				}
+				reduced[lmsMap[sortedLms[i]]] = names;
+			}
+
+			int[] reducedSa = suffixArray(reduced, names);
+			for (int i = 0; i < m; i++) {
+				sortedLms[i] = lms[reducedSa[i]];
+			}
+			induce(text, sa, sType, sortedLms, sumS, sumL);
+		}
+		return sa;
+	}
+
+	/* Places the LMS suffixes in the S part of their buckets and induces the L and then the S suffixes */
+	private static void induce(int[] text, int[] sa, boolean[] sType, int[] lms, int[] sumS, int[] sumL) {
+		int n = text.length;
+		Arrays.fill(sa, -1);
+		int[] bucket = sumS.clone();
+		for (int d: lms) {
+			if (d != n) {
+				sa[bucket[text[d]]++] = d;
+			}
+		}
+		bucket = sumL.clone();
+		sa[bucket[text[n - 1]]++] = n - 1;
+		for (int i = 0; i < n; i++) {
+			int v = sa[i];
+			if (v >= 1 && !sType[v - 1]) {
+				sa[bucket[text[v - 1]]++] = v - 1;
+			}
+		}
+		bucket = sumL.clone();
+		for (int i = n - 1; i >= 0; i--) {
+			int v = sa[i];
+			if (v >= 1 && sType[v - 1]) {
+				sa[--bucket[text[v - 1] + 1]] = v - 1;
+			}
+		}
+	}
+}
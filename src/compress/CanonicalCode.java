@@ -0,0 +1,323 @@
+package compress;
+
+import java.util.Arrays;
+
+import main.HuffmanCoding;
+import main.HuffmanCoding.BTNode;
+import map.HashTableSC;
+import map.Map;
+
+/**
+ * Canonical huffman code over an alphabet of integer symbols. A canonical code is
+ * completely described by the code length of every symbol: codes are assigned in
+ * order of length and, for equal lengths, in order of symbol. That means only the
+ * lengths have to be stored with the compressed data, and the decoder can build a
+ * lookup table that decodes a symbol with a single array access.
+ *
+ * The lengths are computed with the same huffman tree HuffmanCoding builds for
+ * strings, every symbol is used as a character, and are then limited to a
+ * maximum length so the decoder's table stays small.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class CanonicalCode {
+
+	public static final int MAX_CODE_LENGTH = 15; // longest code we create, also the limit used by deflate
+
+	private final int[] lengths; // code length of every symbol, 0 if the symbol has no code
+	private final int[] codes;   // code of every symbol, the lowest lengths[s] bits are valid
+	private final int maxLength; // longest length in use
+
+	/**
+	 * Constructor that assigns the canonical codes for the given lengths.
+	 *
+	 * @param lengths code length of every symbol, 0 for symbols without a code
+	 * @throws IllegalArgumentException if a length is invalid or the lengths can't form a prefix code
+	 */
+	public CanonicalCode(int[] lengths) {
+		this.lengths = lengths.clone();
+		this.codes = new int[lengths.length];
+
+		int[] lengthCount = new int[MAX_CODE_LENGTH + 1];
+		int max = 0;
+		for (int length: this.lengths) {
+			if (length < 0 || length > MAX_CODE_LENGTH) {
+				throw new IllegalArgumentException("Invalid code length " + length + ".");
+			}
+			lengthCount[length]++;
+			max = Math.max(max, length);
+		}
+		this.maxLength = max;
+
+		// kraft's inequality: the codes fit in a binary tree only if sum(2^-length) <= 1
+		long kraft = 0;
+		for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+			kraft += (long) lengthCount[length] << (MAX_CODE_LENGTH - length);
+		}
+		if (kraft > 1L << MAX_CODE_LENGTH) {
+			throw new IllegalArgumentException("Code lengths don't form a prefix code.");
+		}
+
+		// first code of every length, the same procedure as RFC 1951 section 3.2.2
+		int[] nextCode = new int[MAX_CODE_LENGTH + 2];
+		int code = 0;
+		lengthCount[0] = 0;
+		for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+			code = (code + lengthCount[length - 1]) << 1;
+			nextCode[length] = code;
+		}
+		for (int s = 0; s < this.lengths.length; s++) {
+			if (this.lengths[s] > 0) {
+				this.codes[s] = nextCode[this.lengths[s]]++;
+			}
+		}
+	}
+
+	/**
+	 * Creates the canonical code for the given frequencies, with lengths limited to maxLength.
+	 *
+	 * @param frequencies frequency of every symbol
+	 * @param maxLength longest code length allowed
+	 * @return canonical code where only symbols with frequency > 0 have a code
+	 */
+	public static CanonicalCode fromFrequencies(long[] frequencies, int maxLength) {
+		return new CanonicalCode(codeLengths(frequencies, maxLength));
+	}
+
+	public static CanonicalCode fromFrequencies(long[] frequencies) {
+		return fromFrequencies(frequencies, MAX_CODE_LENGTH);
+	}
+
+	/**
+	 * Creates the canonical code with the lengths of a table returned by
+	 * HuffmanCoding.huffman_code, where every character is a symbol. The codes
+	 * themselves are reassigned canonically, so only the lengths are kept.
+	 *
+	 * @param table code of every character
+	 * @param alphabetSize amount of symbols, every character in table must be below it
+	 * @return canonical code with the same lengths as table
+	 * @throws IllegalArgumentException if a character is outside the alphabet or a code is too long
+	 */
+	public static CanonicalCode fromCodeTable(Map<Character, String> table, int alphabetSize) {
+		int[] lengths = new int[alphabetSize];
+		table.forEach((symbol, code) -> {
+			if (symbol >= alphabetSize) {
+				throw new IllegalArgumentException("Symbol " + (int) symbol + " is outside the alphabet.");
+			}
+			// a table with a single character gives it an empty code
+			lengths[symbol] = Math.max(1, code.length());
+		});
+		return new CanonicalCode(lengths);
+	}
+
+	/**
+	 * Computes the huffman code length of every symbol by building a huffman tree
+	 * with HuffmanCoding.huffman_tree and measuring the depth of every leaf.
+	 *
+	 * @param frequencies frequency of every symbol
+	 * @param maxLength longest code length allowed
+	 * @return code length of every symbol, 0 for symbols with frequency 0
+	 */
+	public static int[] codeLengths(long[] frequencies, int maxLength) {
+		if (maxLength < 1 || maxLength > MAX_CODE_LENGTH) {
+			throw new IllegalArgumentException("Max length must be between 1 and " + MAX_CODE_LENGTH + ".");
+		}
+		int[] lengths = new int[frequencies.length];
+
+		long total = 0;
+		int used = 0;
+		for (long frequency: frequencies) {
+			if (frequency < 0) {
+				throw new IllegalArgumentException("Frequencies cannot be negative.");
+			}
+			if (frequency > 0) {
+				total += frequency;
+				used++;
+			}
+		}
+		if (used == 0) {
+			return lengths;
+		}
+		if (used == 1) { // a tree with one node has depth 0, but every symbol needs at least one bit
+			for (int s = 0; s < frequencies.length; s++) {
+				if (frequencies[s] > 0) {
+					lengths[s] = 1;
+				}
+			}
+			return lengths;
+		}
+		if ((long) used > 1L << maxLength) {
+			throw new IllegalArgumentException("Too many symbols for codes of length " + maxLength + ".");
+		}
+
+		// the tree adds frequencies as Integer, so the total has to fit in an int
+		int shift = 0;
+		while ((total >> shift) + used > 1 << 30) {
+			shift++;
+		}
+
+		Map<Character, Integer> fd = new HashTableSC<Character, Integer>(2 * used);
+		for (int s = 0; s < frequencies.length; s++) {
+			if (frequencies[s] > 0) {
+				fd.put((char) s, (int) Math.max(1, frequencies[s] >> shift));
+			}
+		}
+
+		BTNode<Integer, String> root = new HuffmanCoding().huffman_tree(fd);
+		assignDepths(root, 0, lengths);
+
+		limitLengths(lengths, frequencies, maxLength);
+		return lengths;
+	}
+
+	/* Stores the depth of every leaf of the huffman tree as the length of its symbol */
+	private static void assignDepths(BTNode<Integer, String> node, int depth, int[] lengths) {
+		if (node.isLeaf()) {
+			lengths[node.getSymbol().charAt(0)] = depth;
+		} else {
+			assignDepths(node.getLeft(), depth + 1, lengths);
+			assignDepths(node.getRight(), depth + 1, lengths);
+		}
+	}
+
+	/**
+	 * Makes every length at most maxLength while keeping a valid prefix code. Lengths
+	 * over the limit are cut to maxLength, which makes the code oversubscribed
+	 * (kraft sum over 1), then we lengthen the deepest codes still under the limit,
+	 * the least frequent first, until the code fits again. Any space left over is
+	 * given back to the most frequent symbols.
+	 */
+	static void limitLengths(int[] lengths, long[] frequencies, int maxLength) {
+		int longest = 0;
+		for (int length: lengths) {
+			longest = Math.max(longest, length);
+		}
+		if (longest <= maxLength) {
+			return;
+		}
+
+		long capacity = 1L << maxLength;
+		long kraft = 0;
+		for (int s = 0; s < lengths.length; s++) {
+			if (lengths[s] > maxLength) {
+				lengths[s] = maxLength;
+			}
+			if (lengths[s] > 0) {
+				kraft += 1L << (maxLength - lengths[s]);
+			}
+		}
+
+		while (kraft > capacity) {
+			int best = -1;
+			for (int s = 0; s < lengths.length; s++) {
+				if (lengths[s] > 0 && lengths[s] < maxLength && (best < 0 || lengths[s] > lengths[best]
+						|| (lengths[s] == lengths[best] && frequencies[s] < frequencies[best]))) {
+					best = s;
+				}
+			}
+			kraft -= 1L << (maxLength - lengths[best] - 1);
+			lengths[best]++;
+		}
+
+		// shorten codes, most frequent symbols first, while there is room left in the tree
+		Integer[] order = new Integer[lengths.length];
+		for (int s = 0; s < order.length; s++) {
+			order[s] = s;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(frequencies[b], frequencies[a]));
+		for (int s: order) {
+			while (lengths[s] > 1 && kraft + (1L << (maxLength - lengths[s])) <= capacity) {
+				kraft += 1L << (maxLength - lengths[s]);
+				lengths[s]--;
+			}
+		}
+	}
+
+	/**
+	 * Builds the decoding table: for every possible value of the next getMaxLength()
+	 * bits, the entry holds (symbol << 4) | codeLength of the code those bits start
+	 * with, or -1 if no code starts with them.
+	 *
+	 * @param table array of at least 2^getMaxLength() entries, can be reused between blocks
+	 * @return table
+	 */
+	public int[] fillDecodeTable(int[] table) {
+		int size = 1 << this.maxLength;
+		Arrays.fill(table, 0, size, -1);
+		for (int s = 0; s < this.lengths.length; s++) {
+			int length = this.lengths[s];
+			if (length > 0) {
+				int first = this.codes[s] << (this.maxLength - length);
+				Arrays.fill(table, first, first + (1 << (this.maxLength - length)), (s << 4) | length);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Computes the amount of bits needed to encode symbols with the given frequencies.
+	 *
+	 * @param frequencies frequency of every symbol
+	 * @return sum of frequency * code length, or -1 if a symbol with frequency > 0 has no code
+	 */
+	public long cost(long[] frequencies) {
+		long bits = 0;
+		for (int s = 0; s < frequencies.length; s++) {
+			if (frequencies[s] > 0) {
+				if (s >= this.lengths.length || this.lengths[s] == 0) {
+					return -1;
+				}
+				bits += frequencies[s] * this.lengths[s];
+			}
+		}
+		return bits;
+	}
+
+	public int getLength(int symbol) {return lengths[symbol];}
+
+	public int getCode(int symbol) {return codes[symbol];}
+
+	public int getMaxLength() {return maxLength;}
+
+	public int getAlphabetSize() {return lengths.length;}
+
+	/**
+	 * @return copy of the code length of every symbol
+	 */
+	public int[] getLengths() {
+		return lengths.clone();
+	}
+
+	/**
+	 * Two canonical codes are equal when they have the same lengths, since the lengths
+	 * determine the codes.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof CanonicalCode && Arrays.equals(this.lengths, ((CanonicalCode) obj).lengths);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.lengths);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("[");
+		for (int s = 0; s < this.lengths.length; s++) {
+			if (this.lengths[s] > 0) {
+				result.append(s).append(':');
+				for (int bit = this.lengths[s] - 1; bit >= 0; bit--) {
+					result.append((this.codes[s] >>> bit) & 1);
+				}
+				result.append(", ");
+			}
+		}
+		if (result.length() > 1) {
+			result.setLength(result.length() - 2);
+		}
+		return result.append(']').toString();
+	}
+}
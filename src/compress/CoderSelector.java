@@ -0,0 +1,155 @@
+package compress;
+
+import list.ByteArrayList;
+
+/**
+ * The entropy coders and transforms a thread uses, and the choice of coder for
+ * every block. Every block is coded with the coder whose estimate for the block is
+ * the smallest. When speed is preferred, the coder whose estimated decode cost for
+ * the block is the lowest is used instead, but only when that cost is at most
+ * SPEED_GAIN percent of the smallest coder's, otherwise the saving isn't worth the
+ * bigger output: the huffman and tANS decoders take about as long per symbol, the
+ * LZ decoder is faster on blocks with long matches.
+ * A block is still stored when the chosen coder doesn't make it smaller. The LZ
+ * and order-1 coders are only tried when they are enabled, and only created when
+ * they're needed since their tables are large.
+ *
+ * Like the coders it holds, a CoderSelector isn't thread safe.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class CoderSelector {
+
+	static final int SPEED_GAIN = 75; // highest decode cost, in percent of the smallest coder's, worth its size
+
+	private final BlockCodec huffman;
+	private final EntropyCoder[] coders;
+	private boolean preferSpeed;
+	private int level; // LZ level, 0 when LZ isn't tried
+	private LzCodec lz;
+	private boolean contextModel; // true when the order-1 coder is tried
+	private ContextCodec context;
+	private long chosenBits; // estimate of the last coder chosen
+	private TransformPipeline transforms = new TransformPipeline(0);
+	private final ByteArrayList transformed = new ByteArrayList(1024); // decoded bytes before undoing the transforms
+	private BlockDeduplicator deduplicator; // blocks remembered by the decoder, null before a BLOCK_DEDUP block
+
+	/**
+	 * @param huffman codec for huffman blocks, the other coders are created here
+	 */
+	CoderSelector(BlockCodec huffman) {
+		this.huffman = huffman;
+		this.coders = new EntropyCoder[] {huffman, new AnsCodec()};
+	}
+
+	/**
+	 * @param counts frequencies of the bytes of src[offset, offset + length)
+	 * @return coder with the smallest estimate for the block, or the fastest coder
+	 *         when speed is preferred and it's clearly faster, its estimate is kept in
+	 *         getChosenBits()
+	 */
+	EntropyCoder choose(byte[] src, int offset, int length, long[] counts) {
+		EntropyCoder best = null, fastest = null;
+		long bestBits = Long.MAX_VALUE, bestCost = 0, fastestBits = 0, fastestCost = Long.MAX_VALUE;
+		for (int c = 0; c < this.coders.length + 2; c++) {
+			EntropyCoder coder = candidate(c);
+			if (coder == null) {
+				continue;
+			}
+			long bits = coder.estimateBits(src, offset, length, counts);
+			long cost = this.preferSpeed ? coder.estimateDecodeCost(length) : 0;
+			if (bits < bestBits) {
+				best = coder;
+				bestBits = bits;
+				bestCost = cost;
+			}
+			if (cost < fastestCost || cost == fastestCost && bits < fastestBits) {
+				fastest = coder;
+				fastestBits = bits;
+				fastestCost = cost;
+			}
+		}
+		if (this.preferSpeed && fastestCost * 100 <= bestCost * SPEED_GAIN) {
+			best = fastest;
+			bestBits = fastestBits;
+		}
+		this.chosenBits = bestBits;
+		return best;
+	}
+
+	/* The fixed coders, then the optional ones when enabled, null past the end or for a disabled coder */
+	private EntropyCoder candidate(int c) {
+		if (c < this.coders.length) {
+			return this.coders[c];
+		}
+		if (c == this.coders.length) {
+			return this.level > 0 ? this.lz : null;
+		}
+		return this.contextModel ? forType(HuffmanCompressor.BLOCK_CONTEXT) : null;
+	}
+
+	/**
+	 * @return coder that writes blocks of the given type, null if there is none
+	 */
+	EntropyCoder forType(int blockType) {
+		for (EntropyCoder coder: this.coders) {
+			if (coder.getBlockType() == blockType) {
+				return coder;
+			}
+		}
+		if (blockType == HuffmanCompressor.BLOCK_LZ) {
+			if (this.lz == null) {
+				this.lz = new LzCodec();
+			}
+			return this.lz;
+		}
+		if (blockType == HuffmanCompressor.BLOCK_CONTEXT) {
+			if (this.context == null) {
+				this.context = new ContextCodec();
+			}
+			return this.context;
+		}
+		return null;
+	}
+
+	BlockCodec getHuffman() {return huffman;}
+
+	long getChosenBits() {return chosenBits;}
+
+	ByteArrayList getTransformed() {return transformed;}
+
+	TransformPipeline getTransforms() {return transforms;}
+
+	BlockDeduplicator getDeduplicator() {return deduplicator;}
+
+	void setDeduplicator(BlockDeduplicator deduplicator) {this.deduplicator = deduplicator;}
+
+	/**
+	 * @param transforms stages tried on every block, decoding undoes any stages no matter this setting
+	 */
+	void setTransforms(TransformPipeline transforms) {this.transforms = transforms;}
+
+	int getLevel() {return level;}
+
+	/**
+	 * @param level LZ match search effort between 1 and 9, 0 to leave LZ out of the choice
+	 */
+	void setLevel(int level) {
+		if (level != 0 && (this.lz == null || this.lz.getLevel() != level)) {
+			this.lz = new LzCodec(level);
+		}
+		this.level = level;
+	}
+
+	boolean isContextModel() {return contextModel;}
+
+	/**
+	 * @param contextModel true to also try the order-1 context coder on every block
+	 */
+	void setContextModel(boolean contextModel) {this.contextModel = contextModel;}
+
+	boolean isPreferSpeed() {return preferSpeed;}
+
+	void setPreferSpeed(boolean preferSpeed) {this.preferSpeed = preferSpeed;}
+}
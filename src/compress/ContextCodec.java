@@ -0,0 +1,253 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.ByteArrayList;
+
+/**
+ * Order-1 context huffman coder: every byte is coded with a code chosen by the byte
+ * before it, so text, where a character says a lot about the next one, takes fewer
+ * bits than with a single code. The frequencies are counted per pair of bytes into
+ * a dense array indexed by (previous &lt;&lt; 8) | byte, and the codes are kept in dense
+ * arrays indexed the same way, so switching tables costs an array access.
+ *
+ * A context only gets its own code when it's seen at least MIN_CONTEXT times and
+ * its own code, table included, is smaller than coding its bytes with the order-0
+ * code. The other contexts share a fallback code built from their bytes.
+ *
+ * Block payload, as one bit stream:
+ * <pre>
+ *   fallback   code lengths of the fallback code, written by TableSerializer
+ *   contexts   256 bits, 1 for every context with its own code
+ *   tables     code lengths of every context with its own code, in order, written
+ *              by TableSerializer as a diff against the fallback when that's smaller
+ *   codes      the code of every byte, the context of the first byte is 0
+ * </pre>
+ * Codes are limited to MAX_CODE_LENGTH bits so the decoding tables stay small.
+ *
+ * Like the other coders the size is estimated before encoding, which here needs
+ * the pair frequencies, so estimateBits counts them and encode reuses them for the
+ * same block. A ContextCodec isn't thread safe, every thread needs its own instance.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class ContextCodec implements EntropyCoder {
+
+	public static final int CONTEXTS = 256;
+	public static final int MIN_CONTEXT = 64;
+	public static final int MAX_CODE_LENGTH = 11;
+
+	private static final int[] EMPTY_TABLE = {-1, -1};
+
+	private final long[] pairCounts = new long[CONTEXTS * 256];
+	private final long[] contextCounts = new long[256]; // scratch, the counts of one context
+	private final long[] fallbackCounts = new long[256];
+	private final CanonicalCode[] codes = new CanonicalCode[CONTEXTS]; // own code of every context, null for the fallback
+	private CanonicalCode fallback;
+	private long estimatedBits;
+
+	// codes and lengths of every (context, byte) pair
+	private final int[] pairCodes = new int[CONTEXTS * 256];
+	private final int[] pairLengths = new int[CONTEXTS * 256];
+	private final BitWriter writer = new BitWriter(null);
+
+	// block counted by the last estimateBits
+	private byte[] countedSrc;
+	private int countedOffset;
+	private int countedLength = -1;
+	private final long[] countedCounts = new long[BlockCodec.ALPHABET];
+
+	// decoding, every context points to its own table or to the fallback's
+	private final int[][] contextTables = new int[CONTEXTS][];
+	private final int[] widths = new int[CONTEXTS];
+	private final int[][] ownTables = new int[CONTEXTS][];
+	private final int[] fallbackTable = new int[1 << MAX_CODE_LENGTH];
+	private final boolean[] own = new boolean[CONTEXTS];
+	private final BitReader reader = new BitReader();
+
+	@Override
+	public int getBlockType() {
+		return HuffmanCompressor.BLOCK_CONTEXT;
+	}
+
+	@Override
+	public String getName() {
+		return "order1";
+	}
+
+	/**
+	 * Every lookup waits for the previous byte to pick its table, and the tables of
+	 * the contexts don't all stay in cache, so a symbol takes about two steps. The
+	 * fallback table and the table of every context with its own code are filled.
+	 */
+	@Override
+	public long estimateDecodeCost(int length) {
+		long tables = 1L << this.fallback.getMaxLength();
+		for (CanonicalCode code: this.codes) {
+			if (code != null) {
+				tables += 1L << code.getMaxLength();
+			}
+		}
+		return 2L * length + tables / 16;
+	}
+
+	/**
+	 * Every block has its own tables, nothing is kept between blocks.
+	 */
+	@Override
+	public void reset() {
+		this.countedLength = -1;
+	}
+
+	/**
+	 * Counts the pairs of the block, decides which contexts get their own code and
+	 * counts the bits of every table and every code.
+	 */
+	@Override
+	public long estimateBits(byte[] src, int offset, int length, long[] counts) {
+		model(src, offset, length, counts);
+		return this.estimatedBits;
+	}
+
+	/* Counts the pairs of the block and builds the codes */
+	private void model(byte[] src, int offset, int length, long[] counts) {
+		long[] pairs = this.pairCounts;
+		Arrays.fill(pairs, 0);
+		int previous = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			int symbol = src[i] & 0xFF;
+			pairs[previous << 8 | symbol]++;
+			previous = symbol;
+		}
+
+		// contexts keep their own code only when it beats the order-0 code
+		CanonicalCode order0 = CanonicalCode.fromFrequencies(Arrays.copyOf(counts, 256), MAX_CODE_LENGTH);
+		long[] context = this.contextCounts, fallbackCounts = this.fallbackCounts;
+		Arrays.fill(fallbackCounts, 0);
+		long bits = CONTEXTS;
+		for (int c = 0; c < CONTEXTS; c++) {
+			System.arraycopy(pairs, c << 8, context, 0, 256);
+			long total = 0;
+			for (long count: context) {
+				total += count;
+			}
+			this.codes[c] = null;
+			if (total >= MIN_CONTEXT) {
+				CanonicalCode own = CanonicalCode.fromFrequencies(context, MAX_CODE_LENGTH);
+				long ownBits = TableSerializer.bits(own, order0) + own.cost(context);
+				if (ownBits < order0.cost(context)) {
+					this.codes[c] = own;
+					bits += own.cost(context);
+					continue;
+				}
+			}
+			for (int s = 0; s < 256; s++) {
+				fallbackCounts[s] += context[s];
+			}
+		}
+		this.fallback = CanonicalCode.fromFrequencies(fallbackCounts, MAX_CODE_LENGTH);
+		bits += TableSerializer.bits(this.fallback, null) + this.fallback.cost(fallbackCounts);
+		for (int c = 0; c < CONTEXTS; c++) { // the tables are written against the final fallback
+			if (this.codes[c] != null) {
+				bits += TableSerializer.bits(this.codes[c], this.fallback);
+			}
+		}
+		this.estimatedBits = bits;
+
+		this.countedSrc = src;
+		this.countedOffset = offset;
+		this.countedLength = length;
+		System.arraycopy(counts, 0, this.countedCounts, 0, BlockCodec.ALPHABET);
+	}
+
+	@Override
+	public void encode(byte[] src, int offset, int length, long[] counts, ByteArrayList out) {
+		if (src != this.countedSrc || offset != this.countedOffset || length != this.countedLength
+				|| !Arrays.equals(counts, this.countedCounts)) {
+			model(src, offset, length, counts);
+		}
+		this.countedLength = -1; // the block array is reused, the next block has to be counted again
+
+		BitWriter writer = this.writer;
+		writer.reset(out);
+		TableSerializer.write(writer, this.fallback, null);
+		for (int c = 0; c < CONTEXTS; c++) {
+			writer.writeBits(this.codes[c] != null ? 1 : 0, 1);
+		}
+		for (int c = 0; c < CONTEXTS; c++) {
+			CanonicalCode code = this.codes[c] != null ? this.codes[c] : this.fallback;
+			if (code != this.fallback) {
+				TableSerializer.write(writer, code, this.fallback);
+			}
+			for (int s = 0; s < 256; s++) {
+				this.pairCodes[c << 8 | s] = code.getCode(s);
+				this.pairLengths[c << 8 | s] = code.getLength(s);
+			}
+		}
+
+		int[] pairCodes = this.pairCodes, pairLengths = this.pairLengths;
+		int previous = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			int pair = previous << 8 | (src[i] & 0xFF);
+			writer.writeBits(pairCodes[pair], pairLengths[pair]);
+			previous = src[i] & 0xFF;
+		}
+		writer.flush();
+	}
+
+	@Override
+	public void decode(byte[] src, int offset, int length, byte[] dst, int dstOffset, int symbols) {
+		BitReader in = this.reader;
+		in.reset(src, offset, length);
+		CanonicalCode fallback = TableSerializer.read(in, 256, null);
+		checkLength(fallback);
+		fallback.fillDecodeTable(this.fallbackTable);
+		boolean[] own = this.own;
+		for (int c = 0; c < CONTEXTS; c++) {
+			own[c] = in.readBits(1) == 1;
+		}
+		for (int c = 0; c < CONTEXTS; c++) {
+			CanonicalCode code = fallback;
+			int[] table = this.fallbackTable;
+			if (own[c]) {
+				code = TableSerializer.read(in, 256, fallback);
+				checkLength(code);
+				if (this.ownTables[c] == null) {
+					this.ownTables[c] = new int[1 << MAX_CODE_LENGTH];
+				}
+				table = code.fillDecodeTable(this.ownTables[c]);
+			}
+			if (code.getMaxLength() == 0) { // no valid block codes a byte in this context
+				table = EMPTY_TABLE;
+			}
+			this.contextTables[c] = table;
+			this.widths[c] = Math.max(1, code.getMaxLength());
+		}
+		if (in.overrun()) {
+			throw new IllegalArgumentException("Truncated code tables.");
+		}
+
+		int[][] tables = this.contextTables;
+		int[] widths = this.widths;
+		int previous = 0;
+		for (int i = dstOffset, end = dstOffset + symbols; i < end; i++) {
+			int entry = tables[previous][in.peekBits(widths[previous])];
+			if (entry < 0) {
+				throw new IllegalArgumentException("Invalid code in context " + previous + ".");
+			}
+			in.skipBits(entry & 0xF);
+			previous = entry >>> 4;
+			dst[i] = (byte) previous;
+		}
+		if (in.overrun()) {
+			throw new IllegalArgumentException("Block ended before its last byte.");
+		}
+	}
+
+	private static void checkLength(CanonicalCode code) {
+		if (code.getMaxLength() > MAX_CODE_LENGTH) {
+			throw new IllegalArgumentException("Code longer than " + MAX_CODE_LENGTH + " bits.");
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.ByteArrayList;
+import list.IntArrayList;
+
+/**
+ * Writes a raw deflate stream (RFC 1951) made of dynamic huffman blocks, so the
+ * output can be read by any inflater. The codes are canonical codes built with
+ * CanonicalCode, limited to 15 bits as deflate requires, and the code length
+ * tables are run length coded with a third code limited to 7 bits.
+ *
+ * At level 0 every block is made only of literals (like Deflater's HUFFMAN_ONLY
+ * strategy). Levels 1 to 9 find matches with LzMatcher over deflate's 32K window,
+ * the length and distance codes are the ones LzCodec uses, which are deflate's.
+ * Matches don't reach across calls to write.
+ *
+ * A block that would be larger than the raw bytes is written as stored blocks.
+ * Deflate writes bits least significant first but huffman codes most significant
+ * first, so the codes are bit reversed once per block.
+ *
+ * An encoder isn't thread safe, every thread needs its own instance.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class DeflateEncoder {
+
+	static final int END_OF_BLOCK = 256;
+	static final int LITERAL_ALPHABET = 286;
+	static final int DISTANCE_ALPHABET = 30;
+	static final int WINDOW_BITS = 15;
+
+	private static final int BLOCK_BYTES = 1 << 16;   // bytes per block at level 0
+	private static final int BLOCK_TOKENS = 1 << 14;  // tokens per block with matches
+	private static final int MAX_STORED = 65535;
+	private static final int LENGTH_CODES = 19;
+	private static final int MAX_LENGTH_CODE_LENGTH = 7;
+	// order in which the code length code lengths are written
+	private static final int[] LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+	private final int level;
+	private final LzMatcher matcher; // null at level 0
+	private final IntArrayList tokens = new IntArrayList(1024);
+
+	private final long[] literalCounts = new long[LITERAL_ALPHABET];
+	private final long[] distanceCounts = new long[DISTANCE_ALPHABET];
+	private final int[] literalCodes = new int[LITERAL_ALPHABET]; // bit reversed
+	private final int[] literalLengths = new int[LITERAL_ALPHABET];
+	private final int[] distanceCodes = new int[DISTANCE_ALPHABET];
+	private final int[] distanceLengths = new int[DISTANCE_ALPHABET];
+	private final int[] c0 = new int[256], c1 = new int[256], c2 = new int[256], c3 = new int[256];
+
+	// code lengths of both codes, run length coded: symbol | extra << 5
+	private final int[] allLengths = new int[LITERAL_ALPHABET + DISTANCE_ALPHABET];
+	private final IntArrayList lengthSymbols = new IntArrayList(LITERAL_ALPHABET + DISTANCE_ALPHABET);
+	private final long[] lengthCounts = new long[LENGTH_CODES];
+
+	// pending bits, the lowest count bits are valid
+	private ByteArrayList out;
+	private long buffer;
+	private int count;
+
+	/**
+	 * @param level 0 for literals only, or match search effort between 1 (fastest) and 9 (smallest)
+	 */
+	DeflateEncoder(int level) {
+		if (level < 0 || level > LzMatcher.MAX_LEVEL) {
+			throw new IllegalArgumentException("Level must be between 0 and " + LzMatcher.MAX_LEVEL + ".");
+		}
+		this.level = level;
+		this.matcher = level == 0 ? null : new LzMatcher(WINDOW_BITS, level);
+	}
+
+	/**
+	 * Appends blocks coding src[offset, offset + length) to out. The last call must
+	 * have last set, so its final block is marked as the end of the stream and the
+	 * last byte is padded.
+	 */
+	void write(byte[] src, int offset, int length, boolean last, ByteArrayList out) {
+		this.out = out;
+		if (length == 0) {
+			if (last) {
+				writeStored(src, offset, 0, true);
+			}
+		} else if (this.matcher == null) {
+			for (int start = 0; start < length; start += BLOCK_BYTES) {
+				int size = Math.min(BLOCK_BYTES, length - start);
+				writeBlock(src, offset + start, size, null, 0, 0, last && start + size == length);
+			}
+		} else {
+			this.matcher.parse(src, offset, length, this.tokens);
+			int[] tokens = this.tokens.elements();
+			int raw = offset;
+			for (int first = 0; first < this.tokens.size(); first += BLOCK_TOKENS) {
+				int end = Math.min(first + BLOCK_TOKENS, this.tokens.size());
+				int size = 0;
+				for (int t = first; t < end; t++) {
+					size += LzMatcher.isMatch(tokens[t]) ? LzMatcher.length(tokens[t]) : 1;
+				}
+				writeBlock(src, raw, size, tokens, first, end, last && end == this.tokens.size());
+				raw += size;
+			}
+		}
+		if (last) {
+			flushBits();
+		}
+	}
+
+	/* Writes one block for the raw bytes src[offset, offset + length), coded as tokens[first, end) if there are tokens */
+	private void writeBlock(byte[] src, int offset, int length, int[] tokens, int first, int end, boolean last) {
+		long[] literalCounts = this.literalCounts, distanceCounts = this.distanceCounts;
+		Arrays.fill(literalCounts, 0);
+		Arrays.fill(distanceCounts, 0);
+		long extraBits = 0;
+		if (tokens == null) {
+			Histogram.countBytes(src, offset, length, literalCounts, this.c0, this.c1, this.c2, this.c3);
+		} else {
+			for (int t = first; t < end; t++) {
+				int token = tokens[t];
+				if (!LzMatcher.isMatch(token)) {
+					literalCounts[token]++;
+					continue;
+				}
+				int lengthCode = LzCodec.lengthCode(LzMatcher.length(token));
+				int distanceCode = LzCodec.distanceCode(LzMatcher.distance(token));
+				literalCounts[END_OF_BLOCK + 1 + lengthCode]++;
+				distanceCounts[distanceCode]++;
+				extraBits += LzCodec.LENGTH_EXTRA[lengthCode] + LzCodec.DISTANCE_EXTRA[distanceCode];
+			}
+		}
+		literalCounts[END_OF_BLOCK] = 1;
+
+		CanonicalCode literals = buildCode(literalCounts, CanonicalCode.MAX_CODE_LENGTH);
+		CanonicalCode distances = buildCode(distanceCounts, CanonicalCode.MAX_CODE_LENGTH);
+		long bits = 3 + writeLengths(literals, distances, false) + literals.cost(literalCounts)
+				+ distances.cost(distanceCounts) + extraBits;
+		long storedBits = 8L * (length + 5L * ((length + MAX_STORED - 1) / MAX_STORED)) + 7;
+		if (bits >= storedBits) {
+			writeStored(src, offset, length, last);
+			return;
+		}
+
+		reverseCodes(literals, this.literalCodes, this.literalLengths);
+		reverseCodes(distances, this.distanceCodes, this.distanceLengths);
+		this.out.ensureCapacity(this.out.size() + (int) (bits >>> 3) + 16);
+		writeBits(last ? 1 : 0, 1);
+		writeBits(2, 2); // dynamic huffman codes
+		writeLengths(literals, distances, true);
+		if (tokens == null) {
+			writeLiterals(src, offset, length);
+		} else {
+			writeTokens(tokens, first, end);
+		}
+		writeBits(this.literalCodes[END_OF_BLOCK], this.literalLengths[END_OF_BLOCK]);
+	}
+
+	/*
+	 * Builds the code for a block. Inflaters expect at least one distance code, and
+	 * zlib gives every code at least two symbols so none is a single 0 length code.
+	 */
+	private static CanonicalCode buildCode(long[] counts, int maxLength) {
+		int used = 0;
+		for (long count: counts) {
+			if (count > 0) {
+				used++;
+			}
+		}
+		for (int s = 0; used < 2; s++) {
+			if (counts[s] == 0) {
+				counts[s] = 1;
+				used++;
+			}
+		}
+		return CanonicalCode.fromFrequencies(counts, maxLength);
+	}
+
+	private static void reverseCodes(CanonicalCode code, int[] codes, int[] lengths) {
+		for (int s = 0; s < codes.length; s++) {
+			int length = code.getLength(s);
+			lengths[s] = length;
+			codes[s] = length == 0 ? 0 : Integer.reverse(code.getCode(s)) >>> (32 - length);
+		}
+	}
+
+	/*
+	 * Run length codes the lengths of both codes with symbols 16 (repeat the previous
+	 * length 3 to 6 times), 17 (3 to 10 zeros) and 18 (11 to 138 zeros), codes them
+	 * with a third code and, if write is set, writes the block header. Returns the bits
+	 * of the header after the block type.
+	 */
+	private long writeLengths(CanonicalCode literals, CanonicalCode distances, boolean write) {
+		int literalCount = LITERAL_ALPHABET, distanceCount = DISTANCE_ALPHABET;
+		while (literalCount > 257 && literals.getLength(literalCount - 1) == 0) {
+			literalCount--;
+		}
+		while (distanceCount > 1 && distances.getLength(distanceCount - 1) == 0) {
+			distanceCount--;
+		}
+		int[] all = this.allLengths;
+		for (int s = 0; s < literalCount; s++) {
+			all[s] = literals.getLength(s);
+		}
+		for (int s = 0; s < distanceCount; s++) {
+			all[literalCount + s] = distances.getLength(s);
+		}
+		int total = literalCount + distanceCount;
+
+		IntArrayList symbols = this.lengthSymbols;
+		long[] counts = this.lengthCounts;
+		symbols.clear();
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < total;) {
+			int length = all[i];
+			int run = 1;
+			while (i + run < total && all[i + run] == length) {
+				run++;
+			}
+			i += run;
+			if (length == 0) {
+				for (; run >= 11; run -= Math.min(run, 138)) {
+					symbols.add(18 | (Math.min(run, 138) - 11) << 5);
+					counts[18]++;
+				}
+				if (run >= 3) {
+					symbols.add(17 | (run - 3) << 5);
+					counts[17]++;
+					run = 0;
+				}
+			} else {
+				symbols.add(length);
+				counts[length]++;
+				run--;
+				for (; run >= 3; run -= Math.min(run, 6)) {
+					symbols.add(16 | (Math.min(run, 6) - 3) << 5);
+					counts[16]++;
+				}
+			}
+			for (; run > 0; run--) {
+				symbols.add(length);
+				counts[length]++;
+			}
+		}
+
+		CanonicalCode code = buildCode(counts, MAX_LENGTH_CODE_LENGTH);
+		int lengthCount = LENGTH_CODES;
+		while (lengthCount > 4 && code.getLength(LENGTH_ORDER[lengthCount - 1]) == 0) {
+			lengthCount--;
+		}
+		long bits = 5 + 5 + 4 + 3 * lengthCount + code.cost(counts)
+				+ 7 * counts[18] + 3 * counts[17] + 2 * counts[16];
+		if (write) {
+			writeBits(literalCount - 257, 5);
+			writeBits(distanceCount - 1, 5);
+			writeBits(lengthCount - 4, 4);
+			for (int i = 0; i < lengthCount; i++) {
+				writeBits(code.getLength(LENGTH_ORDER[i]), 3);
+			}
+			int[] elements = symbols.elements();
+			for (int i = 0; i < symbols.size(); i++) {
+				int symbol = elements[i] & 0x1F;
+				int length = code.getLength(symbol);
+				writeBits(Integer.reverse(code.getCode(symbol)) >>> (32 - length), length);
+				if (symbol >= 16) {
+					writeBits(elements[i] >>> 5, symbol == 16 ? 2 : symbol == 17 ? 3 : 7);
+				}
+			}
+		}
+		return bits;
+	}
+
+	/* Hot loop of level 0, the bit buffer is kept in locals and bytes are written straight into the array */
+	private void writeLiterals(byte[] src, int offset, int length) {
+		int[] codes = this.literalCodes, lengths = this.literalLengths;
+		byte[] bytes = this.out.elements();
+		int position = this.out.size();
+		long buffer = this.buffer;
+		int count = this.count;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			int symbol = src[i] & 0xFF;
+			buffer |= (long) codes[symbol] << count;
+			count += lengths[symbol];
+			if (count >= 32) {
+				bytes[position] = (byte) buffer;
+				bytes[position + 1] = (byte) (buffer >>> 8);
+				bytes[position + 2] = (byte) (buffer >>> 16);
+				bytes[position + 3] = (byte) (buffer >>> 24);
+				position += 4;
+				buffer >>>= 32;
+				count -= 32;
+			}
+		}
+		this.out.setSize(position);
+		this.buffer = buffer;
+		this.count = count;
+	}
+
+	private void writeTokens(int[] tokens, int first, int end) {
+		for (int t = first; t < end; t++) {
+			int token = tokens[t];
+			if (!LzMatcher.isMatch(token)) {
+				writeBits(this.literalCodes[token], this.literalLengths[token]);
+				continue;
+			}
+			int length = LzMatcher.length(token), distance = LzMatcher.distance(token);
+			int lengthCode = LzCodec.lengthCode(length), distanceCode = LzCodec.distanceCode(distance);
+			int symbol = END_OF_BLOCK + 1 + lengthCode;
+			writeBits(this.literalCodes[symbol], this.literalLengths[symbol]);
+			writeBits(length - LzMatcher.MIN_MATCH - LzCodec.LENGTH_BASE[lengthCode], LzCodec.LENGTH_EXTRA[lengthCode]);
+			writeBits(this.distanceCodes[distanceCode], this.distanceLengths[distanceCode]);
+			writeBits(distance - 1 - LzCodec.DISTANCE_BASE[distanceCode], LzCodec.DISTANCE_EXTRA[distanceCode]);
+		}
+	}
+
+	/* Writes src[offset, offset + length) as stored blocks of at most MAX_STORED bytes, at least one */
+	private void writeStored(byte[] src, int offset, int length, boolean last) {
+		int start = 0;
+		do {
+			int size = Math.min(MAX_STORED, length - start);
+			writeBits(last && start + size == length ? 1 : 0, 1);
+			writeBits(0, 2); // stored
+			flushBits();
+			this.out.add((byte) size);
+			this.out.add((byte) (size >>> 8));
+			this.out.add((byte) ~size);
+			this.out.add((byte) (~size >>> 8));
+			this.out.addAll(src, offset + start, size);
+			start += size;
+		} while (start < length);
+	}
+
+	/* Writes the lowest length bits of value, least significant first */
+	private void writeBits(int value, int length) {
+		this.buffer |= (long) value << this.count;
+		this.count += length;
+		if (this.count >= 32) {
+			int size = this.out.size();
+			this.out.ensureCapacity(size + 4);
+			byte[] bytes = this.out.elements();
+			bytes[size] = (byte) this.buffer;
+			bytes[size + 1] = (byte) (this.buffer >>> 8);
+			bytes[size + 2] = (byte) (this.buffer >>> 16);
+			bytes[size + 3] = (byte) (this.buffer >>> 24);
+			this.out.setSize(size + 4);
+			this.buffer >>>= 32;
+			this.count -= 32;
+		}
+	}
+
+	/* Writes the pending bits, padding the last byte with zeros */
+	private void flushBits() {
+		for (; this.count > 0; this.count -= 8) {
+			this.out.add((byte) this.buffer);
+			this.buffer >>>= 8;
+		}
+		this.count = 0;
+		this.buffer = 0;
+	}
+
+	int getLevel() {return level;}
+}
@@ -0,0 +1,390 @@
+package compress;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * Compresses or decompresses every file of a directory tree into a mirror tree, with
+ * compressed files named like the original plus EXTENSION. Files are compressed in
+ * parallel on a ForkJoinPool:
+ * <ul>
+ * <li>Files are submitted largest first, so the biggest jobs start early and the
+ *     small ones fill the gaps at the end instead of a big file being the tail.</li>
+ * <li>Files over the split threshold are cut into segments that are compressed as
+ *     separate forked tasks, which idle workers steal. Every segment starts with its
+ *     own table, so the segments are simply concatenated after one header and the
+ *     result is an ordinary compressed file.</li>
+ * </ul>
+ * Every file is compressed with a HuffmanCompressor that isn't pipelined, since the
+ * pool already keeps every processor busy. The results of the last run, with the
+ * throughput of every file, are kept in getResults().
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class DirectoryCompressor {
+
+	public static final String EXTENSION = ".huf";
+	public static final long DEFAULT_SPLIT_THRESHOLD = 16L << 20;
+	public static final int DEFAULT_SEGMENT_BLOCKS = 8;
+	public static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE - 8; // a segment is read into one array
+
+	private final ForkJoinPool pool;
+	private int blockSize = HuffmanCompressor.DEFAULT_BLOCK_SIZE;
+	private int streams = BlockCodec.DEFAULT_STREAMS;
+	private long splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+	private int segmentBlocks = DEFAULT_SEGMENT_BLOCKS;
+
+	private List<FileResult> results = Collections.emptyList();
+	private long elapsedNanos;
+
+	/**
+	 * @param threads parallelism of the pool
+	 */
+	public DirectoryCompressor(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Threads must be at least 1.");
+		}
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	public DirectoryCompressor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Compresses every regular file under source into the same relative path under
+	 * target, adding EXTENSION to the name.
+	 *
+	 * @return result of every file, in the order they were submitted (largest first)
+	 */
+	public List<FileResult> compress(Path source, Path target) throws IOException {
+		return run(source, target, false);
+	}
+
+	/**
+	 * Decompresses every file ending in EXTENSION under source into the same relative
+	 * path under target, removing the extension. Other files are ignored.
+	 */
+	public List<FileResult> decompress(Path source, Path target) throws IOException {
+		return run(source, target, true);
+	}
+
+	/**
+	 * Shuts down the pool, the compressor can't be used after this.
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+	}
+
+	private List<FileResult> run(Path source, Path target, boolean decompress) throws IOException {
+		if (!Files.isDirectory(source)) {
+			throw new IOException(source + " is not a directory.");
+		}
+		List<FileResult> files = new ArrayList<>();
+		try (Stream<Path> walk = Files.walk(source)) {
+			walk.filter(Files::isRegularFile).forEach(path -> {
+				if (!decompress || path.getFileName().toString().endsWith(EXTENSION)) {
+					files.add(new FileResult(path, outputPath(source, target, path, decompress), size(path)));
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		files.sort((a, b) -> Long.compare(b.inputBytes, a.inputBytes));
+
+		long start = System.nanoTime();
+		List<ForkJoinTask<FileResult>> tasks = new ArrayList<>(files.size());
+		for (FileResult file: files) {
+			// external submissions are taken in order, so the largest files start first
+			tasks.add(this.pool.submit(new FileTask(file, decompress)));
+		}
+		try {
+			for (ForkJoinTask<FileResult> task: tasks) {
+				task.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing " + source, e);
+		} catch (ExecutionException e) {
+			for (ForkJoinTask<FileResult> task: tasks) {
+				task.cancel(false);
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+		this.elapsedNanos = System.nanoTime() - start;
+		this.results = files;
+		return files;
+	}
+
+	private static Path outputPath(Path source, Path target, Path file, boolean decompress) {
+		String relative = source.relativize(file).toString();
+		if (decompress) {
+			relative = relative.substring(0, relative.length() - EXTENSION.length());
+		} else {
+			relative += EXTENSION;
+		}
+		return target.resolve(relative);
+	}
+
+	private static long size(Path path) {
+		try {
+			return Files.size(path);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private HuffmanCompressor newCompressor() {
+		HuffmanCompressor compressor = new HuffmanCompressor();
+		compressor.setBlockSize(this.blockSize);
+		compressor.setStreams(this.streams);
+		compressor.setPipelined(false);
+		return compressor;
+	}
+
+	/* Compresses or decompresses one file, splitting large files into segment tasks */
+	private class FileTask extends RecursiveTask<FileResult> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileResult file;
+		private final boolean decompress;
+
+		FileTask(FileResult file, boolean decompress) {
+			this.file = file;
+			this.decompress = decompress;
+		}
+
+		@Override
+		protected FileResult compute() {
+			long start = System.nanoTime();
+			try {
+				Path parent = this.file.output.getParent();
+				if (parent != null) {
+					Files.createDirectories(parent);
+				}
+				if (this.decompress) {
+					newCompressor().decompress(this.file.input.toString(), this.file.output.toString());
+				} else if (this.file.inputBytes > splitThreshold) {
+					compressSegments();
+				} else {
+					newCompressor().compress(this.file.input.toString(), this.file.output.toString());
+				}
+				this.file.outputBytes = Files.size(this.file.output);
+			} catch (IOException e) {
+				throw new UncheckedIOException(new IOException(this.file.input + ": " + e.getMessage(), e));
+			}
+			this.file.nanos = System.nanoTime() - start;
+			return this.file;
+		}
+
+		/*
+		 * Forks a task per segment and writes their output in order. Segments are forked a
+		 * window at a time so at most a window of compressed segments is held in memory.
+		 */
+		private void compressSegments() throws IOException {
+			long segmentSize = (long) segmentBlocks * blockSize;
+			int segments = (int) ((this.file.inputBytes + segmentSize - 1) / segmentSize);
+			int window = 2 * pool.getParallelism();
+			this.file.segments = segments;
+
+			try (FileChannel channel = FileChannel.open(this.file.input, StandardOpenOption.READ);
+				 OutputStream out = new BufferedOutputStream(Files.newOutputStream(this.file.output), 1 << 16)) {
+				HuffmanCompressor.writeHeader(out);
+				for (int first = 0; first < segments; first += window) {
+					List<SegmentTask> tasks = new ArrayList<>();
+					for (int s = first; s < Math.min(first + window, segments); s++) {
+						long position = s * segmentSize;
+						int length = (int) Math.min(segmentSize, this.file.inputBytes - position);
+						SegmentTask task = new SegmentTask(channel, position, length);
+						task.fork();
+						tasks.add(task);
+					}
+					for (SegmentTask task: tasks) {
+						ByteArrayOutputStream compressed = task.join();
+						compressed.writeTo(out);
+					}
+				}
+			}
+		}
+	}
+
+	/* Reads and compresses one segment of a file into memory */
+	private class SegmentTask extends RecursiveTask<ByteArrayOutputStream> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long position;
+		private final int length;
+
+		SegmentTask(FileChannel channel, long position, int length) {
+			this.channel = channel;
+			this.position = position;
+			this.length = length;
+		}
+
+		@Override
+		protected ByteArrayOutputStream compute() {
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate(this.length);
+				while (buffer.hasRemaining()) {
+					if (this.channel.read(buffer, this.position + buffer.position()) < 0) {
+						throw new IOException("File changed while it was being compressed.");
+					}
+				}
+				ByteArrayOutputStream out = new ByteArrayOutputStream(this.length / 2);
+				InputStream in = new ByteArrayInputStream(buffer.array());
+				newCompressor().compressBlocks(in, out);
+				return out;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Summary of the last run: files, bytes and aggregate throughput.
+	 */
+	@Override
+	public String toString() {
+		long in = 0, out = 0;
+		for (FileResult file: this.results) {
+			in += file.inputBytes;
+			out += file.outputBytes;
+		}
+		double seconds = this.elapsedNanos / 1e9;
+		return String.format("%d file(s), %,d -> %,d bytes in %.3f s, %.1f MB/s", this.results.size(), in, out,
+				seconds, seconds > 0 ? in / 1e6 / seconds : 0);
+	}
+
+	// geters and seters for the settings
+	public List<FileResult> getResults() {return results;}
+
+	public long getElapsedNanos() {return elapsedNanos;}
+
+	public int getThreads() {return pool.getParallelism();}
+
+	public int getBlockSize() {return blockSize;}
+
+	public int getStreams() {return streams;}
+
+	public long getSplitThreshold() {return splitThreshold;}
+
+	public int getSegmentBlocks() {return segmentBlocks;}
+
+	/**
+	 * @param blockSize size of a block, a segment of getSegmentBlocks() blocks must still
+	 *                  fit in MAX_SEGMENT_SIZE
+	 */
+	public void setBlockSize(int blockSize) {
+		if (blockSize < 1 || blockSize > HuffmanCompressor.MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Block size must be between 1 and " + HuffmanCompressor.MAX_BLOCK_SIZE + ".");
+		}
+		checkSegmentSize(this.segmentBlocks, blockSize);
+		this.blockSize = blockSize;
+	}
+
+	public void setStreams(int streams) {
+		if (streams < 1 || streams > BlockCodec.MAX_STREAMS) {
+			throw new IllegalArgumentException("Streams must be between 1 and " + BlockCodec.MAX_STREAMS + ".");
+		}
+		this.streams = streams;
+	}
+
+	/**
+	 * @param splitThreshold files larger than this are compressed as parallel segments
+	 */
+	public void setSplitThreshold(long splitThreshold) {
+		if (splitThreshold < 0) {
+			throw new IllegalArgumentException("Split threshold cannot be negative.");
+		}
+		this.splitThreshold = splitThreshold;
+	}
+
+	/**
+	 * @param segmentBlocks size of a segment, in blocks, at least 1 and at most
+	 *                      MAX_SEGMENT_SIZE bytes with the current block size
+	 */
+	public void setSegmentBlocks(int segmentBlocks) {
+		if (segmentBlocks < 1) {
+			throw new IllegalArgumentException("Segments must have at least 1 block.");
+		}
+		checkSegmentSize(segmentBlocks, this.blockSize);
+		this.segmentBlocks = segmentBlocks;
+	}
+
+	private static void checkSegmentSize(int segmentBlocks, int blockSize) {
+		if ((long) segmentBlocks * blockSize > MAX_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("A segment of " + segmentBlocks + " blocks of " + blockSize
+					+ " bytes is larger than " + MAX_SEGMENT_SIZE + " bytes.");
+		}
+	}
+
+	/**
+	 * Result of one file: sizes, time and throughput.
+	 */
+	public static class FileResult {
+
+		private final Path input;
+		private final Path output;
+		private final long inputBytes;
+		private long outputBytes;
+		private long nanos;
+		private int segments = 1;
+
+		FileResult(Path input, Path output, long inputBytes) {
+			this.input = input;
+			this.output = output;
+			this.inputBytes = inputBytes;
+		}
+
+		public Path getInput() {return input;}
+
+		public Path getOutput() {return output;}
+
+		public long getInputBytes() {return inputBytes;}
+
+		public long getOutputBytes() {return outputBytes;}
+
+		public long getNanos() {return nanos;}
+
+		public int getSegments() {return segments;}
+
+		/**
+		 * @return MB (10^6 bytes) of input processed per second
+		 */
+		public double getThroughput() {
+			return nanos > 0 ? inputBytes / 1e6 / (nanos / 1e9) : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %,d -> %,d bytes, %d segment(s), %.1f ms, %.1f MB/s", input, inputBytes,
+					outputBytes, segments, nanos / 1e6, getThroughput());
+		}
+	}
+}
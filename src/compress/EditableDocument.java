@@ -0,0 +1,311 @@
+package compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import list.ArrayList;
+import list.ByteArrayList;
+import list.IntArrayList;
+import list.LongArrayList;
+
+/**
+ * Compressed document that can be edited without compressing it again. The bytes
+ * are kept as huffman blocks that all share one code table (with an ESCAPE code,
+ * so bytes the table hasn't seen can still be coded), and an index holds the
+ * offset where every block starts.
+ *
+ * An edit finds the blocks it touches with a binary search on the index, decodes
+ * only those, applies the change and encodes the result again with the same table.
+ * The other blocks keep their bits, the index is patched by shifting the offsets of
+ * the blocks after the edit. The document keeps the frequencies of all its bytes,
+ * and once the shared table costs more than maxDrift over a table built for them
+ * (table included), every block is encoded again with a new table.
+ *
+ * write produces a stream HuffmanCompressor can decompress: a block without bytes
+ * carrying the table, then every block reusing it.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class EditableDocument {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+	public static final double DEFAULT_MAX_DRIFT = 0.02; // rebuild when the table costs 2% more than a new one
+
+	private final int blockSize;
+	private final double maxDrift;
+	private final BlockCodec codec = new BlockCodec();
+	private CanonicalCode code;
+	private final long[] counts = new long[BlockCodec.ALPHABET]; // frequencies of the whole document
+
+	// one entry per block
+	private final ArrayList<ByteArrayList> payloads = new ArrayList<ByteArrayList>(16);
+	private final IntArrayList types = new IntArrayList();   // BLOCK_HUFFMAN or BLOCK_STORED
+	private final IntArrayList lengths = new IntArrayList(); // bytes in the block
+	private final LongArrayList starts = new LongArrayList(); // offset of the first byte of the block
+
+	private long length;
+	private long reencodedBlocks;
+	private int rebuilds;
+
+	/**
+	 * @param data initial contents of the document
+	 * @param blockSize bytes per block, an edit decodes and encodes at least one block
+	 * @param maxDrift relative extra cost of the shared table that triggers a rebuild
+	 */
+	public EditableDocument(byte[] data, int blockSize, double maxDrift) {
+		if (blockSize < 1 || blockSize > HuffmanCompressor.MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Block size must be between 1 and " + HuffmanCompressor.MAX_BLOCK_SIZE + ".");
+		}
+		if (maxDrift < 0) {
+			throw new IllegalArgumentException("Drift cannot be negative.");
+		}
+		this.blockSize = blockSize;
+		this.maxDrift = maxDrift;
+		Histogram.countBytes(data, 0, data.length, this.counts);
+		rebuild(data);
+		this.rebuilds = 0;
+		this.reencodedBlocks = 0;
+	}
+
+	public EditableDocument(byte[] data) {
+		this(data, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_DRIFT);
+	}
+
+	/**
+	 * Replaces removed bytes at offset with inserted.
+	 *
+	 * @param offset position of the first byte removed, or where the bytes are inserted
+	 * @param removed amount of bytes removed, 0 to only insert
+	 * @param inserted bytes inserted at offset, empty to only remove
+	 * @throws IllegalArgumentException if the range is outside the document
+	 */
+	public void edit(long offset, int removed, byte[] inserted) {
+		if (offset < 0 || removed < 0 || offset + removed > this.length) {
+			throw new IllegalArgumentException("Edit range is outside the document.");
+		}
+		if (removed == 0 && inserted.length == 0) {
+			return;
+		}
+
+		// the blocks holding the first and the last byte removed, or the block the bytes go in
+		int first = Math.max(0, blockAt(offset));
+		int last = Math.max(first, blockAt(offset + Math.max(removed, 1) - 1));
+		long size = 0;
+		for (int b = first; b <= last && b < this.payloads.size(); b++) {
+			size += this.lengths.get(b);
+		}
+		// small results take the next block in, so deletions don't leave tiny blocks behind
+		if (size - removed + inserted.length < this.blockSize / 2 && last + 1 < this.payloads.size()) {
+			size += this.lengths.get(++last);
+		}
+
+		long start = first < this.starts.size() ? this.starts.get(first) : 0;
+		byte[] old = new byte[(int) size];
+		for (int b = first, position = 0; b <= last && b < this.payloads.size(); position += this.lengths.get(b++)) {
+			decodeBlock(b, old, position);
+		}
+		int before = (int) (offset - start), after = before + removed;
+		byte[] edited = new byte[old.length - removed + inserted.length];
+		System.arraycopy(old, 0, edited, 0, before);
+		System.arraycopy(inserted, 0, edited, before, inserted.length);
+		System.arraycopy(old, after, edited, before + inserted.length, old.length - after);
+
+		// the document's frequencies lose the old bytes and gain the new ones
+		long[] oldCounts = new long[Histogram.BYTE_ALPHABET];
+		Histogram.countBytes(old, 0, old.length, oldCounts);
+		for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+			this.counts[s] -= oldCounts[s];
+		}
+		Histogram.countBytes(edited, 0, edited.length, this.counts);
+		this.length += edited.length - old.length;
+
+		for (int b = last; b >= first && b < this.payloads.size(); b--) {
+			this.payloads.remove(b);
+			this.types.removeAt(b);
+			this.lengths.removeAt(b);
+			this.starts.removeAt(b);
+		}
+		if (drift() > this.maxDrift) {
+			int blocks = this.payloads.size();
+			byte[] all = new byte[(int) this.length];
+			for (int b = 0, position = 0; b < blocks; position += this.lengths.get(b++)) {
+				int at = b < first ? position : position + edited.length;
+				decodeBlock(b, all, at);
+			}
+			System.arraycopy(edited, 0, all, (int) start, edited.length);
+			rebuild(all);
+			return;
+		}
+		encodeBlocks(edited, first, start);
+		patchIndex(first);
+	}
+
+	/**
+	 * @return copy of length bytes of the document starting at offset, decoding only the blocks they're in
+	 */
+	public byte[] read(long offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > this.length) {
+			throw new IllegalArgumentException("Range is outside the document.");
+		}
+		byte[] result = new byte[length];
+		for (int b = blockAt(offset); length > 0 && b < this.payloads.size(); b++) {
+			byte[] block = new byte[this.lengths.get(b)];
+			decodeBlock(b, block, 0);
+			int from = (int) Math.max(0, offset - this.starts.get(b));
+			int to = (int) Math.min(block.length, offset + result.length - this.starts.get(b));
+			System.arraycopy(block, from, result, (int) (this.starts.get(b) + from - offset), to - from);
+			length -= to - from;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the whole document
+	 */
+	public byte[] toByteArray() {
+		return read(0, (int) this.length);
+	}
+
+	/**
+	 * Writes the document in the format of HuffmanCompressor, header and checksum
+	 * included. The stream is not closed.
+	 */
+	public void write(OutputStream out) throws IOException {
+		HuffmanCompressor.writeHeader(out);
+		Block block = new Block(0);
+		this.codec.setPreviousCode(null);
+		this.codec.encode(block.raw, 0, 0, this.code, block.payload); // the table alone
+		block.type = HuffmanCompressor.BLOCK_HUFFMAN;
+		HuffmanCompressor.writeBlock(out, block);
+		StreamChecksum checksum = new StreamChecksum();
+		byte[] raw = new byte[0];
+		for (int b = 0; b < this.payloads.size(); b++) {
+			block.type = this.types.get(b);
+			block.rawLength = this.lengths.get(b);
+			block.payload = this.payloads.get(b);
+			HuffmanCompressor.writeBlock(out, block);
+			if (raw.length < block.rawLength) {
+				raw = new byte[block.rawLength];
+			}
+			decodeBlock(b, raw, 0);
+			checksum.update(raw, 0, block.rawLength);
+		}
+		checksum.write(out);
+		out.flush();
+	}
+
+	/* Index of the block holding offset, the last block for the end of the document, -1 without blocks */
+	private int blockAt(long offset) {
+		int low = 0, high = this.starts.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (this.starts.get(middle) <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return high;
+	}
+
+	/* Relative cost of coding the document with the shared table instead of a new one */
+	private double drift() {
+		if (this.length == 0) {
+			return 0;
+		}
+		long current = FrequencyEstimate.costWithEscape(this.code, this.counts);
+		CanonicalCode rebuilt = UpdatableModel.buildTable(this.counts);
+		long optimal = rebuilt.cost(this.counts) + BlockCodec.tableBits(rebuilt, null);
+		return (double) (current - optimal) / current;
+	}
+
+	/* Builds a new table for the document's frequencies and encodes all of data with it */
+	private void rebuild(byte[] data) {
+		this.code = UpdatableModel.buildTable(this.counts);
+		this.payloads.clear();
+		this.types.clear();
+		this.lengths.clear();
+		this.starts.clear();
+		this.length = data.length;
+		encodeBlocks(data, 0, 0);
+		this.rebuilds++;
+	}
+
+	/* Encodes data as blocks of at most blockSize bytes inserted at index first, the first one starting at offset */
+	private void encodeBlocks(byte[] data, int first, long offset) {
+		int blocks = (data.length + this.blockSize - 1) / this.blockSize;
+		for (int b = 0; b < blocks; b++) {
+			int from = (int) ((long) data.length * b / blocks), to = (int) ((long) data.length * (b + 1) / blocks);
+			ByteArrayList payload = new ByteArrayList(Math.max(1, (to - from) / 2));
+			this.codec.setPreviousCode(this.code);
+			this.codec.encode(data, from, to - from, this.code, payload);
+			int type = HuffmanCompressor.BLOCK_HUFFMAN;
+			if (payload.size() >= to - from) {
+				payload.clear();
+				payload.addAll(data, from, to - from);
+				type = HuffmanCompressor.BLOCK_STORED;
+			}
+			this.payloads.add(first + b, payload);
+			this.types.add(first + b, type);
+			this.lengths.add(first + b, to - from);
+			this.starts.add(first + b, offset + from);
+		}
+		this.reencodedBlocks += blocks;
+	}
+
+	/* Recomputes the offsets of the blocks after the first block of an edit */
+	private void patchIndex(int first) {
+		for (int b = Math.max(1, first); b < this.starts.size(); b++) {
+			this.starts.set(b, this.starts.get(b - 1) + this.lengths.get(b - 1));
+		}
+	}
+
+	private void decodeBlock(int b, byte[] dst, int position) {
+		ByteArrayList payload = this.payloads.get(b);
+		if (this.types.get(b) == HuffmanCompressor.BLOCK_STORED) {
+			System.arraycopy(payload.elements(), 0, dst, position, payload.size());
+		} else {
+			this.codec.setPreviousCode(this.code);
+			this.codec.decode(payload.elements(), 0, payload.size(), dst, position, this.lengths.get(b));
+		}
+	}
+
+	public long getLength() {return length;}
+
+	public int getBlockCount() {return payloads.size();}
+
+	/**
+	 * @return offset of the first byte of a block, from the index
+	 */
+	public long getBlockStart(int block) {return starts.get(block);}
+
+	public int getBlockLength(int block) {return lengths.get(block);}
+
+	/**
+	 * @return bytes of the payloads of every block, without the framing or the table
+	 */
+	public long getCompressedSize() {
+		long size = 0;
+		for (int b = 0; b < this.payloads.size(); b++) {
+			size += this.payloads.get(b).size();
+		}
+		return size;
+	}
+
+	public CanonicalCode getCode() {return code;}
+
+	/**
+	 * @return amount of blocks encoded by edits, rebuilds included
+	 */
+	public long getReencodedBlocks() {return reencodedBlocks;}
+
+	/**
+	 * @return amount of times every block was encoded again with a new table
+	 */
+	public int getRebuilds() {return rebuilds;}
+
+	public int getBlockSize() {return blockSize;}
+
+	public double getMaxDrift() {return maxDrift;}
+}
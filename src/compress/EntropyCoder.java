@@ -0,0 +1,68 @@
+package compress;
+
+import list.ByteArrayList;
+
+/**
+ * Entropy coder for blocks of bytes. Every coder writes its own kind of block
+ * payload and has its own block type in the compressed format, so every block of a
+ * stream can be coded with a different coder. CoderSelector estimates the size of
+ * a block with every coder from its histogram and picks one.
+ *
+ * Implementations keep state between blocks and reusable buffers, so they aren't
+ * thread safe, every thread needs its own instances.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public interface EntropyCoder {
+
+	/**
+	 * @return block type written in the container for blocks of this coder,
+	 *         one of the HuffmanCompressor.BLOCK_ constants
+	 */
+	int getBlockType();
+
+	/**
+	 * @return short name of the coder, used in statistics
+	 */
+	String getName();
+
+	/**
+	 * Estimates the size of the payload encode would write for src[offset, offset + length).
+	 * Order-0 coders only need the histogram, others may look at the bytes.
+	 *
+	 * @param counts frequency of every byte of the block, BlockCodec.ALPHABET entries
+	 * @return estimated payload size in bits, tables included
+	 */
+	long estimateBits(byte[] src, int offset, int length, long[] counts);
+
+	/**
+	 * Estimates the time to decode the block given to the last estimateBits, in decode
+	 * steps: one step is the table lookup that decodes a symbol of an order-0 code, which
+	 * takes about as long in the huffman and tANS decoders. Building the decoding tables
+	 * counts too, so it weighs more on small blocks.
+	 *
+	 * @param length length of the block given to the last estimateBits
+	 * @return estimated decode steps, only meaningful right after estimateBits for the block
+	 */
+	long estimateDecodeCost(int length);
+
+	/**
+	 * Encodes src[offset, offset + length) and appends the payload to out.
+	 *
+	 * @param counts frequency of every byte of the block, as returned by BlockCodec.histogram
+	 */
+	void encode(byte[] src, int offset, int length, long[] counts, ByteArrayList out);
+
+	/**
+	 * Decodes a payload written by encode into dst[dstOffset, dstOffset + symbols).
+	 *
+	 * @throws IllegalArgumentException if the payload is corrupt
+	 */
+	void decode(byte[] src, int offset, int length, byte[] dst, int dstOffset, int symbols);
+
+	/**
+	 * Forgets the state kept from previous blocks, used when starting a new compressed stream.
+	 */
+	void reset();
+}
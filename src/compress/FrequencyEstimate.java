@@ -0,0 +1,100 @@
+package compress;
+
+/**
+ * Result of sampling a file with FrequencySampler: the sampled frequencies, the
+ * code table built from them and the expected loss of using that table instead of
+ * one built from the whole file. After compressing, HuffmanCompressor fills in the
+ * actual cost so the estimate can be compared with what really happened.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class FrequencyEstimate {
+
+	private final long[] counts;      // sampled frequency of every symbol
+	private final long sampledBytes;
+	private final long fileBytes;
+	private final double expectedLoss; // extra bits relative to an exact table, 0.01 = 1%
+	private final CanonicalCode code;
+
+	private long actualBits = -1;  // bits used coding the file with code, -1 until known
+	private long optimalBits = -1; // bits an exact table would have used
+
+	FrequencyEstimate(long[] counts, long sampledBytes, long fileBytes, double expectedLoss) {
+		this.counts = counts;
+		this.sampledBytes = sampledBytes;
+		this.fileBytes = fileBytes;
+		this.expectedLoss = expectedLoss;
+		this.code = estimatedCode(counts);
+	}
+
+	/**
+	 * Builds a table from sampled counts, adding an ESCAPE code for unseen bytes
+	 * with the Good-Turing estimate of their frequency (symbols seen exactly once).
+	 */
+	static CanonicalCode estimatedCode(long[] counts) {
+		long[] frequencies = counts.clone();
+		long seenOnce = 0;
+		for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+			if (frequencies[s] == 1) {
+				seenOnce++;
+			}
+		}
+		frequencies[BlockCodec.ESCAPE] = Math.max(1, seenOnce);
+		return CanonicalCode.fromFrequencies(frequencies);
+	}
+
+	/**
+	 * Bits needed to code frequencies with code, counting ESCAPE + 8 bits for bytes without a code.
+	 */
+	static long costWithEscape(CanonicalCode code, long[] frequencies) {
+		long bits = 0;
+		int escape = code.getLength(BlockCodec.ESCAPE) + 8;
+		for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+			bits += frequencies[s] * (code.getLength(s) > 0 ? code.getLength(s) : escape);
+		}
+		return bits;
+	}
+
+	/* Called by the compressor once the whole file has been coded */
+	void setActualCost(long actualBits, long optimalBits) {
+		this.actualBits = actualBits;
+		this.optimalBits = optimalBits;
+	}
+
+	public CanonicalCode getCode() {return code;}
+
+	public long[] getCounts() {return counts.clone();}
+
+	public long getSampledBytes() {return sampledBytes;}
+
+	public long getFileBytes() {return fileBytes;}
+
+	/**
+	 * @return expected extra size relative to an exact table, for example 0.01 for 1%
+	 */
+	public double getExpectedLoss() {return expectedLoss;}
+
+	/**
+	 * The result can be slightly negative: the exact table is limited to codes of
+	 * CanonicalCode.MAX_CODE_LENGTH bits, while escaped bytes can use longer codes.
+	 *
+	 * @return actual extra size relative to an exact table, or NaN if the file hasn't been compressed
+	 */
+	public double getActualLoss() {
+		if (actualBits < 0 || optimalBits <= 0) {
+			return Double.NaN;
+		}
+		return (double) (actualBits - optimalBits) / optimalBits;
+	}
+
+	@Override
+	public String toString() {
+		String result = String.format("Sampled %,d of %,d bytes, expected loss %.3f%%",
+				sampledBytes, fileBytes, expectedLoss * 100);
+		if (actualBits >= 0) {
+			result += String.format(", actual loss %.3f%%", getActualLoss() * 100);
+		}
+		return result;
+	}
+}
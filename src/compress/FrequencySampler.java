@@ -0,0 +1,130 @@
+package compress;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Estimates the frequency distribution of a large file from a sample, so the code
+ * table can be built before the file is read and compressing it takes a single
+ * full pass instead of two.
+ *
+ * The sample is stratified: the file is divided into as many equal parts as there
+ * are chunks, and one chunk is read from a pseudo random position inside every
+ * part, so every region of the file is represented. Symbols that don't appear in
+ * the sample can still appear in the file, so the estimated table always has a
+ * code for BlockCodec.ESCAPE, with a frequency given by the Good-Turing estimate
+ * of the unseen mass: the amount of symbols seen exactly once.
+ *
+ * The expected loss is measured by splitting the sample in two halves (even and
+ * odd chunks): a table built from one half is used to code the other half and
+ * compared with the best table for that half. That shows how much a table built
+ * from this much data loses on data it hasn't seen.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class FrequencySampler {
+
+	public static final int DEFAULT_CHUNKS = 64;
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private final int chunks;
+	private final int chunkSize;
+	private final long seed;
+
+	/**
+	 * @param chunks amount of chunks (and parts of the file) to sample, at least 2
+	 * @param chunkSize bytes read in every chunk
+	 * @param seed seed for the position of every chunk inside its part
+	 */
+	public FrequencySampler(int chunks, int chunkSize, long seed) {
+		if (chunks < 2) {
+			throw new IllegalArgumentException("At least 2 chunks are needed.");
+		}
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1.");
+		}
+		this.chunks = chunks;
+		this.chunkSize = chunkSize;
+		this.seed = seed;
+	}
+
+	public FrequencySampler() {
+		this(DEFAULT_CHUNKS, DEFAULT_CHUNK_SIZE, 0x5EED);
+	}
+
+	/**
+	 * Samples the file at path and builds the estimated code table.
+	 *
+	 * @param path file to be sampled
+	 * @return estimate containing the sampled frequencies and the code table
+	 */
+	public FrequencyEstimate estimate(String path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			return estimate(file);
+		}
+	}
+
+	public FrequencyEstimate estimate(RandomAccessFile file) throws IOException {
+		long length = file.length();
+		long[] even = new long[BlockCodec.ALPHABET];
+		long[] odd = new long[BlockCodec.ALPHABET];
+		byte[] buffer = new byte[this.chunkSize];
+		long sampled = 0;
+
+		long partSize = length / this.chunks;
+		if (partSize <= this.chunkSize) { // the sample would cover the file, so read the whole file
+			for (long position = 0, chunk = 0; position < length; position += this.chunkSize, chunk++) {
+				int read = readChunk(file, position, buffer);
+				Histogram.countBytes(buffer, 0, read, chunk % 2 == 0 ? even : odd);
+				sampled += read;
+			}
+		} else {
+			long state = this.seed;
+			for (int chunk = 0; chunk < this.chunks; chunk++) {
+				state = state * 6364136223846793005L + 1442695040888963407L; // LCG, deterministic positions
+				long offset = ((state >>> 1) % (partSize - this.chunkSize + 1));
+				int read = readChunk(file, chunk * partSize + offset, buffer);
+				Histogram.countBytes(buffer, 0, read, chunk % 2 == 0 ? even : odd);
+				sampled += read;
+			}
+		}
+
+		long[] counts = new long[BlockCodec.ALPHABET];
+		for (int s = 0; s < counts.length; s++) {
+			counts[s] = even[s] + odd[s];
+		}
+		return new FrequencyEstimate(counts, sampled, length, expectedLoss(even, odd));
+	}
+
+	private static int readChunk(RandomAccessFile file, long position, byte[] buffer) throws IOException {
+		file.seek(position);
+		int length = 0;
+		while (length < buffer.length) {
+			int read = file.read(buffer, length, buffer.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
+
+	/* Average of the relative loss of coding each half with the table built from the other half */
+	private static double expectedLoss(long[] even, long[] odd) {
+		double a = crossLoss(even, odd);
+		double b = crossLoss(odd, even);
+		return (a + b) / 2;
+	}
+
+	/* Extra bits (relative) of coding target with a table estimated from source */
+	private static double crossLoss(long[] source, long[] target) {
+		long optimal = CanonicalCode.fromFrequencies(target).cost(target);
+		if (optimal <= 0) {
+			return 0;
+		}
+		CanonicalCode estimated = FrequencyEstimate.estimatedCode(source);
+		long cost = FrequencyEstimate.costWithEscape(estimated, target);
+		return (double) (cost - optimal) / optimal;
+	}
+}
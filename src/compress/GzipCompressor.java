@@ -0,0 +1,111 @@
+package compress;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import list.ByteArrayList;
+
+/**
+ * Compresses files or streams into the gzip format (RFC 1952), so they can be read
+ * with gzip -d or java.util.zip without this library. The data is a deflate stream
+ * written by DeflateEncoder with dynamic huffman blocks.
+ *
+ * Format:
+ * <pre>
+ *   header     1f 8b, method 8 (deflate), no flags, no time, OS unknown (10 bytes)
+ *   deflate    the compressed data
+ *   trailer    CRC-32 and length modulo 2^32 of the data, little endian (8 bytes)
+ * </pre>
+ * The input is read and coded CHUNK_SIZE bytes at a time, matches don't reach
+ * across chunks.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class GzipCompressor {
+
+	public static final int CHUNK_SIZE = 1 << 20;
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 255};
+
+	private int level;
+
+	/**
+	 * Compresses the file at inputPath into a new gzip file at outputPath.
+	 */
+	public void compress(String inputPath, String outputPath) throws IOException {
+		try (InputStream in = new FileInputStream(new File(inputPath));
+			 OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(outputPath)), 1 << 16)) {
+			compress(in, out);
+		}
+	}
+
+	/**
+	 * Reads in until its end and writes the gzip data to out. Neither stream is closed.
+	 */
+	public void compress(InputStream in, OutputStream out) throws IOException {
+		DeflateEncoder encoder = new DeflateEncoder(this.level);
+		CRC32 crc = new CRC32();
+		ByteArrayList deflated = new ByteArrayList(CHUNK_SIZE / 2);
+		out.write(HEADER);
+
+		// one chunk is read ahead, so the encoder knows which chunk is the last one
+		byte[] chunk = new byte[CHUNK_SIZE], next = new byte[CHUNK_SIZE];
+		int length = readChunk(in, chunk);
+		long total = 0;
+		while (true) {
+			int nextLength = length == CHUNK_SIZE ? readChunk(in, next) : 0;
+			boolean last = nextLength == 0;
+			crc.update(chunk, 0, length);
+			total += length;
+			deflated.clear();
+			encoder.write(chunk, 0, length, last, deflated);
+			out.write(deflated.elements(), 0, deflated.size());
+			if (last) {
+				break;
+			}
+			byte[] swap = chunk;
+			chunk = next;
+			next = swap;
+			length = nextLength;
+		}
+
+		writeIntLE(out, (int) crc.getValue());
+		writeIntLE(out, (int) total);
+		out.flush();
+	}
+
+	/* Fills chunk unless the stream ends first, returns the amount of bytes read */
+	private static int readChunk(InputStream in, byte[] chunk) throws IOException {
+		int length = 0;
+		for (int read; length < chunk.length && (read = in.read(chunk, length, chunk.length - length)) >= 0;) {
+			length += read;
+		}
+		return length;
+	}
+
+	private static void writeIntLE(OutputStream out, int value) throws IOException {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	public int getLevel() {return level;}
+
+	/**
+	 * @param level 0 to code only literals (fastest, like Deflater.HUFFMAN_ONLY), or
+	 *              LZ77 match search effort from 1 (fastest) to 9 (smallest)
+	 */
+	public void setLevel(int level) {
+		if (level < 0 || level > 9) {
+			throw new IllegalArgumentException("Level must be between 0 and 9.");
+		}
+		this.level = level;
+	}
+}
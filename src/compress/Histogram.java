@@ -0,0 +1,129 @@
+package compress;
+
+/**
+ * Counting kernels used to build frequency distributions over the byte alphabet
+ * and the UTF-16 (char) alphabet.
+ *
+ * The straightforward loop (counts[data[i]]++) is limited by store-to-load
+ * forwarding: when the same symbol repeats, every increment has to wait for the
+ * previous increment of the same counter to reach memory. The kernels below spread
+ * consecutive symbols over several independent sub-histograms, so runs of the same
+ * symbol update different counters and the increments can overlap. The
+ * sub-histograms are added together once at the end.
+ *
+ * The plain versions are kept as the reference implementation for testing and
+ * benchmarking the interleaved ones.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class Histogram {
+
+	public static final int BYTE_ALPHABET = 256;
+	public static final int CHAR_ALPHABET = 65536;
+
+	// chars are copied into this many at a time, so the kernel works on an array instead of charAt
+	private static final int CHAR_CHUNK = 4096;
+
+	private Histogram() {}
+
+	/**
+	 * Adds the frequency of every byte in data[offset, offset + length) to counts,
+	 * using four interleaved sub-histograms.
+	 *
+	 * @param data array containing the bytes to be counted
+	 * @param offset first position to count
+	 * @param length amount of bytes to count
+	 * @param counts array of at least 256 counters, indexed by unsigned byte value
+	 */
+	public static void countBytes(byte[] data, int offset, int length, long[] counts) {
+		int[] c0 = new int[BYTE_ALPHABET];
+		int[] c1 = new int[BYTE_ALPHABET];
+		int[] c2 = new int[BYTE_ALPHABET];
+		int[] c3 = new int[BYTE_ALPHABET];
+		countBytes(data, offset, length, counts, c0, c1, c2, c3);
+	}
+
+	/**
+	 * Same as countBytes(data, offset, length, counts), but takes the four sub-histograms
+	 * as parameters so callers that count many blocks can reuse them. They must be
+	 * all zeros when called and are left all zeros when the method returns.
+	 */
+	public static void countBytes(byte[] data, int offset, int length, long[] counts,
+								  int[] c0, int[] c1, int[] c2, int[] c3) {
+		int end = offset + length;
+		int i = offset;
+
+		for (; i + 8 <= end; i += 8) { // every sub-histogram receives every fourth byte
+			c0[data[i] & 0xFF]++;
+			c1[data[i + 1] & 0xFF]++;
+			c2[data[i + 2] & 0xFF]++;
+			c3[data[i + 3] & 0xFF]++;
+			c0[data[i + 4] & 0xFF]++;
+			c1[data[i + 5] & 0xFF]++;
+			c2[data[i + 6] & 0xFF]++;
+			c3[data[i + 7] & 0xFF]++;
+		}
+		for (; i < end; i++) {
+			c0[data[i] & 0xFF]++;
+		}
+
+		for (int s = 0; s < BYTE_ALPHABET; s++) { // add the sub-histograms together and reset them
+			counts[s] += (long) c0[s] + c1[s] + c2[s] + c3[s];
+			c0[s] = 0;
+			c1[s] = 0;
+			c2[s] = 0;
+			c3[s] = 0;
+		}
+	}
+
+	/**
+	 * Reference implementation of countBytes, one counter per symbol.
+	 */
+	public static void countBytesPlain(byte[] data, int offset, int length, long[] counts) {
+		for (int i = offset; i < offset + length; i++) {
+			counts[data[i] & 0xFF]++;
+		}
+	}
+
+	/**
+	 * Adds the frequency of every char in text to counts, using two interleaved
+	 * sub-histograms (the UTF-16 alphabet is too large to keep four of them in cache).
+	 *
+	 * @param text string whose characters are counted
+	 * @param counts array of 65536 counters, indexed by char value
+	 */
+	public static void countChars(String text, int[] counts) {
+		int[] c1 = new int[CHAR_ALPHABET]; // counts is used as the first sub-histogram
+		char[] chunk = new char[CHAR_CHUNK];
+
+		for (int start = 0; start < text.length(); start += CHAR_CHUNK) {
+			int length = Math.min(CHAR_CHUNK, text.length() - start);
+			text.getChars(start, start + length, chunk, 0);
+
+			int i = 0;
+			for (; i + 4 <= length; i += 4) {
+				counts[chunk[i]]++;
+				c1[chunk[i + 1]]++;
+				counts[chunk[i + 2]]++;
+				c1[chunk[i + 3]]++;
+			}
+			for (; i < length; i++) {
+				counts[chunk[i]]++;
+			}
+		}
+
+		for (int s = 0; s < CHAR_ALPHABET; s++) {
+			counts[s] += c1[s];
+		}
+	}
+
+	/**
+	 * Reference implementation of countChars, one counter per symbol.
+	 */
+	public static void countCharsPlain(String text, int[] counts) {
+		for (int i = 0; i < text.length(); i++) {
+			counts[text.charAt(i)]++;
+		}
+	}
+}
@@ -0,0 +1,513 @@
+package compress;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import list.ByteArrayList;
+import map.HashTableSC;
+import map.Map;
+
+/**
+ * Archive of many files compressed with one shared code table. Small related files
+ * usually have almost the same frequencies, so instead of counting and building a
+ * table for every file, and storing it with every file, the archive counts all the
+ * members once and stores a single table. A member only carries its own table when
+ * it's different enough that one pays for itself (decided by an UpdatableModel that
+ * starts from the shared table).
+ *
+ * Format:
+ * <pre>
+ *   header      ARCHIVE_MAGIC ("HUFA") followed by VERSION
+ *   table       VarInt length + the shared table written by TableSerializer
+ *   members     the blocks of every member, framed like HuffmanCompressor's blocks;
+ *               the first block of every member starts from the shared table
+ *   directory   VarInt member count, then for every member:
+ *                 name            VarInt length + UTF-8 bytes, '/' separates directories
+ *                 offset          VarInt, position of the member's first block
+ *                 compressedSize  VarInt
+ *                 size            VarInt
+ *                 crc             4 bytes, CRC-32 of the member's data
+ *   trailer     8 byte position of the directory, followed by TRAILER_MAGIC ("HUFD")
+ * </pre>
+ * The trailer is at a fixed distance from the end, so opening an archive reads the
+ * header, the trailer and the directory, and a member can be extracted by reading
+ * only its own blocks.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class HuffmanArchive implements Closeable {
+
+	public static final byte[] ARCHIVE_MAGIC = {'H', 'U', 'F', 'A'};
+	public static final byte[] TRAILER_MAGIC = {'H', 'U', 'F', 'D'};
+	public static final int VERSION = 1;
+
+	private static final int TRAILER_SIZE = 8 + 4;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_TABLE_ROUNDS = 4; // rounds of leaving out members that don't suit the shared table
+
+	private final FileChannel channel;
+	private final CanonicalCode table;
+	private final List<Entry> entries;
+	private final Map<String, Entry> byName;
+
+	/**
+	 * Opens an archive and reads its directory.
+	 *
+	 * @throws IOException if the file isn't an archive or is corrupt
+	 */
+	public HuffmanArchive(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long length = this.channel.size();
+			DataInputStream header = new DataInputStream(new RegionInputStream(this.channel, 0, length));
+			byte[] magic = new byte[ARCHIVE_MAGIC.length];
+			header.readFully(magic);
+			int version = header.read();
+			if (!Arrays.equals(magic, ARCHIVE_MAGIC)) {
+				throw new IOException("Not an archive.");
+			}
+			if (version != VERSION) {
+				throw new IOException("Unsupported archive version " + version + ".");
+			}
+			this.table = readTable(header);
+
+			if (length < TRAILER_SIZE) {
+				throw new EOFException("Truncated archive.");
+			}
+			DataInputStream trailer = new DataInputStream(new RegionInputStream(this.channel, length - TRAILER_SIZE, TRAILER_SIZE));
+			long directoryOffset = trailer.readLong();
+			trailer.readFully(magic);
+			if (!Arrays.equals(magic, TRAILER_MAGIC) || directoryOffset < 0 || directoryOffset > length - TRAILER_SIZE) {
+				throw new IOException("Corrupt archive trailer.");
+			}
+
+			DataInputStream directory = new DataInputStream(new RegionInputStream(this.channel, directoryOffset,
+					length - TRAILER_SIZE - directoryOffset));
+			this.entries = readDirectory(directory, directoryOffset);
+			this.byName = new HashTableSC<String, Entry>(2 * this.entries.size() + 1);
+			for (Entry entry: this.entries) {
+				this.byName.put(entry.name, entry);
+			}
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates an archive with every regular file under directory, named by their path
+	 * relative to it.
+	 *
+	 * @return entries written
+	 */
+	public static List<Entry> create(Path archive, Path directory) throws IOException {
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(directory)) {
+			files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		List<String> names = new ArrayList<>(files.size());
+		for (Path file: files) {
+			names.add(directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"));
+		}
+		return create(archive, files, names);
+	}
+
+	/**
+	 * Creates an archive with the given files. The files are read twice: once to count
+	 * the frequencies of all of them together and once to encode them.
+	 *
+	 * @param archive path of the archive to be created
+	 * @param files files to be added
+	 * @param names name of every file in the archive
+	 * @return entries written
+	 */
+	public static List<Entry> create(Path archive, List<Path> files, List<String> names) throws IOException {
+		if (files.size() != names.size()) {
+			throw new IllegalArgumentException("Every file needs a name.");
+		}
+
+		List<long[]> memberCounts = new ArrayList<>(files.size());
+		byte[] buffer = new byte[BUFFER_SIZE];
+		for (Path file: files) {
+			long[] counts = new long[BlockCodec.ALPHABET];
+			try (InputStream in = Files.newInputStream(file)) {
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					Histogram.countBytes(buffer, 0, read, counts);
+				}
+			}
+			memberCounts.add(counts);
+		}
+		CanonicalCode table = sharedTable(memberCounts);
+
+		List<Entry> entries = new ArrayList<>(files.size());
+		try (CountingOutputStream out = new CountingOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(archive), BUFFER_SIZE))) {
+			out.write(ARCHIVE_MAGIC);
+			out.write(VERSION);
+			ByteArrayList tableBytes = new ByteArrayList();
+			BitWriter writer = new BitWriter(tableBytes);
+			TableSerializer.write(writer, table, null);
+			writer.flush();
+			VarInt.write(out, tableBytes.size());
+			out.write(tableBytes.elements(), 0, tableBytes.size());
+
+			BlockCodec codec = new BlockCodec();
+			Block block = new Block(HuffmanCompressor.DEFAULT_BLOCK_SIZE);
+			for (int i = 0; i < files.size(); i++) {
+				Entry entry = new Entry(names.get(i));
+				entry.offset = out.getCount();
+				writeMember(files.get(i), table, codec, block, out, entry);
+				entry.compressedSize = out.getCount() - entry.offset;
+				entries.add(entry);
+			}
+
+			long directoryOffset = out.getCount();
+			writeDirectory(out, entries);
+			DataOutputStream trailer = new DataOutputStream(out);
+			trailer.writeLong(directoryOffset);
+			trailer.write(TRAILER_MAGIC);
+			trailer.flush();
+		}
+		return entries;
+	}
+
+	/*
+	 * Builds the shared table from the members it suits. A member that codes better with
+	 * its own table (such as a binary file among text files) would only make the shared
+	 * table worse for the rest, so its counts are left out and the table is rebuilt,
+	 * until the set of members stops changing. The table has an ESCAPE code so it can
+	 * code the bytes of the members that were left out.
+	 */
+	private static CanonicalCode sharedTable(List<long[]> memberCounts) {
+		boolean[] excluded = new boolean[memberCounts.size()];
+		CanonicalCode table = null;
+		for (int round = 0; round < MAX_TABLE_ROUNDS; round++) {
+			long[] counts = new long[BlockCodec.ALPHABET];
+			for (int m = 0; m < excluded.length; m++) {
+				if (!excluded[m]) {
+					long[] member = memberCounts.get(m);
+					for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+						counts[s] += member[s];
+					}
+				}
+			}
+			counts[BlockCodec.ESCAPE] = 1;
+			table = CanonicalCode.fromFrequencies(counts);
+
+			boolean changed = false;
+			for (int m = 0; m < excluded.length; m++) {
+				long[] member = memberCounts.get(m);
+				long shared = FrequencyEstimate.costWithEscape(table, member);
+				CanonicalCode own = FrequencyEstimate.estimatedCode(member);
+				boolean exclude = own.cost(member) + BlockCodec.tableBits(own, null) < shared;
+				changed |= exclude != excluded[m];
+				excluded[m] = exclude;
+			}
+			if (!changed) {
+				break;
+			}
+		}
+		return table;
+	}
+
+	/* Encodes one member, every block with the table the model picks */
+	private static void writeMember(Path file, CanonicalCode table, BlockCodec codec, Block block,
+									OutputStream out, Entry entry) throws IOException {
+		UpdatableModel model = new UpdatableModel(table);
+		codec.setPreviousCode(table);
+		CRC32 crc = new CRC32();
+		try (InputStream in = Files.newInputStream(file)) {
+			while (true) {
+				int length = 0;
+				int read;
+				while (length < block.raw.length && (read = in.read(block.raw, length, block.raw.length - length)) > 0) {
+					length += read;
+				}
+				if (length == 0) {
+					break;
+				}
+				block.rawLength = length;
+				crc.update(block.raw, 0, length);
+				entry.size += length;
+
+				CanonicalCode code = model.update(codec.histogram(block.raw, 0, length));
+				HuffmanCompressor.encodeBlock(codec, block, code);
+				HuffmanCompressor.writeBlock(out, block);
+			}
+		}
+		entry.crc = (int) crc.getValue();
+	}
+
+	private static void writeDirectory(OutputStream out, List<Entry> entries) throws IOException {
+		VarInt.write(out, entries.size());
+		DataOutputStream data = new DataOutputStream(out);
+		for (Entry entry: entries) {
+			byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+			VarInt.write(out, name.length);
+			out.write(name);
+			VarInt.write(out, entry.offset);
+			VarInt.write(out, entry.compressedSize);
+			VarInt.write(out, entry.size);
+			data.writeInt(entry.crc);
+		}
+		data.flush();
+	}
+
+	private static List<Entry> readDirectory(DataInputStream in, long directoryOffset) throws IOException {
+		long count = readVarInt(in);
+		List<Entry> entries = new ArrayList<>();
+		for (long i = 0; i < count; i++) {
+			long nameLength = readVarInt(in);
+			if (nameLength > 1 << 16) {
+				throw new IOException("Corrupt archive directory.");
+			}
+			byte[] name = new byte[(int) nameLength];
+			in.readFully(name);
+			Entry entry = new Entry(new String(name, StandardCharsets.UTF_8));
+			entry.offset = readVarInt(in);
+			entry.compressedSize = readVarInt(in);
+			entry.size = readVarInt(in);
+			entry.crc = in.readInt();
+			if (entry.offset + entry.compressedSize > directoryOffset) {
+				throw new IOException("Member " + entry.name + " is outside the archive.");
+			}
+			entries.add(entry);
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	private static CanonicalCode readTable(DataInputStream in) throws IOException {
+		long length = readVarInt(in);
+		if (length > BlockCodec.MAX_TABLE_BYTES) {
+			throw new IOException("Corrupt archive table.");
+		}
+		byte[] bytes = new byte[(int) length];
+		in.readFully(bytes);
+		BitReader reader = new BitReader(bytes, 0, bytes.length);
+		try {
+			CanonicalCode table = TableSerializer.read(reader, BlockCodec.ALPHABET, null);
+			if (reader.overrun()) {
+				throw new IOException("Truncated archive table.");
+			}
+			return table;
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt archive table: " + e.getMessage(), e);
+		}
+	}
+
+	private static long readVarInt(InputStream in) throws IOException {
+		long value = VarInt.read(in);
+		if (value < 0) {
+			throw new EOFException("Truncated archive directory.");
+		}
+		return value;
+	}
+
+	/**
+	 * @return every member, in the order they were added
+	 */
+	public List<Entry> getEntries() {return entries;}
+
+	/**
+	 * @return member with the given name, null if there is none
+	 */
+	public Entry getEntry(String name) {return byName.get(name);}
+
+	public CanonicalCode getTable() {return table;}
+
+	/**
+	 * Decompresses one member into out, reading only that member's blocks.
+	 *
+	 * @throws IOException if the member is corrupt or its checksum doesn't match
+	 */
+	public void extract(Entry entry, OutputStream out) throws IOException {
+		DataInputStream in = new DataInputStream(new RegionInputStream(this.channel, entry.offset, entry.compressedSize));
+		CoderSelector coders = new CoderSelector(new BlockCodec());
+		coders.getHuffman().setPreviousCode(this.table);
+		Block block = new Block(1);
+		CRC32 crc = new CRC32();
+		long size = 0;
+		while (HuffmanCompressor.readBlock(in, block)) {
+			HuffmanCompressor.decodeBlock(coders, block);
+			crc.update(block.raw, 0, block.rawLength);
+			out.write(block.raw, 0, block.rawLength);
+			size += block.rawLength;
+			block.sequence++;
+		}
+		out.flush();
+		if (size != entry.size || (int) crc.getValue() != entry.crc) {
+			throw new IOException("Member " + entry.name + " is corrupt.");
+		}
+	}
+
+	/**
+	 * Decompresses one member into out.
+	 *
+	 * @throws IllegalArgumentException if there is no member with that name
+	 */
+	public void extract(String name, OutputStream out) throws IOException {
+		Entry entry = getEntry(name);
+		if (entry == null) {
+			throw new IllegalArgumentException("No member named " + name + ".");
+		}
+		extract(entry, out);
+	}
+
+	/**
+	 * Decompresses every member under directory, recreating their relative paths.
+	 */
+	public void extractAll(Path directory) throws IOException {
+		for (Entry entry: this.entries) {
+			Path file = directory.resolve(entry.name).normalize();
+			if (!file.startsWith(directory.normalize())) {
+				throw new IOException("Member " + entry.name + " would be extracted outside " + directory + ".");
+			}
+			if (file.getParent() != null) {
+				Files.createDirectories(file.getParent());
+			}
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE)) {
+				extract(entry, out);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	/**
+	 * Member of an archive.
+	 */
+	public static class Entry {
+
+		private final String name;
+		private long offset;
+		private long compressedSize;
+		private long size;
+		private int crc;
+
+		Entry(String name) {
+			this.name = name;
+		}
+
+		public String getName() {return name;}
+
+		public long getOffset() {return offset;}
+
+		public long getCompressedSize() {return compressedSize;}
+
+		public long getSize() {return size;}
+
+		public int getCrc() {return crc;}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %,d -> %,d bytes", name, size, compressedSize);
+		}
+	}
+
+	/* Stream over a region of the channel, with positional reads so it doesn't move the channel */
+	private static class RegionInputStream extends InputStream {
+
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		RegionInputStream(FileChannel channel, long position, long length) {
+			this.channel = channel;
+			this.position = position;
+			this.end = position + length;
+			this.buffer.limit(0);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!fill()) {
+				return -1;
+			}
+			return this.buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int n = Math.min(len, this.buffer.remaining());
+			this.buffer.get(b, off, n);
+			return n;
+		}
+
+		/* Refills the buffer if it's empty, returns false at the end of the region */
+		private boolean fill() throws IOException {
+			if (this.buffer.hasRemaining()) {
+				return true;
+			}
+			if (this.position >= this.end) {
+				return false;
+			}
+			this.buffer.clear();
+			this.buffer.limit((int) Math.min(this.buffer.capacity(), this.end - this.position));
+			int read = this.channel.read(this.buffer, this.position);
+			if (read <= 0) {
+				throw new EOFException("Truncated archive.");
+			}
+			this.position += read;
+			this.buffer.flip();
+			return true;
+		}
+	}
+
+	/* Output stream that counts the bytes written, used for the member offsets */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+
+		long getCount() {
+			return this.count;
+		}
+	}
+}
@@ -0,0 +1,804 @@
+package compress;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import list.ByteArrayList;
+import list.IntArrayList;
+
+/**
+ * Compresses files or streams of any size by splitting them into blocks and
+ * encoding every block with an entropy coder: a canonical huffman code (see
+ * BlockCodec) or tANS (see AnsCodec), whichever the block's histogram says will be
+ * smaller, or the one estimated to decode clearly faster when speed is preferred
+ * (see setPreferSpeed).
+ * With a level set, LZ77 matching with huffman coded tokens (see LzCodec) is tried
+ * as well, and used when it's the smallest, and likewise the order-1 context coder
+ * (see ContextCodec) when the context model is enabled.
+ * With adaptive splitting (see setAdaptiveSplit), every block is split where its
+ * statistics shift (see BlockSplitter) and every part is written as a huffman block
+ * that reuses the previous table unless a new one pays for itself; the other coders,
+ * the transforms and speed preference can't be combined with it.
+ * With transforms set (see TransformPipeline), every block is also transformed and
+ * the transformed bytes are coded instead when that's smaller.
+ * With a dedup window set (see setDedupWindow), a block with the same bytes as one
+ * of the last blocks is written as a reference to it instead of being coded again
+ * (see BlockDeduplicator).
+ *
+ * Compressed format:
+ * <pre>
+ *   header     MAGIC ("HUFZ") followed by VERSION
+ *   blocks     until the end of the stream, every block is
+ *                type           1 byte, BLOCK_STORED, BLOCK_HUFFMAN, BLOCK_ANS, BLOCK_LZ or BLOCK_CONTEXT,
+ *                               plus BLOCK_TRANSFORMED if the coded bytes were transformed,
+ *                               or BLOCK_DEDUP, BLOCK_REFERENCE or BLOCK_CHECKSUM
+ *                rawLength      VarInt, amount of bytes the block decodes to
+ *                payloadLength  VarInt
+ *                payload        payloadLength bytes, for transformed blocks the payload
+ *                               starts with the transform stages (1 byte) and the amount
+ *                               of transformed bytes (VarInt)
+ * </pre>
+ * A BLOCK_DEDUP block has no bytes, its payload gives the limits of the blocks the
+ * decoder remembers from then on (window and entries, VarInts), and the payload of
+ * a BLOCK_REFERENCE is how many remembered blocks back its bytes are (VarInt).
+ * The stream ends with a BLOCK_CHECKSUM block, the CRC-32 and length of the bytes
+ * since the previous checksum block (see StreamChecksum), and decompress rejects a
+ * stream whose bytes don't match or that doesn't end with one, so corrupt and
+ * truncated streams fail instead of decoding to wrong bytes. New blocks can still be
+ * appended to a compressed file, followed by their own checksum block. Only streams
+ * of the current VERSION are read, so no stream can leave its checksums out.
+ * Blocks that don't get smaller are stored as they are.
+ *
+ * By default reading, coding and writing run in parallel (see Pipeline).
+ *
+ * When a FrequencySampler is set, compressing a file first estimates the frequencies
+ * from a sample and codes every block with that single table, so the file is read
+ * only once, and every block is a huffman block. The estimate, with the actual loss filled in, is kept in getLastEstimate().
+ *
+ * append adds new data to an existing compressed file as new blocks, without
+ * touching the blocks already written, using an UpdatableModel to decide when the
+ * last table is still good enough.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class HuffmanCompressor {
+
+	public static final byte[] MAGIC = {'H', 'U', 'F', 'Z'};
+	public static final int VERSION = 2;
+
+	public static final int BLOCK_STORED = 0;  // payload is the raw bytes
+	public static final int BLOCK_HUFFMAN = 1; // payload written by BlockCodec
+	public static final int BLOCK_ANS = 2;     // payload written by AnsCodec
+	public static final int BLOCK_LZ = 3;      // payload written by LzCodec
+	public static final int BLOCK_CONTEXT = 4; // payload written by ContextCodec
+	public static final int BLOCK_DEDUP = 5;   // payload holds the limits of BlockDeduplicator
+	public static final int BLOCK_REFERENCE = 6; // payload is the distance to an earlier block with the same bytes
+	public static final int BLOCK_CHECKSUM = 7; // payload is the CRC-32 and length of the bytes since the last one
+	public static final int BLOCK_TRANSFORMED = 0x80; // flag added to the type of a coder
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	public static final int MAX_BLOCK_SIZE = 1 << 30;
+	public static final int DEFAULT_RING_SIZE = 4;
+	public static final long DEFAULT_DEDUP_WINDOW = 64L << 20;
+
+	// most bytes a coded payload can have beyond its raw length: the flags, a table, the
+	// amount of streams and their lengths. Blocks that don't get smaller are stored, so
+	// only a block with almost no bytes (the table block of an EditableDocument) gets near it
+	static final int MAX_PAYLOAD_OVERHEAD = 2 + BlockCodec.MAX_TABLE_BYTES + VarInt.MAX_SIZE * BlockCodec.MAX_STREAMS;
+	private static final int READ_CHUNK = 1 << 20; // payloads are read this much at a time
+
+	private int blockSize;
+	private int streams;
+	private int ringSize;
+	private boolean pipelined;
+	private FrequencySampler sampler; // null when every block builds its own table
+	private FrequencyEstimate lastEstimate;
+	private double rebuildThreshold;
+	private boolean preferSpeed;
+	private int transforms;
+	private int level;
+	private boolean contextModel;
+	private boolean adaptiveSplit;
+	private long dedupWindow;
+	private long decodeLimit;
+
+	/**
+	 * Constructor that uses blocks of DEFAULT_BLOCK_SIZE bytes, BlockCodec.DEFAULT_STREAMS
+	 * interleaved streams and a pipeline of DEFAULT_RING_SIZE blocks.
+	 */
+	public HuffmanCompressor() {
+		this.blockSize = DEFAULT_BLOCK_SIZE;
+		this.streams = BlockCodec.DEFAULT_STREAMS;
+		this.ringSize = DEFAULT_RING_SIZE;
+		this.pipelined = true;
+		this.rebuildThreshold = UpdatableModel.DEFAULT_THRESHOLD;
+		this.decodeLimit = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Compresses the file at inputPath into a new file at outputPath.
+	 */
+	public void compress(String inputPath, String outputPath) throws IOException {
+		CanonicalCode code = null;
+		if (this.sampler != null) {
+			this.lastEstimate = this.sampler.estimate(inputPath);
+			code = this.lastEstimate.getCode();
+		}
+		
+		try (InputStream in = new FileInputStream(new File(inputPath));
+			 OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(outputPath)), 1 << 16)) {
+			if (code == null) {
+				compress(in, out);
+			} else {
+				compressWithCode(in, out, code);
+			}
+		}
+	}
+
+	/**
+	 * Decompresses the file at inputPath into a new file at outputPath.
+	 */
+	public void decompress(String inputPath, String outputPath) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(new File(inputPath)), 1 << 16);
+			 OutputStream out = new FileOutputStream(new File(outputPath))) {
+			decompress(in, out);
+		}
+	}
+
+	/**
+	 * Reads in until its end and writes the compressed data to out. Neither stream is closed.
+	 */
+	public void compress(InputStream in, OutputStream out) throws IOException {
+		writeHeader(out);
+		compressBlocks(in, out);
+	}
+
+	/**
+	 * Compresses in like compress but without writing the header. The first block
+	 * always carries its table, so the blocks of consecutive parts of a file can be
+	 * compressed independently and concatenated after a single header.
+	 */
+	void compressBlocks(InputStream in, OutputStream out) throws IOException {
+		CoderSelector coders = new CoderSelector(new BlockCodec(this.streams));
+		coders.setPreferSpeed(this.preferSpeed);
+		coders.setTransforms(new TransformPipeline(this.transforms));
+		coders.setLevel(this.level);
+		coders.setContextModel(this.contextModel);
+		BlockDeduplicator dedup = this.dedupWindow > 0
+				? new BlockDeduplicator(this.dedupWindow, BlockDeduplicator.DEFAULT_MAX_ENTRIES) : null;
+		if (dedup != null) { // the decoder needs the limits before the first reference
+			Block limits = new Block(0);
+			dedup.writeLimits(limits);
+			writeBlock(out, limits);
+		}
+		StreamChecksum checksum = new StreamChecksum();
+		if (this.adaptiveSplit) {
+			BlockSplitter splitter = new BlockSplitter();
+			UpdatableModel model = new UpdatableModel(null, 0);
+			Block part = new Block(0);
+			IntArrayList ends = new IntArrayList();
+			run(block -> readRaw(in, block, checksum),
+					block -> encodeSplit(splitter, model, coders.getHuffman(), dedup, block, part, ends),
+					block -> writeBlock(out, block));
+		} else {
+			run(block -> readRaw(in, block, checksum), block -> encodeBlock(coders, dedup, block), block -> writeBlock(out, block));
+		}
+		checksum.write(out);
+		out.flush();
+	}
+	
+	/* Codes every block with the same table and records how it compares to an exact table */
+	private void compressWithCode(InputStream in, OutputStream out, CanonicalCode code) throws IOException {
+		writeHeader(out);
+		BlockCodec codec = new BlockCodec(this.streams);
+		long[] exact = new long[BlockCodec.ALPHABET];
+		StreamChecksum checksum = new StreamChecksum();
+		run(block -> readRaw(in, block, checksum), block -> {
+			long[] counts = codec.histogram(block.raw, 0, block.rawLength);
+			for (int s = 0; s < exact.length; s++) {
+				exact[s] += counts[s];
+			}
+			encodeBlock(codec, block, code);
+		}, block -> writeBlock(out, block));
+		checksum.write(out);
+		out.flush();
+		
+		long optimal = CanonicalCode.fromFrequencies(exact).cost(exact);
+		this.lastEstimate.setActualCost(FrequencyEstimate.costWithEscape(code, exact), optimal);
+	}
+
+	/**
+	 * Compresses the data read from in and appends it as new blocks at the end of the
+	 * compressed file at compressedPath (created if it doesn't exist). The existing
+	 * blocks are not decoded, only their headers and tables are read to find the last
+	 * table, which new blocks reuse while the model says it's still good enough.
+	 *
+	 * @return model with the statistics of the appended data
+	 */
+	public UpdatableModel append(String compressedPath, InputStream in) throws IOException {
+		File file = new File(compressedPath);
+		boolean exists = file.exists() && file.length() > 0;
+		CanonicalCode last = exists ? lastTable(compressedPath) : null;
+		
+		UpdatableModel model = new UpdatableModel(last, this.rebuildThreshold);
+		BlockCodec codec = new BlockCodec(this.streams);
+		codec.setPreviousCode(last);
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16)) {
+			if (!exists) {
+				writeHeader(out);
+			}
+			StreamChecksum checksum = new StreamChecksum();
+			run(block -> readRaw(in, block, checksum), block -> {
+				CanonicalCode code = model.update(codec.histogram(block.raw, 0, block.rawLength));
+				encodeBlock(codec, block, code);
+			}, block -> writeBlock(out, block));
+			checksum.write(out);
+		}
+		return model;
+	}
+	
+	/**
+	 * Walks the block headers of a compressed file, skipping the payloads, and returns
+	 * the table the next block would reuse.
+	 */
+	static CanonicalCode lastTable(String compressedPath) throws IOException {
+		CanonicalCode last = null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(compressedPath)))) {
+			readHeader(in);
+			byte[] prefix = new byte[1 + 10 + 1 + BlockCodec.MAX_TABLE_BYTES];
+			for (int type = in.read(); type >= 0; type = in.read()) {
+				long rawLength = VarInt.read(in);
+				long payloadLength = VarInt.read(in);
+				if (rawLength < 0 || payloadLength < 0) {
+					throw new EOFException("Truncated block header.");
+				}
+				if (rawLength > MAX_BLOCK_SIZE || payloadLength > maxPayloadLength(type, rawLength)) {
+					throw new IOException("Corrupt block header.");
+				}
+				
+				long skip = payloadLength;
+				if ((type & ~BLOCK_TRANSFORMED) == BLOCK_HUFFMAN) {
+					int length = (int) Math.min(payloadLength, prefix.length);
+					in.readFully(prefix, 0, length);
+					skip -= length;
+					try {
+						int start = 0;
+						if ((type & BLOCK_TRANSFORMED) != 0) { // skip the stages and the transformed length
+							start = 1 + VarInt.size(VarInt.read(prefix, 1, length));
+						}
+						CanonicalCode table = BlockCodec.peekTable(prefix, start, length - start, last);
+						if (table != null) {
+							last = table;
+						}
+					} catch (IllegalArgumentException e) {
+						throw new IOException("Corrupt table: " + e.getMessage(), e);
+					}
+				}
+				while (skip > 0) {
+					long skipped = in.skip(skip);
+					if (skipped <= 0) {
+						throw new EOFException("Truncated block payload.");
+					}
+					skip -= skipped;
+				}
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Reads compressed data from in until its end and writes the decompressed data to out.
+	 * Neither stream is closed.
+	 *
+	 * @throws IOException if in isn't compressed data, is corrupt or is truncated, or
+	 *         has a block or a dedup window larger than the decode limit
+	 */
+	public void decompress(InputStream in, OutputStream out) throws IOException {
+		readHeader(in);
+		CoderSelector coders = new CoderSelector(new BlockCodec());
+		DataInputStream data = new DataInputStream(in);
+		StreamChecksum checksum = new StreamChecksum();
+		int maxBlockSize = (int) Math.min(this.decodeLimit, MAX_BLOCK_SIZE);
+		run(block -> readBlock(data, block, maxBlockSize), block -> {
+			decodeBlock(coders, block);
+			if (block.type == BLOCK_DEDUP && coders.getDeduplicator().getWindow() > this.decodeLimit) {
+				throw new IOException("Dedup window of " + coders.getDeduplicator().getWindow()
+						+ " bytes is larger than the limit of " + this.decodeLimit + ".");
+			}
+		}, block -> {
+			if (block.type == BLOCK_CHECKSUM) {
+				checksum.verify(block);
+				return;
+			}
+			checksum.update(block.raw, 0, block.rawLength);
+			out.write(block.raw, 0, block.rawLength);
+		});
+		out.flush();
+		if (!checksum.isClosed()) {
+			throw new EOFException("Stream ends without a checksum, it is truncated.");
+		}
+	}
+
+	private void run(Pipeline.Source source, Pipeline.Stage compute, Pipeline.Stage sink) throws IOException {
+		Pipeline pipeline = new Pipeline(this.ringSize, this.blockSize);
+		if (this.pipelined) {
+			pipeline.run(source, compute, sink);
+		} else {
+			pipeline.runSequential(source, compute, sink);
+		}
+	}
+
+	/* Fills the block with up to blockSize bytes, which are added to the checksum, returns false at the end of the stream */
+	private boolean readRaw(InputStream in, Block block, StreamChecksum checksum) throws IOException {
+		block.ensureRawCapacity(this.blockSize);
+		int length = 0;
+		while (length < this.blockSize) {
+			int read = in.read(block.raw, length, this.blockSize - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		block.rawLength = length;
+		checksum.update(block.raw, 0, length);
+		return length > 0;
+	}
+
+	/* Encodes the block's raw bytes into its payload, storing them if they don't get smaller.
+	 * The block builds its own table when code is null. */
+	static void encodeBlock(BlockCodec codec, Block block, CanonicalCode code) {
+		CanonicalCode before = codec.getPreviousCode();
+		block.payload.clear();
+		block.framed = false;
+		if (code == null) {
+			codec.encode(block.raw, 0, block.rawLength, block.payload);
+		} else {
+			codec.encode(block.raw, 0, block.rawLength, code, block.payload);
+		}
+		block.type = BLOCK_HUFFMAN;
+
+		if (block.payload.size() >= block.rawLength) {
+			codec.setPreviousCode(before); // the decoder never sees the discarded table
+			storeBlock(block);
+		}
+	}
+
+	/*
+	 * Encodes the block's raw bytes with the coder the selector picks, storing them if
+	 * they don't get smaller. When the selector has transforms, the transformed bytes
+	 * are coded instead if their estimate is smaller.
+	 */
+	static void encodeBlock(CoderSelector coders, Block block) {
+		BlockCodec huffman = coders.getHuffman();
+		CanonicalCode before = huffman.getPreviousCode();
+		long[] counts = huffman.histogram(block.raw, 0, block.rawLength);
+		EntropyCoder coder = coders.choose(block.raw, 0, block.rawLength, counts);
+		block.payload.clear();
+		block.framed = false;
+
+		boolean transformed = false;
+		if (coders.getTransforms().getStages() != 0) {
+			counts = counts.clone(); // the codec's array is overwritten by the transformed histogram
+			transformed = encodeTransformed(coders, block, coders.getChosenBits());
+		}
+		if (!transformed) {
+			coder.encode(block.raw, 0, block.rawLength, counts, block.payload);
+			block.type = coder.getBlockType();
+		}
+
+		if (block.payload.size() >= block.rawLength) {
+			huffman.setPreviousCode(before);
+			storeBlock(block);
+		}
+	}
+
+	/* Writes the block as a reference when dedup has seen its bytes, otherwise codes it and remembers it */
+	private static void encodeBlock(CoderSelector coders, BlockDeduplicator dedup, Block block) {
+		if (dedup == null) {
+			encodeBlock(coders, block);
+		} else if (!dedup.reference(block)) {
+			encodeBlock(coders, block);
+			dedup.remember(block);
+		}
+	}
+
+	/*
+	 * Splits the block where its statistics shift and encodes every part as a block of
+	 * its own, with the table the model picks for it, or as a reference when dedup
+	 * isn't null and has seen the part's bytes. The payload gets the framing and
+	 * payload of every part, part is scratch space for one part.
+	 */
+	static void encodeSplit(BlockSplitter splitter, UpdatableModel model, BlockCodec codec, BlockDeduplicator dedup,
+							Block block, Block part, IntArrayList ends) {
+		splitter.split(block.raw, 0, block.rawLength, ends);
+		block.payload.clear();
+		block.framed = true;
+		for (int p = 0, start = 0; p < ends.size(); start = ends.get(p++)) {
+			part.rawLength = ends.get(p) - start;
+			part.ensureRawCapacity(part.rawLength);
+			System.arraycopy(block.raw, start, part.raw, 0, part.rawLength);
+			if (dedup == null || !dedup.reference(part)) {
+				encodeBlock(codec, part, model.update(codec.histogram(part.raw, 0, part.rawLength)));
+				if (dedup != null) {
+					dedup.remember(part);
+				}
+			}
+			block.payload.add((byte) part.type);
+			VarInt.write(block.payload, part.rawLength);
+			VarInt.write(block.payload, part.payload.size());
+			block.payload.addAll(part.payload.elements(), 0, part.payload.size());
+		}
+	}
+
+	/* Transforms the block and encodes the result if its estimate beats rawBits, returns false if it doesn't */
+	private static boolean encodeTransformed(CoderSelector coders, Block block, long rawBits) {
+		TransformPipeline transforms = coders.getTransforms();
+		ByteArrayList transformed = transforms.forward(block.raw, 0, block.rawLength);
+		long[] counts = coders.getHuffman().histogram(transformed.elements(), 0, transformed.size());
+		EntropyCoder coder = coders.choose(transformed.elements(), 0, transformed.size(), counts);
+		long header = 8L * (1 + VarInt.size(transformed.size()));
+		if (coders.getChosenBits() + header >= rawBits) {
+			return false;
+		}
+		block.payload.add((byte) transforms.getStages());
+		VarInt.write(block.payload, transformed.size());
+		coder.encode(transformed.elements(), 0, transformed.size(), counts, block.payload);
+		block.type = coder.getBlockType() | BLOCK_TRANSFORMED;
+		return true;
+	}
+
+	static void storeBlock(Block block) {
+		block.payload.clear();
+		block.payload.addAll(block.raw, 0, block.rawLength);
+		block.type = BLOCK_STORED;
+		block.framed = false;
+	}
+
+	static void writeBlock(OutputStream out, Block block) throws IOException {
+		if (block.framed) {
+			out.write(block.payload.elements(), 0, block.payload.size());
+			return;
+		}
+		out.write(block.type);
+		VarInt.write(out, block.rawLength);
+		VarInt.write(out, block.payload.size());
+		out.write(block.payload.elements(), 0, block.payload.size());
+	}
+
+	/* Reads the framing and payload of the next block, returns false at the end of the stream.
+	 * A payload longer than its type allows (see maxPayloadLength) is rejected before it's read. */
+	static boolean readBlock(DataInputStream in, Block block) throws IOException {
+		return readBlock(in, block, MAX_BLOCK_SIZE);
+	}
+
+	/* Reads the next block, rejecting blocks of more than maxBlockSize bytes */
+	static boolean readBlock(DataInputStream in, Block block, int maxBlockSize) throws IOException {
+		int type = in.read();
+		if (type < 0) {
+			return false;
+		}
+		long rawLength = VarInt.read(in);
+		long payloadLength = VarInt.read(in);
+		if (rawLength < 0 || payloadLength < 0) {
+			throw new EOFException("Truncated block header.");
+		}
+		if (rawLength > MAX_BLOCK_SIZE || payloadLength > maxPayloadLength(type, rawLength)) {
+			throw new IOException("Corrupt block header.");
+		}
+		if (rawLength > maxBlockSize) {
+			throw new IOException("Block of " + rawLength + " bytes is larger than the limit of " + maxBlockSize + ".");
+		}
+
+		block.type = type;
+		block.rawLength = (int) rawLength;
+		// the buffer only grows as the bytes arrive, so a header can't make us allocate what isn't there
+		ByteArrayList payload = block.payload;
+		payload.clear();
+		while (payload.size() < payloadLength) {
+			int start = payload.size();
+			int length = (int) Math.min(payloadLength - start, READ_CHUNK);
+			payload.setSize(start + length);
+			in.readFully(payload.elements(), start, length);
+		}
+		return true;
+	}
+
+	/* Largest payload a block of the type can have, -1 for types that don't exist */
+	static long maxPayloadLength(int type, long rawLength) {
+		switch (type) {
+		case BLOCK_STORED:
+			return rawLength;
+		case BLOCK_DEDUP:
+			return 2 * VarInt.MAX_SIZE;
+		case BLOCK_REFERENCE:
+			return VarInt.MAX_SIZE;
+		case BLOCK_CHECKSUM:
+			return 4 + VarInt.MAX_SIZE;
+		}
+		switch (type & ~BLOCK_TRANSFORMED) {
+		case BLOCK_HUFFMAN:
+		case BLOCK_ANS:
+		case BLOCK_LZ:
+		case BLOCK_CONTEXT:
+			return rawLength + MAX_PAYLOAD_OVERHEAD;
+		default:
+			return -1;
+		}
+	}
+
+	static void decodeBlock(CoderSelector coders, Block block) throws IOException {
+		BlockDeduplicator dedup = coders.getDeduplicator();
+		if (block.type == BLOCK_CHECKSUM) { // checked in order by the caller, see StreamChecksum
+			return;
+		}
+		if (block.type == BLOCK_DEDUP) {
+			coders.setDeduplicator(BlockDeduplicator.readLimits(block));
+			return;
+		}
+		if (block.type == BLOCK_REFERENCE) {
+			if (dedup == null) {
+				throw new IOException("Block " + block.sequence + " is a reference but the stream has no dedup limits.");
+			}
+			dedup.resolve(block);
+			return;
+		}
+		decodeCoded(coders, block);
+		if (dedup != null) {
+			dedup.remember(block);
+		}
+	}
+
+	private static void decodeCoded(CoderSelector coders, Block block) throws IOException {
+		block.ensureRawCapacity(block.rawLength);
+		byte[] payload = block.payload.elements();
+		int payloadLength = block.payload.size();
+
+		if (block.type == BLOCK_STORED) {
+			if (payloadLength != block.rawLength) {
+				throw new IOException("Stored block " + block.sequence + " has the wrong length.");
+			}
+			System.arraycopy(payload, 0, block.raw, 0, payloadLength);
+			return;
+		}
+		EntropyCoder coder = coders.forType(block.type & ~BLOCK_TRANSFORMED);
+		if (coder == null) {
+			throw new IOException("Unknown block type " + block.type + ".");
+		}
+		try {
+			if ((block.type & BLOCK_TRANSFORMED) == 0) {
+				coder.decode(payload, 0, payloadLength, block.raw, 0, block.rawLength);
+				return;
+			}
+			if (payloadLength < 1) {
+				throw new IllegalArgumentException("Truncated block.");
+			}
+			int stages = payload[0] & 0xFF;
+			long length = VarInt.read(payload, 1, payloadLength);
+			int start = 1 + VarInt.size(length);
+			if (length > maxTransformedLength(block.rawLength)) {
+				throw new IllegalArgumentException("Invalid transformed length.");
+			}
+			ByteArrayList transformed = coders.getTransformed();
+			transformed.setSize((int) length);
+			coder.decode(payload, start, payloadLength - start, transformed.elements(), 0, (int) length);
+			ByteArrayList raw = coders.getTransforms().inverse(stages, transformed.elements(), 0, (int) length, block.rawLength);
+			System.arraycopy(raw.elements(), 0, block.raw, 0, block.rawLength);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Block " + block.sequence + " is corrupt: " + e.getMessage(), e);
+		}
+	}
+
+	/* Longest the transforms can make rawLength bytes: BWT adds its primary index and RLE
+	 * can write every byte as two (escapes) */
+	static long maxTransformedLength(int rawLength) {
+		return 2L * (rawLength + VarInt.MAX_SIZE);
+	}
+
+	static void writeHeader(OutputStream out) throws IOException {
+		out.write(MAGIC);
+		out.write(VERSION);
+	}
+
+	/**
+	 * Reads MAGIC and VERSION, streams of any other version are rejected.
+	 */
+	static void readHeader(InputStream in) throws IOException {
+		byte[] header = new byte[MAGIC.length + 1];
+		new DataInputStream(in).readFully(header);
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (header[i] != MAGIC[i]) {
+				throw new IOException("Not a compressed stream.");
+			}
+		}
+		int version = header[MAGIC.length];
+		if (version != VERSION) {
+			throw new IOException("Unsupported version " + version + ".");
+		}
+	}
+
+
+	// geters and seters for the compression settings
+	public int getBlockSize() {return blockSize;}
+
+	public int getStreams() {return streams;}
+
+	public int getRingSize() {return ringSize;}
+
+	public boolean isPipelined() {return pipelined;}
+
+	public FrequencySampler getSampler() {return sampler;}
+
+	public double getRebuildThreshold() {return rebuildThreshold;}
+
+	public boolean isPreferSpeed() {return preferSpeed;}
+
+	public int getTransforms() {return transforms;}
+
+	public int getLevel() {return level;}
+
+	public boolean isContextModel() {return contextModel;}
+
+	public boolean isAdaptiveSplit() {return adaptiveSplit;}
+
+	public long getDedupWindow() {return dedupWindow;}
+
+	public long getDecodeLimit() {return decodeLimit;}
+
+	/**
+	 * @return estimate used by the last sampled compression, null if none was sampled
+	 */
+	public FrequencyEstimate getLastEstimate() {return lastEstimate;}
+
+	public void setBlockSize(int blockSize) {
+		if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE + ".");
+		}
+		this.blockSize = blockSize;
+	}
+
+	public void setStreams(int streams) {
+		if (streams < 1 || streams > BlockCodec.MAX_STREAMS) {
+			throw new IllegalArgumentException("Streams must be between 1 and " + BlockCodec.MAX_STREAMS + ".");
+		}
+		this.streams = streams;
+	}
+
+	public void setRingSize(int ringSize) {
+		if (ringSize < 1) {
+			throw new IllegalArgumentException("Ring size must be at least 1.");
+		}
+		this.ringSize = ringSize;
+	}
+
+	/**
+	 * @param pipelined true to overlap reading, coding and writing in three threads,
+	 *                  false to run everything on the calling thread
+	 */
+	public void setPipelined(boolean pipelined) {this.pipelined = pipelined;}
+
+	/**
+	 * @param preferSpeed true to code every block with the coder estimated to decode it
+	 *                    fastest when it saves a quarter of the smallest one's decode
+	 *                    time, false to always use the smallest
+	 * @throws IllegalArgumentException if preferSpeed is true and adaptive splitting is on
+	 */
+	public void setPreferSpeed(boolean preferSpeed) {
+		checkNotSplit(preferSpeed, "Speed preference");
+		this.preferSpeed = preferSpeed;
+	}
+
+	/**
+	 * @param transforms TransformPipeline stages tried on every block, 0 for none
+	 * @throws IllegalArgumentException if a stage is unknown, or there are stages and
+	 *         adaptive splitting is on
+	 */
+	public void setTransforms(int transforms) {
+		if ((transforms & ~TransformPipeline.ALL) != 0) {
+			throw new IllegalArgumentException("Unknown transform stages " + transforms + ".");
+		}
+		checkNotSplit(transforms != 0, "Transforms");
+		this.transforms = transforms;
+	}
+
+	/**
+	 * @param level LZ match search effort, from 1 (fastest) to 9 (smallest), 0 to
+	 *              code the bytes of every block without LZ
+	 * @throws IllegalArgumentException if level is out of range, or isn't 0 and adaptive
+	 *         splitting is on
+	 */
+	public void setLevel(int level) {
+		if (level < 0 || level > 9) {
+			throw new IllegalArgumentException("Level must be between 0 and 9.");
+		}
+		checkNotSplit(level != 0, "LZ");
+		this.level = level;
+	}
+
+	/**
+	 * @param contextModel true to also try coding every block with a code per
+	 *                     preceding byte (order-1), which suits text
+	 * @throws IllegalArgumentException if contextModel is true and adaptive splitting is on
+	 */
+	public void setContextModel(boolean contextModel) {
+		checkNotSplit(contextModel, "The context model");
+		this.contextModel = contextModel;
+	}
+
+	/**
+	 * Splitting replaces the choice of coder: every part is a huffman block, so tANS,
+	 * LZ, the order-1 coder, the transforms and speed preference are never used with it.
+	 * Those settings have to be off to turn it on, and stay off while it's on.
+	 *
+	 * @param adaptiveSplit true to split every block where its statistics shift and
+	 *                      code the parts with huffman tables that are only written
+	 *                      when they pay for themselves, instead of choosing a coder
+	 * @throws IllegalArgumentException if adaptiveSplit is true and speed preference,
+	 *         transforms, a level or the context model is set
+	 */
+	public void setAdaptiveSplit(boolean adaptiveSplit) {
+		if (adaptiveSplit && (this.preferSpeed || this.transforms != 0 || this.level != 0 || this.contextModel)) {
+			throw new IllegalArgumentException("Adaptive splitting codes every part with huffman,"
+					+ " it can't be combined with speed preference, transforms, LZ or the context model.");
+		}
+		this.adaptiveSplit = adaptiveSplit;
+	}
+
+	/* Rejects enabling a setting that adaptive splitting would ignore */
+	private void checkNotSplit(boolean enabled, String setting) {
+		if (enabled && this.adaptiveSplit) {
+			throw new IllegalArgumentException(setting + " can't be combined with adaptive splitting,"
+					+ " which codes every part with huffman.");
+		}
+	}
+
+	/**
+	 * @param dedupWindow bytes of the last blocks remembered to write repeated blocks
+	 *                    as references, 0 to code every block (DEFAULT_DEDUP_WINDOW
+	 *                    is a good value). Only compress and compressBlocks without a
+	 *                    sampler deduplicate, and only whole blocks of the same bytes
+	 */
+	public void setDedupWindow(long dedupWindow) {
+		if (dedupWindow < 0) {
+			throw new IllegalArgumentException("Dedup window cannot be negative.");
+		}
+		this.dedupWindow = dedupWindow;
+	}
+
+	/**
+	 * @param decodeLimit most bytes decompress accepts in a block and in a dedup window,
+	 *                    streams with larger ones are rejected, so the memory one
+	 *                    decompression takes is a small multiple of it whatever the
+	 *                    stream says. No limit by default
+	 */
+	public void setDecodeLimit(long decodeLimit) {
+		if (decodeLimit < 1) {
+			throw new IllegalArgumentException("Decode limit must be at least 1 byte.");
+		}
+		this.decodeLimit = decodeLimit;
+	}
+
+	/**
+	 * @param sampler sampler used to estimate the table when compressing files,
+	 *                null to build a table for every block
+	 */
+	public void setSampler(FrequencySampler sampler) {this.sampler = sampler;}
+
+	/**
+	 * @param rebuildThreshold minimum relative gain for append to write a new table
+	 */
+	public void setRebuildThreshold(double rebuildThreshold) {
+		if (rebuildThreshold < 0) {
+			throw new IllegalArgumentException("Threshold cannot be negative.");
+		}
+		this.rebuildThreshold = rebuildThreshold;
+	}
+}
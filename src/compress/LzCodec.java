@@ -0,0 +1,291 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.ByteArrayList;
+import list.IntArrayList;
+
+/**
+ * LZ77 coder: LzMatcher turns the block into literals and (length, distance)
+ * matches, which are coded with two canonical huffman codes built with the same
+ * tree as the other coders, one for literals and match lengths and one for
+ * distances. Lengths and distances are grouped into codes with extra bits the way
+ * deflate does, so the alphabets stay small:
+ * <pre>
+ *   literal/length   0..255 literals, 256 + c for length code c (29 codes, lengths 3..258)
+ *   distance         code c covers 1..4 for c &lt; 4, and then ranges that double every
+ *                    two codes (2 * WINDOW_BITS codes)
+ * </pre>
+ *
+ * Block payload, as one bit stream:
+ * <pre>
+ *   table      literal/length code lengths, written by TableSerializer
+ *   table      distance code lengths, written by TableSerializer
+ *   tokens     literal/length code; for matches the length extra bits, the distance
+ *              code and the distance extra bits
+ * </pre>
+ * The decoder stops when it has produced the block's length, so there is no end code.
+ *
+ * Unlike the other coders the size can't be estimated from the histogram, so
+ * estimateBits parses the block and encode reuses that parse for the same block.
+ * An LzCodec isn't thread safe, every thread needs its own instance.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class LzCodec implements EntropyCoder {
+
+	public static final int WINDOW_BITS = 18;
+	public static final int DEFAULT_LEVEL = 6;
+	public static final int LENGTH_CODES = 29;
+	public static final int LITERAL_ALPHABET = 256 + LENGTH_CODES;
+	public static final int DISTANCE_ALPHABET = 2 * WINDOW_BITS;
+
+	// first length (minus MIN_MATCH) and extra bits of every length code, as in deflate
+	static final int[] LENGTH_BASE = new int[LENGTH_CODES];
+	static final int[] LENGTH_EXTRA = new int[LENGTH_CODES];
+	// first distance (minus 1) and extra bits of every distance code
+	static final int[] DISTANCE_BASE = new int[2 * LzMatcher.MAX_WINDOW_BITS];
+	static final int[] DISTANCE_EXTRA = new int[2 * LzMatcher.MAX_WINDOW_BITS];
+
+	static {
+		for (int c = 0; c < LENGTH_CODES - 1; c++) {
+			LENGTH_EXTRA[c] = c < 8 ? 0 : c / 4 - 1;
+			LENGTH_BASE[c] = c < 8 ? c : (4 + (c & 3)) << LENGTH_EXTRA[c];
+		}
+		LENGTH_BASE[LENGTH_CODES - 1] = LzMatcher.MAX_MATCH - LzMatcher.MIN_MATCH; // 258 has its own code
+		for (int c = 0; c < DISTANCE_BASE.length; c++) {
+			DISTANCE_EXTRA[c] = c < 4 ? 0 : c / 2 - 1;
+			DISTANCE_BASE[c] = c < 4 ? c : (2 | (c & 1)) << DISTANCE_EXTRA[c];
+		}
+	}
+
+	private final LzMatcher matcher;
+	private final IntArrayList tokens = new IntArrayList(1024);
+	private final long[] literalCounts = new long[LITERAL_ALPHABET];
+	private final long[] distanceCounts = new long[DISTANCE_ALPHABET];
+	private CanonicalCode literalCode;
+	private CanonicalCode distanceCode;
+	private long extraBits;
+	private final BitWriter writer = new BitWriter(null);
+
+	// block parsed by the last estimateBits
+	private byte[] parsedSrc;
+	private int parsedOffset;
+	private int parsedLength = -1;
+	private final long[] parsedCounts = new long[BlockCodec.ALPHABET];
+
+	// decoding
+	private final int[] literalTable = new int[1 << CanonicalCode.MAX_CODE_LENGTH];
+	private final int[] distanceTable = new int[1 << CanonicalCode.MAX_CODE_LENGTH];
+	private final BitReader reader = new BitReader();
+
+	/**
+	 * @param level match search effort, between 1 (fastest) and 9 (smallest)
+	 */
+	public LzCodec(int level) {
+		this.matcher = new LzMatcher(WINDOW_BITS, level);
+	}
+
+	public LzCodec() {
+		this(DEFAULT_LEVEL);
+	}
+
+	/**
+	 * @return length code (0 to LENGTH_CODES - 1) of a match length
+	 */
+	static int lengthCode(int length) {
+		int l = length - LzMatcher.MIN_MATCH;
+		if (l < 8) {
+			return l;
+		}
+		if (l == LzMatcher.MAX_MATCH - LzMatcher.MIN_MATCH) {
+			return LENGTH_CODES - 1;
+		}
+		int high = 31 - Integer.numberOfLeadingZeros(l);
+		return 4 * (high - 1) + ((l >>> (high - 2)) & 3);
+	}
+
+	/**
+	 * @return distance code of a match distance
+	 */
+	static int distanceCode(int distance) {
+		int d = distance - 1;
+		if (d < 4) {
+			return d;
+		}
+		int high = 31 - Integer.numberOfLeadingZeros(d);
+		return 2 * high + ((d >>> (high - 1)) & 1);
+	}
+
+	@Override
+	public int getBlockType() {
+		return HuffmanCompressor.BLOCK_LZ;
+	}
+
+	@Override
+	public String getName() {
+		return "lz";
+	}
+
+	/**
+	 * Every token waits for the previous one in the single bit stream, so a literal
+	 * takes about a step and a half; a match reads two codes and their extra bits and
+	 * then copies its bytes. Both tables are filled for every block.
+	 */
+	@Override
+	public long estimateDecodeCost(int length) {
+		long literals = 0, matches = 0;
+		for (int s = 0; s < 256; s++) {
+			literals += this.literalCounts[s];
+		}
+		for (long count: this.distanceCounts) {
+			matches += count;
+		}
+		long tables = (1L << this.literalCode.getMaxLength()) + (1L << this.distanceCode.getMaxLength());
+		return literals * 3 / 2 + matches * 3 + (length - literals) / 4 + tables / 16;
+	}
+
+	/**
+	 * Every block is parsed on its own, nothing is kept between blocks.
+	 */
+	@Override
+	public void reset() {
+		this.parsedLength = -1;
+	}
+
+	/**
+	 * Parses the block and counts the bits of both tables, the codes and the extra bits.
+	 */
+	@Override
+	public long estimateBits(byte[] src, int offset, int length, long[] counts) {
+		parse(src, offset, length, counts);
+		return TableSerializer.bits(this.literalCode, null) + TableSerializer.bits(this.distanceCode, null)
+				+ this.literalCode.cost(this.literalCounts) + this.distanceCode.cost(this.distanceCounts) + this.extraBits;
+	}
+
+	/* Parses the block into tokens and builds both codes from their frequencies */
+	private void parse(byte[] src, int offset, int length, long[] counts) {
+		this.matcher.parse(src, offset, length, this.tokens);
+		Arrays.fill(this.literalCounts, 0);
+		Arrays.fill(this.distanceCounts, 0);
+		long extra = 0;
+		int[] tokens = this.tokens.elements();
+		for (int t = 0; t < this.tokens.size(); t++) {
+			int token = tokens[t];
+			if (!LzMatcher.isMatch(token)) {
+				this.literalCounts[token]++;
+				continue;
+			}
+			int lengthCode = lengthCode(LzMatcher.length(token));
+			int distanceCode = distanceCode(LzMatcher.distance(token));
+			this.literalCounts[256 + lengthCode]++;
+			this.distanceCounts[distanceCode]++;
+			extra += LENGTH_EXTRA[lengthCode] + DISTANCE_EXTRA[distanceCode];
+		}
+		this.extraBits = extra;
+		this.literalCode = CanonicalCode.fromFrequencies(this.literalCounts);
+		this.distanceCode = CanonicalCode.fromFrequencies(this.distanceCounts);
+
+		this.parsedSrc = src;
+		this.parsedOffset = offset;
+		this.parsedLength = length;
+		System.arraycopy(counts, 0, this.parsedCounts, 0, BlockCodec.ALPHABET);
+	}
+
+	@Override
+	public void encode(byte[] src, int offset, int length, long[] counts, ByteArrayList out) {
+		if (src != this.parsedSrc || offset != this.parsedOffset || length != this.parsedLength
+				|| !Arrays.equals(counts, this.parsedCounts)) {
+			parse(src, offset, length, counts);
+		}
+		this.parsedLength = -1; // the block array is reused, the next block has to be parsed again
+
+		BitWriter writer = this.writer;
+		writer.reset(out);
+		TableSerializer.write(writer, this.literalCode, null);
+		TableSerializer.write(writer, this.distanceCode, null);
+		CanonicalCode literals = this.literalCode, distances = this.distanceCode;
+		int[] tokens = this.tokens.elements();
+		for (int t = 0; t < this.tokens.size(); t++) {
+			int token = tokens[t];
+			if (!LzMatcher.isMatch(token)) {
+				writer.writeBits(literals.getCode(token), literals.getLength(token));
+				continue;
+			}
+			int matchLength = LzMatcher.length(token), distance = LzMatcher.distance(token);
+			int lengthCode = lengthCode(matchLength), distanceCode = distanceCode(distance);
+			writer.writeBits(literals.getCode(256 + lengthCode), literals.getLength(256 + lengthCode));
+			writer.writeBits(matchLength - LzMatcher.MIN_MATCH - LENGTH_BASE[lengthCode], LENGTH_EXTRA[lengthCode]);
+			writer.writeBits(distances.getCode(distanceCode), distances.getLength(distanceCode));
+			writer.writeBits(distance - 1 - DISTANCE_BASE[distanceCode], DISTANCE_EXTRA[distanceCode]);
+		}
+		writer.flush();
+	}
+
+	@Override
+	public void decode(byte[] src, int offset, int length, byte[] dst, int dstOffset, int symbols) {
+		BitReader in = this.reader;
+		in.reset(src, offset, length);
+		CanonicalCode literals = TableSerializer.read(in, LITERAL_ALPHABET, null);
+		CanonicalCode distances = TableSerializer.read(in, DISTANCE_ALPHABET, null);
+		if (in.overrun()) {
+			throw new IllegalArgumentException("Truncated code tables.");
+		}
+		int literalMax = literals.getMaxLength(), distanceMax = distances.getMaxLength();
+		if (symbols > 0 && literalMax == 0) {
+			throw new IllegalArgumentException("Block has bytes but an empty table.");
+		}
+		literals.fillDecodeTable(this.literalTable);
+		distances.fillDecodeTable(this.distanceTable);
+
+		int position = dstOffset, end = dstOffset + symbols;
+		while (position < end) {
+			int entry = this.literalTable[in.peekBits(literalMax)];
+			if (entry < 0) {
+				throw new IllegalArgumentException("Invalid literal/length code.");
+			}
+			in.skipBits(entry & 0xF);
+			int symbol = entry >>> 4;
+			if (symbol < 256) {
+				dst[position++] = (byte) symbol;
+				continue;
+			}
+
+			int lengthCode = symbol - 256;
+			int matchLength = LzMatcher.MIN_MATCH + LENGTH_BASE[lengthCode] + in.readBits(LENGTH_EXTRA[lengthCode]);
+			if (distanceMax == 0) {
+				throw new IllegalArgumentException("Match without a distance table.");
+			}
+			entry = this.distanceTable[in.peekBits(distanceMax)];
+			if (entry < 0) {
+				throw new IllegalArgumentException("Invalid distance code.");
+			}
+			in.skipBits(entry & 0xF);
+			int distanceCode = entry >>> 4;
+			int distance = 1 + DISTANCE_BASE[distanceCode] + in.readBits(DISTANCE_EXTRA[distanceCode]);
+			if (distance > position - dstOffset || matchLength > end - position) {
+				throw new IllegalArgumentException("Match goes outside the block.");
+			}
+			copyMatch(dst, position, distance, matchLength);
+			position += matchLength;
+		}
+		if (in.overrun()) {
+			throw new IllegalArgumentException("Block ended before its last token.");
+		}
+	}
+
+	/* Copies a match, byte by byte when it overlaps itself so repeated bytes are extended */
+	static void copyMatch(byte[] dst, int position, int distance, int length) {
+		int from = position - distance;
+		if (distance >= length) {
+			System.arraycopy(dst, from, dst, position, length);
+		} else {
+			for (int i = 0; i < length; i++) {
+				dst[position + i] = dst[from + i];
+			}
+		}
+	}
+
+	public int getLevel() {return matcher.getLevel();}
+}
@@ -0,0 +1,176 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.IntArrayList;
+
+/**
+ * Finds LZ77 matches with hash chains over a sliding window and turns a block into
+ * a sequence of tokens: literals and (length, distance) pairs. Every position is
+ * hashed by its next MIN_MATCH bytes, head holds the last position with every hash
+ * and prev links every position to the previous one with the same hash, so the
+ * candidates for a match are found by walking the chain from the newest to the
+ * oldest.
+ *
+ * The level trades search effort for speed, like zlib's levels: how many candidates
+ * are looked at, how long a match is good enough to stop looking, and from
+ * LAZY_LEVEL on, whether the match starting at the next byte is tried before taking
+ * a match (lazy matching), emitting a literal if the next one is longer.
+ *
+ * A token is a literal when it's below 256, otherwise it's a match with the length
+ * in the bits from DISTANCE_BITS up and the distance in the lowest DISTANCE_BITS.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class LzMatcher {
+
+	static final int MIN_MATCH = 3;
+	static final int MAX_MATCH = 258;
+	static final int MIN_LEVEL = 1;
+	static final int MAX_LEVEL = 9;
+	static final int DISTANCE_BITS = 21;
+	static final int MAX_WINDOW_BITS = DISTANCE_BITS - 1;
+
+	private static final int HASH_BITS = 15;
+	private static final int LAZY_LEVEL = 4;
+	// search effort of every level, from zlib's configuration table
+	private static final int[] MAX_CHAIN = {0, 4, 8, 32, 16, 32, 128, 256, 1024, 4096};
+	private static final int[] NICE_LENGTH = {0, 8, 16, 32, 16, 32, 128, 128, 258, 258};
+	private static final int[] MAX_INSERT = {0, 4, 5, 6, MAX_MATCH, MAX_MATCH, MAX_MATCH, MAX_MATCH, MAX_MATCH, MAX_MATCH};
+
+	private final int window;
+	private final int level;
+	private final int[] head = new int[1 << HASH_BITS];
+	private final int[] prev;
+
+	// longest match found by the last search
+	private int matchLength;
+	private int matchDistance;
+
+	/**
+	 * @param windowBits log2 of the farthest distance a match can reach
+	 * @param level search effort, between MIN_LEVEL and MAX_LEVEL
+	 */
+	LzMatcher(int windowBits, int level) {
+		if (windowBits < 8 || windowBits > MAX_WINDOW_BITS) {
+			throw new IllegalArgumentException("Window bits must be between 8 and " + MAX_WINDOW_BITS + ".");
+		}
+		if (level < MIN_LEVEL || level > MAX_LEVEL) {
+			throw new IllegalArgumentException("Level must be between " + MIN_LEVEL + " and " + MAX_LEVEL + ".");
+		}
+		this.window = 1 << windowBits;
+		this.level = level;
+		this.prev = new int[this.window];
+	}
+
+	static boolean isMatch(int token) {
+		return token >= 256;
+	}
+
+	static int length(int token) {
+		return token >>> DISTANCE_BITS;
+	}
+
+	static int distance(int token) {
+		return token & ((1 << DISTANCE_BITS) - 1);
+	}
+
+	/**
+	 * Replaces the contents of tokens with the tokens of src[offset, offset + length).
+	 * Matches only reach back to the start of the block.
+	 */
+	void parse(byte[] src, int offset, int length, IntArrayList tokens) {
+		tokens.clear();
+		Arrays.fill(this.head, -1);
+		boolean lazy = this.level >= LAZY_LEVEL;
+		int nice = NICE_LENGTH[this.level];
+		int maxInsert = MAX_INSERT[this.level];
+
+		int i = 0;
+		boolean searched = false; // true when the match at i was already found by the lazy search
+		while (i < length) {
+			if (!searched) {
+				search(src, offset, length, i);
+				insert(src, offset, length, i);
+			}
+			searched = false;
+			int matchLength = this.matchLength, matchDistance = this.matchDistance;
+			if (matchLength < MIN_MATCH) {
+				tokens.add(src[offset + i] & 0xFF);
+				i++;
+				continue;
+			}
+			int inserted = i + 1; // next position to be inserted
+			if (lazy && matchLength < nice && i + 1 < length) {
+				search(src, offset, length, i + 1);
+				insert(src, offset, length, i + 1);
+				if (this.matchLength > matchLength) { // the next byte starts a better match
+					tokens.add(src[offset + i] & 0xFF);
+					i++;
+					searched = true;
+					continue;
+				}
+				inserted = i + 2;
+			}
+			tokens.add(matchLength << DISTANCE_BITS | matchDistance);
+			if (matchLength <= maxInsert) {
+				for (int p = inserted; p < i + matchLength; p++) {
+					insert(src, offset, length, p);
+				}
+			}
+			i += matchLength;
+		}
+	}
+
+	/* Links position p into the chain of its hash */
+	private void insert(byte[] src, int offset, int length, int p) {
+		if (p + MIN_MATCH > length) {
+			return;
+		}
+		int hash = hash(src, offset + p);
+		this.prev[p & (this.window - 1)] = this.head[hash];
+		this.head[hash] = p;
+	}
+
+	/* Walks the chain of position p, leaving the longest match in matchLength and matchDistance */
+	private void search(byte[] src, int offset, int length, int p) {
+		int best = MIN_MATCH - 1;
+		int bestDistance = 0;
+		int limit = Math.min(MAX_MATCH, length - p);
+		if (limit >= MIN_MATCH) {
+			int nice = Math.min(NICE_LENGTH[this.level], limit);
+			int start = offset + p;
+			int candidate = this.head[hash(src, start)];
+			for (int chain = MAX_CHAIN[this.level]; candidate >= 0 && p - candidate <= this.window && chain > 0; chain--) {
+				int from = offset + candidate;
+				// the byte that would make the match longer than the best one is checked first
+				if (src[from + best] == src[start + best] && src[from] == src[start] && src[from + 1] == src[start + 1]) {
+					int matched = 2;
+					while (matched < limit && src[from + matched] == src[start + matched]) {
+						matched++;
+					}
+					if (matched > best) {
+						best = matched;
+						bestDistance = p - candidate;
+						if (matched >= nice) {
+							break;
+						}
+					}
+				}
+				candidate = this.prev[candidate & (this.window - 1)];
+			}
+		}
+		this.matchLength = best >= MIN_MATCH ? best : 0;
+		this.matchDistance = bestDistance;
+	}
+
+	private static int hash(byte[] src, int position) {
+		int bytes = (src[position] & 0xFF) << 16 | (src[position + 1] & 0xFF) << 8 | (src[position + 2] & 0xFF);
+		return (bytes * 0x9E3779B1) >>> (32 - HASH_BITS);
+	}
+
+	int getLevel() {return level;}
+
+	int getWindow() {return window;}
+}
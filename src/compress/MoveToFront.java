@@ -0,0 +1,74 @@
+package compress;
+
+import list.ByteArrayList;
+
+/**
+ * Move-to-front transform: every byte is replaced by its position in a list of the
+ * 256 byte values, and is then moved to the front of the list. Bytes that repeat
+ * close together become small numbers, so after a Burrows-Wheeler transform most
+ * of the block turns into zeros and ones.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class MoveToFront implements BlockTransform {
+
+	private final byte[] order = new byte[Histogram.BYTE_ALPHABET];
+
+	@Override
+	public int getStage() {
+		return TransformPipeline.MTF;
+	}
+
+	@Override
+	public String getName() {
+		return "mtf";
+	}
+
+	@Override
+	public void forward(byte[] src, int offset, int length, ByteArrayList out) {
+		resetOrder();
+		byte[] order = this.order;
+		int size = out.size();
+		out.setSize(size + length);
+		byte[] dst = out.elements();
+		for (int i = 0; i < length; i++) {
+			byte value = src[offset + i];
+			int position = 0;
+			byte moved = order[0];
+			// shift every value in front of the byte one place back while looking for it
+			while (moved != value) {
+				byte next = order[++position];
+				order[position] = moved;
+				moved = next;
+			}
+			order[0] = value;
+			dst[size + i] = (byte) position;
+		}
+	}
+
+	@Override
+	public void inverse(byte[] src, int offset, int length, int limit, ByteArrayList out) {
+		if (length > limit) { // every byte is one value
+			throw new IllegalArgumentException("Move-to-front data decodes to more than " + limit + " bytes.");
+		}
+		resetOrder();
+		byte[] order = this.order;
+		int size = out.size();
+		out.setSize(size + length);
+		byte[] dst = out.elements();
+		for (int i = 0; i < length; i++) {
+			int position = src[offset + i] & 0xFF;
+			byte value = order[position];
+			System.arraycopy(order, 0, order, 1, position);
+			order[0] = value;
+			dst[size + i] = value;
+		}
+	}
+
+	private void resetOrder() {
+		for (int b = 0; b < this.order.length; b++) {
+			this.order[b] = (byte) b;
+		}
+	}
+}
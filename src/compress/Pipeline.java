@@ -0,0 +1,162 @@
+package compress;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Three stage pipeline used to compress or decompress a single stream: a reader
+ * thread fills blocks from the input, a compute thread encodes or decodes them and
+ * a writer thread writes them to the output. While the compute stage works on one
+ * block the reader is already reading the next one and the writer is writing the
+ * previous one, so the total time gets close to the slowest of I/O and CPU instead
+ * of their sum.
+ *
+ * The stages are connected by bounded queues and a fixed ring of blocks circulates
+ * between them (free -> read -> computed -> written -> free). When one stage is slow
+ * the others block once the ring is used up, which bounds memory to ringSize blocks.
+ * Blocks keep their order since every stage is a single thread.
+ *
+ * If any stage throws, the other stages are interrupted and run() throws the first error.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class Pipeline {
+
+	/** Stage that fills a block, returns false when there is nothing left. */
+	interface Source {
+		boolean fill(Block block) throws IOException;
+	}
+
+	/** Stage that processes a filled block. */
+	interface Stage {
+		void process(Block block) throws IOException;
+	}
+
+	private static final Block END = new Block(1); // marks the end of the stream in the queues
+
+	private final int ringSize;
+	private final int blockCapacity;
+
+	/**
+	 * @param ringSize amount of blocks circulating, at least 1
+	 * @param blockCapacity initial size of every block's raw buffer
+	 */
+	Pipeline(int ringSize, int blockCapacity) {
+		if (ringSize < 1) {
+			throw new IllegalArgumentException("Ring size must be at least 1.");
+		}
+		this.ringSize = ringSize;
+		this.blockCapacity = blockCapacity;
+	}
+
+	/**
+	 * Runs the three stages in their own threads and waits for them to finish.
+	 */
+	void run(Source source, Stage compute, Stage sink) throws IOException {
+		BlockingQueue<Block> free = new ArrayBlockingQueue<Block>(this.ringSize);
+		BlockingQueue<Block> read = new ArrayBlockingQueue<Block>(this.ringSize + 1);
+		BlockingQueue<Block> computed = new ArrayBlockingQueue<Block>(this.ringSize + 1);
+		for (int i = 0; i < this.ringSize; i++) {
+			free.add(new Block(this.blockCapacity));
+		}
+
+		AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[3];
+
+		threads[0] = new Thread(() -> {
+			try {
+				long sequence = 0;
+				while (true) {
+					Block block = free.take();
+					block.sequence = sequence++;
+					if (!source.fill(block)) {
+						break;
+					}
+					read.put(block);
+				}
+				read.put(END);
+			} catch (Throwable e) {
+				fail(e, error, threads);
+			}
+		}, "pipeline-reader");
+
+		threads[1] = new Thread(() -> {
+			try {
+				for (Block block = read.take(); block != END; block = read.take()) {
+					compute.process(block);
+					computed.put(block);
+				}
+				computed.put(END);
+			} catch (Throwable e) {
+				fail(e, error, threads);
+			}
+		}, "pipeline-compute");
+
+		threads[2] = new Thread(() -> {
+			try {
+				for (Block block = computed.take(); block != END; block = computed.take()) {
+					sink.process(block);
+					free.put(block);
+				}
+			} catch (Throwable e) {
+				fail(e, error, threads);
+			}
+		}, "pipeline-writer");
+
+		for (Thread thread: threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		try {
+			for (Thread thread: threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			for (Thread thread: threads) {
+				thread.interrupt();
+			}
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the pipeline.", e);
+		}
+
+		Throwable failure = error.get();
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IOException(failure);
+		}
+	}
+
+	/* Records the first error and interrupts every stage so none stays blocked on a queue */
+	private static void fail(Throwable e, AtomicReference<Throwable> error, Thread[] threads) {
+		if (error.compareAndSet(null, e)) {
+			for (Thread thread: threads) {
+				if (thread != Thread.currentThread()) {
+					thread.interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the three stages one after the other on the calling thread, with a single block.
+	 */
+	void runSequential(Source source, Stage compute, Stage sink) throws IOException {
+		Block block = new Block(this.blockCapacity);
+		for (long sequence = 0; ; sequence++) {
+			block.sequence = sequence;
+			if (!source.fill(block)) {
+				return;
+			}
+			compute.process(block);
+			sink.process(block);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import list.ByteArrayList;
+
+/**
+ * CRC-32 and length of the bytes of a compressed stream, written at its end as a
+ * BLOCK_CHECKSUM block so decompress can tell a corrupt or truncated stream from a
+ * good one. A checksum block covers the bytes since the previous one, so streams
+ * written in parts (appended blocks, concatenated segments) end every part with
+ * their own checksum and still decode as one stream.
+ *
+ * Payload of a BLOCK_CHECKSUM block, which has no raw bytes:
+ * <pre>
+ *   crc      CRC-32 of the bytes, 4 bytes big endian
+ *   length   amount of bytes (VarInt)
+ * </pre>
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class StreamChecksum {
+
+	private final CRC32 crc = new CRC32();
+	private long length;
+	private boolean closed; // true when the last block was a checksum
+
+	void update(byte[] src, int offset, int length) {
+		this.crc.update(src, offset, length);
+		this.length += length;
+		this.closed = false;
+	}
+
+	/**
+	 * Writes the checksum block of the bytes since the last one and starts over.
+	 */
+	void write(OutputStream out) throws IOException {
+		Block block = new Block(0);
+		block.type = HuffmanCompressor.BLOCK_CHECKSUM;
+		block.rawLength = 0;
+		ByteArrayList payload = block.payload;
+		int value = (int) this.crc.getValue();
+		payload.add((byte) (value >>> 24));
+		payload.add((byte) (value >>> 16));
+		payload.add((byte) (value >>> 8));
+		payload.add((byte) value);
+		VarInt.write(payload, this.length);
+		HuffmanCompressor.writeBlock(out, block);
+		reset();
+	}
+
+	/**
+	 * Checks the bytes since the last checksum against a checksum block and starts over.
+	 *
+	 * @throws IOException if they don't match
+	 */
+	void verify(Block block) throws IOException {
+		byte[] payload = block.payload.elements();
+		int size = block.payload.size();
+		long expectedLength;
+		try {
+			if (size < 4 || block.rawLength != 0) {
+				throw new IllegalArgumentException("Truncated checksum.");
+			}
+			expectedLength = VarInt.read(payload, 4, size);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Block " + block.sequence + " is corrupt: " + e.getMessage(), e);
+		}
+		int expected = (payload[0] & 0xFF) << 24 | (payload[1] & 0xFF) << 16 | (payload[2] & 0xFF) << 8 | payload[3] & 0xFF;
+		if (expectedLength != this.length || expected != (int) this.crc.getValue()) {
+			throw new IOException("Checksum mismatch at block " + block.sequence + ", the stream is corrupt.");
+		}
+		reset();
+		this.closed = true;
+	}
+
+	/**
+	 * @return true if the last block was a checksum block, so the stream isn't cut short
+	 */
+	boolean isClosed() {return closed;}
+
+	long getLength() {return length;}
+
+	private void reset() {
+		this.crc.reset();
+		this.length = 0;
+	}
+}
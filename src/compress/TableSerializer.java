@@ -0,0 +1,174 @@
+package compress;
+
+/**
+ * Writes and reads canonical code tables in a compact form. Since a canonical code
+ * is determined by its code lengths, only the lengths are stored, as a sequence of
+ * 4 bit values compressed with these tokens:
+ * <pre>
+ *   0    + 4 bits   one value
+ *   10   + 3 bits   repeat the previous value 3 to 10 times
+ *   11   + 8 bits   3 to 258 zeros
+ * </pre>
+ * Most byte tables have long runs of unused symbols (length 0) and neighbouring
+ * symbols with the same length, so a table takes tens of bytes instead of 129.
+ *
+ * A table can also be written as a diff against the previous table: the values are
+ * then (length - previousLength) mod 16, which are all zeros for symbols whose
+ * length didn't change, so a table that barely changed takes a few bytes. The
+ * writer measures both forms and keeps the smaller one, the first bit tells which:
+ * <pre>
+ *   0   full table, the values are the lengths
+ *   1   diff against the previous table
+ * </pre>
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class TableSerializer {
+
+	private static final int MIN_RUN = 3;
+	private static final int MAX_REPEAT = MIN_RUN + 7;   // 3 bit repeat count
+	private static final int MAX_ZEROS = MIN_RUN + 255;  // 8 bit zero count
+
+	private TableSerializer() {}
+
+	/**
+	 * Longest a table over alphabetSize symbols can be, in bits: the mode bit plus
+	 * every value written one by one.
+	 */
+	public static int maxBits(int alphabetSize) {
+		return 1 + 5 * alphabetSize;
+	}
+
+	/**
+	 * Writes code, as a diff against previous when that's smaller.
+	 *
+	 * @param writer writer receiving the bits
+	 * @param code table to be written
+	 * @param previous table the reader will already have, null if none
+	 */
+	public static void write(BitWriter writer, CanonicalCode code, CanonicalCode previous) {
+		int[] full = code.getLengths();
+		int[] diff = diff(code, previous);
+		if (diff != null && valueBits(diff) < valueBits(full)) {
+			writer.writeBits(1, 1);
+			writeValues(writer, diff);
+		} else {
+			writer.writeBits(0, 1);
+			writeValues(writer, full);
+		}
+	}
+
+	/**
+	 * @return amount of bits write would use for code
+	 */
+	public static long bits(CanonicalCode code, CanonicalCode previous) {
+		long bits = valueBits(code.getLengths());
+		int[] diff = diff(code, previous);
+		if (diff != null) {
+			bits = Math.min(bits, valueBits(diff));
+		}
+		return 1 + bits;
+	}
+
+	/**
+	 * Reads a table written by write.
+	 *
+	 * @param reader reader positioned at the table
+	 * @param alphabetSize amount of symbols in the table
+	 * @param previous the table the writer had as previous, null if none
+	 * @return table read
+	 * @throws IllegalArgumentException if the table is corrupt
+	 */
+	public static CanonicalCode read(BitReader reader, int alphabetSize, CanonicalCode previous) {
+		boolean isDiff = reader.readBits(1) == 1;
+		int[] values = new int[alphabetSize];
+
+		int previousValue = 0;
+		for (int i = 0; i < alphabetSize; ) {
+			int run;
+			if (reader.readBits(1) == 0) {
+				previousValue = reader.readBits(4);
+				values[i++] = previousValue;
+				continue;
+			} else if (reader.readBits(1) == 0) {
+				run = MIN_RUN + reader.readBits(3);
+			} else {
+				run = MIN_RUN + reader.readBits(8);
+				previousValue = 0;
+			}
+			if (i + run > alphabetSize) {
+				throw new IllegalArgumentException("Run goes past the end of the table.");
+			}
+			for (int end = i + run; i < end; i++) {
+				values[i] = previousValue;
+			}
+		}
+
+		if (isDiff) {
+			if (previous == null || previous.getAlphabetSize() != alphabetSize) {
+				throw new IllegalArgumentException("Table is a diff but there is no previous table.");
+			}
+			for (int s = 0; s < alphabetSize; s++) {
+				values[s] = (previous.getLength(s) + values[s]) & 0xF;
+			}
+		}
+		return new CanonicalCode(values);
+	}
+
+	/* Values of the diff form, null when there is no compatible previous table */
+	private static int[] diff(CanonicalCode code, CanonicalCode previous) {
+		if (previous == null || previous.getAlphabetSize() != code.getAlphabetSize()) {
+			return null;
+		}
+		int[] values = new int[code.getAlphabetSize()];
+		for (int s = 0; s < values.length; s++) {
+			values[s] = (code.getLength(s) - previous.getLength(s)) & 0xF;
+		}
+		return values;
+	}
+
+	private static long valueBits(int[] values) {
+		return writeValues(null, values);
+	}
+
+	/* Writes the tokens for values, or only counts their bits when writer is null */
+	private static long writeValues(BitWriter writer, int[] values) {
+		long bits = 0;
+		int previousValue = 0;
+		for (int i = 0; i < values.length; ) {
+			int value = values[i];
+			int run = 1;
+			while (i + run < values.length && values[i + run] == value) {
+				run++;
+			}
+
+			if (value == 0 && run >= MIN_RUN) {
+				run = Math.min(run, MAX_ZEROS);
+				if (writer != null) {
+					writer.writeBits(0b11, 2);
+					writer.writeBits(run - MIN_RUN, 8);
+				}
+				bits += 10;
+				previousValue = 0;
+			} else if (value == previousValue && i > 0 && run >= MIN_RUN) {
+				run = Math.min(run, MAX_REPEAT);
+				if (writer != null) {
+					writer.writeBits(0b10, 2);
+					writer.writeBits(run - MIN_RUN, 3);
+				}
+				bits += 5;
+			} else {
+				run = 1;
+				if (writer != null) {
+					writer.writeBits(0, 1);
+					writer.writeBits(value, 4);
+				}
+				bits += 5;
+				previousValue = value;
+			}
+			i += run;
+		}
+		return bits;
+	}
+}
@@ -0,0 +1,148 @@
+package compress;
+
+import list.ByteArrayList;
+
+/**
+ * Chain of BlockTransforms applied to a block before entropy coding. The stages
+ * always run in the order BWT, MTF, RLE (the order bzip2 uses), a pipeline is
+ * configured with the set of stages it runs, as a combination of the stage bits.
+ * A compressed block stores that combination, so inverse undoes any of them no
+ * matter how the pipeline was configured.
+ *
+ * The results are kept in buffers owned by the pipeline, so it isn't thread safe,
+ * every thread needs its own instance.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class TransformPipeline {
+
+	public static final int BWT = 1; // Burrows-Wheeler transform
+	public static final int MTF = 2; // move-to-front
+	public static final int RLE = 4; // zero run length
+	public static final int ALL = BWT | MTF | RLE;
+
+	private final int stages;
+	private final BlockTransform[] transforms = {new BurrowsWheeler(), new MoveToFront(), new ZeroRunLength()};
+	private final ByteArrayList first = new ByteArrayList(1024);
+	private final ByteArrayList second = new ByteArrayList(1024);
+
+	/**
+	 * @param stages stages to run, a combination of BWT, MTF and RLE, 0 for none
+	 */
+	public TransformPipeline(int stages) {
+		if ((stages & ~ALL) != 0) {
+			throw new IllegalArgumentException("Unknown transform stages " + stages + ".");
+		}
+		this.stages = stages;
+	}
+
+	/**
+	 * @param names comma separated stage names, such as "bwt,mtf,rle", or "none"
+	 * @throws IllegalArgumentException if a name isn't a stage
+	 */
+	public static TransformPipeline parse(String names) {
+		int stages = 0;
+		if (!names.equals("none")) {
+			BlockTransform[] known = new TransformPipeline(0).transforms;
+			for (String name: names.split(",")) {
+				int stage = 0;
+				for (BlockTransform transform: known) {
+					if (transform.getName().equals(name.trim())) {
+						stage = transform.getStage();
+					}
+				}
+				if (stage == 0) {
+					throw new IllegalArgumentException("Unknown transform " + name + ".");
+				}
+				stages |= stage;
+			}
+		}
+		return new TransformPipeline(stages);
+	}
+
+	/**
+	 * Runs the configured stages over src[offset, offset + length).
+	 *
+	 * @return transformed bytes, owned by the pipeline and overwritten by the next call
+	 */
+	public ByteArrayList forward(byte[] src, int offset, int length) {
+		ByteArrayList result = this.first;
+		result.clear();
+		result.addAll(src, offset, length);
+		for (BlockTransform transform: this.transforms) {
+			if ((this.stages & transform.getStage()) != 0) {
+				result = apply(transform, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Undoes the given stages on src[offset, offset + length), in reverse order. No
+	 * stage may decode to more bytes than its forward step was given: rawLength for
+	 * the first stage, and for the ones after BWT rawLength plus its primary index.
+	 *
+	 * @param stages stages the bytes went through, as stored in the block
+	 * @param rawLength length of the original bytes
+	 * @return original bytes, owned by the pipeline and overwritten by the next call
+	 * @throws IllegalArgumentException if the bytes are corrupt, don't decode to
+	 *         rawLength bytes or stages is invalid
+	 */
+	public ByteArrayList inverse(int stages, byte[] src, int offset, int length, int rawLength) {
+		if ((stages & ~ALL) != 0) {
+			throw new IllegalArgumentException("Unknown transform stages " + stages + ".");
+		}
+		// BWT is the first stage, it adds the primary index (a VarInt no larger than rawLength)
+		int limit = (stages & BWT) != 0 ? rawLength + VarInt.size(rawLength) : rawLength;
+		ByteArrayList result = this.first;
+		result.clear();
+		result.addAll(src, offset, length);
+		for (int t = this.transforms.length - 1; t >= 0; t--) {
+			if ((stages & this.transforms[t].getStage()) != 0) {
+				result = undo(this.transforms[t], result, t == 0 ? rawLength : limit);
+			}
+		}
+		if (result.size() != rawLength) {
+			throw new IllegalArgumentException("Transformed bytes don't decode to the block's length.");
+		}
+		return result;
+	}
+
+	/* Runs one stage from one buffer into the other, returns the buffer with the result */
+	private ByteArrayList apply(BlockTransform transform, ByteArrayList in) {
+		ByteArrayList out = in == this.first ? this.second : this.first;
+		out.clear();
+		transform.forward(in.elements(), 0, in.size(), out);
+		return out;
+	}
+
+	/* Undoes one stage from one buffer into the other, returns the buffer with the result */
+	private ByteArrayList undo(BlockTransform transform, ByteArrayList in, int limit) {
+		ByteArrayList out = in == this.first ? this.second : this.first;
+		out.clear();
+		transform.inverse(in.elements(), 0, in.size(), limit, out);
+		return out;
+	}
+
+	/**
+	 * @return stages the pipeline runs
+	 */
+	public int getStages() {
+		return this.stages;
+	}
+
+	/**
+	 * @return names of the stages, as accepted by parse
+	 */
+	@Override
+	public String toString() {
+		StringBuilder names = new StringBuilder();
+		for (BlockTransform transform: this.transforms) {
+			if ((this.stages & transform.getStage()) != 0) {
+				names.append(names.length() > 0 ? "," : "").append(transform.getName());
+			}
+		}
+		return names.length() > 0 ? names.toString() : "none";
+	}
+}
@@ -0,0 +1,105 @@
+package compress;
+
+/**
+ * Frequency model for data that keeps growing, such as logs that are appended to.
+ * Instead of recounting everything, the model only looks at the counts of every
+ * new block (O(appended)) and decides with a cost check whether the current code
+ * table is still good enough for it:
+ * <pre>
+ *   current  = bits to code the block with the current table
+ *   rebuilt  = bits to code the block with a table built for it + bits of that table
+ *   rebuild if current - rebuilt > threshold * current
+ * </pre>
+ * The new table is built from the block alone, so when the data shifts the table
+ * follows it right away instead of averaging in the data before the shift. Tables
+ * built by the model always have an ESCAPE code, so a later block with bytes the
+ * table has never seen can still reuse it.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class UpdatableModel {
+
+	public static final double DEFAULT_THRESHOLD = 0.01; // rebuild when it saves more than 1%
+
+	private CanonicalCode code;       // table in use, null before the first block
+	private final double threshold;
+	private long absorbedBytes;       // bytes of every block given to update
+	private int rebuilds;
+	private int reuses;
+
+	/**
+	 * @param code table currently in use (for example the last table of a compressed file), null if none
+	 * @param threshold minimum relative gain that justifies writing a new table
+	 */
+	public UpdatableModel(CanonicalCode code, double threshold) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Threshold cannot be negative.");
+		}
+		this.code = code;
+		this.threshold = threshold;
+	}
+
+	public UpdatableModel(CanonicalCode code) {
+		this(code, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Checks the frequencies of a new block against the current table and returns
+	 * the table the block should be coded with: the current one if it's still good
+	 * enough, otherwise a new table built for the block, which becomes the current table.
+	 *
+	 * @param blockCounts frequency of every byte in the new block
+	 * @return table for the block
+	 */
+	public CanonicalCode update(long[] blockCounts) {
+		for (int s = 0; s < Histogram.BYTE_ALPHABET; s++) {
+			this.absorbedBytes += blockCounts[s];
+		}
+
+		CanonicalCode candidate = buildTable(blockCounts);
+		if (this.code != null) {
+			long current = currentCost(blockCounts);
+			long rebuilt = candidate.cost(blockCounts) + BlockCodec.tableBits(candidate, this.code);
+			if (current != Long.MAX_VALUE && current - rebuilt <= this.threshold * current) {
+				this.reuses++;
+				return this.code;
+			}
+		}
+
+		this.code = candidate;
+		this.rebuilds++;
+		return candidate;
+	}
+
+	/* Bits needed by the current table, Long.MAX_VALUE if it can't code some byte */
+	private long currentCost(long[] blockCounts) {
+		if (this.code.getLength(BlockCodec.ESCAPE) > 0) {
+			return FrequencyEstimate.costWithEscape(this.code, blockCounts);
+		}
+		long cost = this.code.cost(blockCounts);
+		return cost < 0 ? Long.MAX_VALUE : cost;
+	}
+
+	/* Table for the given counts with an ESCAPE code for bytes that didn't appear */
+	static CanonicalCode buildTable(long[] blockCounts) {
+		long[] frequencies = new long[BlockCodec.ALPHABET];
+		System.arraycopy(blockCounts, 0, frequencies, 0, Histogram.BYTE_ALPHABET);
+		frequencies[BlockCodec.ESCAPE] = 1;
+		return CanonicalCode.fromFrequencies(frequencies);
+	}
+
+	public CanonicalCode getCode() {return code;}
+
+	public long getAbsorbedBytes() {return absorbedBytes;}
+
+	public int getRebuilds() {return rebuilds;}
+
+	public int getReuses() {return reuses;}
+
+	@Override
+	public String toString() {
+		return String.format("Absorbed %,d bytes, %d table(s) rebuilt, %d block(s) reused the table",
+				absorbedBytes, rebuilds, reuses);
+	}
+}
@@ -0,0 +1,103 @@
+package compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import list.ByteArrayList;
+
+/**
+ * Variable length encoding for non negative integers (LEB128): 7 bits per byte,
+ * lowest bits first, the highest bit of every byte tells if another byte follows.
+ * Small values such as block lengths and counts take one or two bytes.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class VarInt {
+
+	public static final int MAX_SIZE = 10; // bytes of the largest value, 64 bits in groups of 7
+
+	private VarInt() {}
+
+	/**
+	 * @return amount of bytes needed to write value
+	 */
+	public static int size(long value) {
+		int size = 1;
+		while ((value >>>= 7) != 0) {
+			size++;
+		}
+		return size;
+	}
+
+	public static void write(ByteArrayList out, long value) {
+		checkValue(value);
+		while ((value & ~0x7FL) != 0) {
+			out.add((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.add((byte) value);
+	}
+
+	public static void write(OutputStream out, long value) throws IOException {
+		checkValue(value);
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Reads the value starting at data[position], the caller advances its position
+	 * by size(value) since the writer always uses the shortest encoding.
+	 *
+	 * @throws IllegalArgumentException if the value goes past the end of data
+	 */
+	public static long read(byte[] data, int position, int end) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position >= end) {
+				throw new IllegalArgumentException("Truncated variable length integer.");
+			}
+			int b = data[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Variable length integer is too long.");
+	}
+
+	/**
+	 * Reads a value from in.
+	 *
+	 * @return value read, or -1 if the stream ended before its first byte
+	 * @throws EOFException if the stream ends in the middle of the value
+	 */
+	public static long read(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				if (shift == 0) {
+					return -1;
+				}
+				throw new EOFException("Truncated variable length integer.");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Variable length integer is too long.");
+	}
+
+	private static void checkValue(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value cannot be negative.");
+		}
+	}
+}
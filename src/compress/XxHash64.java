@@ -0,0 +1,91 @@
+package compress;
+
+/**
+ * 64 bit xxHash (XXH64) of byte arrays, a non cryptographic hash that runs at
+ * several bytes per cycle: the input is read 8 bytes at a time into four
+ * independent lanes, which are only merged at the end. Results match the reference
+ * implementation, bytes are read as little endian.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class XxHash64 {
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	private XxHash64() {
+	}
+
+	/**
+	 * @return hash of src[offset, offset + length)
+	 */
+	static long hash(byte[] src, int offset, int length, long seed) {
+		int i = offset, end = offset + length;
+		long hash;
+		if (length >= 32) {
+			long v1 = seed + PRIME1 + PRIME2, v2 = seed + PRIME2, v3 = seed, v4 = seed - PRIME1;
+			for (int limit = end - 32; i <= limit; i += 32) {
+				v1 = round(v1, readLong(src, i));
+				v2 = round(v2, readLong(src, i + 8));
+				v3 = round(v3, readLong(src, i + 16));
+				v4 = round(v4, readLong(src, i + 24));
+			}
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = merge(hash, v1);
+			hash = merge(hash, v2);
+			hash = merge(hash, v3);
+			hash = merge(hash, v4);
+		} else {
+			hash = seed + PRIME5;
+		}
+		hash += length;
+
+		// the tail, 8, 4 and then 1 byte at a time
+		for (; i + 8 <= end; i += 8) {
+			hash ^= round(0, readLong(src, i));
+			hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+		}
+		if (i + 4 <= end) {
+			hash ^= (readInt(src, i) & 0xFFFFFFFFL) * PRIME1;
+			hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+			i += 4;
+		}
+		for (; i < end; i++) {
+			hash ^= (src[i] & 0xFF) * PRIME5;
+			hash = Long.rotateLeft(hash, 11) * PRIME1;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= PRIME2;
+		hash ^= hash >>> 29;
+		hash *= PRIME3;
+		hash ^= hash >>> 32;
+		return hash;
+	}
+
+	static long hash(byte[] src, int offset, int length) {
+		return hash(src, offset, length, 0);
+	}
+
+	private static long round(long accumulator, long lane) {
+		accumulator += lane * PRIME2;
+		return Long.rotateLeft(accumulator, 31) * PRIME1;
+	}
+
+	private static long merge(long hash, long accumulator) {
+		hash ^= round(0, accumulator);
+		return hash * PRIME1 + PRIME4;
+	}
+
+	private static long readLong(byte[] src, int i) {
+		return (readInt(src, i) & 0xFFFFFFFFL) | (long) readInt(src, i + 4) << 32;
+	}
+
+	private static int readInt(byte[] src, int i) {
+		return (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16 | (src[i + 3] & 0xFF) << 24;
+	}
+}
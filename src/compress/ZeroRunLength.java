@@ -0,0 +1,119 @@
+package compress;
+
+import java.util.Arrays;
+
+import list.ByteArrayList;
+
+/**
+ * Run length coding of zeros, as bzip2 does after move-to-front. A run of n zeros
+ * is written as n in bijective base 2 with the digits RUNA (byte 0, worth 1) and
+ * RUNB (byte 1, worth 2), lowest digit first, so a run takes about log2(n) bytes
+ * and a single zero takes one.
+ * The other values move up by one to make room: 1..253 become 2..254, and 254 and
+ * 255 become ESCAPE followed by 0 or 1, which is rare after move-to-front.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public final class ZeroRunLength implements BlockTransform {
+
+	private static final int RUNA = 0;
+	private static final int RUNB = 1;
+	private static final int ESCAPE = 255;
+
+	@Override
+	public int getStage() {
+		return TransformPipeline.RLE;
+	}
+
+	@Override
+	public String getName() {
+		return "rle";
+	}
+
+	@Override
+	public void forward(byte[] src, int offset, int length, ByteArrayList out) {
+		int end = offset + length;
+		int run = 0;
+		for (int i = offset; i < end; i++) {
+			int value = src[i] & 0xFF;
+			if (value == 0) {
+				run++;
+				continue;
+			}
+			if (run > 0) {
+				writeRun(run, out);
+				run = 0;
+			}
+			if (value < ESCAPE - 1) {
+				out.add((byte) (value + 1));
+			} else {
+				out.add((byte) ESCAPE);
+				out.add((byte) (value - (ESCAPE - 1)));
+			}
+		}
+		if (run > 0) {
+			writeRun(run, out);
+		}
+	}
+
+	/* Writes run in bijective base 2 */
+	private static void writeRun(int run, ByteArrayList out) {
+		while (run > 0) {
+			if ((run & 1) == 1) {
+				out.add((byte) RUNA);
+				run = (run - 1) >>> 1;
+			} else {
+				out.add((byte) RUNB);
+				run = (run - 2) >>> 1;
+			}
+		}
+	}
+
+	@Override
+	public void inverse(byte[] src, int offset, int length, int limit, ByteArrayList out) {
+		int end = offset + length;
+		long last = out.size() + (long) limit; // out can't grow past this
+		long run = 0;
+		int weight = 1;
+		for (int i = offset; i < end; i++) {
+			int value = src[i] & 0xFF;
+			if (value <= RUNB) {
+				if (weight > 1 << 30) {
+					throw new IllegalArgumentException("Run of zeros is too long.");
+				}
+				run += (long) weight << value; // RUNA adds the weight, RUNB twice the weight
+				weight <<= 1;
+				continue;
+			}
+			if (run > 0) {
+				addZeros(run, last, out);
+				run = 0;
+				weight = 1;
+			}
+			if (out.size() >= last) {
+				throw new IllegalArgumentException("Run length data decodes to more than " + limit + " bytes.");
+			}
+			if (value < ESCAPE) {
+				out.add((byte) (value - 1));
+			} else if (i + 1 < end && (src[i + 1] & 0xFF) <= 1) {
+				out.add((byte) ((ESCAPE - 1) + src[++i]));
+			} else {
+				throw new IllegalArgumentException("Invalid escape in run length data.");
+			}
+		}
+		if (run > 0) {
+			addZeros(run, last, out);
+		}
+	}
+
+	/* Appends run zeros, unless out would grow past last */
+	private static void addZeros(long run, long last, ByteArrayList out) {
+		if (out.size() + run > last) {
+			throw new IllegalArgumentException("Run of zeros is too long.");
+		}
+		int size = out.size();
+		out.setSize(size + (int) run);
+		Arrays.fill(out.elements(), size, size + (int) run, (byte) 0);
+	}
+}
@@ -0,0 +1,101 @@
+package daemon;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import compress.VarInt;
+
+/**
+ * Input stream that reads data written by ChunkedOutputStream and ends at the chunk
+ * of length 0, leaving the underlying stream positioned right after it.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class ChunkedInputStream extends InputStream {
+
+	private final InputStream in;
+	private long remaining; // bytes left in the current chunk
+	private boolean ended;
+	private long count;     // data bytes read so far
+
+	ChunkedInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		int b = this.in.read();
+		if (b < 0) {
+			throw new EOFException("Connection closed in the middle of a chunk.");
+		}
+		this.remaining--;
+		this.count++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		int read = this.in.read(b, off, (int) Math.min(len, this.remaining));
+		if (read < 0) {
+			throw new EOFException("Connection closed in the middle of a chunk.");
+		}
+		this.remaining -= read;
+		this.count += read;
+		return read;
+	}
+
+	/**
+	 * Reads and discards everything up to the end of the data, so the next message
+	 * on the connection can be read.
+	 */
+	void drain() throws IOException {
+		byte[] skip = new byte[8192];
+		while (read(skip, 0, skip.length) >= 0) {
+		}
+	}
+
+	/**
+	 * The underlying stream is not closed, the data is drained instead.
+	 */
+	@Override
+	public void close() throws IOException {
+		drain();
+	}
+
+	/**
+	 * @return amount of data bytes read
+	 */
+	long getCount() {
+		return this.count;
+	}
+
+	/* Reads the next chunk length if the current chunk is used up, returns false at the end */
+	private boolean nextChunk() throws IOException {
+		while (this.remaining == 0) {
+			if (this.ended) {
+				return false;
+			}
+			long length = VarInt.read(this.in);
+			if (length < 0) {
+				throw new EOFException("Connection closed before the end of the data.");
+			}
+			if (length == 0) {
+				this.ended = true;
+				return false;
+			}
+			this.remaining = length;
+		}
+		return true;
+	}
+}
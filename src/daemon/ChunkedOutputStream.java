@@ -0,0 +1,110 @@
+package daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import compress.VarInt;
+
+/**
+ * Output stream that writes its data to another stream as chunks: the length of
+ * every chunk as a VarInt followed by its bytes, and a chunk of length 0 at the end.
+ * This lets a request or response of unknown length be streamed over a connection
+ * that stays open for the rest of the exchange. finish() writes the end but doesn't
+ * close the underlying stream.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class ChunkedOutputStream extends OutputStream {
+
+	static final int CHUNK_SIZE = 64 * 1024;
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int count;      // bytes in the buffer
+	private long written;   // bytes written since the stream was created, not counting chunk lengths
+	private boolean finished;
+
+	ChunkedOutputStream(OutputStream out) {
+		this.out = out;
+		this.buffer = new byte[CHUNK_SIZE];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkOpen();
+		if (this.count == this.buffer.length) {
+			writeChunk();
+		}
+		this.buffer[this.count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+		while (len > 0) {
+			if (this.count == this.buffer.length) {
+				writeChunk();
+			}
+			int n = Math.min(len, this.buffer.length - this.count);
+			System.arraycopy(b, off, this.buffer, this.count, n);
+			this.count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes as a chunk and flushes the underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.count > 0) {
+			writeChunk();
+		}
+		this.out.flush();
+	}
+
+	/**
+	 * Writes the buffered bytes and the end of the data. Further writes fail.
+	 */
+	void finish() throws IOException {
+		if (this.finished) {
+			return;
+		}
+		if (this.count > 0) {
+			writeChunk();
+		}
+		VarInt.write(this.out, 0);
+		this.finished = true;
+	}
+
+	/**
+	 * Same as finish, the underlying stream stays open.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	/**
+	 * @return amount of data bytes written, including the ones still buffered
+	 */
+	long getCount() {
+		return this.written + this.count;
+	}
+
+	private void writeChunk() throws IOException {
+		checkOpen();
+		VarInt.write(this.out, this.count);
+		this.out.write(this.buffer, 0, this.count);
+		this.written += this.count;
+		this.count = 0;
+	}
+
+	private void checkOpen() throws IOException {
+		if (this.finished) {
+			throw new IOException("Stream is finished.");
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import compress.HuffmanCompressor;
+
+/**
+ * Compression server that stays resident and serves requests over a local socket,
+ * so scripts that compress many files pay for JVM startup and JIT warm-up once
+ * instead of once per file. Every connection is served by a thread of a fixed pool,
+ * so requests from different clients run concurrently; a connection can send any
+ * amount of requests one after another. Use DaemonClient to talk to it.
+ *
+ * Protocol, every payload is streamed with ChunkedOutputStream (VarInt length + bytes,
+ * a length of 0 ends it):
+ * <pre>
+ *   request    COMPRESS or DECOMPRESS + payload, STATS, SHUTDOWN
+ *   response   result payload + STATUS_OK, or result payload + STATUS_ERROR + message (writeUTF)
+ * </pre>
+ * The input is read while the output is written, so clients have to send from one
+ * thread and receive from another or large payloads would fill both socket buffers.
+ * When a request fails the rest of its input is still read, so the connection stays usable.
+ * Any client can send any bytes, so a request that fails in any way (an exception,
+ * not just an IOException) gets a STATUS_ERROR reply, and decompression rejects
+ * streams with blocks or a dedup window larger than DECODE_LIMIT, which bounds the
+ * memory a request can make the daemon take.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class CompressionDaemon implements Closeable {
+
+	static final int COMPRESS = 'C';
+	static final int DECOMPRESS = 'D';
+	static final int STATS = 'S';
+	static final int SHUTDOWN = 'Q';
+
+	static final int STATUS_OK = 0;
+	static final int STATUS_ERROR = 1;
+
+	static final int BUFFER_SIZE = 64 * 1024;
+	static final long DECODE_LIMIT = HuffmanCompressor.DEFAULT_DEDUP_WINDOW; // largest block or dedup window decompressed
+
+	private final Path path;
+	private final ServerSocketChannel server;
+	private final Object socketKey; // identity of the socket or port file this daemon created
+	private final ExecutorService workers;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private volatile boolean closed;
+
+	private final LongAdder connections = new LongAdder();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+
+	/**
+	 * Starts listening at path, requests aren't accepted until start is called.
+	 *
+	 * @param path path of the Unix domain socket (or of the port file, see LocalSockets)
+	 * @param threads amount of connections served at the same time
+	 */
+	public CompressionDaemon(Path path, int threads) throws IOException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Threads must be at least 1.");
+		}
+		this.path = path;
+		this.server = LocalSockets.listen(path);
+		this.socketKey = LocalSockets.fileKey(path);
+		this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "compression-daemon-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public CompressionDaemon(Path path) throws IOException {
+		this(path, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Starts accepting connections in a background thread.
+	 */
+	public void start() {
+		Thread acceptor = new Thread(this::acceptLoop, "compression-daemon");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Waits until the daemon is closed, by close or by a SHUTDOWN request.
+	 */
+	public void awaitShutdown() throws InterruptedException {
+		this.stopped.await();
+	}
+
+	/**
+	 * Stops accepting connections and removes the socket, unless something else has
+	 * replaced it since. Requests being served are finished.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			this.server.close();
+			this.workers.shutdown();
+			LocalSockets.remove(this.path, this.socketKey);
+		} finally {
+			this.stopped.countDown();
+		}
+	}
+
+	public boolean isClosed() {return closed;}
+
+	public Path getPath() {return path;}
+
+	public long getRequests() {return requests.sum();}
+
+	public long getFailures() {return failures.sum();}
+
+	@Override
+	public String toString() {
+		return String.format("%d connection(s), %d request(s), %d failed, %,d bytes in, %,d bytes out",
+				connections.sum(), requests.sum(), failures.sum(), bytesIn.sum(), bytesOut.sum());
+	}
+
+	private void acceptLoop() {
+		while (!this.closed) {
+			try {
+				SocketChannel channel = this.server.accept();
+				try {
+					this.workers.execute(() -> serve(channel));
+				} catch (RejectedExecutionException e) { // closed while accepting
+					channel.close();
+				}
+			} catch (ClosedChannelException e) {
+				break;
+			} catch (IOException e) {
+				if (!this.closed) {
+					System.err.println("Daemon failed to accept a connection: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/* Serves every request sent on the connection until the client closes it */
+	private void serve(SocketChannel channel) {
+		this.connections.increment();
+		try (SocketChannel connection = channel) {
+			InputStream in = new BufferedInputStream(LocalSockets.inputStream(connection), BUFFER_SIZE);
+			OutputStream out = new BufferedOutputStream(LocalSockets.outputStream(connection), BUFFER_SIZE);
+			int request;
+			while ((request = in.read()) >= 0) {
+				if (!handle(request, in, out)) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			// the client went away, there's nobody to report the error to
+		}
+	}
+
+	/* Serves one request, returns false if the connection has to be closed */
+	private boolean handle(int request, InputStream in, OutputStream out) throws IOException {
+		this.requests.increment();
+		ChunkedOutputStream result = new ChunkedOutputStream(out);
+		switch (request) {
+		case COMPRESS:
+		case DECOMPRESS:
+			ChunkedInputStream body = new ChunkedInputStream(in);
+			String error = null;
+			try {
+				HuffmanCompressor compressor = new HuffmanCompressor();
+				// requests already run in parallel, pipelining each one would only add threads
+				compressor.setPipelined(false);
+				compressor.setDecodeLimit(DECODE_LIMIT);
+				if (request == COMPRESS) {
+					compressor.compress(body, result);
+				} else {
+					compressor.decompress(body, result);
+				}
+			} catch (IOException | RuntimeException e) { // a bad request mustn't take the connection down unanswered
+				error = e.getMessage() == null ? e.toString() : e.getMessage();
+			}
+			body.drain();
+			result.finish();
+			this.bytesIn.add(body.getCount());
+			this.bytesOut.add(result.getCount());
+			return respond(out, error);
+		case STATS:
+			result.write(toString().getBytes(StandardCharsets.UTF_8));
+			result.finish();
+			return respond(out, null);
+		case SHUTDOWN:
+			result.finish();
+			respond(out, null);
+			close();
+			return false;
+		default:
+			result.finish();
+			respond(out, "Unknown request " + request + ".");
+			return false; // the rest of the connection can't be parsed
+		}
+	}
+
+	private boolean respond(OutputStream out, String error) throws IOException {
+		if (error == null) {
+			out.write(STATUS_OK);
+		} else {
+			this.failures.increment();
+			out.write(STATUS_ERROR);
+			new DataOutputStream(out).writeUTF(error);
+		}
+		out.flush();
+		return true;
+	}
+
+	/**
+	 * Runs a daemon until it receives a SHUTDOWN request.
+	 * Usage: CompressionDaemon socketPath [threads]
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: CompressionDaemon socketPath [threads]");
+			System.exit(1);
+		}
+		Path path = Paths.get(args[0]);
+		int threads = args.length == 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		try (CompressionDaemon daemon = new CompressionDaemon(path, threads)) {
+			daemon.start();
+			System.out.println("Listening at " + path + (LocalSockets.isUnixSupported() ? "" : " (loopback TCP)"));
+			daemon.awaitShutdown();
+			System.out.println("Shut down: " + daemon);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Thin client for CompressionDaemon. Keeps one connection open, so any amount of
+ * requests can be sent without reconnecting. The input of a request is sent from a
+ * background thread while the result is received, so payloads of any size are
+ * streamed in both directions. A client isn't thread safe, use one per thread.
+ * <pre>
+ *   DaemonClient socketPath compress|decompress input output
+ *   DaemonClient socketPath stats|shutdown
+ * </pre>
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class DaemonClient implements Closeable {
+
+	private final SocketChannel channel;
+	private final InputStream in;
+	private final OutputStream out;
+	private final ExecutorService sender;
+
+	/**
+	 * Connects to the daemon listening at path.
+	 */
+	public DaemonClient(Path path) throws IOException {
+		this.channel = LocalSockets.connect(path);
+		this.in = new BufferedInputStream(LocalSockets.inputStream(this.channel), CompressionDaemon.BUFFER_SIZE);
+		this.out = new BufferedOutputStream(LocalSockets.outputStream(this.channel), CompressionDaemon.BUFFER_SIZE);
+		this.sender = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "daemon-client-sender");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Compresses everything read from input and writes the result to output. Neither stream is closed.
+	 *
+	 * @throws IOException if the daemon couldn't compress the data or the connection failed
+	 */
+	public void compress(InputStream input, OutputStream output) throws IOException {
+		request(CompressionDaemon.COMPRESS, input, output);
+	}
+
+	/**
+	 * Decompresses everything read from input and writes the result to output. Neither stream is closed.
+	 *
+	 * @throws IOException if the data isn't valid compressed data or the connection failed
+	 */
+	public void decompress(InputStream input, OutputStream output) throws IOException {
+		request(CompressionDaemon.DECOMPRESS, input, output);
+	}
+
+	/**
+	 * @return the daemon's statistics
+	 */
+	public String stats() throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		request(CompressionDaemon.STATS, null, result);
+		return new String(result.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Asks the daemon to stop, requests of other clients that are being served still finish.
+	 */
+	public void shutdown() throws IOException {
+		request(CompressionDaemon.SHUTDOWN, null, new ByteArrayOutputStream());
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.sender.shutdownNow();
+		this.channel.close();
+	}
+
+	/* Sends a request, with input as its payload if it isn't null, and receives the result into output */
+	private void request(int request, InputStream input, OutputStream output) throws IOException {
+		this.out.write(request);
+		Future<?> sending = null;
+		if (input == null) {
+			this.out.flush();
+		} else {
+			sending = this.sender.submit(() -> {
+				ChunkedOutputStream body = new ChunkedOutputStream(this.out);
+				byte[] buffer = new byte[CompressionDaemon.BUFFER_SIZE];
+				int read;
+				while ((read = input.read(buffer)) >= 0) {
+					body.write(buffer, 0, read);
+				}
+				body.finish();
+				this.out.flush();
+				return null;
+			});
+		}
+
+		try {
+			ChunkedInputStream result = new ChunkedInputStream(this.in);
+			byte[] buffer = new byte[CompressionDaemon.BUFFER_SIZE];
+			int read;
+			while ((read = result.read(buffer)) >= 0) {
+				output.write(buffer, 0, read);
+			}
+			output.flush();
+			waitFor(sending);
+			sending = null;
+
+			int status = this.in.read();
+			if (status < 0) {
+				throw new EOFException("Daemon closed the connection.");
+			}
+			if (status != CompressionDaemon.STATUS_OK) {
+				throw new IOException(new DataInputStream(this.in).readUTF());
+			}
+		} finally {
+			if (sending != null) { // the receiving side failed, the connection can't be used anymore
+				sending.cancel(true);
+				this.channel.close();
+			}
+		}
+	}
+
+	/* Waits for the input to be sent and rethrows its error */
+	private static void waitFor(Future<?> sending) throws IOException {
+		if (sending == null) {
+			return;
+		}
+		try {
+			sending.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to send the request.", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sending the request.", e);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			usage();
+		}
+		try (DaemonClient client = new DaemonClient(Paths.get(args[0]))) {
+			if (args[1].equals("compress") || args[1].equals("decompress")) {
+				if (args.length != 4) {
+					usage();
+				}
+				try (InputStream input = new FileInputStream(args[2]);
+						OutputStream output = new FileOutputStream(args[3])) {
+					if (args[1].equals("compress")) {
+						client.compress(input, output);
+					} else {
+						client.decompress(input, output);
+					}
+				}
+			} else if (args[1].equals("stats") && args.length == 2) {
+				System.out.println(client.stats());
+			} else if (args[1].equals("shutdown") && args.length == 2) {
+				client.shutdown();
+			} else {
+				usage();
+			}
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: DaemonClient socketPath [compress|decompress input output | stats | shutdown]");
+		System.exit(1);
+	}
+}
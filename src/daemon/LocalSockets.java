@@ -0,0 +1,222 @@
+package daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Opens the local sockets used by the daemon and its clients. Unix domain sockets
+ * (UnixDomainSocketAddress, Java 16+) are looked up by reflection, since the project
+ * still targets Java 8. When they aren't available the daemon listens on a loopback
+ * TCP port instead and writes "tcp:port" into the socket path, which the client reads
+ * to find it. Either way both sides only need to agree on the path.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+final class LocalSockets {
+
+	private static final String TCP_PREFIX = "tcp:";
+	private static final int MAX_PORT_FILE = 64; // bytes, a port file is "tcp:" and a number
+
+	private LocalSockets() {}
+
+	/**
+	 * @return true if this JVM supports Unix domain socket channels
+	 */
+	static boolean isUnixSupported() {
+		return unixFamily() != null;
+	}
+
+	/**
+	 * Opens a server channel listening at path. A socket or port file left at path by
+	 * a daemon that didn't shut down cleanly is replaced.
+	 *
+	 * @throws IOException if path is anything else, or a daemon is still listening there
+	 */
+	static ServerSocketChannel listen(Path path) throws IOException {
+		removeStale(path);
+		ProtocolFamily unix = unixFamily();
+		if (unix != null) {
+			ServerSocketChannel server = (ServerSocketChannel) invoke(ServerSocketChannel.class, "open", unix);
+			server.bind(unixAddress(path));
+			return server;
+		}
+
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+		Files.write(path, (TCP_PREFIX + port).getBytes(StandardCharsets.US_ASCII));
+		return server;
+	}
+
+	/**
+	 * @return identity of the file at path (see BasicFileAttributes.fileKey), null if
+	 *         there is none or the file system doesn't have one
+	 */
+	static Object fileKey(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Deletes the file at path if it's still the one with the given key, so a daemon
+	 * never removes a socket or a file it didn't create.
+	 */
+	static void remove(Path path, Object key) throws IOException {
+		if (key != null && key.equals(fileKey(path))) {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/* Deletes a socket or port file nobody listens at anymore, throws if path is anything else */
+	private static void removeStale(Path path) throws IOException {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		boolean regular = Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS);
+		boolean socket = !regular && !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) && !Files.isSymbolicLink(path);
+		boolean portFile = regular && Files.size(path) <= MAX_PORT_FILE
+				&& new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).startsWith(TCP_PREFIX);
+		if (!socket && !portFile) {
+			throw new IOException(path + " exists and is not a daemon socket.");
+		}
+		if (socket && unixFamily() == null) {
+			throw new IOException(path + " is a socket but Unix domain sockets are not available.");
+		}
+		try {
+			connect(path).close();
+		} catch (IOException e) { // nobody listens, the daemon that made it is gone
+			Files.deleteIfExists(path);
+			return;
+		}
+		throw new IOException("A daemon is already listening at " + path + ".");
+	}
+
+	/**
+	 * Connects to the daemon listening at path.
+	 */
+	static SocketChannel connect(Path path) throws IOException {
+		if (Files.isRegularFile(path)) { // a Unix socket is not a regular file, so this is a port file
+			String content = new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim();
+			if (!content.startsWith(TCP_PREFIX)) {
+				throw new IOException(path + " is not a daemon socket.");
+			}
+			int port;
+			try {
+				port = Integer.parseInt(content.substring(TCP_PREFIX.length()));
+			} catch (NumberFormatException e) {
+				throw new IOException(path + " has an invalid port.");
+			}
+			return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		}
+
+		ProtocolFamily unix = unixFamily();
+		if (unix == null) {
+			throw new IOException("No daemon at " + path + ".");
+		}
+		SocketChannel channel = (SocketChannel) invoke(SocketChannel.class, "open", unix);
+		try {
+			channel.connect(unixAddress(path));
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return channel;
+	}
+
+	/**
+	 * Input stream that reads from channel. Unlike Channels.newInputStream it doesn't
+	 * hold the channel's blocking lock while waiting, so another thread can write to
+	 * the channel at the same time.
+	 */
+	static InputStream inputStream(SocketChannel channel) {
+		return new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0) {
+					return 0;
+				}
+				return channel.read(ByteBuffer.wrap(b, off, len));
+			}
+		};
+	}
+
+	/**
+	 * Output stream that writes to channel, see inputStream.
+	 */
+	static OutputStream outputStream(SocketChannel channel) {
+		return new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		};
+	}
+
+	/* StandardProtocolFamily.UNIX, null before Java 16 */
+	private static ProtocolFamily unixFamily() {
+		try {
+			ProtocolFamily unix = Enum.valueOf(StandardProtocolFamily.class, "UNIX");
+			Class.forName("java.net.UnixDomainSocketAddress");
+			return unix;
+		} catch (IllegalArgumentException | ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/* UnixDomainSocketAddress.of(path) */
+	private static SocketAddress unixAddress(Path path) throws IOException {
+		try {
+			Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+			return (SocketAddress) addressClass.getMethod("of", Path.class).invoke(null, path);
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Unix domain sockets are not available.", e);
+		}
+	}
+
+	/* Calls the static method name(ProtocolFamily) of channelClass, which only exists since Java 15 */
+	private static Object invoke(Class<?> channelClass, String name, ProtocolFamily family) throws IOException {
+		try {
+			return channelClass.getMethod(name, ProtocolFamily.class).invoke(null, family);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Unix domain sockets are not available.", e);
+		}
+	}
+}
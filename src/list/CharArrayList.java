@@ -0,0 +1,158 @@
+package list;
+
+import java.util.Arrays;
+
+/**
+ * Array based list that stores primitive chars, so that unlike ArrayList<Character>
+ * no wrapper object is created for every element. The backing array can be
+ * accessed directly through elements() for tight loops, only the first size()
+ * positions contain valid values.
+ */
+public class CharArrayList {
+
+	// private fields
+	private char elements[];
+
+	private int currentSize;
+
+
+	public CharArrayList(int initialCapacity) {
+		if (initialCapacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1.");
+		this.currentSize = 0;
+		this.elements = new char[initialCapacity];
+	}
+
+	public CharArrayList() {
+		this(16);
+	}
+
+	public void add(char value) {
+		if (this.currentSize == this.elements.length)
+			reAllocate(this.currentSize + 1);
+		this.elements[this.currentSize++] = value;
+	}
+
+	/* Appends length values from the array starting at position offset */
+	public void addAll(char[] values, int offset, int length) {
+		ensureCapacity(this.currentSize + length);
+		System.arraycopy(values, offset, this.elements, this.currentSize, length);
+		this.currentSize += length;
+	}
+
+	public void add(int index, char value) {
+		if (index < 0 || index > this.currentSize)
+			throw new ArrayIndexOutOfBoundsException();
+		if (this.currentSize == this.elements.length)
+			reAllocate(this.currentSize + 1);
+		// move everybody one spot to the back
+		System.arraycopy(this.elements, index, this.elements, index + 1, this.currentSize - index);
+		this.elements[index] = value;
+		this.currentSize++;
+	}
+
+	/* Makes sure the backing array can hold at least minCapacity values */
+	public void ensureCapacity(int minCapacity) {
+		if (minCapacity > this.elements.length)
+			reAllocate(minCapacity);
+	}
+
+	private void reAllocate(int minCapacity) {
+		this.elements = Arrays.copyOf(this.elements, PrimitiveArrays.newCapacity(this.elements.length, minCapacity));
+	}
+
+	public char removeAt(int index) {
+		if (index < 0 || index >= this.currentSize)
+			throw new ArrayIndexOutOfBoundsException();
+		char value = this.elements[index];
+		// move everybody one spot to the front
+		System.arraycopy(this.elements, index + 1, this.elements, index, this.currentSize - index - 1);
+		this.currentSize--;
+		return value;
+	}
+
+	public char get(int index) {
+		if (index >= 0 && index < this.currentSize)
+			return this.elements[index];
+		else
+			throw new ArrayIndexOutOfBoundsException();
+	}
+
+	public char set(int index, char value) {
+		if (index >= 0 && index < this.currentSize) {
+			char temp = this.elements[index];
+			this.elements[index] = value;
+			return temp;
+		}
+		else
+			throw new ArrayIndexOutOfBoundsException();
+	}
+
+	public char last() {
+		if (this.isEmpty())
+			throw new ArrayIndexOutOfBoundsException();
+		return this.elements[this.currentSize - 1];
+	}
+
+	public int firstIndex(char value) {
+		for (int i = 0; i < this.currentSize; i++)
+			if (this.elements[i] == value)
+				return i;
+		return -1;
+	}
+
+	public boolean contains(char value) {
+		return this.firstIndex(value) >= 0;
+	}
+
+	public int size() {
+		return this.currentSize;
+	}
+
+	/* Changes the size of the list, used after writing directly into elements().
+	 * New positions are not cleared, so they contain whatever was there before. */
+	public void setSize(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("Size cannot be negative.");
+		ensureCapacity(size);
+		this.currentSize = size;
+	}
+
+	public boolean isEmpty() {
+		return this.currentSize == 0;
+	}
+
+	/* Primitive values don't need to be released, so we only reset the size */
+	public void clear() {
+		this.currentSize = 0;
+	}
+
+	/* Returns the backing array, only positions 0 to size()-1 are valid */
+	public char[] elements() {
+		return this.elements;
+	}
+
+	public char[] toArray() {
+		return Arrays.copyOf(this.elements, this.currentSize);
+	}
+
+	public void trimToSize() {
+		if (this.currentSize < this.elements.length)
+			this.elements = Arrays.copyOf(this.elements, Math.max(1, this.currentSize));
+	}
+
+	@Override
+	public String toString() {
+		if (isEmpty()) {
+			return "[]";
+		}
+
+		StringBuilder result = new StringBuilder("[");
+		for (int i = 0; i < this.currentSize; i++) {
+			result.append(this.elements[i]).append(", ");
+		}
+		result.setLength(result.length() - 2);
+
+		return result.append(']').toString();
+	}
+}
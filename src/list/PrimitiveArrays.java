@@ -0,0 +1,22 @@
+package list;
+
+/**
+ * Growth policy shared by the primitive array lists. The capacity is doubled
+ * (the same policy used by ArrayList) until it gets close to the largest array
+ * the VM can allocate, from there it only grows to what was requested.
+ */
+final class PrimitiveArrays {
+
+	// some VMs reserve header words in an array, so we stay a little below Integer.MAX_VALUE
+	static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private PrimitiveArrays() {}
+
+	static int newCapacity(int currentCapacity, int minCapacity) {
+		if (minCapacity < 0 || minCapacity > MAX_ARRAY_SIZE)
+			throw new OutOfMemoryError("Required array size too large.");
+
+		int newCapacity = currentCapacity < MAX_ARRAY_SIZE / 2 ? 2 * currentCapacity : MAX_ARRAY_SIZE;
+		return Math.max(newCapacity, minCapacity);
+	}
+}
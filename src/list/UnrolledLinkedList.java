@@ -0,0 +1,363 @@
+package list;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Linked list where every node stores a small array of elements instead of a
+ * single one, so traversals touch one node per NODE_CAPACITY elements and the
+ * elements of a node sit next to each other in memory. Appending is O(1) since
+ * we keep a reference to the last node.
+ *
+ * The list remembers the last node it visited (the cursor) together with the
+ * index of that node's first element, so a loop that calls get(i) with
+ * increasing i only walks forward from the cursor instead of from the header.
+ */
+public class UnrolledLinkedList<E> implements List<E> {
+
+	private static final int NODE_CAPACITY = 32; // max elements per node
+
+	private class Node {
+		private Object[] values;
+		private int count; // how many positions of values are in use
+		private Node previous;
+		private Node next;
+
+		public Node(Node previous, Node next) {
+			this.values = new Object[NODE_CAPACITY];
+			this.count = 0;
+			this.previous = previous;
+			this.next = next;
+		}
+
+		@SuppressWarnings("unchecked")
+		public E getValue(int position) {
+			return (E) values[position];
+		}
+
+		/* Shifts the values after position one spot to the back and inserts obj */
+		public void insert(int position, E obj) {
+			System.arraycopy(values, position, values, position + 1, count - position);
+			values[position] = obj;
+			count++;
+		}
+
+		/* Shifts the values after position one spot to the front */
+		public E delete(int position) {
+			E value = getValue(position);
+			System.arraycopy(values, position + 1, values, position, count - position - 1);
+			values[--count] = null;
+			return value;
+		}
+
+		public void clear() {
+			for (int i = 0; i < count; i++)
+				values[i] = null;
+			count = 0;
+			previous = null;
+			next = null;
+		}
+	} // End of Node class
+
+
+	private class ListIterator implements Iterator<E> {
+
+		private Node currentNode;
+		private int position;
+
+		public ListIterator() {
+			currentNode = header.next;
+			position = 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			// empty nodes are always unlinked, so only the position matters
+			return currentNode != null && position < currentNode.count;
+		}
+
+		@Override
+		public E next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			E value = currentNode.getValue(position++);
+			if (position == currentNode.count) {
+				currentNode = currentNode.next;
+				position = 0;
+			}
+			return value;
+		}
+
+	} // End of ListIterator class
+
+
+	// private fields
+	private Node header; // dummy node, its next is the first node with elements
+	private Node tail; // last node, equal to header when the list is empty
+	private int currentSize;
+
+	// cached cursor, cursorStart is the index of the first element in cursorNode
+	private Node cursorNode;
+	private int cursorStart;
+
+
+	public UnrolledLinkedList() {
+		header = new Node(null, null);
+		tail = header;
+		currentSize = 0;
+		resetCursor();
+	}
+
+	private void resetCursor() {
+		cursorNode = header;
+		cursorStart = 0;
+	}
+
+	/* Moves the cursor to the node containing index and returns it. We walk forward
+	 * from the cursor when index is after it, and from the first node otherwise. */
+	private Node find_node(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException();
+
+		Node curNode = cursorNode;
+		int start = cursorStart;
+		if (curNode == header || index < start) {
+			curNode = header.next;
+			start = 0;
+		}
+		while (index >= start + curNode.count) {
+			start += curNode.count;
+			curNode = curNode.next;
+		}
+
+		cursorNode = curNode;
+		cursorStart = start;
+		return curNode;
+	}
+
+	/* Creates an empty node right after node */
+	private Node link_after(Node node) {
+		Node newNode = new Node(node, node.next);
+		if (node.next != null)
+			node.next.previous = newNode;
+		else
+			tail = newNode;
+		node.next = newNode;
+		return newNode;
+	}
+
+	/* Removes an empty node from the chain */
+	private void unlink(Node node) {
+		node.previous.next = node.next;
+		if (node.next != null)
+			node.next.previous = node.previous;
+		else
+			tail = node.previous;
+		node.clear();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new ListIterator();
+	}
+
+	@Override
+	public void add(E obj) {
+		if (obj == null)
+			throw new IllegalArgumentException("Object cannot be null.");
+		if (tail == header || tail.count == NODE_CAPACITY)
+			link_after(tail);
+		tail.values[tail.count++] = obj;
+		currentSize++;
+	}
+
+	@Override
+	public void add(int index, E obj) {
+		if (obj == null)
+			throw new IllegalArgumentException("Object cannot be null.");
+		// We allow for index == size() and delegate to add(object).
+		if (index < 0 || index > size())
+			throw new IndexOutOfBoundsException();
+		if (index == size()) {
+			add(obj); // Use our "append" method
+			return;
+		}
+
+		Node curNode = find_node(index);
+		int position = index - cursorStart;
+		if (curNode.count == NODE_CAPACITY) {
+			// split the full node, the upper half moves to a new node after it
+			Node newNode = link_after(curNode);
+			int half = NODE_CAPACITY / 2;
+			System.arraycopy(curNode.values, half, newNode.values, 0, NODE_CAPACITY - half);
+			for (int i = half; i < NODE_CAPACITY; i++)
+				curNode.values[i] = null;
+			newNode.count = NODE_CAPACITY - half;
+			curNode.count = half;
+
+			if (position > half) {
+				cursorStart += half;
+				cursorNode = curNode = newNode;
+				position -= half;
+			}
+		}
+		curNode.insert(position, obj);
+		currentSize++;
+	}
+
+	@Override
+	public boolean remove(E obj) {
+		int position = firstIndex(obj);
+		if (position >= 0) // found it
+			return remove(position);
+		else
+			return false;
+	}
+
+	@Override
+	public boolean remove(int index) {
+		Node curNode = find_node(index);
+		curNode.delete(index - cursorStart);
+		currentSize--;
+
+		if (curNode.count == 0) {
+			unlink(curNode);
+			resetCursor();
+		} else if (curNode.next != null && curNode.count + curNode.next.count <= NODE_CAPACITY / 2) {
+			// merge two sparse nodes so that traversals don't degrade into one element per node
+			Node nextNode = curNode.next;
+			System.arraycopy(nextNode.values, 0, curNode.values, curNode.count, nextNode.count);
+			curNode.count += nextNode.count;
+			nextNode.count = 0;
+			unlink(nextNode);
+		}
+		return true;
+	}
+
+	@Override
+	public int removeAll(E obj) {
+		int counter = 0;
+
+		// compact every node in a single pass instead of calling remove(obj) repeatedly
+		Node curNode = header.next;
+		while (curNode != null) {
+			Node nextNode = curNode.next;
+			int kept = 0;
+			for (int i = 0; i < curNode.count; i++) {
+				if (curNode.values[i].equals(obj))
+					counter++;
+				else
+					curNode.values[kept++] = curNode.values[i];
+			}
+			for (int i = kept; i < curNode.count; i++)
+				curNode.values[i] = null;
+			curNode.count = kept;
+			if (kept == 0)
+				unlink(curNode);
+			curNode = nextNode;
+		}
+
+		currentSize -= counter;
+		resetCursor();
+		return counter;
+	}
+
+	@Override
+	public E get(int index) {
+		Node curNode = find_node(index);
+		return curNode.getValue(index - cursorStart);
+	}
+
+	@Override
+	public E set(int index, E obj) {
+		if (obj == null)
+			throw new IllegalArgumentException("Object cannot be null.");
+		Node curNode = find_node(index);
+		int position = index - cursorStart;
+		E theValue = curNode.getValue(position);
+		curNode.values[position] = obj;
+		return theValue;
+	}
+
+	@Override
+	public E first() {
+		if (isEmpty())
+			return null;
+		return header.next.getValue(0);
+	}
+
+	@Override
+	public E last() {
+		if (isEmpty())
+			return null;
+		return tail.getValue(tail.count - 1);
+	}
+
+	@Override
+	public int firstIndex(E obj) {
+		int start = 0;
+		for (Node curNode = header.next; curNode != null; curNode = curNode.next) {
+			for (int i = 0; i < curNode.count; i++)
+				if (curNode.values[i].equals(obj))
+					return start + i;
+			start += curNode.count;
+		}
+		return -1;
+	}
+
+	@Override
+	public int lastIndex(E obj) {
+		int end = size();
+		for (Node curNode = tail; curNode != header; curNode = curNode.previous) {
+			end -= curNode.count;
+			for (int i = curNode.count - 1; i >= 0; i--)
+				if (curNode.values[i].equals(obj))
+					return end + i;
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return currentSize;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean contains(E obj) {
+		return firstIndex(obj) != -1;
+	}
+
+	@Override
+	public void clear() {
+		Node curNode = header.next;
+		while (curNode != null) {
+			Node nextNode = curNode.next;
+			curNode.clear();
+			curNode = nextNode;
+		}
+		header.next = null;
+		tail = header;
+		currentSize = 0;
+		resetCursor();
+	}
+
+	@Override
+	public String toString() {
+		if (isEmpty()) {
+			return "[]";
+		}
+
+		StringBuilder result = new StringBuilder("[");
+		for (E e: this) {
+			result.append(e).append(", ");
+		}
+		result.setLength(result.length() - 2);
+
+		return result.append(']').toString();
+	}
+}
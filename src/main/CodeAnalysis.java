@@ -0,0 +1,88 @@
+package main;
+
+/**
+ * Result of HuffmanCoding.analyze: the size a text would have once encoded and how
+ * good its huffman code is, computed from the frequency distribution and the code
+ * lengths alone, without encoding the text. The encoded size is exact, it's the
+ * sum of frequency * code length over every character.
+ *
+ * The table overhead is what storing the code next to the encoded text would cost,
+ * every character (16 bits) with its code length (8 bits), which is enough to
+ * rebuild a canonical code with the same lengths.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class CodeAnalysis {
+
+	public static final int TABLE_ENTRY_BITS = 16 + 8; // a character and its code length
+
+	private final int symbols;        // distinct characters
+	private final long characters;    // length of the text
+	private final long encodedBits;
+	private final double entropy;     // shannon entropy, bits per character
+
+	CodeAnalysis(int symbols, long characters, long encodedBits, double entropy) {
+		this.symbols = symbols;
+		this.characters = characters;
+		this.encodedBits = encodedBits;
+		this.entropy = entropy;
+	}
+
+	/**
+	 * @return bytes of the text as one byte per character, as process_results counts them
+	 */
+	public long getOriginalBytes() {
+		return characters;
+	}
+
+	/**
+	 * @return bytes of the encoded text, the last byte padded
+	 */
+	public long getEncodedBytes() {
+		return (encodedBits + 7) / 8;
+	}
+
+	/**
+	 * @return average bits per character of the code
+	 */
+	public double getAverageCodeLength() {
+		return characters == 0 ? 0 : (double) encodedBits / characters;
+	}
+
+	/**
+	 * @return entropy / average code length, 1 for a code that reaches the entropy
+	 */
+	public double getEfficiency() {
+		return encodedBits == 0 ? 1 : entropy / getAverageCodeLength();
+	}
+
+	public long getTableBits() {
+		return (long) symbols * TABLE_ENTRY_BITS;
+	}
+
+	public long getTableBytes() {
+		return (getTableBits() + 7) / 8;
+	}
+
+	/**
+	 * @return percentage of space saved by the encoded text, table not included, as process_results prints it
+	 */
+	public double getSavings() {
+		return characters == 0 ? 0 : Math.abs(characters - getEncodedBytes()) * 100.0 / characters;
+	}
+
+	public int getSymbols() {return symbols;}
+
+	public long getCharacters() {return characters;}
+
+	public long getEncodedBits() {return encodedBits;}
+
+	public double getEntropy() {return entropy;}
+
+	@Override
+	public String toString() {
+		return String.format("Entropy %.4f bits/char, average code length %.4f bits/char, efficiency %.2f%%, table %,d bytes",
+				entropy, getAverageCodeLength(), getEfficiency() * 100, getTableBytes());
+	}
+}
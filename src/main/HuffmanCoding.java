@@ -3,6 +3,9 @@ package main;
 import java.io.File;
 import java.util.Scanner;
 
+import compress.Histogram;
+import list.IntArrayList;
+import map.FrozenCharMap;
 import map.HashTableSC;
 import map.Map;
 import sortedList.SortedArrayList;
@@ -25,6 +28,9 @@ import sortedList.SortedList;
  */
 public class HuffmanCoding {
 	
+	// texts at least this long are counted into an array first, for shorter texts clearing the array costs more
+	private static final int ARRAY_COUNT_THRESHOLD = 16384;
+	
 	// string containing the path to the txt file containing the string to be encoded
 	private final String FILE_PATH; 
 	
@@ -50,6 +56,17 @@ public class HuffmanCoding {
 	 * need the other classes to be public.
 	 */
 	public void run() {
+		this.run(false);
+	}
+	
+	/**
+	 * Runs every method required to encode the text and prints the results. A dry run
+	 * stops after building the huffman code: it prints the table and the sizes from
+	 * analyze, without encoding the text.
+	 * 
+	 * @param dryRun true to only analyze the code, false to also encode the text
+	 */
+	public void run(boolean dryRun) {
 		String text = this.load_data(this.FILE_PATH);
 		
 		Map<Character, Integer> fd = this.compute_fd(text); 
@@ -58,6 +75,11 @@ public class HuffmanCoding {
 		
 		Map<Character, String> table = this.huffman_code(root);
 		
+		if (dryRun) {
+			this.process_results(fd, table, this.analyze(fd, table));
+			return;
+		}
+		
 		String encoded = this.encode(table, text);
 		
 		this.process_results(fd, table, text, encoded);
@@ -92,12 +114,34 @@ public class HuffmanCoding {
 		// map to store the characters and their frequency
 		Map<Character, Integer> map = new HashTableSC<Character, Integer>(); 
 		
+		if (inputText.length() >= ARRAY_COUNT_THRESHOLD) {
+			// count without boxing into an array indexed by character, then only the
+			// characters that appeared are inserted in the map
+			int[] counts = new int[Histogram.CHAR_ALPHABET];
+			Histogram.countChars(inputText, counts);
+			for (int c = 0; c < counts.length; c++) {
+				if (counts[c] > 0) {
+					map.put((char) c, counts[c]);
+				}
+			}
+			return map;
+		}
+		
+		// characters below 256 are counted into a small array, so counting them doesn't box an Integer per character
+		int[] latin = new int[Histogram.BYTE_ALPHABET];
 		for (int i = 0; i < inputText.length(); i++) { // iterate through all characters in the inputText
-			Character c = inputText.charAt(i);
-			if (map.containsKey(c)) { // if there is and entry corresponding to c already in the map
-				map.put(c, map.get(c) + 1); // we update the entry by increasing its value by 1
-			} else { // else there is no entry corresponding to c
-				map.put(c, 1); // this is the first time we see c, so its only appeared 1 time
+			char c = inputText.charAt(i);
+			if (c < latin.length) {
+				latin[c]++;
+			} else {
+				// if there is no entry corresponding to the character this is the first time we see it,
+				// so we store 1, otherwise we update the entry by increasing its value by 1
+				map.merge(c, 1, Integer::sum);
+			}
+		}
+		for (int c = 0; c < latin.length; c++) {
+			if (latin[c] > 0) {
+				map.put((char) c, latin[c]);
 			}
 		}
 		
@@ -114,10 +158,8 @@ public class HuffmanCoding {
 	private SortedList<BTNode<Integer, String>> generateFDSortedList(Map<Character, Integer> frequencyDistribution) {
 		SortedList<BTNode<Integer, String>> list = new SortedArrayList<BTNode<Integer, String>>(frequencyDistribution.size());
 		
-		for (Character key: frequencyDistribution.getKeys()) { 
-			// takes every entry from the map and uses its key and value to create a BTNode and insert it into the sorted list
-			list.add(new BTNode<Integer, String>(frequencyDistribution.get(key), key.toString()));
-		}
+		// takes every entry from the map and uses its key and value to create a BTNode and insert it into the sorted list
+		frequencyDistribution.forEach((key, frequency) -> list.add(new BTNode<Integer, String>(frequency, key.toString())));
 		
 		return list;
 	}
@@ -176,6 +218,9 @@ public class HuffmanCoding {
 	 * Takes a huffman tree and computes the huffman code for all the characters in
 	 * in the original text.
 	 * 
+	 * The table never changes after it's created, so we return it as an immutable
+	 * FrozenCharMap, which encode can read without hashing or allocating.
+	 * 
 	 * @param root root node of the huffman tree
 	 * @return map containing the symbols as keys and their huffman code as values
 	 */
@@ -189,7 +234,7 @@ public class HuffmanCoding {
 			table.put(c, huffman); // insert the new symbol-code pair
 		}
 		
-		return table;
+		return FrozenCharMap.of(table);
 	}
 	
 	/**
@@ -229,17 +274,51 @@ public class HuffmanCoding {
 	 * @param inputText original text
 	 * @return encoded text
 	 */
+	@SuppressWarnings("unchecked")
 	public String encode(Map<Character, String> huffmanCode, String inputText) {
-		String result = "";
+		// tables returned by huffman_code are frozen, other maps are frozen here so the loop never hashes
+		FrozenCharMap<String> table = huffmanCode instanceof FrozenCharMap
+				? (FrozenCharMap<String>) huffmanCode : FrozenCharMap.of(huffmanCode);
+		
+		// the exact length of the result is computed first, so the builder never grows
+		int length = 0;
+		for (int i = 0; i < inputText.length(); i++) {
+			length += table.get(inputText.charAt(i)).length();
+		}
+		StringBuilder result = new StringBuilder(length);
 		
 		for (int i = 0; i < inputText.length(); i++) {
 			// we use a map where the keys are the symbols in the inputText,
 			// so we iterate through the inputText and replace every symbol
 			// with its huffman code
-			result += huffmanCode.get(inputText.charAt(i));
+			result.append(table.get(inputText.charAt(i)));
 		}
 		
-		return result;
+		return result.toString();
+	}
+	
+	/**
+	 * Computes the size of the encoded text and the quality of the code without
+	 * encoding: the encoded size is the sum of frequency * code length, every
+	 * character is looked up once, not once per occurrence.
+	 * 
+	 * @param frequencyDistribution map containing characters as keys and their frequencies as values
+	 * @param huffmanCode map containing characters as keys and their huffman code as values
+	 * @return sizes, entropy, average code length, efficiency and table overhead
+	 */
+	public CodeAnalysis analyze(Map<Character, Integer> frequencyDistribution, Map<Character, String> huffmanCode) {
+		long[] totals = new long[2]; // characters, encoded bits
+		frequencyDistribution.forEach((key, frequency) -> {
+			totals[0] += frequency;
+			totals[1] += (long) frequency * huffmanCode.get(key).length();
+		});
+		
+		double[] entropy = {0};
+		frequencyDistribution.forEach((key, frequency) -> {
+			double p = (double) frequency / totals[0];
+			entropy[0] -= p * Math.log(p) / Math.log(2);
+		});
+		return new CodeAnalysis(frequencyDistribution.size(), totals[0], totals[1], entropy[0]);
 	}
 	
 	/**
@@ -253,13 +332,37 @@ public class HuffmanCoding {
 	 */
 	public void process_results(Map<Character, Integer> frequencyDistribution, Map<Character, String> huffmanCode, 
 								String inputText, String encodedText) {
-
+		printTable(frequencyDistribution, huffmanCode);
+			
+		// printing the original and encoded strings
+		System.out.println("Original string:\n" + inputText);
+		System.out.println("Encoded string:\n" + encodedText + "\n");
+		
+		printSizes(analyze(frequencyDistribution, huffmanCode));
+	}
+	
+	/**
+	 * Prints the huffman table and the sizes of a dry run, without the original or the
+	 * encoded text, so the text never has to be encoded.
+	 * 
+	 * @param frequencyDistribution map containing characters as keys and their frequencies as values
+	 * @param huffmanCode map containing characters as keys and their huffman code as values
+	 * @param analysis result of analyze for the same maps
+	 */
+	public void process_results(Map<Character, Integer> frequencyDistribution, Map<Character, String> huffmanCode,
+								CodeAnalysis analysis) {
+		printTable(frequencyDistribution, huffmanCode);
+		printSizes(analysis);
+		System.out.println(analysis);
+	}
+	
+	/* Prints every character with its frequency and code, the most frequent first */
+	private void printTable(Map<Character, Integer> frequencyDistribution, Map<Character, String> huffmanCode) {
 		// we create a sorted list of BTNode so that we can sort everything in the frequencyDistributin
 		SortedList<BTNode<Integer, Character>> list = new SortedArrayList<BTNode<Integer, Character>>(frequencyDistribution.size());
 		
-		for (Character key: frequencyDistribution.getKeys()) { // we insert BTNodes corresponding to the map entries
-			list.add(new BTNode<Integer, Character>(frequencyDistribution.get(key), key));
-		}
+		// we insert BTNodes corresponding to the map entries
+		frequencyDistribution.forEach((key, frequency) -> list.add(new BTNode<Integer, Character>(frequency, key)));
 		
 		// we want to print in ascending order so we need to reverse the list
 		Character[] symbols = new Character[list.size()]; 
@@ -276,45 +379,84 @@ public class HuffmanCoding {
 			System.out.printf("%s%n", huffmanCode.get(c)); // print huffman symbol
 		}
 		System.out.println();
-			
-		// printing the original and encoded strings
-		System.out.println("Original string:\n" + inputText);
-		System.out.println("Encoded string:\n" + encodedText + "\n");
-		
-		int originalBytes = inputText.length(); // calculating how many bytes in the original string, 1char = 8bytes
-		System.out.println("The original string requires " + originalBytes + " bytes.");
-		
-		// calculate how many bytes in the encoded string
-		// since every binary number only takes 1bit we need to divide by 8, 8bit = 1bytes
-		// if number is not an integer we add 1, because you can't have a fraction of a byte
-		double encodedBytes = encodedText.length() / 8.0; 
-		encodedBytes =  encodedBytes % 1 == 0 ? encodedBytes : ((int) encodedBytes) + 1; 
-		System.out.println("The encoded string requires " + (int) encodedBytes + " bytes.");
-		
-		// calculate percentage difference between originalBytes and encodedBytes
-		double percentage = (Math.abs(originalBytes - encodedBytes) / originalBytes) * 100;
-		System.out.println("Difference in space required is " + Math.round(percentage) + "%.");
 	}
 	
+	/* Prints the size of the original and the encoded text, the encoded size comes from the code lengths */
+	private void printSizes(CodeAnalysis analysis) {
+		System.out.println("The original string requires " + analysis.getOriginalBytes() + " bytes.");
+		System.out.println("The encoded string requires " + analysis.getEncodedBytes() + " bytes.");
+		System.out.println("Difference in space required is " + Math.round(analysis.getSavings()) + "%.");
+	}
+	
+	/**
+	 * Takes the huffman code map and the encoded text and recovers the original text.
+	 * The codes are first put in a binary tree stored in an array, then every bit of
+	 * the encoded text moves one step down the tree until a character is reached.
+	 * Decoding stops at the first bits that don't start any code.
+	 * 
+	 * @param huffmanCode map containing characters as keys and their huffman code as values
+	 * @param encodedText text encoded using the huffman method
+	 * @return decoded text
+	 */
 	public String decode(Map<Character, String> huffmanCode, String encodedText) {
-		
-		// invert map
-		Map<String, Character> encryptionKey = new HashTableSC<String, Character>(huffmanCode.size()*2);
-		for (Character key : huffmanCode.getKeys()) {
-			encryptionKey.put(huffmanCode.get(key), key);
+		// node n has its children at tree[2n] (bit 0) and tree[2n + 1] (bit 1), 0 means there is no
+		// child (the root can't be a child) and a negative value -(c + 1) is the leaf of character c
+		IntArrayList tree = new IntArrayList(4 * huffmanCode.size() + 2);
+		tree.add(0);
+		tree.add(0);
+		huffmanCode.forEach((key, code) -> {
+			if (!code.isEmpty()) { // a text with a single character has an empty code, it can't be decoded from bits
+				addCode(tree, key, code);
+			}
+		});
+		if (tree.size() == 2) {
+			return "";
 		}
 		
-		String decoded = "";
-		String temp = "";
+		int[] nodes = tree.elements();
+		// the characters are counted first, so the builder has the exact length and never grows
+		StringBuilder decoded = new StringBuilder(decodeBits(nodes, encodedText, null));
+		decodeBits(nodes, encodedText, decoded);
+		
+		return decoded.toString();
+	}
+	
+	/* Moves one step down the tree for every bit, appending every character reached to
+	 * decoded unless it's null. Returns the amount of characters reached. */
+	private int decodeBits(int[] nodes, String encodedText, StringBuilder decoded) {
+		int count = 0;
+		int node = 0;
 		for (int i = 0; i < encodedText.length(); i++) {
-			temp += encodedText.charAt(i);
-			if (encryptionKey.containsKey(temp)) {
-				decoded += encryptionKey.get(temp);
-				temp = "";
+			int next = nodes[2 * node + (encodedText.charAt(i) == '1' ? 1 : 0)];
+			if (next < 0) { // reached a leaf, start again from the root
+				if (decoded != null) {
+					decoded.append((char) (-next - 1));
+				}
+				count++;
+				node = 0;
+			} else if (next == 0) {
+				break;
+			} else {
+				node = next;
 			}
 		}
-		
-		return decoded;
+		return count;
+	}
+	
+	/* Adds the path of code to the decoding tree, creating the nodes that don't exist yet */
+	private void addCode(IntArrayList tree, char symbol, String code) {
+		int node = 0;
+		for (int i = 0; i < code.length() - 1; i++) {
+			int slot = 2 * node + (code.charAt(i) == '1' ? 1 : 0);
+			node = tree.get(slot);
+			if (node <= 0) {
+				node = tree.size() / 2;
+				tree.add(0);
+				tree.add(0);
+				tree.set(slot, node);
+			}
+		}
+		tree.set(2 * node + (code.charAt(code.length() - 1) == '1' ? 1 : 0), -(symbol + 1));
 	}
 	
 	
@@ -1,16 +1,209 @@
 package main;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import compress.DirectoryCompressor;
+import compress.FrequencySampler;
+import compress.GzipCompressor;
+import compress.HuffmanArchive;
+import compress.HuffmanCompressor;
+import compress.TransformPipeline;
+import daemon.CompressionDaemon;
+import daemon.DaemonClient;
+
 /**
  * Class that runs the entire HuffmanCoding class in its main method.
+ * With arguments it analyzes, compresses or decompresses files instead:
+ * <pre>
+ *   analyze        [file]
+ *   compress       [options] input output
+ *   decompress     [options] input output
+ *   append         [options] compressed input
+ *   gzip           [--level N] input output
+ *   compress-dir   [--threads N] sourceDirectory targetDirectory
+ *   decompress-dir [--threads N] sourceDirectory targetDirectory
+ *   archive        archive sourceDirectory
+ *   extract        archive targetDirectory [member]
+ *   list           archive
+ *   daemon         socket [threads]
+ *   client         socket compress|decompress input output | stats | shutdown
+ * </pre>
+ * analyze prints the huffman table and the sizes of a file (inputData/stringData.txt
+ * by default) without encoding it, see HuffmanCoding.run(boolean).
+ * The daemon stays resident and serves compress/decompress requests sent by the
+ * client over a local socket, see CompressionDaemon. gzip writes a standard gzip
+ * file (see GzipCompressor), with only literals unless a level is given.
+ * Options:
+ * <pre>
+ *   --sample   estimate the code table from a sample of the input (single pass)
+ *   --speed    code every block with the coder that decodes fastest when it's clearly faster than the smallest
+ *   --transform stages
+ *              try transforms on every block, stages such as bwt,mtf,rle (see TransformPipeline)
+ *   --level N  also try LZ77 matching, N from 1 (fastest) to 9 (smallest), 0 for none
+ *   --context  also try an order-1 code, one code per preceding byte
+ *   --split    split blocks where the data changes, reusing tables that are still good,
+ *              every part is huffman coded so it can't be combined with --speed,
+ *              --transform, --level or --context
+ *   --dedup    write blocks repeating one of the last blocks as references to it
+ * </pre>
  * 
  * @author Abdiel Corts
  *
  */
 public class Main {
 
-	public static void main(String[] args) {
-		HuffmanCoding huffman = new HuffmanCoding();
-		huffman.run();
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length == 0) {
+			HuffmanCoding huffman = new HuffmanCoding();
+			huffman.run();
+			return;
+		}
+		if (args[0].equals("analyze") && args.length <= 2) {
+			HuffmanCoding huffman = args.length == 2 ? new HuffmanCoding(args[1]) : new HuffmanCoding();
+			huffman.run(true);
+			return;
+		}
+		
+		if (args[0].equals("compress-dir") || args[0].equals("decompress-dir")) {
+			directory(args);
+			return;
+		}
+		if (args[0].equals("archive") || args[0].equals("extract") || args[0].equals("list")) {
+			archive(args);
+			return;
+		}
+		if (args[0].equals("daemon")) {
+			CompressionDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args[0].equals("client")) {
+			DaemonClient.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		
+		HuffmanCompressor compressor = new HuffmanCompressor();
+		int argument = 1;
+		for (; argument < args.length && args[argument].startsWith("--"); argument++) {
+			try {
+				if (args[argument].equals("--sample")) {
+					compressor.setSampler(new FrequencySampler());
+				} else if (args[argument].equals("--speed")) {
+					compressor.setPreferSpeed(true);
+				} else if (args[argument].equals("--transform") && argument + 1 < args.length) {
+					compressor.setTransforms(TransformPipeline.parse(args[++argument]).getStages());
+				} else if (args[argument].equals("--split")) {
+					compressor.setAdaptiveSplit(true);
+				} else if (args[argument].equals("--dedup")) {
+					compressor.setDedupWindow(HuffmanCompressor.DEFAULT_DEDUP_WINDOW);
+				} else if (args[argument].equals("--context")) {
+					compressor.setContextModel(true);
+				} else if (args[argument].equals("--level") && argument + 1 < args.length) {
+					compressor.setLevel(Integer.parseInt(args[++argument]));
+				} else {
+					usage();
+				}
+			} catch (IllegalArgumentException e) { // an invalid value, or --split with an option it would ignore
+				System.err.println(e.getMessage());
+				usage();
+			}
+		}
+		if (args.length - argument != 2) {
+			usage();
+		}
+		String input = args[argument], output = args[argument + 1];
+		
+		if (args[0].equals("compress")) {
+			compressor.compress(input, output);
+			if (compressor.getLastEstimate() != null) {
+				System.out.println(compressor.getLastEstimate());
+			}
+		} else if (args[0].equals("decompress")) {
+			compressor.decompress(input, output);
+		} else if (args[0].equals("gzip")) {
+			GzipCompressor gzip = new GzipCompressor();
+			gzip.setLevel(compressor.getLevel());
+			gzip.compress(input, output);
+		} else if (args[0].equals("append")) {
+			try (InputStream in = new FileInputStream(output)) {
+				System.out.println(compressor.append(input, in));
+			}
+		} else {
+			usage();
+		}
+	}
+	
+	/* Compresses or decompresses a directory tree and prints the throughput of every file */
+	private static void directory(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int argument = 1;
+		if (args.length > 2 && args[1].equals("--threads")) {
+			threads = Integer.parseInt(args[2]);
+			argument = 3;
+		}
+		if (args.length - argument != 2) {
+			usage();
+		}
+		
+		DirectoryCompressor compressor = new DirectoryCompressor(threads);
+		try {
+			Path source = Paths.get(args[argument]), target = Paths.get(args[argument + 1]);
+			List<DirectoryCompressor.FileResult> results = args[0].equals("compress-dir")
+					? compressor.compress(source, target) : compressor.decompress(source, target);
+			for (DirectoryCompressor.FileResult result: results) {
+				System.out.println(result);
+			}
+			System.out.println(compressor);
+		} finally {
+			compressor.shutdown();
+		}
+	}
+	
+	/* Creates an archive, extracts from it or lists its members */
+	private static void archive(String[] args) throws IOException {
+		if (args[0].equals("archive") && args.length == 3) {
+			for (HuffmanArchive.Entry entry: HuffmanArchive.create(Paths.get(args[1]), Paths.get(args[2]))) {
+				System.out.println(entry);
+			}
+			return;
+		}
+		if (args[0].equals("list") && args.length != 2 || args[0].equals("extract") && args.length != 3 && args.length != 4) {
+			usage();
+		}
+		
+		try (HuffmanArchive archive = new HuffmanArchive(Paths.get(args[1]))) {
+			if (args[0].equals("list")) {
+				for (HuffmanArchive.Entry entry: archive.getEntries()) {
+					System.out.println(entry);
+				}
+			} else if (args.length == 3) {
+				archive.extractAll(Paths.get(args[2]));
+			} else {
+				Path target = Paths.get(args[2]).resolve(args[3]);
+				if (target.getParent() != null) {
+					Files.createDirectories(target.getParent());
+				}
+				try (OutputStream out = new FileOutputStream(target.toFile())) {
+					archive.extract(args[3], out);
+				}
+			}
+		}
+	}
+	
+	private static void usage() {
+		System.err.println("Usage: Main [analyze [file] | compress|decompress [--sample] [--speed] [--transform stages] [--level N] [--context] [--split] [--dedup] input output | append compressed input"
+				+ " | gzip [--level N] input output"
+				+ " | compress-dir|decompress-dir [--threads N] source target | archive archive source"
+				+ " | extract archive target [member] | list archive | daemon socket [threads] | client socket ...]");
+		System.exit(1);
 	}
 
 }
@@ -0,0 +1,215 @@
+/** ConcurrentFrequencyTable:
+ * Map from keys to counts that many threads can increment at the same time.
+ * Every key has its own LongAdder stored in a ConcurrentHashTableSC, the stripe
+ * lock is only taken the first time a key is seen, after that increment(key) is
+ * a lock free read followed by LongAdder.add, which spreads contended updates
+ * over several cells instead of making every thread retry on a single value.
+ * An increment can reach a counter just after remove(key) or clear() took it out
+ * of the table, so it checks afterwards that the counter is still the key's and
+ * otherwise adds the amount again under the stripe lock. No increment is lost, but
+ * one that races with remove(key) may also be part of the count remove returned.
+ *
+ * This lets several ingestion threads count into one global frequency
+ * distribution, without each thread building its own map and merging them later.
+ *
+ * @author Abdiel Cortes, GitHub: AbdielCortes
+ */
+
+package map;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import list.ArrayList;
+import list.List;
+
+public class ConcurrentFrequencyTable<K> implements Map<K, Long> {
+
+	private final ConcurrentHashTableSC<K, LongAdder> counters; // one counter for every key
+
+	/** Constructor that takes the expected amount of distinct keys.
+	 *
+	 * @param initialSize: expected amount of distinct keys
+	 */
+	public ConcurrentFrequencyTable(int initialSize) {
+		this.counters = new ConcurrentHashTableSC<K, LongAdder>(initialSize);
+	}
+
+	public ConcurrentFrequencyTable() {
+		this.counters = new ConcurrentHashTableSC<K, LongAdder>();
+	}
+
+	/** Returns the counter of key, creating it if this is the first time we see the key.
+	 *
+	 * @param key: object used for hashing
+	 * @return counter corresponding to key
+	 */
+	private LongAdder counterFor(K key) {
+		LongAdder counter = this.counters.get(key); // lock free when the key already exists
+		if (counter == null) {
+			counter = this.counters.compute(key, (k, existing) -> existing != null ? existing : new LongAdder());
+		}
+		return counter;
+	}
+
+	/** Atomically adds 1 to the count of key.
+	 *
+	 * @param key: object being counted
+	 */
+	public void increment(K key) {
+		add(key, 1);
+	}
+
+	/** Atomically adds delta to the count of key. If the counter was removed while
+	 * adding, delta is added again to the key's counter under its stripe lock.
+	 *
+	 * @param key: object being counted
+	 * @param delta: amount added to the count
+	 */
+	public void add(K key, long delta) {
+		LongAdder counter = counterFor(key);
+		counter.add(delta);
+		if (this.counters.get(key) != counter) { // removed after counterFor found it
+			this.counters.compute(key, (k, existing) -> {
+				LongAdder current = existing != null ? existing : new LongAdder();
+				current.add(delta);
+				return current;
+			});
+		}
+	}
+
+	/** Returns the current count of key. While other threads are incrementing,
+	 * the result includes some of the concurrent increments but maybe not all.
+	 *
+	 * @param key: object used for hashing
+	 * @return count of key, null if it has never been counted
+	 */
+	@Override
+	public Long get(K key) {
+		LongAdder counter = this.counters.get(key);
+		return counter == null ? null : counter.sum();
+	}
+
+	@Override
+	public Long getOrDefault(K key, Long defaultValue) {
+		Long value = get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/** Sets the count of key. Increments made at the same time by other threads
+	 * are added on top of the new count.
+	 *
+	 * @param key: object used for hashing
+	 * @param value: new count
+	 */
+	@Override
+	public void put(K key, Long value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+
+		compute(key, (k, oldValue) -> value);
+	}
+
+	@Override
+	public Long merge(K key, Long value, BiFunction<? super Long, ? super Long, ? extends Long> remappingFunction) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+
+		return compute(key, (k, oldValue) -> oldValue == null ? value : remappingFunction.apply(oldValue, value));
+	}
+
+	/** Computes a new count for key while holding its stripe lock. The existing counter
+	 * is adjusted by the difference instead of being replaced, so increments that happen
+	 * at the same time through increment(key) are never lost.
+	 *
+	 * @param key: object used for hashing
+	 * @param remappingFunction: function that takes the key and its old count and returns the new count
+	 * @return new count of key, null if the key was removed
+	 */
+	@Override
+	public Long compute(K key, BiFunction<? super K, ? super Long, ? extends Long> remappingFunction) {
+		long[] result = new long[1];
+		LongAdder counter = this.counters.compute(key, (k, existing) -> {
+			Long oldValue = existing == null ? null : existing.sum();
+			Long newValue = remappingFunction.apply(k, oldValue);
+			if (newValue == null) {
+				return null;
+			}
+
+			LongAdder updated = existing != null ? existing : new LongAdder();
+			updated.add(newValue - (oldValue == null ? 0 : oldValue));
+			result[0] = newValue;
+			return updated;
+		});
+		return counter == null ? null : result[0];
+	}
+
+	/** Removes key and returns its count. An increment made at the same time by another
+	 * thread is never lost, but it may be in both the count returned and the key's new count.
+	 *
+	 * @param key: object used for hashing
+	 * @return count of key, null if it wasn't in the table
+	 */
+	@Override
+	public Long remove(K key) {
+		LongAdder counter = this.counters.remove(key);
+		return counter == null ? null : counter.sum();
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return this.counters.containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(Long value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+
+		boolean[] found = new boolean[1];
+		this.counters.forEach((key, counter) -> found[0] |= counter.sum() == value);
+		return found[0];
+	}
+
+	@Override
+	public List<K> getKeys() {
+		return this.counters.getKeys();
+	}
+
+	@Override
+	public List<Long> getValues() {
+		List<Long> values = new ArrayList<Long>(Math.max(1, size()));
+		this.counters.forEach((key, counter) -> values.add(counter.sum()));
+		return values;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super K, ? super Long> action) {
+		this.counters.forEach((key, counter) -> action.accept(key, counter.sum()));
+	}
+
+	@Override
+	public int size() {
+		return this.counters.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.counters.isEmpty();
+	}
+
+	@Override
+	public void clear() {
+		this.counters.clear();
+	}
+
+	@Override
+	public String toString() {
+		return this.counters.toString();
+	}
+
+}
@@ -0,0 +1,464 @@
+/** ConcurrentHashTableSC:
+ * Thread safe version of HashTableSC. Key-value pairs are stored the same way,
+ * using separate chaining, but the buckets are guarded by a fixed amount of locks
+ * (lock striping), where bucket i is guarded by lock i % STRIPES. Threads that
+ * write keys in different stripes never wait for each other.
+ *
+ * Reads (get, containsKey, getOrDefault) don't take any lock, they read the
+ * bucket heads through an AtomicReferenceArray and the node fields are volatile,
+ * so a reader always sees fully constructed nodes. Iteration (forEach, getKeys,
+ * getValues, toString) is weakly consistent: it never throws because of concurrent
+ * modifications, but it may or may not reflect changes made while it runs.
+ *
+ * merge and compute run while holding the key's stripe lock, so they are atomic,
+ * for example merge(key, 1L, Long::sum) is an atomic increment.
+ * @see ConcurrentFrequencyTable for counters that don't lock once the key exists
+ *
+ * @author Abdiel Cortes, GitHub: AbdielCortes
+ */
+
+package map;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import list.ArrayList;
+import list.List;
+
+public class ConcurrentHashTableSC<K, V> implements Map<K, V> {
+
+	/* Node class that composes the linked structure of every bucket. The key never
+	 * changes, the value and next are volatile so lock free readers see updates.
+	 */
+	private class Node {
+		private final K key;
+		private volatile V value;
+		private volatile Node next;
+
+		/** Constructor that assigns all the values to their corresponding fields.
+		 *
+		 * @param key: object used for hashing
+		 * @param value: object to be stored
+		 * @param next: next node in the linked structure
+		 */
+		public Node(K key, V value, Node next) {
+			this.key = key;
+			this.value = value;
+			this.next = next;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public Node getNext() {
+			return next;
+		}
+
+		public void setValue(V value) {
+			this.value = value;
+		}
+
+		public void setNext(Node next) {
+			this.next = next;
+		}
+
+	} // End of node class
+
+
+	private final static int STRIPES = 16; // amount of locks, the array length is always a multiple of it
+
+	private final static double LOAD_FACTOR = 0.75; // The max ratio of numOfElements / sizeOfArray
+
+	private volatile AtomicReferenceArray<Node> hashContainer; // Array that stores the head node of every bucket
+
+	private final ReentrantLock[] locks; // lock i guards every bucket whose index % STRIPES == i
+
+	private final LongAdder currentSize; // The current amount of key-value pairs stored
+
+
+	/** Constructor that takes the expected amount of key-value pairs, the array is
+	 * rounded up to a multiple of the amount of stripes.
+	 *
+	 * @param initialSize: size of array to be created
+	 */
+	public ConcurrentHashTableSC(int initialSize) {
+		if (initialSize < 1) {
+			throw new IllegalArgumentException("Size must be larger than 0.");
+		}
+
+		int length = ((initialSize + STRIPES - 1) / STRIPES) * STRIPES;
+		this.hashContainer = new AtomicReferenceArray<Node>(length);
+		this.locks = new ReentrantLock[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			this.locks[i] = new ReentrantLock();
+		}
+		this.currentSize = new LongAdder();
+	}
+
+	/** Constructor that creates the array with an initial size of 64.
+	 * Delegates work to other constructor.
+	 */
+	public ConcurrentHashTableSC() {
+		this(64);
+	}
+
+	/** Function that return the hash code for a given key, uses the same function
+	 * as HashTableSC: the sum of the characters in key.toString().
+	 *
+	 * @param key: object used for hashing
+	 * @return hash code of key
+	 */
+	private int hashFunction(K key) {
+		if (key == null) {
+			throw new IllegalArgumentException("Key cannot be null.");
+		}
+
+		if (key instanceof Character) { // same result as the loop below, but without creating a string
+			return ((Character) key).charValue();
+		}
+
+		int sum = 0;
+		String converted = key.toString();
+		for (int i = 0; i < converted.length(); i++) {
+			sum += converted.charAt(i);
+		}
+
+		return sum & Integer.MAX_VALUE; // the sum could overflow for very long keys
+	}
+
+	/** Returns the lock guarding every bucket where a key with the given hash can be.
+	 * Since the array length is a multiple of STRIPES, (hash % length) % STRIPES
+	 * equals hash % STRIPES, so the lock of a key doesn't change when we resize.
+	 *
+	 * @param hash: hash code of the key
+	 * @return lock of the key's stripe
+	 */
+	private ReentrantLock lockFor(int hash) {
+		return this.locks[hash % STRIPES];
+	}
+
+	/** Walks the linked structure starting at head looking for key.
+	 *
+	 * @param head: first node of the linked structure
+	 * @param key: object used for hashing
+	 * @return node containing key, null if key is not in the linked structure
+	 */
+	private Node findNode(Node head, K key) {
+		for (Node currentNode = head; currentNode != null; currentNode = currentNode.getNext()) {
+			if (currentNode.getKey().equals(key)) {
+				return currentNode;
+			}
+		}
+		return null;
+	}
+
+	/** Gets value corresponding to the given key without locking.
+	 *
+	 * @param key: object used for hashing
+	 * @return value corresponding to key, null if key dosen't exist in the map
+	 */
+	@Override
+	public V get(K key) {
+		int hash = hashFunction(key);
+		AtomicReferenceArray<Node> container = this.hashContainer;
+		Node node = findNode(container.get(hash % container.length()), key);
+		return node == null ? null : node.getValue();
+	}
+
+	/** Gets value corresponding to the given key, or defaultValue when the key doesn't exist.
+	 *
+	 * @param key: object used for hashing
+	 * @param defaultValue: value returned when key isn't in the map
+	 * @return value corresponding to key, defaultValue if key dosen't exist in the map
+	 */
+	@Override
+	public V getOrDefault(K key, V defaultValue) {
+		V value = get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/** Inserts a key-value pair into the map, if that key already exists,
+	 * then the value of that key is updated.
+	 *
+	 * @param key: object used for hashing
+	 * @param value: object to be stored
+	 */
+	@Override
+	public void put(K key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+
+		compute(key, (k, oldValue) -> value);
+	}
+
+	/** Atomically combines the value stored for key with the given value using
+	 * remappingFunction, or stores value if the key doesn't exist. If remappingFunction
+	 * returns null the key-value pair is removed. remappingFunction runs while holding
+	 * the stripe lock, so it should be short and must not use this map.
+	 *
+	 * @param key: object used for hashing
+	 * @param value: value to be stored or combined with the existing value
+	 * @param remappingFunction: function that takes the old value and value and returns the new value
+	 * @return new value corresponding to key, null if it was removed
+	 */
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+
+		return compute(key, (k, oldValue) -> oldValue == null ? value : remappingFunction.apply(oldValue, value));
+	}
+
+	/** Atomically computes a new value for key using its current value (null if key
+	 * doesn't exist). If remappingFunction returns null the key-value pair is removed,
+	 * or not inserted if it didn't exist. remappingFunction runs while holding the
+	 * stripe lock, so it should be short and must not use this map.
+	 *
+	 * @param key: object used for hashing
+	 * @param remappingFunction: function that takes the key and its old value and returns the new value
+	 * @return new value corresponding to key, null if there is none
+	 */
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		int hash = hashFunction(key);
+		ReentrantLock lock = lockFor(hash);
+		boolean inserted = false;
+		V newValue;
+
+		lock.lock();
+		try {
+			// the array can only be replaced while holding every lock, so it's stable here
+			AtomicReferenceArray<Node> container = this.hashContainer;
+			int index = hash % container.length();
+			Node head = container.get(index);
+			Node node = findNode(head, key);
+			newValue = remappingFunction.apply(key, node == null ? null : node.getValue());
+
+			if (node == null) {
+				if (newValue != null) { // publish the new node at the head of the bucket
+					container.set(index, new Node(key, newValue, head));
+					inserted = true;
+				}
+			} else if (newValue == null) {
+				unlink(container, index, node);
+			} else {
+				node.setValue(newValue);
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (inserted) {
+			this.currentSize.increment();
+			if (this.currentSize.sum() > LOAD_FACTOR * this.hashContainer.length()) {
+				resize(); // resize takes every lock, so we have to call it after releasing ours
+			}
+		}
+		return newValue;
+	}
+
+	/** Removes node from the bucket at index, must be called holding the bucket's lock.
+	 * Readers that are already positioned on node can still follow its next.
+	 *
+	 * @param container: array containing the bucket
+	 * @param index: index of the bucket
+	 * @param node: node to be removed
+	 */
+	private void unlink(AtomicReferenceArray<Node> container, int index, Node node) {
+		Node head = container.get(index);
+		if (head == node) {
+			container.set(index, node.getNext());
+		} else {
+			Node previous = head;
+			while (previous.getNext() != node) {
+				previous = previous.getNext();
+			}
+			previous.setNext(node.getNext());
+		}
+		this.currentSize.decrement();
+	}
+
+	/** Takes every lock (always in the same order so two resizes can't deadlock) and
+	 * copies every key-value pair into an array twice as large. The nodes are copied
+	 * instead of moved so that readers still walking the old array see valid chains.
+	 */
+	private void resize() {
+		for (ReentrantLock lock: this.locks) {
+			lock.lock();
+		}
+		try {
+			AtomicReferenceArray<Node> container = this.hashContainer;
+			if (this.currentSize.sum() <= LOAD_FACTOR * container.length()) {
+				return; // another thread already resized
+			}
+
+			AtomicReferenceArray<Node> larger = new AtomicReferenceArray<Node>(container.length() * 2);
+			for (int i = 0; i < container.length(); i++) {
+				for (Node currentNode = container.get(i); currentNode != null; currentNode = currentNode.getNext()) {
+					int index = hashFunction(currentNode.getKey()) % larger.length();
+					larger.set(index, new Node(currentNode.getKey(), currentNode.getValue(), larger.get(index)));
+				}
+			}
+			this.hashContainer = larger;
+		} finally {
+			for (ReentrantLock lock: this.locks) {
+				lock.unlock();
+			}
+		}
+	}
+
+	/** Removes a key-value pair from the map, returns the value corresponding to that key.
+	 *
+	 * @param key: object used for hashing
+	 * @return value corresponding to that key, null if key doesn't exist
+	 */
+	@Override
+	public V remove(K key) {
+		int hash = hashFunction(key);
+		ReentrantLock lock = lockFor(hash);
+
+		lock.lock();
+		try {
+			AtomicReferenceArray<Node> container = this.hashContainer;
+			int index = hash % container.length();
+			Node node = findNode(container.get(index), key);
+			if (node == null) {
+				return null;
+			}
+			unlink(container, index, node);
+			return node.getValue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Checks if the map contains a given key.
+	 *
+	 * @param key: object used for hashing
+	 * @return true if the map contains key, false otherwise
+	 */
+	@Override
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+
+	/** Checks if the map contains a given value.
+	 *
+	 * @param value: object to be stored
+	 * @return true if the map contains value, false otherwise
+	 */
+	@Override
+	public boolean containsValue(V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+
+		AtomicReferenceArray<Node> container = this.hashContainer;
+		for (int i = 0; i < container.length(); i++) {
+			for (Node currentNode = container.get(i); currentNode != null; currentNode = currentNode.getNext()) {
+				if (currentNode.getValue().equals(value)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Takes all the keys in the map and inserts them into a list.
+	 *
+	 * @return list containing all the keys in the map
+	 */
+	@Override
+	public List<K> getKeys() {
+		List<K> keys = new ArrayList<K>(Math.max(1, this.size()));
+		forEach((key, value) -> keys.add(key));
+		return keys;
+	}
+
+	/** Takes all the values in the map and inserts them into a list.
+	 *
+	 * @return list containing all the values in the map
+	 */
+	@Override
+	public List<V> getValues() {
+		List<V> values = new ArrayList<V>(Math.max(1, this.size()));
+		forEach((key, value) -> values.add(value));
+		return values;
+	}
+
+	/** Calls action with every key-value pair in the map without locking.
+	 *
+	 * @param action: function that receives each key and its value
+	 */
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		AtomicReferenceArray<Node> container = this.hashContainer;
+		for (int i = 0; i < container.length(); i++) {
+			for (Node currentNode = container.get(i); currentNode != null; currentNode = currentNode.getNext()) {
+				action.accept(currentNode.getKey(), currentNode.getValue());
+			}
+		}
+	}
+
+	/** Returns the amount of key-value pairs stored in the map.
+	 *
+	 * @return currentSize
+	 */
+	@Override
+	public int size() {
+		return (int) this.currentSize.sum();
+	}
+
+	/** Check if there are key-value pairs stored in the map.
+	 *
+	 * @return true if there are no key-value pairs stored in the map.
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/** Removes every key-value pair, holding every lock so no write is lost halfway.
+	 */
+	@Override
+	public void clear() {
+		for (ReentrantLock lock: this.locks) {
+			lock.lock();
+		}
+		try {
+			this.hashContainer = new AtomicReferenceArray<Node>(this.hashContainer.length());
+			this.currentSize.reset();
+		} finally {
+			for (ReentrantLock lock: this.locks) {
+				lock.unlock();
+			}
+		}
+	}
+
+	/** Generates a string representing the map in a easy to read way that
+	 * can be seen in the debugger.
+	 * [key1:value1, key2:value2, ... , keyN, valueN]
+	 *
+	 * @return string representing the map
+	 */
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("[");
+		forEach((key, value) -> result.append(key).append(':').append(value).append(", "));
+		if (result.length() > 1) {
+			result.setLength(result.length() - 2);
+		}
+		return result.append(']').toString();
+	}
+
+}
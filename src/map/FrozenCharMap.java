@@ -0,0 +1,302 @@
+/** FrozenCharMap:
+ * Immutable map with character keys, built once from another map and never
+ * modified afterwards. Since every field is final and is filled in the constructor,
+ * a FrozenCharMap can be shared between threads without any synchronization.
+ *
+ * When the keys are dense (the distance between the smallest and largest key is
+ * small compared to the amount of keys) the values are stored in an array indexed
+ * by key - minKey. Otherwise the keys are placed with a minimal perfect hash:
+ * every key is first hashed into a bucket, and for every bucket we search for a
+ * seed that sends all of its keys to empty slots, so n keys use exactly n slots
+ * and a lookup is two hash computations, one array read and one key comparison.
+ *
+ * get(char) doesn't allocate anything, get(Character) only unboxes its key.
+ *
+ * @author Abdiel Cortes, GitHub: AbdielCortes
+ */
+
+package map;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import list.ArrayList;
+import list.List;
+
+public final class FrozenCharMap<V> implements Map<Character, V> {
+
+	private final static int MAX_DENSE_SPAN = 4096; // largest key range stored directly...
+	private final static int DENSITY = 4;           // ...as long as it's at most 4 slots per key
+
+	private final boolean dense; // true when values are indexed directly by key - minKey
+
+	private final char minKey;
+
+	private final char[] keys; // key stored in every slot (only used by the perfect hash)
+
+	private final Object[] values; // value of every slot, null when the slot is empty
+
+	private final int[] seeds; // seed of every bucket of the perfect hash
+
+	private final int size;
+
+
+	/** Constructor that copies every key-value pair in map and decides how to place them.
+	 *
+	 * @param map: map to be copied
+	 */
+	public FrozenCharMap(Map<Character, V> map) {
+		this.size = map.size();
+
+		int[] range = {Character.MAX_VALUE, Character.MIN_VALUE};
+		map.forEach((key, value) -> {
+			range[0] = Math.min(range[0], key);
+			range[1] = Math.max(range[1], key);
+		});
+		int span = this.size == 0 ? 0 : range[1] - range[0] + 1;
+
+		if (span <= MAX_DENSE_SPAN && span <= DENSITY * this.size) {
+			this.dense = true;
+			this.minKey = (char) (this.size == 0 ? 0 : range[0]);
+			this.keys = null;
+			this.seeds = null;
+			this.values = new Object[Math.max(span, 1)];
+			map.forEach((key, value) -> this.values[key - this.minKey] = value);
+		} else {
+			this.dense = false;
+			this.minKey = 0;
+			this.keys = new char[this.size];
+			this.values = new Object[this.size];
+			this.seeds = new int[bucketCount(this.size)];
+			buildPerfectHash(map);
+		}
+	}
+
+	/** Creates a FrozenCharMap with the same key-value pairs as map.
+	 *
+	 * @param map: map to be copied
+	 * @return immutable copy of map
+	 */
+	public static <V> FrozenCharMap<V> of(Map<Character, V> map) {
+		return new FrozenCharMap<V>(map);
+	}
+
+	private static int bucketCount(int size) {
+		return size / 2 + 1; // ~2 keys per bucket keeps the seed search short
+	}
+
+	/** Mixes a key and a seed into a well distributed positive integer (murmur3 finalizer).
+	 *
+	 * @param key: character being hashed
+	 * @param seed: seed of the key's bucket, 0 for choosing the bucket
+	 * @return hash of key using seed
+	 */
+	private static int mix(char key, int seed) {
+		int h = key * 0x9E3779B9 + seed * 0x85EBCA6B;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h & Integer.MAX_VALUE;
+	}
+
+	/** Places every key using hash and displace. Buckets are processed from the largest
+	 * to the smallest, since large buckets are the hardest to fit while the table is
+	 * still empty. For every bucket we try seeds 1, 2, 3... until all its keys land on
+	 * different empty slots.
+	 *
+	 * @param map: map whose keys are placed
+	 */
+	private void buildPerfectHash(Map<Character, V> map) {
+		int bucketCount = this.seeds.length;
+		char[][] buckets = new char[bucketCount][];
+		int[] bucketSizes = new int[bucketCount];
+		map.forEach((key, value) -> bucketSizes[mix(key, 0) % bucketCount]++);
+		for (int i = 0; i < bucketCount; i++) {
+			buckets[i] = new char[bucketSizes[i]];
+			bucketSizes[i] = 0;
+		}
+		map.forEach((key, value) -> {
+			int bucket = mix(key, 0) % bucketCount;
+			buckets[bucket][bucketSizes[bucket]++] = key;
+		});
+
+		// sort bucket indexes by bucket size, largest first (counting sort, sizes are small)
+		int maxBucket = 0;
+		for (char[] bucket: buckets) {
+			maxBucket = Math.max(maxBucket, bucket.length);
+		}
+		int[] order = new int[bucketCount];
+		int position = 0;
+		for (int length = maxBucket; length > 0; length--) {
+			for (int i = 0; i < bucketCount; i++) {
+				if (buckets[i].length == length) {
+					order[position++] = i;
+				}
+			}
+		}
+
+		boolean[] taken = new boolean[this.size];
+		int[] slots = new int[maxBucket];
+		for (int o = 0; o < position; o++) {
+			char[] bucket = buckets[order[o]];
+			for (int seed = 1; ; seed++) {
+				int placed = 0;
+				while (placed < bucket.length) {
+					int slot = mix(bucket[placed], seed) % this.size;
+					if (taken[slot]) {
+						break;
+					}
+					taken[slot] = true;
+					slots[placed++] = slot;
+				}
+				if (placed == bucket.length) {
+					this.seeds[order[o]] = seed;
+					break;
+				}
+				for (int i = 0; i < placed; i++) { // undo the partial placement and try the next seed
+					taken[slots[i]] = false;
+				}
+			}
+			for (int i = 0; i < bucket.length; i++) {
+				this.keys[slots[i]] = bucket[i];
+				this.values[slots[i]] = map.get(bucket[i]);
+			}
+		}
+	}
+
+	/** Gets value corresponding to the given key without allocating.
+	 *
+	 * @param key: character to look up
+	 * @return value corresponding to key, null if key dosen't exist in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(char key) {
+		if (this.dense) {
+			int index = key - this.minKey;
+			return index >= 0 && index < this.values.length ? (V) this.values[index] : null;
+		}
+		if (this.size == 0) {
+			return null;
+		}
+
+		int slot = mix(key, this.seeds[mix(key, 0) % this.seeds.length]) % this.size;
+		return this.keys[slot] == key ? (V) this.values[slot] : null; // keys not in the map can land anywhere
+	}
+
+	@Override
+	public V get(Character key) {
+		if (key == null) {
+			throw new IllegalArgumentException("Key cannot be null.");
+		}
+		return get(key.charValue());
+	}
+
+	@Override
+	public V getOrDefault(Character key, V defaultValue) {
+		V value = get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	@Override
+	public boolean containsKey(Character key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public boolean containsValue(V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+
+		for (Object v: this.values) {
+			if (value.equals(v)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Calls action with every key-value pair, directly from the backing arrays.
+	 *
+	 * @param action: function that receives each key and its value
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void forEach(BiConsumer<? super Character, ? super V> action) {
+		for (int i = 0; i < this.values.length; i++) {
+			if (this.values[i] != null) {
+				action.accept(this.dense ? (char) (this.minKey + i) : this.keys[i], (V) this.values[i]);
+			}
+		}
+	}
+
+	@Override
+	public List<Character> getKeys() {
+		List<Character> result = new ArrayList<Character>(Math.max(1, this.size));
+		forEach((key, value) -> result.add(key));
+		return result;
+	}
+
+	@Override
+	public List<V> getValues() {
+		List<V> result = new ArrayList<V>(Math.max(1, this.size));
+		forEach((key, value) -> result.add(value));
+		return result;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/* The map is immutable, every method that would modify it throws an exception */
+
+	@Override
+	public void put(Character key, V value) {
+		throw new UnsupportedOperationException("FrozenCharMap cannot be modified.");
+	}
+
+	@Override
+	public V merge(Character key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		throw new UnsupportedOperationException("FrozenCharMap cannot be modified.");
+	}
+
+	@Override
+	public V compute(Character key, BiFunction<? super Character, ? super V, ? extends V> remappingFunction) {
+		throw new UnsupportedOperationException("FrozenCharMap cannot be modified.");
+	}
+
+	@Override
+	public V remove(Character key) {
+		throw new UnsupportedOperationException("FrozenCharMap cannot be modified.");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("FrozenCharMap cannot be modified.");
+	}
+
+	/** Generates a string representing the map in a easy to read way that
+	 * can be seen in the debugger.
+	 * [key1:value1, key2:value2, ... , keyN, valueN]
+	 *
+	 * @return string representing the map
+	 */
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("[");
+		forEach((key, value) -> result.append(key).append(':').append(value).append(", "));
+		if (result.length() > 1) {
+			result.setLength(result.length() - 2);
+		}
+		return result.append(']').toString();
+	}
+
+}
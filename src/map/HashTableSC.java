@@ -11,6 +11,9 @@
 
 package map;
 
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
 import list.ArrayList;
 import list.List;
 
@@ -127,6 +130,10 @@ public class HashTableSC<K, V> implements Map<K, V> {
 			throw new IllegalArgumentException("Key cannot be null.");
 		}
 		
+		if (key instanceof Character) { // same result as the loop below, but without creating a string
+			return ((Character) key).charValue();
+		}
+		
 		int sum = 0;
 		String converted = key.toString();
 		// A hash collision will occur when a string is a contains the same
@@ -160,6 +167,21 @@ public class HashTableSC<K, V> implements Map<K, V> {
 	private Node getHeadNode(K key) {
 		return (Node) this.hashContainer[getHashIndex(key)];
 	}
+	
+	/** Walks the linked structure starting at head looking for key.
+	 * 
+	 * @param head: first node of the linked structure
+	 * @param key: object used for hashing
+	 * @return node containing key, null if key is not in the linked structure
+	 */
+	private Node findNode(Node head, K key) {
+		for (Node currentNode = head; currentNode != null; currentNode = currentNode.getNext()) {
+			if (currentNode.getKey().equals(key)) {
+				return currentNode;
+			}
+		}
+		return null;
+	}
 
 	/** Gets value corresponding to the given key.
 	 * 
@@ -172,21 +194,20 @@ public class HashTableSC<K, V> implements Map<K, V> {
 			throw new IllegalArgumentException("Key cannot be null.");
 		}
 		
-		Node head = getHeadNode(key);
-		if (head == null) {
-			return null;
-		} else { 
-			if (head.getKey().equals(key)) {
-				return head.getValue();
-			} else {
-				for (Node currentNode = head.getNext(); currentNode != null; currentNode = currentNode.getNext()) {
-					if (currentNode.getKey().equals(key)) {
-						return currentNode.getValue();
-					}
-				}
-			}
-		}
-		return null;
+		Node node = findNode(getHeadNode(key), key);
+		return node == null ? null : node.getValue();
+	}
+	
+	/** Gets value corresponding to the given key, or defaultValue when the key doesn't exist.
+	 * 
+	 * @param key: object used for hashing
+	 * @param defaultValue: value returned when key isn't in the HashTableSC
+	 * @return value corresponding to key, defaultValue if key dosen't exist in HashMap 
+	 */
+	@Override
+	public V getOrDefault(K key, V defaultValue) {
+		V value = get(key);
+		return value == null ? defaultValue : value;
 	}
 
 	/** Inserts a key-value pair into the HashTableSC, if that key already exists,
@@ -205,29 +226,90 @@ public class HashTableSC<K, V> implements Map<K, V> {
 		}
 		
 		int index = getHashIndex(key);
-		if (this.hashContainer[index] == null) { // if there are no nodes at that index
-			this.hashContainer[index] = new Node(key, value);
-			this.currentSize++;
-		} else if (containsKey(key)){ // key already exists so we update its value
-			Node head = (Node) this.hashContainer[index];
-			for (Node currentNode = head; currentNode != null; currentNode = currentNode.getNext()) {
-				if (currentNode.getKey().equals(key)) {
-					currentNode.setValue(value);
-				}
-			}
+		Node node = findNode((Node) this.hashContainer[index], key);
+		if (node != null) { // key already exists so we update its value
+			node.setValue(value);
 		} else { // key dosen't exist so we insert it at the head of the sublist
-			Node previousHead = (Node) this.hashContainer[index];
-			Node newNode = new Node(key, value, previousHead);
-			this.hashContainer[index] = newNode;
-			this.currentSize++;
-		}	
+			insertAtHead(index, key, value);
+		}
+	}
+	
+	/** Inserts a new key-value pair at the head of the sublist at index, rehashing
+	 * if the new pair makes the map go over the load factor.
+	 * 
+	 * @param index: hash index of key
+	 * @param key: object used for hashing
+	 * @param value: object to be stored
+	 */
+	private void insertAtHead(int index, K key, V value) {
+		Node previousHead = (Node) this.hashContainer[index];
+		this.hashContainer[index] = new Node(key, value, previousHead);
+		this.currentSize++;
 		
 		// if inserting this new key-value pair caused the map to go over the load factor
-		if (((this.size()) / this.hashContainer.length) > LOAD_FACTOR) { 
+		if (((double) this.size()) / this.hashContainer.length > LOAD_FACTOR) { 
 			rehash();
 		}
 	}
 	
+	/** Combines the value stored for key with the given value using remappingFunction,
+	 * or stores value if the key doesn't exist. The key is hashed only once, so counting
+	 * can be done with merge(key, 1, Integer::sum) instead of containsKey, get and put.
+	 * If remappingFunction returns null the key-value pair is removed.
+	 * 
+	 * @param key: object used for hashing
+	 * @param value: value to be stored or combined with the existing value
+	 * @param remappingFunction: function that takes the old value and value and returns the new value
+	 * @return new value corresponding to key, null if it was removed
+	 */
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null.");
+		}
+		
+		int index = getHashIndex(key);
+		Node node = findNode((Node) this.hashContainer[index], key);
+		if (node == null) {
+			insertAtHead(index, key, value);
+			return value;
+		}
+		
+		V newValue = remappingFunction.apply(node.getValue(), value);
+		if (newValue == null) {
+			remove(key);
+		} else {
+			node.setValue(newValue);
+		}
+		return newValue;
+	}
+	
+	/** Computes a new value for key using its current value (null if key doesn't exist),
+	 * hashing the key only once. If remappingFunction returns null the key-value pair 
+	 * is removed, or not inserted if it didn't exist.
+	 * 
+	 * @param key: object used for hashing
+	 * @param remappingFunction: function that takes the key and its old value and returns the new value
+	 * @return new value corresponding to key, null if there is none
+	 */
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		int index = getHashIndex(key);
+		Node node = findNode((Node) this.hashContainer[index], key);
+		V newValue = remappingFunction.apply(key, node == null ? null : node.getValue());
+		
+		if (node == null) {
+			if (newValue != null) {
+				insertAtHead(index, key, newValue);
+			}
+		} else if (newValue == null) {
+			remove(key);
+		} else {
+			node.setValue(newValue);
+		}
+		return newValue;
+	}
+	
 	/** Called when the load factor (#elements / arraySize) of the map get to large.
 	 * takes all the key-value pairs and hashes them into a new array that is
 	 * twice the size of the previous array.
@@ -237,24 +319,19 @@ public class HashTableSC<K, V> implements Map<K, V> {
 		
 		for (Object head: this.hashContainer) { // iterates through entire array
 			if (head != null) { // if at a certain index contains key-value pairs
-				for (Node currentNode = (Node) head; currentNode != null; currentNode = currentNode.getNext()) {
+				Node currentNode = (Node) head;
+				while (currentNode != null) {
+					// we move the existing nodes instead of copying them into new nodes
+					Node nextNode = currentNode.getNext();
 					int index = hashFunction(currentNode.getKey()) % larger.length; // gets new hash index
 					
-					if (larger[index] == null) { // if there are no key-value pairs in that index
-						larger[index] = new Node(currentNode.getKey(), currentNode.getValue());
-					} else { // else a hash collision occurred
-						Node previousHead = (Node) larger[index]; // store previous node at larger[index]
-						Node newNode = new Node(currentNode.getKey(), currentNode.getValue(), previousHead); // create a new node with previousHead as next
-						larger[index] = newNode; // insert newNode at index
-					}
+					currentNode.setNext((Node) larger[index]); // previous head (or null) becomes next
+					larger[index] = currentNode; // insert node at index
+					currentNode = nextNode;
 				}
 			}
 		}
 		
-		int size = this.currentSize;
-		this.clear(); // set everything in the previous hashContainer to null
-		this.currentSize = size;
-		
 		this.hashContainer = larger; // set hashConainer to the new larger array
 	}
 
@@ -282,7 +359,7 @@ public class HashTableSC<K, V> implements Map<K, V> {
 			return result;
 		} else {
 			Node currentNode = head;
-			while (!currentNode.getNext().getKey().equals(key) && currentNode.getNext() != null) {
+			while (currentNode.getNext() != null && !currentNode.getNext().getKey().equals(key)) {
 				currentNode = currentNode.getNext();
 			}
 			
@@ -374,6 +451,20 @@ public class HashTableSC<K, V> implements Map<K, V> {
 		return values;
 	}
 
+	/** Calls action with every key-value pair in the HashTableSC, without
+	 * copying the keys or the values into a list first.
+	 * 
+	 * @param action: function that receives each key and its value
+	 */
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		for (Object head: this.hashContainer) {
+			for (Node currentNode = (Node) head; currentNode != null; currentNode = currentNode.getNext()) {
+				action.accept(currentNode.getKey(), currentNode.getValue());
+			}
+		}
+	}
+
 	/** Returns the amount of key-value pairs stored in the HashTableSC.
 	 * 
 	 * @return currentSize
@@ -1,15 +1,22 @@
 package map;
 
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
 import list.List;
 
 public interface Map<K, V> {
 	V get(K key);
+	V getOrDefault(K key, V defaultValue);
 	void put(K key, V value);
+	V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction);
+	V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction);
 	V remove(K key);
 	boolean containsKey(K key);
 	boolean containsValue(V value);
 	List<K> getKeys();
 	List<V> getValues();
+	void forEach(BiConsumer<? super K, ? super V> action);
 	int size();
 	boolean isEmpty();
 	void clear();
@@ -0,0 +1,237 @@
+package test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import compress.HuffmanCompressor;
+import test.CorpusGenerator.Distribution;
+
+/**
+ * Benchmark driver for the whole compress/decompress path. Generates a corpus with
+ * CorpusGenerator (every distribution at every size), then for 1 to N threads runs a
+ * batch of jobs, where a job compresses one corpus file to disk and decompresses it
+ * again. For every thread count it reports the aggregate throughput and the p50/p99
+ * latency of the jobs, and for every corpus file the compression ratio and the
+ * single thread throughput. Every job checks that the decompressed file matches the
+ * original, so the benchmark is also a large round trip test.
+ * <pre>
+ *   CompressorBenchmark [--threads N] [--repeat R] [--dir directory] [size ...]
+ * </pre>
+ * Sizes default to 64K, 1M and 16M, threads to the amount of processors and repeat
+ * (how many times every file is compressed per thread count) to 3.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class CompressorBenchmark {
+
+	private static final String[] DEFAULT_SIZES = {"64K", "1M", "16M"};
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int repeat = 3;
+		File directory = null;
+		List<Long> sizes = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--threads") && i + 1 < args.length) {
+				maxThreads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--repeat") && i + 1 < args.length) {
+				repeat = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--dir") && i + 1 < args.length) {
+				directory = new File(args[++i]);
+			} else {
+				sizes.add(CorpusGenerator.parseSize(args[i]));
+			}
+		}
+		if (sizes.isEmpty()) {
+			for (String size: DEFAULT_SIZES) {
+				sizes.add(CorpusGenerator.parseSize(size));
+			}
+		}
+		if (maxThreads < 1 || repeat < 1) {
+			throw new IllegalArgumentException("Threads and repeat must be at least 1.");
+		}
+
+		boolean temporary = directory == null;
+		if (temporary) {
+			directory = File.createTempFile("corpus", "");
+			directory.delete();
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+
+		try {
+			List<File> corpus = generate(directory, sizes);
+			reportFiles(corpus);
+			System.out.println();
+			System.out.println("Threads   Jobs        MB        MB/s    p50 ms    p99 ms");
+			for (int threads = 1; threads <= maxThreads; threads++) {
+				reportThreads(corpus, threads, repeat);
+			}
+		} finally {
+			if (temporary) {
+				for (File file: directory.listFiles()) {
+					file.delete();
+				}
+				directory.delete();
+			}
+		}
+	}
+
+	/* Generates every distribution at every size, files that already exist are reused */
+	static List<File> generate(File directory, List<Long> sizes) throws IOException {
+		List<File> corpus = new ArrayList<>();
+		for (long size: sizes) {
+			for (Distribution distribution: Distribution.values()) {
+				File file = new File(directory, distribution.fileName() + "-" + CorpusGenerator.formatSize(size) + ".dat");
+				if (!file.isFile() || file.length() != size) {
+					new CorpusGenerator(distribution).generate(size, file);
+				}
+				corpus.add(file);
+			}
+		}
+		return corpus;
+	}
+
+	/* Compression ratio and single thread throughput of every file, measured on a second run so the code is warm */
+	static void reportFiles(List<File> corpus) throws IOException {
+		System.out.println("File                     Size       Ratio   Compress MB/s  Decompress MB/s");
+		for (File file: corpus) {
+			Job job = new Job(file);
+			job.run();
+			job.run();
+			double megabytes = file.length() / 1e6;
+			System.out.printf("%-20s %10s %9.3f %15.1f %16.1f%n", file.getName(),
+					CorpusGenerator.formatSize(file.length()), job.ratio(),
+					megabytes / (job.compressNanos / 1e9), megabytes / (job.decompressNanos / 1e9));
+		}
+	}
+
+	/* Runs every file repeat times on a pool of the given amount of threads */
+	static void reportThreads(List<File> corpus, int threads, int repeat) throws IOException, InterruptedException {
+		List<Job> jobs = new ArrayList<>();
+		for (int r = 0; r < repeat; r++) {
+			for (File file: corpus) {
+				jobs.add(new Job(file));
+			}
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		try {
+			List<Future<Job>> results = new ArrayList<>();
+			for (Job job: jobs) {
+				results.add(pool.submit(job));
+			}
+			for (Future<Job> result: results) {
+				result.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("Benchmark job failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long bytes = 0;
+		long[] latencies = new long[jobs.size()];
+		for (int i = 0; i < latencies.length; i++) {
+			bytes += jobs.get(i).file.length();
+			latencies[i] = jobs.get(i).compressNanos + jobs.get(i).decompressNanos;
+		}
+		Arrays.sort(latencies);
+		System.out.printf("%7d %6d %9.1f %11.1f %9.2f %9.2f%n", threads, jobs.size(), bytes / 1e6,
+				bytes / 1e6 / (elapsed / 1e9), percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6);
+	}
+
+	/* Nearest rank percentile of sorted values */
+	static long percentile(long[] sorted, double fraction) {
+		int rank = (int) Math.ceil(fraction * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/* Compresses a file to a temporary file, decompresses it and checks the result */
+	static class Job implements Callable<Job> {
+
+		final File file;
+		long compressedBytes;
+		long compressNanos;
+		long decompressNanos;
+
+		Job(File file) {
+			this.file = file;
+		}
+
+		void run() throws IOException {
+			File compressed = File.createTempFile("benchmark", ".huf");
+			File decompressed = File.createTempFile("benchmark", ".out");
+			try {
+				HuffmanCompressor compressor = new HuffmanCompressor();
+				long start = System.nanoTime();
+				compressor.compress(this.file.getPath(), compressed.getPath());
+				long middle = System.nanoTime();
+				compressor.decompress(compressed.getPath(), decompressed.getPath());
+				long end = System.nanoTime();
+
+				this.compressNanos = middle - start;
+				this.decompressNanos = end - middle;
+				this.compressedBytes = compressed.length();
+				if (!sameContent(this.file, decompressed)) {
+					throw new AssertionError("Round trip failed for " + this.file.getName());
+				}
+			} finally {
+				compressed.delete();
+				decompressed.delete();
+			}
+		}
+
+		@Override
+		public Job call() throws IOException {
+			run();
+			return this;
+		}
+
+		double ratio() {
+			return this.file.length() == 0 ? 1 : (double) this.compressedBytes / this.file.length();
+		}
+	}
+
+	static boolean sameContent(File a, File b) throws IOException {
+		if (a.length() != b.length()) {
+			return false;
+		}
+		try (InputStream inA = new BufferedInputStream(new FileInputStream(a));
+				InputStream inB = new BufferedInputStream(new FileInputStream(b))) {
+			byte[] bufferA = new byte[64 * 1024], bufferB = new byte[64 * 1024];
+			int read;
+			while ((read = inA.read(bufferA)) > 0) {
+				int total = 0;
+				while (total < read) {
+					int n = inB.read(bufferB, total, read - total);
+					if (n < 0) {
+						return false;
+					}
+					total += n;
+				}
+				for (int i = 0; i < read; i++) {
+					if (bufferA[i] != bufferB[i]) {
+						return false;
+					}
+				}
+			}
+			return inB.read() < 0;
+		}
+	}
+}
@@ -0,0 +1,836 @@
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import list.ByteArrayList;
+import compress.AnsCodec;
+import compress.BitReader;
+import compress.BitWriter;
+import compress.BlockCodec;
+import compress.CanonicalCode;
+import compress.ContextCodec;
+import compress.DirectoryCompressor;
+import compress.EditableDocument;
+import compress.FrequencySampler;
+import compress.GzipCompressor;
+import compress.HuffmanArchive;
+import compress.HuffmanCompressor;
+import compress.LzCodec;
+import compress.TableSerializer;
+import compress.TransformPipeline;
+import compress.VarInt;
+import main.HuffmanCoding;
+
+/**
+ * Tester class for HuffmanCompressor. Compresses and decompresses several inputs
+ * with different settings and checks that the result matches the original.
+ * Throws an AssertionError on the first mismatch.
+ * 
+ * @author Abdiel Cortes
+ *
+ */
+public class CompressorTester {
+
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(1);
+		
+		byte[][] inputs = {
+			new byte[0],
+			{42},
+			Files.readAllBytes(Paths.get("inputData/input1.txt")),
+			Files.readAllBytes(Paths.get("inputData/input2.txt")),
+			Files.readAllBytes(Paths.get("inputData/input3.txt")),
+			randomBytes(random, 3_000_000, 256),
+			randomBytes(random, 500_000, 5),
+			skewedText(random, 2_500_000),
+		};
+		
+		for (byte[] input: inputs) {
+			for (int blockSize: new int[] {1000, HuffmanCompressor.DEFAULT_BLOCK_SIZE}) {
+				for (int streams: new int[] {1, 4, 7}) {
+					for (boolean pipelined: new boolean[] {true, false}) {
+						HuffmanCompressor compressor = new HuffmanCompressor();
+						compressor.setBlockSize(blockSize);
+						compressor.setStreams(streams);
+						compressor.setPipelined(pipelined);
+						roundTrip(compressor, input);
+					}
+				}
+			}
+			
+			HuffmanCompressor compressor = new HuffmanCompressor();
+			System.out.printf("%,10d bytes -> %,10d bytes%n", input.length, compress(compressor, input).length);
+		}
+		
+		// sampled tables, the last part of the file has bytes the sample is unlikely to see
+		byte[] sampled = skewedText(random, 4_000_000);
+		for (int i = sampled.length - 1000; i < sampled.length; i++) {
+			sampled[i] = (byte) (128 + random.nextInt(128));
+		}
+		HuffmanCompressor compressor = new HuffmanCompressor();
+		compressor.setSampler(new FrequencySampler(8, 4096, 1));
+		roundTripFile(compressor, sampled);
+		System.out.println(compressor.getLastEstimate());
+		
+		// appending: similar text reuses the table, random bytes need a new one
+		appendTest(new byte[][] {skewedText(random, 300_000), skewedText(random, 200_000),
+								 randomBytes(random, 100_000, 256), skewedText(random, 50_000)});
+		
+		// compact tables, full and as a diff against the previous table
+		tableTest(random);
+		
+		// tANS blocks, and the choice between coders
+		coderTest(random);
+		
+		// BWT, MTF and RLE stages ahead of the coders
+		transformTest(random);
+		
+		// LZ77 matches coded with huffman, at every level
+		lzTest(random);
+		
+		// a code per preceding byte
+		contextTest(random);
+		
+		// blocks split where the data changes, tables only written when they pay off
+		splitTest(random);
+		
+		// edits that only encode the blocks they touch
+		editTest(random);
+		
+		// repeated blocks written as references
+		dedupTest(random);
+		
+		// gzip output read back with java.util.zip
+		gzipTest(random);
+		
+		// directory trees, with files large enough to be split into segments
+		directoryTest(random);
+		
+		// many small related files in an archive with a shared table
+		archiveTest(random);
+		
+		// flipped bits and cut streams must fail instead of decoding to wrong bytes
+		corruptionTest(random);
+		
+		// a stream that wasn't produced by the compressor must be rejected
+		try {
+			new HuffmanCompressor().decompress(new ByteArrayInputStream("not compressed".getBytes()), new ByteArrayOutputStream());
+			throw new AssertionError("Invalid stream was accepted");
+		} catch (IOException expected) {
+			System.out.println("Invalid stream rejected: " + expected.getMessage());
+		}
+		
+		System.out.println("All round trips passed.");
+	}
+	
+	static byte[] compress(HuffmanCompressor compressor, byte[] input) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compressor.compress(new ByteArrayInputStream(input), compressed);
+		return compressed.toByteArray();
+	}
+	
+	static byte[] decompress(HuffmanCompressor compressor, byte[] compressed) throws IOException {
+		ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+		compressor.decompress(new ByteArrayInputStream(compressed), decompressed);
+		return decompressed.toByteArray();
+	}
+	
+	static void roundTrip(HuffmanCompressor compressor, byte[] input) throws IOException {
+		byte[] output = decompress(compressor, compress(compressor, input));
+		if (!Arrays.equals(input, output)) {
+			throw new AssertionError("Round trip failed for " + input.length + " bytes, block size "
+					+ compressor.getBlockSize() + ", " + compressor.getStreams() + " streams");
+		}
+	}
+	
+	/*
+	 * Round trips input with the compressor's block size and with 1000 byte blocks, so
+	 * the data ends up in many small blocks too, then checks that it compresses smaller
+	 * than with baseline. Returns both sizes, baseline first.
+	 */
+	static int[] roundTripBlockSizes(HuffmanCompressor compressor, byte[] input, HuffmanCompressor baseline, String failure)
+			throws IOException {
+		int blockSize = compressor.getBlockSize();
+		roundTrip(compressor, input);
+		compressor.setBlockSize(1000);
+		roundTrip(compressor, input);
+		compressor.setBlockSize(blockSize);
+		int baselineSize = compress(baseline, input).length, size = compress(compressor, input).length;
+		if (size >= baselineSize) {
+			throw new AssertionError(failure + ": " + size + " bytes, " + baselineSize + " without it");
+		}
+		return new int[] {baselineSize, size};
+	}
+	
+	static void roundTripFile(HuffmanCompressor compressor, byte[] input) throws IOException {
+		File original = File.createTempFile("tester", ".txt");
+		File compressed = File.createTempFile("tester", ".huf");
+		File decompressed = File.createTempFile("tester", ".out");
+		try {
+			Files.write(original.toPath(), input);
+			compressor.compress(original.getPath(), compressed.getPath());
+			compressor.decompress(compressed.getPath(), decompressed.getPath());
+			if (!Arrays.equals(input, Files.readAllBytes(decompressed.toPath()))) {
+				throw new AssertionError("File round trip failed for " + input.length + " bytes");
+			}
+		} finally {
+			original.delete();
+			compressed.delete();
+			decompressed.delete();
+		}
+	}
+	
+	static void appendTest(byte[][] parts) throws IOException {
+		File compressed = File.createTempFile("tester", ".huf");
+		compressed.delete(); // append creates the file
+		try {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			HuffmanCompressor compressor = new HuffmanCompressor();
+			compressor.setBlockSize(64 * 1024);
+			for (byte[] part: parts) {
+				System.out.println("Append: " + compressor.append(compressed.getPath(), new ByteArrayInputStream(part)));
+				expected.write(part);
+			}
+			byte[] output = decompress(compressor, Files.readAllBytes(compressed.toPath()));
+			if (!Arrays.equals(expected.toByteArray(), output)) {
+				throw new AssertionError("Appended file doesn't decompress to the appended data");
+			}
+		} finally {
+			compressed.delete();
+		}
+	}
+	
+	static void directoryTest(Random random) throws IOException {
+		Path root = Files.createTempDirectory("tester");
+		Path source = root.resolve("source"), compressed = root.resolve("compressed"), restored = root.resolve("restored");
+		byte[][] contents = {new byte[0], skewedText(random, 5000), skewedText(random, 300_000),
+							 randomBytes(random, 200_000, 256), skewedText(random, 1_000_000)};
+		String[] names = {"empty.txt", "a/small.txt", "a/b/medium.txt", "a/b/random.bin", "c/large.txt"};
+		
+		DirectoryCompressor compressor = new DirectoryCompressor(3);
+		try {
+			for (int i = 0; i < names.length; i++) {
+				Path file = source.resolve(names[i]);
+				Files.createDirectories(file.getParent());
+				Files.write(file, contents[i]);
+			}
+			compressor.setBlockSize(16 * 1024);
+			compressor.setSegmentBlocks(4);
+			compressor.setSplitThreshold(100_000);
+			try {
+				compressor.setBlockSize(HuffmanCompressor.MAX_BLOCK_SIZE); // 4 blocks of it don't fit an array
+				throw new AssertionError("Block size that overflows the segment size was accepted");
+			} catch (IllegalArgumentException expected) {
+			}
+			try {
+				compressor.setSegmentBlocks(Integer.MAX_VALUE);
+				throw new AssertionError("Segment that doesn't fit an array was accepted");
+			} catch (IllegalArgumentException expected) {
+			}
+			
+			List<DirectoryCompressor.FileResult> results = compressor.compress(source, compressed);
+			if (results.size() != names.length || results.get(0).getInputBytes() != 1_000_000 || results.get(0).getSegments() != 16) {
+				throw new AssertionError("Files weren't compressed largest first or weren't split");
+			}
+			System.out.println("Directory: " + compressor);
+			compressor.decompress(compressed, restored);
+			for (int i = 0; i < names.length; i++) {
+				if (!Arrays.equals(contents[i], Files.readAllBytes(restored.resolve(names[i])))) {
+					throw new AssertionError("Directory round trip failed for " + names[i]);
+				}
+			}
+		} finally {
+			compressor.shutdown();
+			deleteTree(root);
+		}
+	}
+	
+	static void archiveTest(Random random) throws IOException {
+		Path root = Files.createTempDirectory("tester");
+		Path source = root.resolve("source"), archive = root.resolve("files.hufa"), restored = root.resolve("restored");
+		try {
+			List<byte[]> contents = new ArrayList<>();
+			List<String> names = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				contents.add(skewedText(random, 100 + random.nextInt(2000)));
+				names.add("dir" + (i % 7) + "/file" + i + ".txt");
+			}
+			contents.add(randomBytes(random, 50_000, 256)); // different enough to need its own table
+			names.add("random.bin");
+			contents.add(new byte[0]);
+			names.add("empty");
+			
+			long separate = 0;
+			for (int i = 0; i < names.size(); i++) {
+				Path file = source.resolve(names.get(i));
+				Files.createDirectories(file.getParent());
+				Files.write(file, contents.get(i));
+				separate += compress(new HuffmanCompressor(), contents.get(i)).length;
+			}
+			
+			HuffmanArchive.create(archive, source);
+			System.out.printf("Archive: %,d bytes, %,d bytes compressed separately%n", Files.size(archive), separate);
+			
+			try (HuffmanArchive opened = new HuffmanArchive(archive)) {
+				if (opened.getEntries().size() != names.size()) {
+					throw new AssertionError("Archive doesn't list every member");
+				}
+				for (int i: new int[] {0, 57, 199, 200, 201}) {
+					ByteArrayOutputStream member = new ByteArrayOutputStream();
+					opened.extract(names.get(i), member);
+					if (!Arrays.equals(contents.get(i), member.toByteArray())) {
+						throw new AssertionError("Extracting " + names.get(i) + " failed");
+					}
+				}
+				opened.extractAll(restored);
+			}
+			for (int i = 0; i < names.size(); i++) {
+				if (!Arrays.equals(contents.get(i), Files.readAllBytes(restored.resolve(names.get(i))))) {
+					throw new AssertionError("Extracting every member failed for " + names.get(i));
+				}
+			}
+		} finally {
+			deleteTree(root);
+		}
+	}
+	
+	static void deleteTree(Path root) throws IOException {
+		try (Stream<Path> walk = Files.walk(root)) {
+			walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+	
+	static void tableTest(Random random) {
+		HuffmanCoding coding = new HuffmanCoding();
+		String text = new String(skewedText(random, 20_000), StandardCharsets.ISO_8859_1);
+		CanonicalCode first = CanonicalCode.fromCodeTable(coding.huffman_code(coding.huffman_tree(coding.compute_fd(text))), 257);
+		
+		long[] counts = new long[257];
+		for (byte b: skewedText(random, 20_000)) {
+			counts[b & 0xFF]++;
+		}
+		counts[200] = 1;
+		CanonicalCode second = CanonicalCode.fromFrequencies(counts);
+		
+		CanonicalCode[][] pairs = {{first, null}, {second, null}, {second, first}, {second, second}};
+		for (CanonicalCode[] pair: pairs) {
+			ByteArrayList out = new ByteArrayList();
+			BitWriter writer = new BitWriter(out);
+			TableSerializer.write(writer, pair[0], pair[1]);
+			writer.flush();
+			if (out.size() != (TableSerializer.bits(pair[0], pair[1]) + 7) / 8) {
+				throw new AssertionError("Table size doesn't match the measured size");
+			}
+			CanonicalCode read = TableSerializer.read(new BitReader(out.elements(), 0, out.size()), 257, pair[1]);
+			if (!read.equals(pair[0])) {
+				throw new AssertionError("Table round trip failed");
+			}
+			System.out.printf("Table%s: %d bytes%n", pair[1] == null ? "" : " with previous", out.size());
+		}
+	}
+	
+	static void coderTest(Random random) throws IOException {
+		AnsCodec ans = new AnsCodec();
+		BlockCodec histogram = new BlockCodec();
+		for (int length: new int[] {1, 2, 3, 5, 1000, 100_000}) {
+			for (byte[] input: new byte[][] {new byte[length], skewedBytes(random, length, 95), randomBytes(random, length, 256)}) {
+				ByteArrayList payload = new ByteArrayList();
+				ans.encode(input, 0, input.length, histogram.histogram(input, 0, input.length), payload);
+				byte[] output = new byte[input.length];
+				ans.decode(payload.elements(), 0, payload.size(), output, 0, output.length);
+				if (!Arrays.equals(input, output)) {
+					throw new AssertionError("tANS round trip of " + length + " bytes failed");
+				}
+				try {
+					ans.decode(payload.elements(), 0, payload.size() - 1, output, 0, output.length);
+					throw new AssertionError("Truncated tANS block was accepted");
+				} catch (IllegalArgumentException expected) {
+				}
+			}
+		}
+		
+		// a byte that is 95% of the data is worth far less than the bit huffman spends on it
+		byte[] skewed = skewedBytes(random, 2_000_000, 95);
+		HuffmanCompressor smallest = new HuffmanCompressor();
+		HuffmanCompressor fastest = new HuffmanCompressor();
+		fastest.setPreferSpeed(true);
+		roundTrip(smallest, skewed);
+		roundTrip(fastest, skewed);
+		int ansSize = compress(smallest, skewed).length, fastestSize = compress(fastest, skewed).length;
+		if (fastestSize != ansSize) {
+			throw new AssertionError("Speed was preferred over tANS, which decodes as fast as huffman");
+		}
+		
+		// long runs of the common byte make few LZ tokens, which decode faster than a symbol each
+		smallest.setLevel(LzCodec.DEFAULT_LEVEL);
+		fastest.setLevel(LzCodec.DEFAULT_LEVEL);
+		roundTrip(fastest, skewed);
+		int lzSize = compress(fastest, skewed).length;
+		if (compress(smallest, skewed).length != ansSize || lzSize <= ansSize) {
+			throw new AssertionError("LZ wasn't chosen for speed on skewed data");
+		}
+		System.out.printf("Skewed data: %,d bytes with the smallest coder, %,d bytes with the fastest%n", ansSize, lzSize);
+	}
+	
+	static void transformTest(Random random) throws IOException {
+		byte[][] inputs = {
+			new byte[0], {7}, {1, 0}, "banana".getBytes(), new byte[1000], "abababababab".getBytes(),
+			randomBytes(random, 5000, 2), randomBytes(random, 5000, 256), logLines(random, 20_000),
+		};
+		for (byte[] input: inputs) {
+			for (int stages = 0; stages <= TransformPipeline.ALL; stages++) {
+				TransformPipeline pipeline = new TransformPipeline(stages);
+				ByteArrayList transformed = pipeline.forward(input, 0, input.length);
+				byte[] copy = Arrays.copyOf(transformed.elements(), transformed.size());
+				ByteArrayList output = new TransformPipeline(0).inverse(stages, copy, 0, copy.length, input.length);
+				if (!Arrays.equals(input, Arrays.copyOf(output.elements(), output.size()))) {
+					throw new AssertionError("Transform " + pipeline + " of " + input.length + " bytes failed");
+				}
+				if (input.length > 0) {
+					try {
+						new TransformPipeline(0).inverse(stages, copy, 0, copy.length, input.length - 1);
+						throw new AssertionError("Transform " + pipeline + " decoded to the wrong length");
+					} catch (IllegalArgumentException expected) {
+					}
+				}
+			}
+		}
+		// a corrupt run of zeros asks for half a GB, the limit stops it before anything is allocated
+		byte[] run = new byte[28];
+		Arrays.fill(run, (byte) 1);
+		for (int stages: new int[] {TransformPipeline.RLE, TransformPipeline.ALL}) {
+			try {
+				new TransformPipeline(0).inverse(stages, run, 0, run.length, 1000);
+				throw new AssertionError("A run longer than the block was decoded");
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+		
+		// repetitive log lines are where the transforms pay off
+		byte[] logs = logLines(random, 3_000_000);
+		HuffmanCompressor plain = new HuffmanCompressor();
+		HuffmanCompressor transformed = new HuffmanCompressor();
+		transformed.setTransforms(TransformPipeline.ALL);
+		int[] sizes = roundTripBlockSizes(transformed, logs, plain, "Transforms didn't make log lines smaller");
+		System.out.printf("Log lines: %,d bytes, %,d bytes coded directly, %,d bytes with %s%n", logs.length,
+				sizes[0], sizes[1], TransformPipeline.parse("bwt,mtf,rle"));
+	}
+	
+	static void lzTest(Random random) throws IOException {
+		byte[][] inputs = {
+			new byte[0], {7}, "abc".getBytes(), "aaaaaaaaaaaaaaaaaaaaaaaa".getBytes(), "abcabcabcabcabcabcab".getBytes(),
+			new byte[1000], randomBytes(random, 5000, 4), randomBytes(random, 5000, 256), logLines(random, 50_000),
+		};
+		BlockCodec histogram = new BlockCodec();
+		for (int level = 1; level <= 9; level++) {
+			LzCodec lz = new LzCodec(level);
+			for (byte[] input: inputs) {
+				long[] counts = histogram.histogram(input, 0, input.length);
+				lz.estimateBits(input, 0, input.length, counts);
+				ByteArrayList payload = new ByteArrayList();
+				lz.encode(input, 0, input.length, counts, payload);
+				byte[] output = new byte[input.length];
+				lz.decode(payload.elements(), 0, payload.size(), output, 0, output.length);
+				if (!Arrays.equals(input, output)) {
+					throw new AssertionError("LZ round trip of " + input.length + " bytes at level " + level + " failed");
+				}
+			}
+		}
+		
+		// repeated lines are matched, so LZ beats coding the bytes directly
+		byte[] logs = logLines(random, 3_000_000);
+		HuffmanCompressor plain = new HuffmanCompressor();
+		HuffmanCompressor fast = new HuffmanCompressor();
+		HuffmanCompressor best = new HuffmanCompressor();
+		fast.setLevel(1);
+		best.setLevel(9);
+		int[] fastSizes = roundTripBlockSizes(fast, logs, plain, "LZ didn't make log lines smaller");
+		int[] bestSizes = roundTripBlockSizes(best, logs, fast, "LZ level 9 didn't beat level 1");
+		System.out.printf("Log lines: %,d bytes coded directly, %,d bytes with LZ level 1, %,d bytes with level 9%n",
+				fastSizes[0], fastSizes[1], bestSizes[1]);
+	}
+	
+	static void contextTest(Random random) throws IOException {
+		byte[] english = new CorpusGenerator(CorpusGenerator.Distribution.ENGLISH).generate(2_000_000);
+		byte[][] inputs = {
+			new byte[0], {7}, "abababababab".getBytes(), new byte[1000], randomBytes(random, 5000, 256),
+			skewedText(random, 50_000), logLines(random, 50_000), Arrays.copyOf(english, 100_000),
+		};
+		ContextCodec context = new ContextCodec();
+		BlockCodec histogram = new BlockCodec();
+		for (byte[] input: inputs) {
+			long[] counts = histogram.histogram(input, 0, input.length);
+			long bits = context.estimateBits(input, 0, input.length, counts);
+			ByteArrayList payload = new ByteArrayList();
+			context.encode(input, 0, input.length, counts, payload);
+			if ((bits + 7) / 8 != payload.size()) {
+				throw new AssertionError("Order-1 estimate of " + bits + " bits for a " + payload.size() + " byte payload");
+			}
+			byte[] output = new byte[input.length];
+			context.decode(payload.elements(), 0, payload.size(), output, 0, output.length);
+			if (!Arrays.equals(input, output)) {
+				throw new AssertionError("Order-1 round trip of " + input.length + " bytes failed");
+			}
+		}
+		
+		// english words make the previous letter a good predictor of the next one
+		HuffmanCompressor plain = new HuffmanCompressor();
+		HuffmanCompressor order1 = new HuffmanCompressor();
+		order1.setContextModel(true);
+		int[] sizes = roundTripBlockSizes(order1, english, plain, "Order-1 coding didn't make english text smaller");
+		System.out.printf("English text: %,d bytes, %,d bytes coded directly, %,d bytes with order-1 codes%n",
+				english.length, sizes[0], sizes[1]);
+	}
+	
+	static void splitTest(Random random) throws IOException {
+		ByteArrayOutputStream mixed = new ByteArrayOutputStream();
+		for (int part = 0; part < 4; part++) { // log lines with base64 attachments
+			mixed.write(logLines(random, 300_000));
+			mixed.write(Base64.getMimeEncoder().encode(randomBytes(random, 150_000, 256)));
+		}
+		byte[] logs = mixed.toByteArray();
+		byte[] english = new CorpusGenerator(CorpusGenerator.Distribution.ENGLISH).generate(2_000_000);
+		
+		HuffmanCompressor split = new HuffmanCompressor();
+		split.setAdaptiveSplit(true);
+		Runnable[] ignored = {() -> split.setPreferSpeed(true), () -> split.setTransforms(TransformPipeline.ALL),
+				() -> split.setLevel(6), () -> split.setContextModel(true)};
+		for (Runnable setting: ignored) { // every part is huffman coded, these would do nothing
+			try {
+				setting.run();
+				throw new AssertionError("A setting adaptive splitting ignores was accepted");
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+		HuffmanCompressor leveled = new HuffmanCompressor();
+		leveled.setLevel(6);
+		try {
+			leveled.setAdaptiveSplit(true);
+			throw new AssertionError("Adaptive splitting was turned on with a level set");
+		} catch (IllegalArgumentException expected) {
+		}
+		for (byte[] input: new byte[][] {new byte[0], {7}, randomBytes(random, 100_000, 256), english}) {
+			roundTrip(split, input);
+		}
+		
+		// one table per block fits neither half of the mixed data, one per small block is re-sent for nothing
+		HuffmanCompressor large = new HuffmanCompressor();
+		HuffmanCompressor small = new HuffmanCompressor();
+		large.setPreferSpeed(true);
+		small.setPreferSpeed(true);
+		small.setBlockSize(1 << 14);
+		int[] sizes = roundTripBlockSizes(split, logs, large, "Splitting didn't make mixed data smaller");
+		int largeSize = sizes[0], splitSize = sizes[1];
+		int smallSize = compress(small, english).length, steadySize = compress(split, english).length;
+		if (steadySize >= smallSize) {
+			throw new AssertionError("Splitting re-sent tables for steady data");
+		}
+		System.out.printf("Mixed data: %,d bytes with a table per block, %,d bytes split%n", largeSize, splitSize);
+		System.out.printf("English text: %,d bytes with 16K blocks, %,d bytes split%n", smallSize, steadySize);
+	}
+	
+	static void editTest(Random random) throws IOException {
+		byte[] expected = new CorpusGenerator(CorpusGenerator.Distribution.ENGLISH).generate(1_000_000);
+		EditableDocument document = new EditableDocument(expected, 1 << 14, EditableDocument.DEFAULT_MAX_DRIFT);
+		int blocks = document.getBlockCount();
+		for (int edit = 0; edit < 200; edit++) {
+			int offset = random.nextInt(expected.length + 1);
+			int removed = random.nextInt(Math.min(5000, expected.length - offset) + 1);
+			int from = random.nextInt(expected.length - 5000);
+			byte[] inserted = edit % 3 == 0 ? new byte[0] : Arrays.copyOfRange(expected, from, from + random.nextInt(5000));
+			expected = edited(expected, offset, removed, inserted);
+			document.edit(offset, removed, inserted);
+		}
+		checkDocument(document, expected);
+		// an edit touches one or two blocks, three with the block merged after a deletion
+		if (document.getRebuilds() > 0 || document.getReencodedBlocks() > 4 * 200) {
+			throw new AssertionError("Edits of similar text encoded " + document.getReencodedBlocks() + " blocks and rebuilt "
+					+ document.getRebuilds() + " time(s)");
+		}
+		System.out.printf("Edits: %d blocks, %d encoded again by 200 edits%n", blocks, document.getReencodedBlocks());
+		
+		// random bytes are far from the table of the text, the document builds a new one
+		byte[] binary = randomBytes(random, 200_000, 256);
+		int offset = expected.length / 3;
+		expected = edited(expected, offset, 0, binary);
+		document.edit(offset, 0, binary);
+		checkDocument(document, expected);
+		if (document.getRebuilds() != 1) {
+			throw new AssertionError("Inserting random bytes didn't rebuild the table");
+		}
+		
+		// the document can be emptied and filled again
+		document.edit(0, expected.length, new byte[0]);
+		checkDocument(document, new byte[0]);
+		document.edit(0, 0, binary);
+		checkDocument(document, binary);
+	}
+	
+	static void corruptionTest(Random random) throws IOException {
+		byte[] input = Arrays.copyOf(logLines(random, 200_000), 200_000);
+		List<HuffmanCompressor> compressors = new ArrayList<>();
+		for (int config = 0; config < 5; config++) {
+			HuffmanCompressor compressor = new HuffmanCompressor();
+			compressor.setBlockSize(1 << 15);
+			compressors.add(compressor);
+		}
+		compressors.get(1).setTransforms(TransformPipeline.ALL);
+		compressors.get(2).setLevel(6);
+		compressors.get(3).setContextModel(true);
+		compressors.get(4).setAdaptiveSplit(true);
+		compressors.get(4).setDedupWindow(HuffmanCompressor.DEFAULT_DEDUP_WINDOW);
+		
+		int decodes = 0, rejected = 0;
+		for (HuffmanCompressor compressor: compressors) {
+			byte[] compressed = compress(compressor, input);
+			int header = HuffmanCompressor.MAGIC.length + 1;
+			for (int trial = 0; trial < 200; trial++) {
+				byte[] corrupt = compressed.clone();
+				for (int flips = 1 + random.nextInt(4); flips > 0; flips--) {
+					int bit = header * 8 + random.nextInt((corrupt.length - header) * 8);
+					corrupt[bit / 8] ^= 1 << (bit % 8);
+				}
+				decodes++;
+				try {
+					if (!Arrays.equals(input, decompress(compressor, corrupt))) { // a flipped padding bit changes nothing
+						throw new AssertionError("Corrupt stream decoded to wrong bytes");
+					}
+				} catch (IOException expected) {
+					rejected++;
+				}
+			}
+			
+			// cut anywhere, and right before the checksum block, which is the last block boundary
+			int checksumBlock = 3 + 4 + VarInt.size(input.length);
+			for (int trial = 0; trial < 20; trial++) {
+				int length = trial == 0 ? compressed.length - checksumBlock : header + random.nextInt(compressed.length - header);
+				try {
+					decompress(compressor, Arrays.copyOf(compressed, length));
+					throw new AssertionError("Stream cut at " + length + " of " + compressed.length + " bytes was accepted");
+				} catch (IOException expected) {
+				}
+			}
+			
+			// no other version is read, so relabelling a stream can't skip the checksum
+			byte[] relabelled = Arrays.copyOf(compressed, compressed.length - checksumBlock);
+			relabelled[HuffmanCompressor.MAGIC.length] = 1;
+			try {
+				decompress(compressor, relabelled);
+				throw new AssertionError("Stream of version 1 was accepted");
+			} catch (IOException expected) {
+			}
+		}
+		
+		// block headers that claim more than the stream holds must fail without allocating it
+		long[][] headers = {
+			{HuffmanCompressor.BLOCK_HUFFMAN, 1 << 30, (1L << 31) - 1}, {HuffmanCompressor.BLOCK_HUFFMAN, 1 << 30, 1L << 31},
+			{HuffmanCompressor.BLOCK_STORED, 1 << 30, 1 << 30}, {HuffmanCompressor.BLOCK_LZ | HuffmanCompressor.BLOCK_TRANSFORMED, 10, 1 << 20},
+			{HuffmanCompressor.BLOCK_REFERENCE, 100, 1 << 20}, {HuffmanCompressor.BLOCK_CHECKSUM, 0, 1 << 30}, {99, 10, 10},
+		};
+		for (long[] fields: headers) {
+			ByteArrayOutputStream crafted = new ByteArrayOutputStream();
+			crafted.write(HuffmanCompressor.MAGIC);
+			crafted.write(HuffmanCompressor.VERSION);
+			crafted.write((int) fields[0]);
+			VarInt.write(crafted, fields[1]);
+			VarInt.write(crafted, fields[2]);
+			crafted.write(new byte[16]);
+			try {
+				decompress(new HuffmanCompressor(), crafted.toByteArray());
+				throw new AssertionError("Block header " + Arrays.toString(fields) + " was accepted");
+			} catch (IOException expected) {
+			}
+		}
+		System.out.printf("Corruption: %d of %d streams with flipped bits rejected, every cut, relabelled and crafted stream rejected%n",
+				rejected, decodes);
+	}
+	
+	static void dedupTest(Random random) throws IOException {
+		// files copied a few times, every one a whole number of blocks
+		int blockSize = 1 << 16;
+		byte[] english = new CorpusGenerator(CorpusGenerator.Distribution.ENGLISH).generate(8 * blockSize);
+		byte[] logs = Arrays.copyOf(logLines(random, 8 * blockSize), 8 * blockSize);
+		byte[] binary = randomBytes(random, 4 * blockSize, 256);
+		ByteArrayOutputStream copies = new ByteArrayOutputStream();
+		for (byte[] file: new byte[][] {english, logs, english, binary, logs, english, binary}) {
+			copies.write(file);
+		}
+		byte[] redundant = copies.toByteArray();
+		
+		HuffmanCompressor dedup = new HuffmanCompressor();
+		dedup.setBlockSize(blockSize);
+		dedup.setDedupWindow(HuffmanCompressor.DEFAULT_DEDUP_WINDOW);
+		for (byte[] input: new byte[][] {new byte[0], {7}, english, redundant}) {
+			roundTrip(dedup, input);
+		}
+		dedup.setAdaptiveSplit(true);
+		roundTrip(dedup, redundant);
+		dedup.setAdaptiveSplit(false);
+		dedup.setDedupWindow(5 * blockSize); // forgets the first copies before they repeat
+		roundTrip(dedup, redundant);
+		dedup.setBlockSize(100);
+		roundTrip(dedup, Arrays.copyOf(redundant, 1_000_000));
+		dedup.setBlockSize(blockSize);
+		dedup.setDedupWindow(HuffmanCompressor.DEFAULT_DEDUP_WINDOW);
+		
+		HuffmanCompressor plain = new HuffmanCompressor();
+		plain.setBlockSize(blockSize);
+		long start = System.nanoTime();
+		int plainSize = compress(plain, redundant).length;
+		long plainNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		int dedupSize = compress(dedup, redundant).length;
+		long dedupNanos = System.nanoTime() - start;
+		if (dedupSize >= plainSize * 2 / 3) {
+			throw new AssertionError("Dedup didn't remove the copies: " + dedupSize + " bytes, " + plainSize + " without it");
+		}
+		System.out.printf("Copied files: %,d bytes in %.3f s, %,d bytes in %.3f s with dedup%n", plainSize, plainNanos / 1e9,
+				dedupSize, dedupNanos / 1e9);
+		
+		// a reference needs the limits written before it
+		ByteArrayOutputStream reference = new ByteArrayOutputStream();
+		reference.write(HuffmanCompressor.MAGIC);
+		reference.write(new byte[] {HuffmanCompressor.VERSION, HuffmanCompressor.BLOCK_REFERENCE, 100, 1, 1});
+		try {
+			decompress(dedup, reference.toByteArray());
+			throw new AssertionError("Reference without dedup limits was accepted");
+		} catch (IOException expected) {
+		}
+	}
+	
+	/* Checks the contents, the index and the compressed stream of a document */
+	static void checkDocument(EditableDocument document, byte[] expected) throws IOException {
+		if (!Arrays.equals(expected, document.toByteArray())) {
+			throw new AssertionError("Edited document differs");
+		}
+		long start = 0;
+		for (int b = 0; b < document.getBlockCount(); b++) {
+			if (document.getBlockStart(b) != start) {
+				throw new AssertionError("Index of block " + b + " wasn't patched");
+			}
+			start += document.getBlockLength(b);
+		}
+		if (start != expected.length) {
+			throw new AssertionError("Blocks hold " + start + " bytes instead of " + expected.length);
+		}
+		if (expected.length > 10) {
+			byte[] middle = document.read(5, expected.length - 10);
+			if (!Arrays.equals(Arrays.copyOfRange(expected, 5, expected.length - 5), middle)) {
+				throw new AssertionError("Partial read differs");
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		document.write(out);
+		if (!Arrays.equals(expected, decompress(new HuffmanCompressor(), out.toByteArray()))) {
+			throw new AssertionError("Written document doesn't decompress to its contents");
+		}
+	}
+	
+	static byte[] edited(byte[] data, int offset, int removed, byte[] inserted) {
+		byte[] result = new byte[data.length - removed + inserted.length];
+		System.arraycopy(data, 0, result, 0, offset);
+		System.arraycopy(inserted, 0, result, offset, inserted.length);
+		System.arraycopy(data, offset + removed, result, offset + inserted.length, data.length - offset - removed);
+		return result;
+	}
+	
+	static void gzipTest(Random random) throws IOException {
+		byte[][] inputs = {
+			new byte[0], {7}, "abcabcabcabcabcabcab".getBytes(), new byte[100_000], randomBytes(random, 200_000, 256),
+			skewedBytes(random, 300_000, 95), logLines(random, 2_500_000),
+		};
+		GzipCompressor gzip = new GzipCompressor();
+		for (int level: new int[] {0, 1, 6, 9}) {
+			gzip.setLevel(level);
+			for (byte[] input: inputs) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				gzip.compress(new ByteArrayInputStream(input), out);
+				ByteArrayOutputStream back = new ByteArrayOutputStream();
+				try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+					byte[] buffer = new byte[1 << 16];
+					for (int read; (read = in.read(buffer)) > 0;) {
+						back.write(buffer, 0, read);
+					}
+				}
+				if (!Arrays.equals(input, back.toByteArray())) {
+					throw new AssertionError("Gzip round trip of " + input.length + " bytes at level " + level + " failed");
+				}
+			}
+		}
+		
+		// literals only should be about as small as zlib's huffman only strategy
+		byte[] logs = inputs[inputs.length - 1];
+		gzip.setLevel(0);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gzip.compress(new ByteArrayInputStream(logs), out);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setStrategy(Deflater.HUFFMAN_ONLY);
+		deflater.setInput(logs);
+		deflater.finish();
+		long deflated = 0;
+		for (byte[] buffer = new byte[1 << 16]; !deflater.finished();) {
+			deflated += deflater.deflate(buffer);
+		}
+		deflater.end();
+		if (out.size() > deflated + deflated / 100) {
+			throw new AssertionError("Gzip literals are larger than Deflater's huffman only output");
+		}
+		System.out.printf("Gzip: %,d bytes, %,d bytes with Deflater huffman only%n", out.size(), deflated);
+	}
+	
+	/* Log lines with a few fields that change */
+	static byte[] logLines(Random random, int length) {
+		String[] levels = {"INFO", "INFO", "INFO", "WARN", "DEBUG"};
+		String[] paths = {"/api/users", "/api/orders", "/static/app.js", "/health"};
+		StringBuilder text = new StringBuilder(length + 100);
+		for (int line = 0; text.length() < length; line++) {
+			text.append(String.format("2026-10-19 12:%02d:%02d %s request id=%d path=%s status=%d took %dms%n",
+					line / 3600 % 60, line / 60 % 60, levels[random.nextInt(levels.length)], 100000 + line,
+					paths[random.nextInt(paths.length)], random.nextInt(10) == 0 ? 404 : 200, random.nextInt(200)));
+		}
+		return Arrays.copyOf(text.toString().getBytes(StandardCharsets.ISO_8859_1), length);
+	}
+	
+	/* Bytes where 0 makes up percent of the data and the rest is random */
+	static byte[] skewedBytes(Random random, int length, int percent) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = random.nextInt(100) < percent ? 0 : (byte) random.nextInt(256);
+		}
+		return data;
+	}
+	
+	static byte[] randomBytes(Random random, int length, int alphabet) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) random.nextInt(alphabet);
+		}
+		return data;
+	}
+	
+	/* Text where lower case letters are much more frequent than the rest */
+	static byte[] skewedText(Random random, int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			int r = random.nextInt(100);
+			data[i] = (byte) (r < 15 ? ' ' : r < 90 ? 'a' + random.nextInt(26) : 32 + random.nextInt(95));
+		}
+		return data;
+	}
+}
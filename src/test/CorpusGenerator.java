@@ -0,0 +1,365 @@
+package test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic test data with a known distribution, for testing how the
+ * compressor scales. The output only depends on the distribution, the size and the
+ * seed, so the same corpus can be recreated anywhere instead of being stored.
+ * Data is generated and written in chunks, so sizes in the GB range never have to
+ * be held in memory.
+ * <pre>
+ *   uniform   printable ASCII characters, all equally likely
+ *   zipf      all 256 byte values with Zipfian frequencies (s = 1)
+ *   english   English-like text: common words with Zipfian frequencies, sentences and lines
+ *   log       application log lines with timestamps, levels, threads and numbers
+ *   binary    random bytes, incompressible
+ *   single    a single repeated byte
+ * </pre>
+ * Usage: CorpusGenerator outputDirectory size [seed], where size can end in K, M or G.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class CorpusGenerator {
+
+	public static final long DEFAULT_SEED = 1;
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int SAMPLE_BITS = 16; // symbols are sampled from a table of 2^16 entries
+
+	public enum Distribution {
+		UNIFORM, ZIPF, ENGLISH, LOG, BINARY, SINGLE;
+
+		public String fileName() {
+			return name().toLowerCase();
+		}
+	}
+
+	private static final String[] WORDS = {
+		"the", "of", "and", "to", "a", "in", "is", "it", "that", "was", "for", "on", "are", "with",
+		"as", "he", "they", "be", "at", "one", "have", "this", "from", "or", "had", "by", "word",
+		"but", "what", "some", "we", "can", "out", "other", "were", "all", "there", "when", "up",
+		"use", "your", "how", "said", "an", "each", "she", "which", "do", "their", "time", "if",
+		"will", "way", "about", "many", "then", "them", "write", "would", "like", "so", "these",
+		"her", "long", "make", "thing", "see", "him", "two", "has", "look", "more", "day", "could",
+		"go", "come", "did", "number", "sound", "no", "most", "people", "my", "over", "know",
+		"water", "than", "call", "first", "who", "may", "down", "side", "been", "now", "find",
+		"compression", "table", "frequency", "symbol", "code", "tree", "binary", "file", "block"
+	};
+
+	private static final String[] LEVELS = {"INFO ", "INFO ", "INFO ", "INFO ", "DEBUG", "DEBUG", "WARN ", "ERROR"};
+
+	private static final String[] MESSAGES = {
+		"request completed path=/api/v1/items/%d status=200 time=%dms",
+		"request completed path=/api/v1/users/%d status=404 time=%dms",
+		"cache miss key=item:%d, loading from database in %dms",
+		"connection pool size=%d active=%d",
+		"retrying job id=%d attempt=%d",
+		"flushed %d records to segment %d",
+	};
+
+	private final Distribution distribution;
+	private final long seed;
+
+	/**
+	 * @param distribution distribution of the generated data
+	 * @param seed seed of the random generator, the same seed always gives the same data
+	 */
+	public CorpusGenerator(Distribution distribution, long seed) {
+		this.distribution = distribution;
+		this.seed = seed;
+	}
+
+	public CorpusGenerator(Distribution distribution) {
+		this(distribution, DEFAULT_SEED);
+	}
+
+	/**
+	 * Writes size bytes of generated data to out.
+	 */
+	public void generate(long size, OutputStream out) throws IOException {
+		if (size < 0) {
+			throw new IllegalArgumentException("Size cannot be negative.");
+		}
+		Source source = newSource();
+		byte[] chunk = new byte[CHUNK_SIZE];
+		for (long remaining = size; remaining > 0; ) {
+			int length = (int) Math.min(remaining, CHUNK_SIZE);
+			source.fill(chunk, length);
+			out.write(chunk, 0, length);
+			remaining -= length;
+		}
+	}
+
+	/**
+	 * @return array of size generated bytes
+	 */
+	public byte[] generate(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Size cannot be negative.");
+		}
+		byte[] data = new byte[size];
+		Source source = newSource();
+		byte[] chunk = new byte[CHUNK_SIZE];
+		for (int position = 0; position < size; position += CHUNK_SIZE) {
+			int length = Math.min(size - position, CHUNK_SIZE);
+			source.fill(chunk, length);
+			System.arraycopy(chunk, 0, data, position, length);
+		}
+		return data;
+	}
+
+	/**
+	 * Writes size bytes of generated data to a file.
+	 */
+	public void generate(long size, File file) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			generate(size, out);
+		}
+	}
+
+	public Distribution getDistribution() {return distribution;}
+
+	public long getSeed() {return seed;}
+
+	@Override
+	public String toString() {
+		return distribution.fileName() + " (seed " + seed + ")";
+	}
+
+	/**
+	 * Parses a size such as 512, 64K, 16M or 2G (powers of 1024).
+	 *
+	 * @throws IllegalArgumentException if size isn't a valid size
+	 */
+	public static long parseSize(String size) {
+		String digits = size.trim().toUpperCase();
+		long unit = 1;
+		if (digits.endsWith("K")) {
+			unit = 1L << 10;
+		} else if (digits.endsWith("M")) {
+			unit = 1L << 20;
+		} else if (digits.endsWith("G")) {
+			unit = 1L << 30;
+		}
+		if (unit > 1) {
+			digits = digits.substring(0, digits.length() - 1);
+		}
+		try {
+			long value = Long.parseLong(digits);
+			if (value < 0) {
+				throw new IllegalArgumentException("Size cannot be negative: " + size);
+			}
+			return value * unit;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid size: " + size);
+		}
+	}
+
+	/**
+	 * Formats a size the way parseSize reads it, using the largest exact unit.
+	 */
+	public static String formatSize(long size) {
+		String[] units = {"G", "M", "K"};
+		for (int i = 0; i < units.length; i++) {
+			long unit = 1L << (10 * (units.length - i));
+			if (size >= unit && size % unit == 0) {
+				return size / unit + units[i];
+			}
+		}
+		return Long.toString(size);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: CorpusGenerator outputDirectory size [seed]");
+			System.exit(1);
+		}
+		File directory = new File(args[0]);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		long size = parseSize(args[1]);
+		long seed = args.length == 3 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+
+		for (Distribution distribution: Distribution.values()) {
+			File file = new File(directory, distribution.fileName() + "-" + formatSize(size) + ".dat");
+			long start = System.nanoTime();
+			new CorpusGenerator(distribution, seed).generate(size, file);
+			System.out.printf("%-40s %8.1f ms%n", file.getPath(), (System.nanoTime() - start) / 1e6);
+		}
+	}
+
+	/* Creates a new source of bytes, every source starts from the beginning of the data */
+	private Source newSource() {
+		SplittableRandom random = new SplittableRandom(this.seed * 31 + this.distribution.ordinal());
+		switch (this.distribution) {
+		case UNIFORM:
+			return (chunk, length) -> {
+				for (int i = 0; i < length; i++) {
+					chunk[i] = (byte) (' ' + random.nextInt(95));
+				}
+			};
+		case ZIPF:
+			byte[] table = zipfTable(random);
+			return (chunk, length) -> {
+				for (int i = 0; i < length; i++) {
+					chunk[i] = table[random.nextInt(1 << SAMPLE_BITS)];
+				}
+			};
+		case ENGLISH:
+			return new TextSource(random, CorpusGenerator::englishSentence);
+		case LOG:
+			return new TextSource(random, new LogLines()::next);
+		case BINARY:
+			return (chunk, length) -> {
+				for (int i = 0; i < length; i += 8) {
+					long bits = random.nextLong();
+					for (int j = i; j < Math.min(i + 8, length); j++, bits >>>= 8) {
+						chunk[j] = (byte) bits;
+					}
+				}
+			};
+		case SINGLE:
+			return (chunk, length) -> {
+				for (int i = 0; i < length; i++) {
+					chunk[i] = 'a';
+				}
+			};
+		default:
+			throw new IllegalStateException("Unknown distribution " + this.distribution);
+		}
+	}
+
+	/*
+	 * Table of 2^SAMPLE_BITS bytes where every byte value appears in proportion to its
+	 * Zipfian frequency 1/rank, the ranks are a random permutation of the byte values.
+	 * A random index into the table samples the distribution.
+	 */
+	private static byte[] zipfTable(SplittableRandom random) {
+		int[] order = new int[256];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+
+		double harmonic = 0;
+		for (int rank = 1; rank <= order.length; rank++) {
+			harmonic += 1.0 / rank;
+		}
+		byte[] table = new byte[1 << SAMPLE_BITS];
+		double cumulative = 0;
+		int position = 0;
+		for (int rank = 1; rank <= order.length; rank++) {
+			cumulative += 1.0 / rank / harmonic;
+			// every value gets at least one entry so all 256 values can appear
+			int end = Math.max(position + 1, (int) Math.round(cumulative * table.length));
+			end = Math.min(end, table.length - (order.length - rank));
+			for (; position < end; position++) {
+				table[position] = (byte) order[rank - 1];
+			}
+		}
+		return table;
+	}
+
+	/* Sentence of words with Zipfian frequencies, the first word capitalized */
+	private static void englishSentence(SplittableRandom random, StringBuilder text) {
+		int words = 4 + random.nextInt(14);
+		for (int w = 0; w < words; w++) {
+			String word = WORDS[zipfIndex(random, WORDS.length)];
+			if (w == 0) {
+				text.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+			} else {
+				text.append(word);
+			}
+			if (w < words - 1) {
+				text.append(random.nextInt(12) == 0 ? ", " : " ");
+			}
+		}
+		text.append(random.nextInt(10) == 0 ? '?' : '.');
+		text.append(random.nextInt(6) == 0 ? '\n' : ' ');
+	}
+
+	/* Index in [0, size) with probability proportional to 1/(index + 1), by inverting the continuous approximation */
+	private static int zipfIndex(SplittableRandom random, int size) {
+		double u = random.nextDouble();
+		int index = (int) Math.exp(u * Math.log(size + 1)) - 1;
+		return Math.min(index, size - 1);
+	}
+
+	/* Produces the data of a chunk */
+	private interface Source {
+		void fill(byte[] chunk, int length);
+	}
+
+	/* Appends the next piece of text, such as a sentence or a line */
+	private interface TextPiece {
+		void next(SplittableRandom random, StringBuilder text);
+	}
+
+	/* Source that generates text a piece at a time and keeps what didn't fit for the next chunk */
+	private static class TextSource implements Source {
+
+		private final SplittableRandom random;
+		private final TextPiece piece;
+		private final StringBuilder text = new StringBuilder();
+		private int position; // first character of text not yet written
+
+		TextSource(SplittableRandom random, TextPiece piece) {
+			this.random = random;
+			this.piece = piece;
+		}
+
+		@Override
+		public void fill(byte[] chunk, int length) {
+			while (this.text.length() - this.position < length) {
+				this.text.delete(0, this.position);
+				this.position = 0;
+				this.piece.next(this.random, this.text);
+			}
+			for (int i = 0; i < length; i++) {
+				chunk[i] = (byte) this.text.charAt(this.position++);
+			}
+		}
+	}
+
+	/* Log lines with a timestamp that moves forward a few milliseconds per line */
+	private static class LogLines {
+
+		private static final long START = 1_599_955_200_000L; // 2020-09-13T00:00:00Z
+
+		private long millis = START;
+
+		void next(SplittableRandom random, StringBuilder text) {
+			this.millis += random.nextInt(50);
+			long seconds = this.millis / 1000;
+			text.append("2020-09-").append(13 + (this.millis - START) / 86_400_000).append('T');
+			appendPadded(text, seconds / 3600 % 24, 2).append(':');
+			appendPadded(text, seconds / 60 % 60, 2).append(':');
+			appendPadded(text, seconds % 60, 2).append('.');
+			appendPadded(text, this.millis % 1000, 3).append("Z ");
+			text.append(LEVELS[random.nextInt(LEVELS.length)]).append(" [worker-").append(random.nextInt(8)).append("] ");
+			String message = MESSAGES[random.nextInt(MESSAGES.length)];
+			text.append(String.format(message, random.nextInt(100_000), random.nextInt(500))).append('\n');
+		}
+
+		private static StringBuilder appendPadded(StringBuilder text, long value, int digits) {
+			String number = Long.toString(value);
+			for (int i = number.length(); i < digits; i++) {
+				text.append('0');
+			}
+			return text.append(number);
+		}
+	}
+}
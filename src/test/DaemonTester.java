@@ -0,0 +1,177 @@
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import compress.HuffmanCompressor;
+import compress.VarInt;
+import daemon.CompressionDaemon;
+import daemon.DaemonClient;
+import test.CorpusGenerator.Distribution;
+
+/**
+ * Tester class for CompressionDaemon and DaemonClient. Starts a daemon, runs round
+ * trips from several clients at the same time (including payloads much larger than
+ * the socket buffers), checks that a failed request or a stream over the decode
+ * limit is reported as a failure and leaves the connection usable, and
+ * shuts the daemon down with a request. Also checks that a daemon refuses a path
+ * that holds a regular file or a running daemon's socket, and only removes the
+ * socket it created. Throws an AssertionError on failure.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class DaemonTester {
+
+	private static final int CLIENTS = 4;
+	private static final int REQUESTS = 20;
+
+	public static void main(String[] args) throws Exception {
+		File directory = File.createTempFile("daemon", "");
+		directory.delete();
+		directory.mkdir();
+		Path socket = directory.toPath().resolve("huffman.sock");
+
+		CompressionDaemon daemon = new CompressionDaemon(socket, CLIENTS);
+		daemon.start();
+		try {
+			socketPathTest(directory.toPath(), socket);
+			
+			ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+			List<Future<Long>> results = new ArrayList<>();
+			for (int c = 0; c < CLIENTS; c++) {
+				Distribution distribution = Distribution.values()[c % Distribution.values().length];
+				results.add(pool.submit(() -> clientRoundTrips(socket, distribution)));
+			}
+			long nanos = 0;
+			for (Future<Long> result: results) {
+				nanos += result.get();
+			}
+			pool.shutdown();
+			System.out.printf("%d requests, %.2f ms per round trip%n", CLIENTS * REQUESTS * 2,
+					nanos / 1e6 / (CLIENTS * REQUESTS));
+
+			try (DaemonClient client = new DaemonClient(socket)) {
+				// a payload larger than the socket buffers in both directions
+				byte[] large = new CorpusGenerator(Distribution.BINARY).generate(8 << 20);
+				check(Arrays.equals(large, roundTrip(client, large)), "Large round trip failed");
+
+				try {
+					client.decompress(new ByteArrayInputStream("not compressed".getBytes()), new ByteArrayOutputStream());
+					throw new AssertionError("Invalid data was accepted");
+				} catch (IOException expected) {
+					System.out.println("Invalid data rejected: " + expected.getMessage());
+				}
+				// headers asking for more memory than the daemon gives a request
+				long failures = daemon.getFailures();
+				for (byte[] crafted: new byte[][] {
+						stream(HuffmanCompressor.BLOCK_STORED, 1 << 29, 1 << 29), stream(HuffmanCompressor.BLOCK_DEDUP, 0, 1L << 40, 16)}) {
+					try {
+						client.decompress(new ByteArrayInputStream(crafted), new ByteArrayOutputStream());
+						throw new AssertionError("A stream over the decode limit was accepted");
+					} catch (IOException expected) {
+						System.out.println("Stream over the limit rejected: " + expected.getMessage());
+					}
+				}
+				check(daemon.getFailures() == failures + 2, "Rejected streams weren't counted as failures");
+				byte[] after = "the connection is still usable".getBytes();
+				check(Arrays.equals(after, roundTrip(client, after)), "Round trip after a failure failed");
+
+				System.out.println("Stats: " + client.stats());
+				client.shutdown();
+			}
+			daemon.awaitShutdown();
+			check(!Files.exists(socket), "Socket wasn't removed");
+			System.out.println("All daemon tests passed.");
+		} finally {
+			daemon.close();
+			directory.delete();
+		}
+	}
+
+	/* Only stale sockets and port files are replaced, and a daemon only removes its own socket */
+	static void socketPathTest(Path directory, Path socket) throws IOException {
+		try {
+			new CompressionDaemon(socket, 1).close();
+			throw new AssertionError("A second daemon took the socket of a running one");
+		} catch (IOException expected) {
+			System.out.println("Second daemon rejected: " + expected.getMessage());
+		}
+		
+		Path notes = directory.resolve("notes.txt");
+		Files.write(notes, "not a socket".getBytes());
+		try {
+			new CompressionDaemon(notes, 1).close();
+			throw new AssertionError("A daemon replaced a regular file");
+		} catch (IOException expected) {
+			check(Files.exists(notes), "A regular file was deleted");
+		}
+		
+		// a port file of a daemon that is gone, then a file put in place of the socket while running
+		Path stale = directory.resolve("stale.sock");
+		Files.write(stale, "tcp:1".getBytes());
+		CompressionDaemon replacing = new CompressionDaemon(stale, 1);
+		Files.delete(stale);
+		Files.write(stale, "not a socket".getBytes());
+		replacing.close();
+		check(Files.exists(stale), "A daemon removed a file it didn't create");
+		Files.delete(stale);
+		Files.delete(notes);
+	}
+	
+	/* Round trips on one connection, returns the total time */
+	static long clientRoundTrips(Path socket, Distribution distribution) throws IOException {
+		CorpusGenerator generator = new CorpusGenerator(distribution, 7);
+		long nanos = 0;
+		try (DaemonClient client = new DaemonClient(socket)) {
+			for (int r = 0; r < REQUESTS; r++) {
+				byte[] input = generator.generate(1000 * r);
+				long start = System.nanoTime();
+				byte[] output = roundTrip(client, input);
+				nanos += System.nanoTime() - start;
+				check(Arrays.equals(input, output), "Round trip of " + input.length + " bytes of " + distribution + " failed");
+			}
+		}
+		return nanos;
+	}
+
+	/* Compressed stream header followed by one block header and the given payload VarInts */
+	static byte[] stream(int type, long rawLength, long... payload) throws IOException {
+		ByteArrayOutputStream values = new ByteArrayOutputStream();
+		for (long value: payload) {
+			VarInt.write(values, value);
+		}
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write(HuffmanCompressor.MAGIC);
+		stream.write(HuffmanCompressor.VERSION);
+		stream.write(type);
+		VarInt.write(stream, rawLength);
+		VarInt.write(stream, type == HuffmanCompressor.BLOCK_STORED ? rawLength : values.size());
+		values.writeTo(stream);
+		return stream.toByteArray();
+	}
+
+	static byte[] roundTrip(DaemonClient client, byte[] input) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		client.compress(new ByteArrayInputStream(input), compressed);
+		ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+		client.decompress(new ByteArrayInputStream(compressed.toByteArray()), decompressed);
+		return decompressed.toByteArray();
+	}
+
+	static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
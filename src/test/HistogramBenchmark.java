@@ -0,0 +1,95 @@
+package test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import compress.Histogram;
+
+/**
+ * Compares the interleaved counting kernels in Histogram against the plain
+ * implementations. Checks that both produce the same counts and prints the
+ * throughput of each one, for uniform random data and for long runs of the
+ * same symbol (the case where the plain loop is slowest).
+ * 
+ * @author Abdiel Cortes
+ *
+ */
+public class HistogramBenchmark {
+
+	private static final int SIZE = 64 * 1024 * 1024;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		byte[] random = new byte[SIZE];
+		new Random(42).nextBytes(random);
+		byte[] runs = new byte[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			runs[i] = (byte) ((i >> 12) % 3); // runs of 4096 equal bytes
+		}
+		
+		benchmarkBytes("random bytes", random);
+		benchmarkBytes("byte runs", runs);
+		
+		char[] chars = new char[SIZE / 4];
+		Random rng = new Random(7);
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (rng.nextInt(3) == 0 ? ' ' : 'a' + rng.nextInt(26));
+		}
+		benchmarkChars("text chars", new String(chars));
+	}
+	
+	private static void benchmarkBytes(String name, byte[] data) {
+		long[] plain = new long[Histogram.BYTE_ALPHABET];
+		long[] interleaved = new long[Histogram.BYTE_ALPHABET];
+		double plainTime = Double.MAX_VALUE, interleavedTime = Double.MAX_VALUE;
+		
+		for (int round = 0; round < ROUNDS; round++) {
+			Arrays.fill(plain, 0);
+			Arrays.fill(interleaved, 0);
+			
+			long start = System.nanoTime();
+			Histogram.countBytesPlain(data, 0, data.length, plain);
+			plainTime = Math.min(plainTime, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			Histogram.countBytes(data, 0, data.length, interleaved);
+			interleavedTime = Math.min(interleavedTime, System.nanoTime() - start);
+		}
+		
+		check(name, Arrays.equals(plain, interleaved));
+		report(name, data.length, plainTime, interleavedTime);
+	}
+	
+	private static void benchmarkChars(String name, String text) {
+		int[] plain = new int[Histogram.CHAR_ALPHABET];
+		int[] interleaved = new int[Histogram.CHAR_ALPHABET];
+		double plainTime = Double.MAX_VALUE, interleavedTime = Double.MAX_VALUE;
+		
+		for (int round = 0; round < ROUNDS; round++) {
+			Arrays.fill(plain, 0);
+			Arrays.fill(interleaved, 0);
+			
+			long start = System.nanoTime();
+			Histogram.countCharsPlain(text, plain);
+			plainTime = Math.min(plainTime, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			Histogram.countChars(text, interleaved);
+			interleavedTime = Math.min(interleavedTime, System.nanoTime() - start);
+		}
+		
+		check(name, Arrays.equals(plain, interleaved));
+		report(name, text.length() * 2L, plainTime, interleavedTime);
+	}
+	
+	private static void check(String name, boolean equal) {
+		if (!equal) {
+			throw new AssertionError(name + ": interleaved counts differ from plain counts");
+		}
+	}
+	
+	private static void report(String name, long bytes, double plainNanos, double interleavedNanos) {
+		System.out.printf("%-12s plain %6.2f GB/s   interleaved %6.2f GB/s%n", name,
+				bytes / plainNanos, bytes / interleavedNanos);
+	}
+}
@@ -1,52 +1,244 @@
 package test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import compress.BlockCodec;
+import list.ByteArrayList;
+import main.CodeAnalysis;
 import main.HuffmanCoding;
 import main.HuffmanCoding.BTNode;
 import map.Map;
 
 /**
- * Tester class for the HuffmanCoding class. Individually tests all the methods
- * from the HuffmanCoding class.
+ * Tester class for the HuffmanCoding class. Checks that the text encoded with the
+ * huffman code decodes back to the original, that a dry run prints the table and the
+ * sizes of the analysis without encoding the text, and that the hot paths (compute_fd,
+ * encode, decode and the block codec used by the compressor) stay allocation free
+ * in steady state.
+ * 
+ * Allocations are measured with ThreadMXBean.getThreadAllocatedBytes, which counts
+ * every byte allocated by the current thread. The string an operation returns and
+ * the one builder it's made in are unavoidable, so the allocation of copying the
+ * result through a builder is subtracted; what is left is overhead, and it must
+ * stay under a fixed budget per call, which doesn't grow with the text. compute_fd
+ * returns a map, so its budget also has room for an entry per distinct character.
+ * A path that allocates per character (boxing, string concatenation, growing or
+ * oversized buffers) goes far over it, the texts are megabytes long.
+ * Throws an AssertionError on the first failure.
  * 
  * @author Abdiel Corts
  *
  */
 public class HuffmanCodingTester {
+	
+	private static final long MB = 1 << 20;
+	
+	// overhead allowed per call
+	private static final long COMPUTE_FD_BUDGET = 576 * 1024;      // two 256KB counting arrays and the map's buckets
+	private static final long SHORT_COMPUTE_FD_BUDGET = 2 * 1024;  // the latin counting array and the map's buckets
+	private static final long MAP_ENTRY_BUDGET = 64;               // per character in the map: its node and boxed count
+	private static final long ENCODE_BUDGET = 1024;
+	private static final long DECODE_BUDGET = 8 * 1024;            // the decoding tree
+	private static final long BLOCK_ENCODE_BUDGET = 64 * 1024;
+	private static final long BLOCK_DECODE_BUDGET = 16 * 1024;
+	
+	private static final int WARMUP = 3;
+	private static final int RUNS = 3;
+	
+	private static final com.sun.management.ThreadMXBean THREADS = threadBean();
 
 	public static void main(String[] args) {
 		HuffmanCoding test = new HuffmanCoding();
 		
-		// test load_data
-		String text = test.load_data("inputData/input2.txt");
-		System.out.println("Input text: -" + text + "-" + "\n");
+		// round trips of the sample inputs and of generated text
+		for (String file: new String[] {"inputData/input1.txt", "inputData/input2.txt", "inputData/input4.txt"}) {
+			roundTrip(test, test.load_data(file));
+		}
+		Random random = new Random(3);
+		roundTrip(test, "a");
+		roundTrip(test, text(random, 1000, 0x3B1));  // greek letters, outside the counting array
+		String text = text(random, 4 * (int) MB, 'a');
+		roundTrip(test, text);
+		System.out.println("All round trips passed.");
+		
+		dryRun(test, "inputData/input2.txt");
+		System.out.println("Dry run prints the analysis.");
+		
+		if (THREADS == null) {
+			System.out.println("Thread allocation counting isn't supported by this JVM, allocation budgets not checked.");
+			return;
+		}
 		
-		// test compute_fd
-		Map<Character, Integer> fd = test.compute_fd(text); 
-		System.out.println("Frequency Distribution: " + fd + "\n");
+		// allocation budgets
+		Map<Character, Integer> fd = test.compute_fd(text);
+		Map<Character, String> table = test.huffman_code(test.huffman_tree(fd));
+		String encoded = test.encode(table, text);
+		
+		checkBudget("compute_fd", 1, COMPUTE_FD_BUDGET + MAP_ENTRY_BUDGET * fd.size(), () -> test.compute_fd(text));
+		String smallText = text.substring(0, 10_000);
+		int calls = text.length() / smallText.length();
+		checkBudget("compute_fd, short texts", calls, SHORT_COMPUTE_FD_BUDGET + MAP_ENTRY_BUDGET * test.compute_fd(smallText).size(), () -> {
+			for (int i = 0; i < calls; i++) {
+				test.compute_fd(smallText);
+			}
+			return null;
+		});
+		checkBudget("encode", 1, ENCODE_BUDGET, () -> test.encode(table, text));
+		checkBudget("decode", 1, DECODE_BUDGET, () -> test.decode(table, encoded));
 		
-		// prints sorted list containing the BTNodes
-		// method generateFDSortedList is private so for testing we would need to change it to public
-		//System.out.println("Sorted List: " + test.generateFDSortedList(fd) + "\n");
+		// the block codec reuses its buffers, nothing should be allocated per byte
+		byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+		BlockCodec codec = new BlockCodec();
+		ByteArrayList payload = new ByteArrayList(bytes.length);
+		byte[] decoded = new byte[bytes.length];
+		checkBudget("BlockCodec.encode", 1, BLOCK_ENCODE_BUDGET, () -> {
+			codec.reset();
+			payload.clear();
+			codec.encode(bytes, 0, bytes.length, payload);
+			return null;
+		});
+		BlockCodec decoder = new BlockCodec();
+		checkBudget("BlockCodec.decode", 1, BLOCK_DECODE_BUDGET, () -> {
+			decoder.reset();
+			decoder.decode(payload.elements(), 0, payload.size(), decoded, 0, bytes.length);
+			return null;
+		});
+		check(Arrays.equals(bytes, decoded), "BlockCodec round trip failed");
+		
+		System.out.println("All allocation budgets met.");
+	}
+	
+	static void roundTrip(HuffmanCoding test, String text) {
+		Map<Character, Integer> fd = test.compute_fd(text);
+		for (int i = 0; i < text.length(); i++) {
+			Integer frequency = fd.get(text.charAt(i));
+			check(frequency != null && frequency > 0, "Character missing from the frequency distribution");
+		}
+		int[] sum = {0};
+		fd.forEach((key, frequency) -> sum[0] += frequency);
+		check(sum[0] == text.length(), "Frequencies don't add up to the text length");
 		
-		// printing tree using in-order traversal
 		BTNode<Integer, String> root = test.huffman_tree(fd);
-		System.out.println("Printing Binary Tree in-order");
-		test.printTree(root);
-		System.out.println();
+		check(root.getFrequency() == text.length(), "Root frequency isn't the text length");
 		
-		// printing huffman code table
 		Map<Character, String> table = test.huffman_code(root);
-		System.out.println("Huffman code map: " + table + "\n");
+		check(table.size() == fd.size(), "Huffman code map doesn't have every character");
 		
-		// printing encoded text
 		String encoded = test.encode(table, text);
-		System.out.println("Encoded text: " + encoded + "\n");
+		CodeAnalysis analysis = test.analyze(fd, table);
+		check(analysis.getEncodedBits() == encoded.length(), "Analysis size differs from the encoded text");
+		check(analysis.getAverageCodeLength() + 1e-9 >= analysis.getEntropy() && analysis.getEfficiency() <= 1 + 1e-9,
+				"Code shorter than the entropy");
 		
-		// printing results
-		System.out.println("Results:");
-		test.process_results(fd, table, text, encoded);
+		String decoded = test.decode(table, encoded);
+		// a text with a single distinct character has an empty code, there are no bits to decode
+		check(fd.size() == 1 ? encoded.isEmpty() : decoded.equals(text),
+				"Round trip failed for a text of " + text.length() + " characters");
+	}
+	
+	/* Checks the output of the dry run overload of process_results, and that run(true) prints the same */
+	static void dryRun(HuffmanCoding test, String file) {
+		String text = test.load_data(file);
+		Map<Character, Integer> fd = test.compute_fd(text);
+		Map<Character, String> table = test.huffman_code(test.huffman_tree(fd));
+		CodeAnalysis analysis = test.analyze(fd, table);
+		String printed = printed(() -> test.process_results(fd, table, analysis));
 		
-		System.out.println("\nDecrypted string: ");
-		System.out.println(test.decode(table, encoded));
+		check(printed.contains("The original string requires " + text.length() + " bytes.")
+				&& printed.contains("The encoded string requires " + analysis.getEncodedBytes() + " bytes.")
+				&& printed.contains(analysis.toString()), "Dry run doesn't print the sizes of the analysis");
+		fd.forEach((key, frequency) -> check(printed.matches("(?s).*\\n" + Pattern.quote(key.toString()) + " +" + frequency + " +" + table.get(key) + "\\r?\\n.*"),
+				"Dry run doesn't print the row of " + key));
+		check(!printed.contains("Original string:") && !printed.contains("Encoded string:"), "Dry run printed the text");
+		check(printed.equals(printed(() -> new HuffmanCoding(file).run(true))), "run(true) prints something else");
+	}
+	
+	/* Everything operation prints to System.out */
+	static String printed(Runnable operation) {
+		PrintStream out = System.out;
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(buffer, true));
+		try {
+			operation.run();
+		} finally {
+			System.setOut(out);
+		}
+		return buffer.toString();
+	}
+	
+	/**
+	 * Runs operation a few times to warm it up, then measures the smallest allocation
+	 * of a few more runs. When the operation returns a string, the allocation of
+	 * copying it through a builder is subtracted.
+	 *
+	 * @param calls amount of calls the operation makes to the tested method
+	 */
+	static void checkBudget(String name, int calls, long budgetPerCall, Supplier<Object> operation) {
+		for (int i = 0; i < WARMUP; i++) {
+			operation.get();
+		}
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = allocatedBytes();
+			Object result = operation.get();
+			long allocated = allocatedBytes() - start;
+			if (result instanceof String) {
+				allocated -= resultAllocation((String) result);
+			}
+			overhead = Math.min(overhead, allocated);
+		}
+		double perCall = (double) Math.max(0, overhead) / calls;
+		System.out.printf("%-24s %,12.0f bytes/call (budget %,d)%n", name, perCall, budgetPerCall);
+		check(perCall <= budgetPerCall, name + " allocates " + Math.round(perCall) + " bytes per call, over its budget of " + budgetPerCall);
+	}
+	
+	/* Bytes allocated by building a copy of result in a builder of its exact length */
+	static long resultAllocation(String result) {
+		long start = allocatedBytes();
+		String copy = new StringBuilder(result.length()).append(result).toString();
+		long bytes = allocatedBytes() - start;
+		check(copy.length() == result.length(), "Copy of the result has a different length");
+		return bytes;
+	}
+	
+	static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/* The HotSpot ThreadMXBean, or null if it can't count allocations */
+	static com.sun.management.ThreadMXBean threadBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		return threads;
+	}
+	
+	/* Text where 26 characters starting at first are much more frequent than the rest */
+	static String text(Random random, int length, int first) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			int r = random.nextInt(100);
+			chars[i] = (char) (r < 15 ? ' ' : r < 90 ? first + random.nextInt(26) : 32 + random.nextInt(95));
+		}
+		return new String(chars);
+	}
+	
+	static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
 	}
 }
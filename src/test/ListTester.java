@@ -0,0 +1,283 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import list.ByteArrayList;
+import list.CharArrayList;
+import list.IntArrayList;
+import list.LongArrayList;
+import list.UnrolledLinkedList;
+
+/**
+ * Tester class for the lists. Runs random operations on an UnrolledLinkedList and
+ * on a java.util.ArrayList and compares them after every step, with enough elements
+ * and few enough distinct values that nodes are split, merged and emptied. Then
+ * grows every primitive array list from a capacity of 1 and writes into it
+ * directly through setSize and elements().
+ * Throws an AssertionError on the first failure.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class ListTester {
+
+	public static void main(String[] args) {
+		Random random = new Random(11);
+		unrolledTest(random);
+		intListTest();
+		longListTest();
+		byteListTest();
+		charListTest();
+		System.out.println("Primitive lists grow, shrink and take direct writes");
+		System.out.println("All list tests passed.");
+	}
+
+	static void unrolledTest(Random random) {
+		UnrolledLinkedList<Integer> list = new UnrolledLinkedList<>();
+		ArrayList<Integer> expected = new ArrayList<>();
+		check(list.isEmpty() && list.first() == null && list.last() == null && !list.iterator().hasNext(),
+				"New list isn't empty");
+
+		int largest = 0;
+		for (int op = 0; op < 200_000; op++) {
+			int size = expected.size();
+			int index = size == 0 ? 0 : random.nextInt(size);
+			Integer value = random.nextInt(20);
+			int choice = random.nextInt(100);
+			if (choice < 45 || size == 0) { // grows more than it shrinks, so there are tens of nodes
+				if (size >= 10_000) {
+					list.remove(index);
+					expected.remove(index);
+				} else if (random.nextBoolean()) {
+					list.add(value);
+					expected.add(value);
+				} else {
+					index = random.nextInt(size + 1);
+					list.add(index, value);
+					expected.add(index, value);
+				}
+			} else if (choice < 55) {
+				check(list.remove(index), "remove(" + index + ") failed");
+				expected.remove(index);
+			} else if (choice < 65) {
+				check(list.remove(value) == expected.remove(value), "remove(" + value + ") differs");
+			} else if (choice < 75) {
+				check(list.set(index, value).equals(expected.set(index, value)), "set(" + index + ") differs");
+			} else if (choice < 76) {
+				int removed = 0;
+				while (expected.remove(value)) {
+					removed++;
+				}
+				check(list.removeAll(value) == removed, "removeAll(" + value + ") differs");
+			} else if (choice < 77 && random.nextInt(20) == 0) {
+				list.clear();
+				expected.clear();
+			} else if (choice < 85) {
+				check(list.firstIndex(value) == expected.indexOf(value) && list.lastIndex(value) == expected.lastIndexOf(value)
+						&& list.contains(value) == expected.contains(value), "Search of " + value + " differs");
+			} else {
+				check(list.get(index).equals(expected.get(index)), "get(" + index + ") differs");
+			}
+			check(list.size() == expected.size(), "Size " + list.size() + " instead of " + expected.size());
+			largest = Math.max(largest, list.size());
+			if (op % 1000 == 0) {
+				checkSame(list, expected);
+			}
+		}
+		checkSame(list, expected);
+
+		try {
+			list.get(list.size());
+			throw new AssertionError("get past the end was accepted");
+		} catch (IndexOutOfBoundsException e) {
+		}
+		System.out.printf("UnrolledLinkedList: 200,000 random operations, up to %,d elements%n", largest);
+	}
+
+	static final int VALUES = 1000;
+
+	static void intListTest() {
+		IntArrayList list = new IntArrayList(1);
+		for (int i = 0; i < VALUES; i++) { // grows from 1 past 1000
+			list.add(i * 3);
+			check(list.size() == i + 1 && list.last() == i * 3 && list.elements().length >= list.size(), "IntArrayList add is wrong");
+		}
+		for (int i = 0; i < VALUES; i++) {
+			check(list.get(i) == i * 3, "IntArrayList lost " + i + " while growing");
+		}
+		list.add(0, -1);
+		list.add(list.size(), -2);
+		check(list.get(0) == -1 && list.get(1) == 0 && list.last() == -2, "IntArrayList add(i) is wrong");
+		check(list.removeAt(0) == -1 && list.removeAt(list.size() - 1) == -2 && list.removeAt(10) == 30 && list.get(10) == 33,
+				"IntArrayList removeAt is wrong");
+		check(list.set(0, 7) == 0 && list.firstIndex(7) == 0 && list.contains(33) && !list.contains(30) && list.firstIndex(30) == -1,
+				"IntArrayList set or search is wrong");
+		list.addAll(new int[] {5, 6, 7, 8}, 1, 2);
+		check(list.size() == VALUES + 1 && list.get(VALUES - 1) == 6 && list.last() == 7, "IntArrayList addAll is wrong");
+
+		// direct writes, the way the coders fill their buffers
+		int size = list.size();
+		list.setSize(size + VALUES);
+		int[] elements = list.elements();
+		for (int i = size; i < list.size(); i++) {
+			elements[i] = i;
+		}
+		check(list.size() == size + VALUES && list.get(size) == size && list.last() == size + VALUES - 1, "IntArrayList setSize is wrong");
+		list.setSize(2);
+		check(list.size() == 2 && list.last() == 3 && list.toArray().length == 2, "IntArrayList setSize didn't shrink");
+		list.trimToSize();
+		check(list.elements().length == 2 && list.get(1) == 3, "IntArrayList trimToSize is wrong");
+		list.clear();
+		list.trimToSize();
+		check(list.isEmpty() && list.elements().length == 1 && list.toString().equals("[]"), "IntArrayList clear is wrong");
+		list.add(4);
+		list.add(5);
+		check(list.toString().equals("[4, 5]"), "IntArrayList toString is " + list);
+
+		checkBounds("IntArrayList", () -> list.get(2), () -> list.set(-1, 0), () -> list.removeAt(2), () -> list.add(3, 0));
+		checkRejected("IntArrayList", () -> new IntArrayList(0), () -> list.setSize(-1));
+		checkTooLarge("IntArrayList", () -> list.ensureCapacity(Integer.MAX_VALUE), () -> list.setSize(Integer.MAX_VALUE - 7));
+	}
+
+	static void longListTest() {
+		LongArrayList list = new LongArrayList(1);
+		for (int i = 0; i < VALUES; i++) {
+			list.add((long) i << 32);
+		}
+		for (int i = 0; i < VALUES; i++) {
+			check(list.get(i) == (long) i << 32, "LongArrayList lost " + i + " while growing");
+		}
+		list.add(1, -1L);
+		check(list.get(1) == -1 && list.removeAt(1) == -1 && list.get(1) == 1L << 32, "LongArrayList add(i) or removeAt is wrong");
+		check(list.set(2, 9L) == 2L << 32 && list.firstIndex(9L) == 2 && !list.contains(2L << 32), "LongArrayList set is wrong");
+		list.addAll(new long[] {Long.MIN_VALUE, Long.MAX_VALUE}, 0, 2);
+		check(list.size() == VALUES + 2 && list.last() == Long.MAX_VALUE, "LongArrayList addAll is wrong");
+
+		list.setSize(3 * VALUES);
+		list.elements()[3 * VALUES - 1] = 42L;
+		check(list.size() == 3 * VALUES && list.last() == 42L && list.get(VALUES) == Long.MIN_VALUE, "LongArrayList setSize is wrong");
+		list.setSize(1);
+		list.trimToSize();
+		check(list.elements().length == 1 && list.toArray()[0] == 0, "LongArrayList trimToSize is wrong");
+
+		checkBounds("LongArrayList", () -> list.get(1), () -> list.set(1, 0), () -> list.removeAt(-1), () -> list.add(-1, 0));
+		checkRejected("LongArrayList", () -> new LongArrayList(-4), () -> list.setSize(-1));
+		checkTooLarge("LongArrayList", () -> list.ensureCapacity(Integer.MAX_VALUE), () -> list.setSize(Integer.MAX_VALUE - 7));
+	}
+
+	static void byteListTest() {
+		ByteArrayList list = new ByteArrayList(1);
+		for (int i = 0; i < VALUES; i++) {
+			list.add((byte) i);
+		}
+		for (int i = 0; i < VALUES; i++) {
+			check(list.get(i) == (byte) i, "ByteArrayList lost " + i + " while growing");
+		}
+		list.add(0, (byte) -1);
+		check(list.get(0) == -1 && list.removeAt(0) == -1 && list.get(0) == 0, "ByteArrayList add(i) or removeAt is wrong");
+		check(list.set(5, (byte) 100) == 5 && list.firstIndex((byte) 100) == 5 && list.contains((byte) 6), "ByteArrayList set is wrong");
+		byte[] block = new byte[VALUES];
+		Arrays.fill(block, (byte) 7);
+		list.addAll(block, 0, VALUES);
+		check(list.size() == 2 * VALUES && list.get(VALUES) == 7 && list.last() == 7, "ByteArrayList addAll is wrong");
+
+		int size = list.size();
+		list.setSize(size + 3);
+		System.arraycopy(new byte[] {1, 2, 3}, 0, list.elements(), size, 3);
+		check(list.get(size) == 1 && list.last() == 3, "ByteArrayList setSize is wrong");
+		byte[] copy = list.toArray();
+		copy[0] = 55;
+		check(copy.length == list.size() && list.get(0) == 0, "ByteArrayList toArray isn't a copy");
+		list.clear();
+		check(list.isEmpty() && !list.contains((byte) 7), "ByteArrayList clear is wrong");
+
+		checkBounds("ByteArrayList", () -> list.get(0), () -> list.set(0, (byte) 0), () -> list.removeAt(0), () -> list.last());
+		checkRejected("ByteArrayList", () -> new ByteArrayList(0), () -> list.setSize(-1));
+		checkTooLarge("ByteArrayList", () -> list.ensureCapacity(Integer.MAX_VALUE), () -> list.setSize(Integer.MAX_VALUE));
+	}
+
+	static void charListTest() {
+		CharArrayList list = new CharArrayList(1);
+		String text = "Primitive char list, grown one character at a time.";
+		for (int i = 0; i < text.length(); i++) {
+			list.add(text.charAt(i));
+		}
+		check(new String(list.toArray()).equals(text), "CharArrayList lost characters while growing");
+		list.add(0, '>');
+		check(list.removeAt(0) == '>' && list.firstIndex(',') == text.indexOf(',') && list.contains('.'), "CharArrayList add(i) is wrong");
+		check(list.set(0, 'p') == 'P' && list.get(0) == 'p', "CharArrayList set is wrong");
+		list.addAll(" More".toCharArray(), 0, 5);
+		check(list.size() == text.length() + 5 && list.last() == 'e', "CharArrayList addAll is wrong");
+
+		int size = list.size();
+		list.setSize(size + VALUES);
+		Arrays.fill(list.elements(), size, size + VALUES, 'x');
+		check(list.get(size) == 'x' && list.last() == 'x' && list.size() == size + VALUES, "CharArrayList setSize is wrong");
+		list.setSize(3);
+		check(list.toString().equals("[p, r, i]"), "CharArrayList toString is " + list);
+
+		checkBounds("CharArrayList", () -> list.get(3), () -> list.set(3, 'a'), () -> list.removeAt(3), () -> list.add(4, 'a'));
+		checkRejected("CharArrayList", () -> new CharArrayList(0), () -> list.setSize(-1));
+		checkTooLarge("CharArrayList", () -> list.ensureCapacity(Integer.MAX_VALUE), () -> list.setSize(Integer.MAX_VALUE - 7));
+	}
+
+	/* Every call has to throw ArrayIndexOutOfBoundsException */
+	static void checkBounds(String name, Runnable... calls) {
+		for (Runnable call: calls) {
+			try {
+				call.run();
+				throw new AssertionError(name + " accepted an index out of bounds");
+			} catch (ArrayIndexOutOfBoundsException expected) {
+			}
+		}
+	}
+
+	/* Every call has to throw IllegalArgumentException */
+	static void checkRejected(String name, Runnable... calls) {
+		for (Runnable call: calls) {
+			try {
+				call.run();
+				throw new AssertionError(name + " accepted an invalid capacity or size");
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+
+	/* Every call asks for more than the largest array, it has to fail before allocating */
+	static void checkTooLarge(String name, Runnable... calls) {
+		for (Runnable call: calls) {
+			try {
+				call.run();
+				throw new AssertionError(name + " accepted a size larger than any array");
+			} catch (OutOfMemoryError e) {
+				check("Required array size too large.".equals(e.getMessage()), name + " ran out of memory: " + e.getMessage());
+			}
+		}
+	}
+
+	/* Compares every element, through the iterator and through get with increasing and decreasing indexes */
+	static void checkSame(UnrolledLinkedList<Integer> list, ArrayList<Integer> expected) {
+		Iterator<Integer> iterator = list.iterator();
+		for (int i = 0; i < expected.size(); i++) {
+			check(iterator.hasNext() && iterator.next().equals(expected.get(i)), "Iteration differs at " + i);
+			check(list.get(i).equals(expected.get(i)), "Sequential get differs at " + i);
+		}
+		check(!iterator.hasNext(), "Iteration goes past the end");
+		for (int i = expected.size() - 1; i >= 0; i--) {
+			check(list.get(i).equals(expected.get(i)), "Backward get differs at " + i);
+		}
+		if (!expected.isEmpty()) {
+			check(list.first().equals(expected.get(0)) && list.last().equals(expected.get(expected.size() - 1)),
+					"first or last differs");
+		}
+	}
+
+	static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
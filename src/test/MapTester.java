@@ -0,0 +1,275 @@
+package test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import list.List;
+import map.ConcurrentFrequencyTable;
+import map.ConcurrentHashTableSC;
+import map.HashTableSC;
+import map.Map;
+
+/**
+ * Tester class for the maps. Checks the Map contract on a single thread for every
+ * implementation (including random operations compared with java.util.HashMap),
+ * then has several threads increment, merge and compute the same keys of a
+ * ConcurrentHashTableSC and a ConcurrentFrequencyTable that start small, so they
+ * resize while being written, and checks that no update is lost, not even one
+ * that races with the removal of its key.
+ * Throws an AssertionError on the first failure.
+ *
+ * @author Abdiel Cortes
+ *
+ */
+public class MapTester {
+
+	private static final int THREADS = 8;
+	private static final int KEYS = 2000;
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) throws Exception {
+		contractTest("HashTableSC", () -> new HashTableSC<String, Integer>(1));
+		contractTest("ConcurrentHashTableSC", () -> new ConcurrentHashTableSC<String, Integer>(1));
+		frequencyContractTest();
+		System.out.println("Map contract holds for every map");
+
+		concurrentTableTest();
+		concurrentFrequencyTest();
+		removeRaceTest();
+		System.out.println("All map tests passed.");
+	}
+
+	/* Single threaded behaviour every Map has to follow */
+	static void contractTest(String name, Supplier<Map<String, Integer>> maps) {
+		Map<String, Integer> map = maps.get();
+		check(map.isEmpty() && map.size() == 0, name + " doesn't start empty");
+		check(map.get("a") == null && map.getOrDefault("a", 7) == 7, name + " found a key in an empty map");
+		check(map.remove("a") == null && !map.containsKey("a"), name + " removed a key from an empty map");
+
+		// enough keys to resize several times, "ab" and "ba" land in the same bucket
+		for (int i = 0; i < KEYS; i++) {
+			map.put(key(i), i);
+		}
+		check(map.size() == KEYS, name + " has " + map.size() + " keys instead of " + KEYS);
+		for (int i = 0; i < KEYS; i++) {
+			check(map.get(key(i)) == i, name + " lost " + key(i) + " while resizing");
+		}
+		check(map.containsValue(KEYS - 1) && !map.containsValue(-1), name + " containsValue is wrong");
+		map.put(key(0), -5);
+		check(map.get(key(0)) == -5 && map.size() == KEYS, name + " put of an existing key is wrong");
+
+		check(map.merge("new", 3, Integer::sum) == 3 && map.merge("new", 4, Integer::sum) == 7, name + " merge is wrong");
+		check(map.merge("new", 1, (a, b) -> null) == null && !map.containsKey("new"), name + " merge didn't remove");
+		check(map.compute("absent", (k, v) -> null) == null && !map.containsKey("absent"), name + " compute inserted null");
+		check(map.compute("absent", (k, v) -> v == null ? 1 : v + 1) == 1, name + " compute didn't insert");
+		check(map.compute("absent", (k, v) -> v == null ? 1 : v + 1) == 2, name + " compute didn't update");
+		check(map.compute("absent", (k, v) -> null) == null && map.size() == KEYS, name + " compute didn't remove");
+
+		List<String> keys = map.getKeys();
+		List<Integer> values = map.getValues();
+		Set<String> seen = new HashSet<>();
+		map.forEach((key, value) -> check(seen.add(key) && map.get(key).equals(value), name + " forEach is wrong"));
+		check(keys.size() == KEYS && values.size() == KEYS && seen.size() == KEYS, name + " doesn't list every key once");
+		for (int i = 0; i < keys.size(); i++) {
+			check(seen.contains(keys.get(i)), name + " getKeys has an unknown key");
+		}
+
+		check(map.remove(key(1)) == 1 && map.size() == KEYS - 1 && !map.containsKey(key(1)), name + " remove is wrong");
+		map.clear();
+		check(map.isEmpty() && map.get(key(2)) == null, name + " clear left keys behind");
+		map.put("after", 1);
+		check(map.size() == 1 && map.get("after") == 1, name + " isn't usable after clear");
+
+		try {
+			map.put(null, 1);
+			throw new AssertionError(name + " accepted a null key");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			map.put("a", null);
+			throw new AssertionError(name + " accepted a null value");
+		} catch (IllegalArgumentException expected) {
+		}
+
+		// random operations on a few keys, compared with java.util.HashMap
+		Random random = new Random(5);
+		Map<String, Integer> tested = maps.get();
+		HashMap<String, Integer> expected = new HashMap<>();
+		for (int op = 0; op < 100_000; op++) {
+			String key = key(random.nextInt(300));
+			int value = random.nextInt(10);
+			switch (random.nextInt(4)) {
+			case 0:
+				tested.put(key, value);
+				expected.put(key, value);
+				break;
+			case 1:
+				check(equal(tested.remove(key), expected.remove(key)), name + " remove differs from HashMap");
+				break;
+			case 2: // 0 removes the key
+				check(equal(tested.merge(key, value, (a, b) -> b == 0 ? null : a + b),
+						expected.merge(key, value, (a, b) -> b == 0 ? null : a + b)), name + " merge differs from HashMap");
+				break;
+			default:
+				check(equal(tested.get(key), expected.get(key)), name + " get differs from HashMap");
+			}
+			check(tested.size() == expected.size(), name + " size differs from HashMap");
+		}
+	}
+
+	/* The counts of a ConcurrentFrequencyTable behave like the values of a Map */
+	static void frequencyContractTest() {
+		ConcurrentFrequencyTable<Character> table = new ConcurrentFrequencyTable<>(1);
+		check(table.isEmpty() && table.get('a') == null, "Frequency table doesn't start empty");
+		for (char c = 'a'; c <= 'z'; c++) {
+			for (int i = 0; i <= c - 'a'; i++) {
+				table.increment(c);
+			}
+		}
+		table.add('a', 10);
+		check(table.size() == 26 && table.get('a') == 11 && table.get('z') == 26, "Frequency table counts are wrong");
+		check(table.merge('b', 5L, Long::sum) == 7 && table.compute('c', (k, v) -> v * 10) == 30, "Frequency table merge is wrong");
+		check(table.compute('d', (k, v) -> null) == null && !table.containsKey('d') && table.size() == 25,
+				"Frequency table compute didn't remove");
+		table.put('e', 100L);
+		check(table.get('e') == 100 && table.containsValue(100L), "Frequency table put is wrong");
+		check(table.remove('e') == 100 && table.getOrDefault('e', -1L) == -1, "Frequency table remove is wrong");
+		long[] total = new long[1];
+		table.forEach((key, count) -> total[0] += count);
+		check(total[0] == sum(table.getValues()) && table.getKeys().size() == 24, "Frequency table listing is wrong");
+		table.clear();
+		check(table.isEmpty(), "Frequency table clear left keys behind");
+	}
+
+	/* Every thread increments, merges and computes every key, the table resizes meanwhile */
+	static void concurrentTableTest() throws Exception {
+		ConcurrentHashTableSC<String, Long> table = new ConcurrentHashTableSC<>(1);
+		runThreads(thread -> {
+			for (int round = 0; round < ROUNDS; round++) {
+				for (int i = 0; i < KEYS; i++) {
+					String key = key((i + thread * 97) % KEYS);
+					table.merge(key, 1L, Long::sum);
+					table.compute(key, (k, v) -> v == null ? 2 : v + 2);
+					table.merge("removed" + i, 1L, (a, b) -> null); // inserted and removed again by the threads
+				}
+			}
+		});
+		long expected = 3L * THREADS * ROUNDS;
+		for (int i = 0; i < KEYS; i++) {
+			Long count = table.get(key(i));
+			check(count != null && count == expected, "Key " + key(i) + " counted " + count + " instead of " + expected);
+		}
+		int removed = 0;
+		for (int i = 0; i < KEYS; i++) {
+			removed += table.containsKey("removed" + i) ? 1 : 0;
+		}
+		check(table.size() == KEYS + removed, "Concurrent table size " + table.size() + " instead of " + (KEYS + removed));
+		check(table.getKeys().size() == table.size(), "Concurrent table lists " + table.getKeys().size() + " keys");
+		System.out.printf("ConcurrentHashTableSC: %d threads, %,d updates, no update lost%n", THREADS, 3L * THREADS * ROUNDS * KEYS);
+	}
+
+	static void concurrentFrequencyTest() throws Exception {
+		ConcurrentFrequencyTable<String> table = new ConcurrentFrequencyTable<>(1);
+		runThreads(thread -> {
+			for (int round = 0; round < ROUNDS; round++) {
+				for (int i = 0; i < KEYS; i++) {
+					String key = key((i * 7 + thread) % KEYS);
+					table.increment(key);
+					table.merge(key, 2L, Long::sum);
+					table.compute(key, (k, v) -> v == null ? 3 : v + 3);
+				}
+			}
+		});
+		long expected = 6L * THREADS * ROUNDS;
+		for (int i = 0; i < KEYS; i++) {
+			Long count = table.get(key(i));
+			check(count != null && count == expected, "Key " + key(i) + " counted " + count + " instead of " + expected);
+		}
+		check(table.size() == KEYS && sum(table.getValues()) == expected * KEYS, "Frequency table totals are wrong");
+		System.out.printf("ConcurrentFrequencyTable: %d threads, %,d updates, no update lost%n", THREADS, 3L * THREADS * ROUNDS * KEYS);
+	}
+
+	/* One thread keeps removing a few hot keys while the others increment them, every
+	   increment has to end up in a count remove returned or in the final table */
+	static void removeRaceTest() throws Exception {
+		ConcurrentFrequencyTable<String> table = new ConcurrentFrequencyTable<>(1);
+		int keys = 4, increments = 200_000;
+		long[] removed = new long[1];
+		runThreads(thread -> {
+			if (thread == 0) {
+				while (table.getOrDefault(key(keys), 0L) < THREADS - 1) {
+					for (int i = 0; i < keys; i++) {
+						Long count = table.remove(key(i));
+						removed[0] += count == null ? 0 : count;
+					}
+				}
+				return;
+			}
+			for (int n = 0; n < increments; n++) {
+				table.increment(key(n % keys));
+			}
+			table.increment(key(keys)); // tells the removing thread this one is done
+		});
+		long counted = removed[0];
+		for (int i = 0; i < keys; i++) {
+			counted += table.getOrDefault(key(i), 0L);
+		}
+		long expected = (long) (THREADS - 1) * increments;
+		check(counted >= expected, "Only " + counted + " of " + expected + " increments survived concurrent removes");
+		System.out.printf("ConcurrentFrequencyTable: %,d increments racing with removes, none lost%n", expected);
+	}
+
+	interface Worker {
+		void run(int thread) throws Exception;
+	}
+
+	/* Runs worker on THREADS threads that start together and waits for all of them */
+	static void runThreads(Worker worker) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		Future<?>[] futures = new Future<?>[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			int thread = t;
+			futures[t] = pool.submit(() -> {
+				start.await();
+				worker.run(thread);
+				return null;
+			});
+		}
+		start.countDown();
+		for (Future<?> future: futures) {
+			future.get();
+		}
+		pool.shutdown();
+	}
+
+	/* Keys whose hashes (sum of their characters) collide a lot */
+	static String key(int i) {
+		return i % 2 == 0 ? "k" + i : new StringBuilder("k" + i).reverse().toString();
+	}
+
+	static long sum(List<Long> values) {
+		long sum = 0;
+		for (int i = 0; i < values.size(); i++) {
+			sum += values.get(i);
+		}
+		return sum;
+	}
+
+	static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}